@@ -0,0 +1,55 @@
+/*
+ *  Copyright (C) 2010 Junpei Kawamoto
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package pxv;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * ベンチマークを GC プロファイラ付きで実行する．
+ * <p>
+ * スループット (ops/s) に加えて，1 操作あたりの割り当て量 (gc.alloc.rate.norm) を報告する．
+ * 引数には JMH のコマンドラインオプションをそのまま指定できる．
+ * </p>
+ */
+public final class BenchmarkRunner {
+
+	private BenchmarkRunner(){
+	}
+
+	/**
+	 * ベンチマークを実行する．
+	 *
+	 * @param args JMH のコマンドラインオプション
+	 * @throws RunnerException ベンチマークの実行に失敗した場合
+	 * @throws CommandLineOptionException オプションが不正な場合
+	 */
+	public static void main(final String[] args) throws RunnerException, CommandLineOptionException{
+
+		new Runner(new OptionsBuilder()
+			.parent(new CommandLineOptions(args))
+			.addProfiler(GCProfiler.class)
+			.build()).run();
+
+	}
+
+}
@@ -0,0 +1,115 @@
+/*
+ *  Copyright (C) 2010 Junpei Kawamoto
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package pxv;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * PixivAPI.getImages が行う重複除去のベンチマーク．
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DedupBenchmark {
+
+	/** 1 ページの行数 */
+	@Param({"50", "500", "5000"})
+	public int rows;
+
+	private Image[] images;
+
+	@Setup
+	public void setup() throws IOException{
+
+		final PixivAPI api = new PixivAPI();
+		final ByteCSVScanner scanner = new ByteCSVScanner(Channels.newChannel(new ByteArrayInputStream(Payloads.utf8(Payloads.images(this.rows, 3)))));
+		final Image.Decoder decoder = new Image.Decoder(api);
+		final List<Image> ret = new ArrayList<Image>();
+		while(scanner.next(decoder)){
+
+			ret.add(decoder.build());
+
+		}
+		this.images = ret.toArray(new Image[ret.size()]);
+
+	}
+
+	/**
+	 * List.contains による重複除去．
+	 */
+	@Benchmark
+	public List<Image> listContains(){
+
+		final List<Image> ret = new ArrayList<Image>();
+		for(final Image image : this.images){
+
+			if(!ret.contains(image)){
+
+				ret.add(image);
+
+			}
+
+		}
+
+		return ret;
+
+	}
+
+	/**
+	 * IntHashSet による重複除去．PixivAPI が使用する方法．
+	 */
+	@Benchmark
+	public List<Image> intHashSet(){
+
+		final List<Image> ret = new ArrayList<Image>();
+		final IntHashSet seen = new IntHashSet();
+		for(final Image image : this.images){
+
+			if(seen.add(image.getId())){
+
+				ret.add(image);
+
+			}
+
+		}
+
+		return ret;
+
+	}
+
+}
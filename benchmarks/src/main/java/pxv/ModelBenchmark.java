@@ -0,0 +1,106 @@
+/*
+ *  Copyright (C) 2010 Junpei Kawamoto
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package pxv;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * 解析済みの行から Image と User を作成する速度のベンチマーク．
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ModelBenchmark {
+
+	private static final int Rows = 50;
+
+	private String[][] images;
+	private String[][] users;
+	private PixivAPI api;
+
+	@Setup
+	public void setup() throws IOException{
+
+		this.images = rows(Payloads.images(Rows, 2));
+		this.users = rows(Payloads.users(Rows, 2));
+		this.api = new PixivAPI();
+
+	}
+
+	/**
+	 * 1 ページ分の Image を作成する．
+	 */
+	@Benchmark
+	public void image(final Blackhole bh) throws IOException{
+
+		for(final String[] data : this.images){
+
+			bh.consume(new Image(this.api, data));
+
+		}
+
+	}
+
+	/**
+	 * 1 ページ分の User を作成する．
+	 */
+	@Benchmark
+	public void user(final Blackhole bh) throws IOException{
+
+		for(final String[] data : this.users){
+
+			bh.consume(new User(this.api, data));
+
+		}
+
+	}
+
+	private static String[][] rows(final String payload) throws IOException{
+
+		final List<String[]> ret = new ArrayList<String[]>();
+		final CSVScanner scanner = new CSVScanner(new StringReader(payload));
+		for(String[] data; (data = scanner.next()) != null;){
+
+			ret.add(data);
+
+		}
+
+		return ret.toArray(new String[ret.size()][]);
+
+	}
+
+}
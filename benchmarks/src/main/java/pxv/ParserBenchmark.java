@@ -0,0 +1,165 @@
+/*
+ *  Copyright (C) 2010 Junpei Kawamoto
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package pxv;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.channels.Channels;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * 1 ページ分の応答を解析する速度を，パーサごとに比較するベンチマーク．
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParserBenchmark {
+
+	/** 応答の種類 */
+	@Param({"images", "users"})
+	public String payload;
+
+	/** 応答の行数 */
+	@Param({"50", "5000"})
+	public int rows;
+
+	private String text;
+	private byte[] bytes;
+	private PixivAPI api;
+
+	@Setup
+	public void setup() throws IOException{
+
+		this.text = "images".equals(this.payload) ? Payloads.images(this.rows, 1) : Payloads.users(this.rows, 1);
+		this.bytes = Payloads.utf8(this.text);
+		this.api = new PixivAPI();
+
+	}
+
+	/**
+	 * 従来のパーサ．
+	 */
+	@Benchmark
+	public void csvParser(final Blackhole bh) throws IOException{
+
+		CSVParser.parse(new StringReader(this.text), new CSVParser.Handler(){
+
+			@Override
+			public void update(final String[] data) {
+				bh.consume(data);
+			}
+
+		});
+
+	}
+
+	/**
+	 * char[] ウィンドウを走査するパーサで全ての列を取り出す．
+	 */
+	@Benchmark
+	public void csvScanner(final Blackhole bh) throws IOException{
+
+		final CSVScanner scanner = new CSVScanner(new StringReader(this.text));
+		for(String[] data; (data = scanner.next()) != null;){
+
+			bh.consume(data);
+
+		}
+
+	}
+
+	/**
+	 * UTF-8 のバイト列を走査するパーサで全ての列を取り出す．
+	 */
+	@Benchmark
+	public void byteScanner(final Blackhole bh) throws IOException{
+
+		final ByteCSVScanner scanner = new ByteCSVScanner(Channels.newChannel(new ByteArrayInputStream(this.bytes)));
+		for(String[] data; (data = scanner.next()) != null;){
+
+			bh.consume(data);
+
+		}
+
+	}
+
+	/**
+	 * UTF-8 のバイト列をワード単位で走査するパーサで全ての列を取り出す．
+	 */
+	@Benchmark
+	public void byteScannerWide(final Blackhole bh) throws IOException{
+
+		final ByteCSVScanner scanner = new ByteCSVScanner(Channels.newChannel(new ByteArrayInputStream(this.bytes)), true);
+		for(String[] data; (data = scanner.next()) != null;){
+
+			bh.consume(data);
+
+		}
+
+	}
+
+	/**
+	 * 必要な列だけを取り出す．PixivAPI が使用する経路．
+	 */
+	@Benchmark
+	public void projected(final Blackhole bh) throws IOException{
+
+		final ByteCSVScanner scanner = new ByteCSVScanner(Channels.newChannel(new ByteArrayInputStream(this.bytes)));
+		final CSVScanner.Decoder<?> decoder = "images".equals(this.payload) ? new Image.Decoder(this.api) : new User.Decoder(this.api);
+		while(scanner.next(decoder)){
+
+			bh.consume(decoder);
+
+		}
+
+	}
+
+	/**
+	 * 必要な列だけを取り出し，Image または User を組み立てる．
+	 */
+	@Benchmark
+	public void projectedAndBuilt(final Blackhole bh) throws IOException{
+
+		final ByteCSVScanner scanner = new ByteCSVScanner(Channels.newChannel(new ByteArrayInputStream(this.bytes)));
+		final CSVScanner.Decoder<?> decoder = "images".equals(this.payload) ? new Image.Decoder(this.api) : new User.Decoder(this.api);
+		while(scanner.next(decoder)){
+
+			bh.consume(decoder.build());
+
+		}
+
+	}
+
+}
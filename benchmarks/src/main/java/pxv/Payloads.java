@@ -0,0 +1,163 @@
+/*
+ *  Copyright (C) 2010 Junpei Kawamoto
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package pxv;
+
+import java.io.UnsupportedEncodingException;
+import java.util.Random;
+
+/**
+ * ベンチマーク用の合成した API の応答．
+ * <p>
+ * search.php や ranking.php が返すイラストの行 (26 列) と，search_user.php などが返すユーザの行 (26 列) を模して，
+ * 日本語のタイトルやタグ，エスケープされた引用符を含むコメントを持つ行を生成する．
+ * 各レコードは pixiv の応答と同じく区切り文字 (,) と改行で終わる．
+ * </p>
+ */
+final class Payloads {
+
+	/** イラストの行の列数 */
+	static final int ImageColumns = 26;
+	/** ユーザの行の列数 */
+	static final int UserColumns = 26;
+
+	private static final String[] Titles = {
+		"夏の終わり", "初音ミク", "東方まとめ", "落書き", "オリジナル \\\"習作\\\"", "らくがき詰め", "Untitled"
+	};
+	private static final String[] Tags = {
+		"オリジナル 女の子", "VOCALOID 初音ミク", "東方 霊夢 魔理沙", "落書き", "風景 空 夏", "ポケモン"
+	};
+	private static final String[] Tools = {
+		"SAI", "Photoshop", "ComicStudio", "Painter", "Illustrator", ""
+	};
+
+	private Payloads(){
+	}
+
+	/**
+	 * イラストの応答を生成する．
+	 *
+	 * @param rows 行数
+	 * @param seed 乱数の種
+	 * @return 生成した応答
+	 */
+	static String images(final int rows, final long seed){
+
+		final Random rnd = new Random(seed);
+		final StringBuilder ret = new StringBuilder();
+		for(int i = 0; i != rows; ++i){
+
+			final int id = 10000000 + rnd.nextInt(9000000);
+			final int author = 100000 + rnd.nextInt(900000);
+			final String server = String.format("%02d", 1 + rnd.nextInt(30));
+			final String[] data = new String[ImageColumns];
+			data[0] = Integer.toString(id);
+			data[1] = Integer.toString(author);
+			data[2] = rnd.nextBoolean() ? "jpg" : "png";
+			data[3] = Titles[rnd.nextInt(Titles.length)];
+			data[4] = server;
+			data[5] = "ユーザ" + author;
+			data[6] = String.format("http://img%s.pixiv.net/img/user%d/%d_s.jpg", server, author, id);
+			data[7] = "";
+			data[8] = "";
+			data[9] = String.format("http://img%s.pixiv.net/img/user%d/mobile/%d_128x128.jpg", server, author, id);
+			data[10] = "";
+			data[11] = "";
+			data[12] = String.format("2010-%02d-%02d %02d:%02d:00", 1 + rnd.nextInt(12), 1 + rnd.nextInt(28), rnd.nextInt(24), rnd.nextInt(60));
+			data[13] = Tags[rnd.nextInt(Tags.length)];
+			data[14] = Tools[rnd.nextInt(Tools.length)];
+			data[15] = Integer.toString(rnd.nextInt(500));
+			data[16] = Integer.toString(rnd.nextInt(5000));
+			data[17] = Integer.toString(rnd.nextInt(100000));
+			data[18] = "コメントです．\\\"引用\\\" を含みます．";
+			for(int c = 19; c != ImageColumns; ++c){
+
+				data[c] = "";
+
+			}
+			append(ret, data);
+
+		}
+
+		return ret.toString();
+
+	}
+
+	/**
+	 * ユーザの応答を生成する．
+	 *
+	 * @param rows 行数
+	 * @param seed 乱数の種
+	 * @return 生成した応答
+	 */
+	static String users(final int rows, final long seed){
+
+		final Random rnd = new Random(seed);
+		final StringBuilder ret = new StringBuilder();
+		for(int i = 0; i != rows; ++i){
+
+			final int id = 100000 + rnd.nextInt(900000);
+			final String[] data = new String[UserColumns];
+			for(int c = 0; c != UserColumns; ++c){
+
+				data[c] = "";
+
+			}
+			data[1] = Integer.toString(id);
+			data[5] = "ユーザ" + id;
+			data[6] = String.format("http://img%02d.pixiv.net/profile/user%d/mobile/%d_80.jpg", 1 + rnd.nextInt(30), id, id);
+			data[24] = "user_" + Integer.toString(id, 36);
+			append(ret, data);
+
+		}
+
+		return ret.toString();
+
+	}
+
+	/**
+	 * 応答を UTF-8 のバイト列に変換する．
+	 *
+	 * @param payload 応答
+	 * @return UTF-8 のバイト列
+	 */
+	static byte[] utf8(final String payload){
+
+		try{
+
+			return payload.getBytes("UTF-8");
+
+		}catch(final UnsupportedEncodingException e){
+
+			throw new IllegalStateException(e);
+
+		}
+
+	}
+
+	private static void append(final StringBuilder out, final String[] data){
+
+		for(final String d : data){
+
+			out.append('\"').append(d).append("\",");
+
+		}
+		out.append('\n');
+
+	}
+
+}
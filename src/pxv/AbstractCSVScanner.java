@@ -0,0 +1,503 @@
+/*
+ *  Copyright (C) 2010 Junpei Kawamoto
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package pxv;
+
+import java.io.IOException;
+
+import pxv.CSVScanner.Decoder;
+import pxv.CSVScanner.Fields;
+import pxv.CSVScanner.Projection;
+
+/**
+ * 読み込みウィンドウ上を走査する CSV パーサの共通部分．
+ * <p>
+ * ウィンドウの管理，フィールドのセグメントの記録と連結，区切り文字ごとの状態遷移，
+ * Projection に従った列の取り出しを受け持つ．
+ * ウィンドウと作業領域は char[] や byte[] などの配列で，要素の型に依存する処理はサブクラスが実装する．
+ * 要素ごとの走査はサブクラスの indexOfDelimiter と indexOfQuoteOrEscape で行い，
+ * このクラスは区切り文字が見つかるたびにだけ要素を参照する．
+ * </p>
+ *
+ * @param <A> ウィンドウと作業領域の配列の型
+ */
+abstract class AbstractCSVScanner<A> implements RecordScanner {
+
+	static final char Quote = '\"';
+	static final char Comma = ',';
+	static final char Escape = '\\';
+	static final char CR = '\r';
+	static final char LF = '\n';
+
+	/** 読み込みウィンドウ */
+	final A window;
+	/** ウィンドウ内の読み込み位置 */
+	private int pos = 0;
+	/** ウィンドウ内の有効な要素数 */
+	private int limit = 0;
+
+	/** 複数セグメントにまたがるフィールドの作業領域 */
+	private A field;
+	/** 作業領域の大きさ */
+	private int fieldCapacity;
+	/** 作業領域に連結済みの要素数 */
+	private int fieldLength = 0;
+
+	/** ウィンドウから直接切り出す予定のセグメント開始位置，無い場合は -1 */
+	private int sliceStart = -1;
+	/** ウィンドウから直接切り出す予定のセグメント長 */
+	private int sliceLength = 0;
+
+	/** 現在のレコードで読み込み中の列番号 */
+	private int column = 0;
+	/** 現在の列の取り出し方 */
+	private byte kind = Projection.Text;
+	/** 現在の列に要素が含まれていた場合 true */
+	private boolean touched = false;
+
+	/** 読み込み中のレコードを受け取る Decoder */
+	private Decoder<?> decoder = null;
+	/** 読み込み中のレコードの列の取り出し方 */
+	private Projection projection = null;
+
+	/** 全ての列を文字列として取り出す Decoder */
+	private final Fields all = new Fields();
+
+	//============================================================================
+	//  Constructor
+	//============================================================================
+	/**
+	 * @param window 読み込みウィンドウ
+	 * @param field 作業領域の初期値
+	 * @param fieldCapacity 作業領域の大きさ
+	 */
+	AbstractCSVScanner(final A window, final A field, final int fieldCapacity){
+
+		this.window = window;
+		this.field = field;
+		this.fieldCapacity = fieldCapacity;
+
+	}
+
+	//============================================================================
+	//  Public methods
+	//============================================================================
+	/**
+	 * 次のレコードを読み込む．
+	 *
+	 * @return 読み込んだレコードのフィールド，入力の終わりに達した場合は null
+	 * @throws IOException I/O エラーが発生した場合
+	 */
+	public String[] next() throws IOException{
+
+		return this.next(this.all) ? this.all.build() : null;
+
+	}
+
+	/* (非 Javadoc)
+	 * @see pxv.RecordScanner#next(pxv.CSVScanner.Decoder)
+	 */
+	@Override
+	public boolean next(final Decoder<?> decoder) throws IOException{
+
+		this.decoder = decoder;
+		this.projection = decoder.getProjection();
+		decoder.begin();
+		this.beginRecord();
+
+		while(true){
+
+			if(this.pos == this.limit && !this.fill()){
+
+				return this.endRecord();
+
+			}
+
+			switch(this.at(this.pos)){
+			case Quote:
+
+				++this.pos;
+				this.touched = true;
+				this.scanQuoted();
+				break;
+
+			case Comma:
+
+				++this.pos;
+				this.endField();
+				break;
+
+			case CR:
+
+				++this.pos;
+				if((this.pos < this.limit || this.fill()) && this.at(this.pos) == LF){
+
+					++this.pos;
+
+				}
+				if(this.endRecord()){
+
+					return true;
+
+				}
+				break;
+
+			case LF:
+
+				++this.pos;
+				if(this.endRecord()){
+
+					return true;
+
+				}
+				break;
+
+			default:
+
+				this.scanPlain();
+
+			}
+
+		}
+
+	}
+
+	//============================================================================
+	//  Package private methods
+	//============================================================================
+	/**
+	 * ウィンドウに次の入力を読み込む．
+	 *
+	 * @return 読み込んだ要素数，入力の終わりに達した場合は -1
+	 * @throws IOException I/O エラーが発生した場合
+	 */
+	abstract int read() throws IOException;
+
+	/**
+	 * ウィンドウ上の要素を取得する．
+	 *
+	 * @param p ウィンドウ内の位置
+	 * @return 要素の値
+	 */
+	abstract int at(final int p);
+
+	/**
+	 * 引用符の外側で区切りとなる要素 (, &quot; CR LF) の位置を探す．
+	 *
+	 * @return 見つかった位置，見つからなかった場合は to
+	 */
+	abstract int indexOfDelimiter(final int from, final int to);
+
+	/**
+	 * 引用符の内側で意味を持つ要素 (&quot; \) の位置を探す．
+	 *
+	 * @return 見つかった位置，見つからなかった場合は to
+	 */
+	abstract int indexOfQuoteOrEscape(final int from, final int to);
+
+	/**
+	 * 作業領域に使う配列を作成する．
+	 *
+	 * @param size 大きさ
+	 * @return 配列
+	 */
+	abstract A allocate(final int size);
+
+	/**
+	 * 配列の一部を文字列に変換する．
+	 *
+	 * @param buf ウィンドウまたは作業領域
+	 * @param start 開始位置
+	 * @param length 要素数
+	 * @return 文字列
+	 */
+	abstract String text(final A buf, final int start, final int length);
+
+	/**
+	 * 配列の一部を 10 進数の整数として読み込む．
+	 *
+	 * @param buf ウィンドウまたは作業領域
+	 * @param start 開始位置
+	 * @param length 要素数
+	 * @return 整数
+	 * @throws NumberFormatException 整数として解釈できない場合
+	 */
+	abstract int integer(final A buf, final int start, final int length);
+
+	//============================================================================
+	//  Private methods
+	//============================================================================
+	/**
+	 * 引用符の外側を次の区切り文字まで一括で走査する．
+	 */
+	private void scanPlain(){
+
+		final int start = this.pos;
+		final int p = this.indexOfDelimiter(start, this.limit);
+
+		this.segment(start, p - start);
+		this.pos = p;
+
+	}
+
+	/**
+	 * 引用符の内側を閉じ引用符まで一括で走査する．
+	 * エスケープ文字とその次の 1 要素は，CSVParser と同様にそのままフィールドに含める．
+	 *
+	 * @throws IOException I/O エラーが発生した場合
+	 */
+	private void scanQuoted() throws IOException{
+
+		while(this.pos < this.limit || this.fill()){
+
+			final int start = this.pos;
+			final int end = this.limit;
+			int p = start;
+			while((p = this.indexOfQuoteOrEscape(p, end)) < end){
+
+				if(this.at(p) == Quote){
+
+					this.segment(start, p - start);
+					this.pos = p + 1;
+					return;
+
+				}else if(p + 1 == end){
+
+					// エスケープされた要素が次のウィンドウにある
+					this.segment(start, p + 1 - start);
+					this.pos = end;
+					if(!this.fill()){
+
+						return;
+
+					}
+					this.segment(this.pos, 1);
+					++this.pos;
+					break;
+
+				}else{
+
+					// エスケープ文字とエスケープされた要素を読み飛ばす
+					p += 2;
+
+				}
+
+			}
+
+			if(p >= end){
+
+				this.segment(start, end - start);
+				this.pos = end;
+
+			}
+
+		}
+
+	}
+
+	/**
+	 * フィールドのセグメントを追加する．
+	 * 最初のセグメントはウィンドウ上の位置だけを記録し，2 つ目以降で作業領域に連結する．
+	 * 読み飛ばす列では何も記録しない．
+	 *
+	 * @param start ウィンドウ内の開始位置
+	 * @param length セグメント長
+	 */
+	private void segment(final int start, final int length){
+
+		if(length == 0){
+
+			return;
+
+		}
+
+		this.touched = true;
+		if(this.kind == Projection.Skip){
+
+			return;
+
+		}
+
+		if(this.sliceStart < 0 && this.fieldLength == 0){
+
+			this.sliceStart = start;
+			this.sliceLength = length;
+
+		}else{
+
+			this.spill();
+			this.append(start, length);
+
+		}
+
+	}
+
+	/**
+	 * ウィンドウ上に記録したセグメントを作業領域に移す．
+	 */
+	private void spill(){
+
+		if(this.sliceStart >= 0){
+
+			this.append(this.sliceStart, this.sliceLength);
+			this.sliceStart = -1;
+
+		}
+
+	}
+
+	/**
+	 * 作業領域にウィンドウの一部を連結する．
+	 */
+	private void append(final int start, final int length){
+
+		final int required = this.fieldLength + length;
+		if(required > this.fieldCapacity){
+
+			final int capacity = Math.max(required, this.fieldCapacity * 2);
+			final A buf = this.allocate(capacity);
+			System.arraycopy(this.field, 0, buf, 0, this.fieldLength);
+			this.field = buf;
+			this.fieldCapacity = capacity;
+
+		}
+		System.arraycopy(this.window, start, this.field, this.fieldLength, length);
+		this.fieldLength = required;
+
+	}
+
+	/**
+	 * 新しいレコードの読み込みを始める．
+	 */
+	private void beginRecord(){
+
+		this.column = 0;
+		this.beginField();
+
+	}
+
+	/**
+	 * 新しいフィールドの読み込みを始める．
+	 */
+	private void beginField(){
+
+		this.kind = this.projection.getKind(this.column);
+		this.touched = false;
+		this.sliceStart = -1;
+		this.fieldLength = 0;
+
+	}
+
+	/**
+	 * 区切り文字で閉じられたフィールドを確定し，宣言された取り出し方で Decoder に渡す．
+	 */
+	private void endField(){
+
+		switch(this.kind){
+		case Projection.Text:
+
+			final String value;
+			if(this.sliceStart >= 0){
+
+				value = this.text(this.window, this.sliceStart, this.sliceLength);
+
+			}else if(this.fieldLength != 0){
+
+				value = this.text(this.field, 0, this.fieldLength);
+
+			}else{
+
+				value = "";
+
+			}
+			this.decoder.text(this.column, value);
+			break;
+
+		case Projection.Int:
+
+			if(this.sliceStart >= 0){
+
+				this.decoder.integer(this.column, this.integer(this.window, this.sliceStart, this.sliceLength));
+
+			}else{
+
+				this.decoder.integer(this.column, this.integer(this.field, 0, this.fieldLength));
+
+			}
+			break;
+
+		}
+
+		++this.column;
+		this.beginField();
+
+	}
+
+	/**
+	 * 現在のレコードを確定する．
+	 * 区切り文字で閉じられていない末尾のフィールドは，要素が含まれる場合だけフィールドとして扱う．
+	 *
+	 * @return レコードにフィールドが含まれる場合 true
+	 */
+	private boolean endRecord(){
+
+		if(this.touched){
+
+			this.endField();
+
+		}
+
+		if(this.column != 0){
+
+			return true;
+
+		}
+
+		this.beginRecord();
+		return false;
+
+	}
+
+	/**
+	 * ウィンドウに次の入力を読み込む．
+	 *
+	 * @return 読み込めた場合 true，入力の終わりに達した場合 false
+	 * @throws IOException I/O エラーが発生した場合
+	 */
+	private boolean fill() throws IOException{
+
+		// 読み込みでウィンドウが上書きされる前に，切り出し予定のセグメントを退避する
+		this.spill();
+
+		int n;
+		while((n = this.read()) == 0){
+			// 0 要素の読み込みは読み直す
+		}
+		if(n < 0){
+
+			this.pos = this.limit = 0;
+			return false;
+
+		}
+
+		this.pos = 0;
+		this.limit = n;
+		return true;
+
+	}
+
+}
@@ -0,0 +1,419 @@
+/*
+ *  Copyright (C) 2010 Junpei Kawamoto
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package pxv;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 送信レートと同時リクエスト数を制御するトランスポート．
+ * <p>
+ * 他のトランスポートを包み，全てのリクエストを次の 2 段階で制御します．
+ * </p>
+ * <ul>
+ * <li>トークンバケット: 1 秒あたり rate 個のトークンが最大 burst 個まで溜まり，リクエストごとに 1 個消費します．
+ * トークンが無い場合は溜まるまで待ちます．</li>
+ * <li>適応的な同時リクエスト数の制限 (AIMD): 応答の待ち時間が普段と同程度で正常に返る間は，
+ * 制限を 1 往復あたりおよそ 1 ずつ増やします (加算的増加)．
+ * 429 や 5xx の応答，I/O エラー，または待ち時間が普段の LatencyTolerance 倍を超えた場合は，制限を半分にします (乗算的減少)．
+ * 減少は，直前の減少から普段の待ち時間が経つまでは 1 度だけ行います．</li>
+ * </ul>
+ * <p>
+ * 現在の同時リクエスト数の上限は getLimit で取得できます．大量の問合せを行う処理は，
+ * この値を並列度の目安にすることで，サーバが受け入れられる最大のレートで動作できます．
+ * 応答を閉じるまで同時リクエスト数の枠は解放されないため，応答は必ず close または abort で閉じて下さい．
+ * </p>
+ * <pre>
+ * final AdaptiveTransport transport = new AdaptiveTransport(new URLConnectionTransport());
+ * final PixivAPI api = new PixivAPI(transport);
+ * </pre>
+ *
+ * @since 0.2
+ */
+public class AdaptiveTransport implements ConditionalTransport {
+
+	/** 既定の 1 秒あたりのリクエスト数 */
+	public static final double DefaultRate = 10;
+	/** 既定の同時リクエスト数の上限の最大値 */
+	public static final int DefaultMaxLimit = 32;
+
+	/** 混雑とみなす待ち時間の，普段の待ち時間に対する倍率 */
+	private static final double LatencyTolerance = 2.0;
+	/** 普段の待ち時間を求める指数移動平均の重み */
+	private static final double BaselineWeight = 0.05;
+	/** 同時リクエスト数の上限の初期値 */
+	private static final double InitialLimit = 4;
+	/** 同時リクエスト数の上限の最小値 */
+	private static final double MinLimit = 1;
+
+	private final Transport transport;
+
+	/** 1 秒あたりのトークンの補充数 */
+	private final double rate;
+	/** 溜められるトークンの最大数 */
+	private final double burst;
+	/** 同時リクエスト数の上限の最大値 */
+	private final double maxLimit;
+
+	/** 溜まっているトークン数 */
+	private double tokens;
+	/** 最後にトークンを補充した時刻 (ナノ秒) */
+	private long refilled;
+
+	/** 同時リクエスト数の上限 */
+	private double limit = InitialLimit;
+	/** 実行中のリクエスト数 */
+	private int inFlight = 0;
+	/** 普段の待ち時間 (ナノ秒)，まだ観測していない場合は 0 */
+	private double baseline = 0;
+	/** 最後に上限を減らした時刻 (ナノ秒) */
+	private long decreased = 0;
+
+	/** 混雑を示す応答またはエラーの数 */
+	private final AtomicLong throttled = new AtomicLong();
+
+	//============================================================================
+	//  Constructors
+	//============================================================================
+	/**
+	 * 既定のレートと上限でトランスポートを作成する．
+	 *
+	 * @param transport リクエストを送るトランスポート
+	 */
+	public AdaptiveTransport(final Transport transport){
+		this(transport, DefaultRate, (int)DefaultRate, DefaultMaxLimit);
+	}
+
+	/**
+	 * レートと上限を指定してトランスポートを作成する．
+	 *
+	 * @param transport リクエストを送るトランスポート
+	 * @param rate 1 秒あたりのリクエスト数
+	 * @param burst 連続して送ることのできるリクエスト数
+	 * @param maxLimit 同時リクエスト数の上限の最大値
+	 */
+	public AdaptiveTransport(final Transport transport, final double rate, final int burst, final int maxLimit){
+
+		if(rate <= 0 || burst < 1 || maxLimit < 1){
+
+			throw new IllegalArgumentException(String.format("rate: %f, burst: %d, maxLimit: %d", rate, burst, maxLimit));
+
+		}
+
+		this.transport = transport;
+		this.rate = rate;
+		this.burst = burst;
+		this.maxLimit = maxLimit;
+		this.tokens = burst;
+		this.refilled = System.nanoTime();
+		this.limit = Math.min(InitialLimit, maxLimit);
+
+	}
+
+	//============================================================================
+	//  Public methods
+	//============================================================================
+	/* (非 Javadoc)
+	 * @see pxv.Transport#get(java.net.URL)
+	 */
+	@Override
+	public Response get(final URL url) throws IOException {
+		return this.get(url, null, 0);
+	}
+
+	/* (非 Javadoc)
+	 * @see pxv.ConditionalTransport#get(java.net.URL, java.lang.String, long)
+	 */
+	@Override
+	public Response get(final URL url, final String etag, final long lastModified) throws IOException {
+
+		try{
+
+			this.acquireToken();
+			this.acquireSlot();
+
+		}catch(final InterruptedException e){
+
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while waiting for a request slot");
+
+		}
+
+		final long start = System.nanoTime();
+		final Transport.Response res;
+		try{
+
+			if(this.transport instanceof ConditionalTransport){
+
+				res = ((ConditionalTransport)this.transport).get(url, etag, lastModified);
+
+			}else{
+
+				res = this.transport.get(url);
+
+			}
+
+		}catch(final IOException e){
+
+			this.complete(System.nanoTime() - start, true);
+			this.releaseSlot();
+			throw e;
+
+		}catch(final RuntimeException e){
+
+			this.releaseSlot();
+			throw e;
+
+		}
+
+		final int status = res.getStatus();
+		this.complete(System.nanoTime() - start, status == 429 || status >= 500);
+		return new GovernedResponse(res);
+
+	}
+
+	/**
+	 * 現在の同時リクエスト数の上限を取得する．
+	 *
+	 * @return 同時リクエスト数の上限
+	 */
+	public synchronized int getLimit(){
+		return (int)this.limit;
+	}
+
+	/**
+	 * 実行中のリクエスト数を取得する．
+	 *
+	 * @return 応答を閉じていないリクエストの数
+	 */
+	public synchronized int getInFlight(){
+		return this.inFlight;
+	}
+
+	/**
+	 * 普段の待ち時間を取得する．
+	 *
+	 * @param unit 戻り値の単位
+	 * @return 応答を受け取るまでの待ち時間の移動平均
+	 */
+	public synchronized long getBaselineLatency(final TimeUnit unit){
+		return unit.convert((long)this.baseline, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * 混雑を示す応答 (429，5xx) または I/O エラーの数を取得する．
+	 *
+	 * @return 混雑を示す応答またはエラーの数
+	 */
+	public long getThrottledCount(){
+		return this.throttled.get();
+	}
+
+	//============================================================================
+	//  Private methods
+	//============================================================================
+	/**
+	 * トークンを 1 個消費する．トークンが無い場合は溜まるまで待つ．
+	 */
+	private void acquireToken() throws InterruptedException{
+
+		long wait;
+		synchronized(this){
+
+			final long now = System.nanoTime();
+			this.tokens = Math.min(this.burst, this.tokens + (now - this.refilled) * this.rate / 1e9);
+			this.refilled = now;
+
+			// 足りない分は先に借りておき，待っている間に溜まる分で返す
+			this.tokens -= 1;
+			wait = this.tokens >= 0 ? 0 : (long)(-this.tokens / this.rate * 1e9);
+
+		}
+
+		if(wait > 0){
+
+			TimeUnit.NANOSECONDS.sleep(wait);
+
+		}
+
+	}
+
+	/**
+	 * 同時リクエスト数の枠を確保する．
+	 */
+	private synchronized void acquireSlot() throws InterruptedException{
+
+		while(this.inFlight >= (int)this.limit){
+
+			this.wait();
+
+		}
+		++this.inFlight;
+
+	}
+
+	private synchronized void releaseSlot(){
+
+		--this.inFlight;
+		this.notifyAll();
+
+	}
+
+	/**
+	 * 応答を受け取るまでの待ち時間と結果から，同時リクエスト数の上限を調整する．
+	 *
+	 * @param latency 待ち時間 (ナノ秒)
+	 * @param congested 混雑を示す応答またはエラーの場合 true
+	 */
+	private synchronized void complete(final long latency, final boolean congested){
+
+		final boolean slow = this.baseline > 0 && latency > this.baseline * LatencyTolerance;
+		if(congested){
+
+			this.throttled.incrementAndGet();
+
+		}else{
+
+			this.baseline = this.baseline == 0 ? latency : this.baseline + BaselineWeight * (latency - this.baseline);
+
+		}
+
+		final long now = System.nanoTime();
+		if(congested || slow){
+
+			if(now - this.decreased > this.baseline){
+
+				this.limit = Math.max(MinLimit, this.limit / 2);
+				this.decreased = now;
+
+			}
+
+		}else if(this.inFlight >= (int)this.limit){
+
+			// 上限まで使っている場合だけ増やす
+			this.limit = Math.min(this.maxLimit, this.limit + 1 / this.limit);
+			this.notifyAll();
+
+		}
+
+	}
+
+	//============================================================================
+	//  Inner classes
+	//============================================================================
+	/**
+	 * 閉じた際に同時リクエスト数の枠を解放する応答．
+	 */
+	private final class GovernedResponse implements ConditionalTransport.Response {
+
+		private final Transport.Response response;
+		/** 閉じられている場合 true */
+		private boolean closed = false;
+
+		GovernedResponse(final Transport.Response response){
+
+			this.response = response;
+
+		}
+
+		@Override
+		public int getStatus() {
+			return this.response.getStatus();
+		}
+
+		@Override
+		public URL getURL() {
+			return this.response.getURL();
+		}
+
+		@Override
+		public InputStream getBody() throws IOException {
+			return this.response.getBody();
+		}
+
+		@Override
+		public String getETag() {
+
+			if(this.response instanceof ConditionalTransport.Response){
+
+				return ((ConditionalTransport.Response)this.response).getETag();
+
+			}
+			return null;
+
+		}
+
+		@Override
+		public long getLastModified() {
+
+			if(this.response instanceof ConditionalTransport.Response){
+
+				return ((ConditionalTransport.Response)this.response).getLastModified();
+
+			}
+			return 0;
+
+		}
+
+		@Override
+		public void close() throws IOException {
+
+			try{
+
+				this.response.close();
+
+			}finally{
+
+				this.release();
+
+			}
+
+		}
+
+		@Override
+		public void abort() {
+
+			try{
+
+				this.response.abort();
+
+			}finally{
+
+				this.release();
+
+			}
+
+		}
+
+		private void release(){
+
+			if(!this.closed){
+
+				this.closed = true;
+				AdaptiveTransport.this.releaseSlot();
+
+			}
+
+		}
+
+	}
+
+}
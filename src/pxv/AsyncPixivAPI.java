@@ -0,0 +1,623 @@
+/*
+ *  Copyright (C) 2010 Junpei Kawamoto
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package pxv;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * PixivAPI の問合せを非同期に実行するクラス．
+ * <p>
+ * 各メソッドは PixivAPI の同名のメソッドを，与えられた ExecutorService で実行し，結果を Future で返します．
+ * 呼び出し側のスレッドは待たずに次の問合せを発行できるため，1 つのスレッドから多数のページの取得を同時に進められます．
+ * 完了した順に結果を受け取る場合は，java.util.concurrent.ExecutorCompletionService と組み合わせて下さい．
+ * 同時に実行される問合せの数は，ExecutorService のスレッド数とトランスポートの最大接続数で決まります．
+ * </p>
+ * <p>
+ * 同期的なメソッドは引き続き PixivAPI から利用できます．
+ * ExecutorService の終了は呼び出し側で行って下さい．
+ * </p>
+ *
+ * @since 0.2
+ */
+public class AsyncPixivAPI {
+
+	/** 問合せを実行する PixivAPI */
+	private final PixivAPI api;
+	/** 問合せを実行するスレッドプール */
+	private final ExecutorService executor;
+
+	//============================================================================
+	//  Constructors
+	//============================================================================
+	/**
+	 * AsyncPixivAPI インスタンスを作成する．
+	 *
+	 * @param api 問合せを実行する PixivAPI
+	 * @param executor 問合せを実行するスレッドプール
+	 */
+	public AsyncPixivAPI(final PixivAPI api, final ExecutorService executor){
+
+		this.api = api;
+		this.executor = executor;
+
+	}
+
+	//============================================================================
+	//  Public methods
+	//============================================================================
+	/**
+	 * 問合せを実行する PixivAPI を取得する．
+	 *
+	 * @return 問合せを実行する PixivAPI
+	 */
+	public PixivAPI getAPI(){
+		return this.api;
+	}
+
+	//----------------------------------------------------------------------------
+	//  APIs for user's account
+	//----------------------------------------------------------------------------
+	/**
+	 * 非同期にログインする．
+	 *
+	 * @param id ユーザ ID
+	 * @param password パスワード
+	 * @return 結果を受け取る Future
+	 */
+	public Future<Boolean> login(final String id, final String password){
+
+		return this.executor.submit(new Callable<Boolean>(){
+
+			@Override
+			public Boolean call() {
+				return AsyncPixivAPI.this.api.login(id, password);
+			}
+
+		});
+
+	}
+
+	/**
+	 * 非同期にシステムの稼働状態を調べる．
+	 *
+	 * @return 結果を受け取る Future
+	 */
+	public Future<Boolean> status(){
+
+		return this.executor.submit(new Callable<Boolean>(){
+
+			@Override
+			public Boolean call() {
+				return AsyncPixivAPI.this.api.status();
+			}
+
+		});
+
+	}
+
+	/**
+	 * 非同期にログインユーザのプロフィールを取得する．
+	 *
+	 * @return 結果を受け取る Future
+	 */
+	public Future<String> profile(){
+
+		return this.executor.submit(new Callable<String>(){
+
+			@Override
+			public String call() {
+				return AsyncPixivAPI.this.api.profile();
+			}
+
+		});
+
+	}
+
+	//----------------------------------------------------------------------------
+	//  APIs for new images
+	//----------------------------------------------------------------------------
+	/**
+	 * 非同期に新着イラスト数を取得する．
+	 *
+	 * @return 結果を受け取る Future
+	 */
+	public Future<Integer> getNewImageSize(){
+
+		return this.executor.submit(new Callable<Integer>(){
+
+			@Override
+			public Integer call() {
+				return AsyncPixivAPI.this.api.getNewImageSize();
+			}
+
+		});
+
+	}
+
+	/**
+	 * 非同期に新着イラストを取得する．
+	 *
+	 * @param page 取得するページ番号
+	 * @return 結果を受け取る Future
+	 */
+	public Future<List<Image>> getNewImages(final int page){
+
+		return this.executor.submit(new Callable<List<Image>>(){
+
+			@Override
+			public List<Image> call() {
+				return AsyncPixivAPI.this.api.getNewImages(page);
+			}
+
+		});
+
+	}
+
+	/**
+	 * 非同期に新着 MyPixiv イラスト数を取得する．
+	 *
+	 * @return 結果を受け取る Future
+	 */
+	public Future<Integer> getMyPixivNewImageSize(){
+
+		return this.executor.submit(new Callable<Integer>(){
+
+			@Override
+			public Integer call() {
+				return AsyncPixivAPI.this.api.getMyPixivNewImageSize();
+			}
+
+		});
+
+	}
+
+	/**
+	 * 非同期に新着 MyPixiv イラストを取得する．
+	 *
+	 * @param page 取得するページ番号
+	 * @return 結果を受け取る Future
+	 */
+	public Future<List<Image>> getMyPixivNewImages(final int page){
+
+		return this.executor.submit(new Callable<List<Image>>(){
+
+			@Override
+			public List<Image> call() {
+				return AsyncPixivAPI.this.api.getMyPixivNewImages(page);
+			}
+
+		});
+
+	}
+
+	/**
+	 * 非同期にお気に入りユーザの新着イラスト数を取得する．
+	 *
+	 * @return 結果を受け取る Future
+	 */
+	public Future<Integer> getBookmarkedUserNewImageSize(){
+
+		return this.executor.submit(new Callable<Integer>(){
+
+			@Override
+			public Integer call() {
+				return AsyncPixivAPI.this.api.getBookmarkedUserNewImageSize();
+			}
+
+		});
+
+	}
+
+	/**
+	 * 非同期にお気に入りユーザの新着イラストを取得する．
+	 *
+	 * @param page 取得するページ番号
+	 * @return 結果を受け取る Future
+	 */
+	public Future<List<Image>> getBookmarkedUserNewImages(final int page){
+
+		return this.executor.submit(new Callable<List<Image>>(){
+
+			@Override
+			public List<Image> call() {
+				return AsyncPixivAPI.this.api.getBookmarkedUserNewImages(page);
+			}
+
+		});
+
+	}
+
+	//----------------------------------------------------------------------------
+
+	/**
+	 * 非同期にデイリーランキングのイラスト数を取得する．
+	 *
+	 * @return 結果を受け取る Future
+	 */
+	public Future<Integer> getDailyRankingImageSize(){
+
+		return this.executor.submit(new Callable<Integer>(){
+
+			@Override
+			public Integer call() {
+				return AsyncPixivAPI.this.api.getDailyRankingImageSize();
+			}
+
+		});
+
+	}
+
+	/**
+	 * 非同期にデイリーランキングのイラストを取得する．
+	 *
+	 * @param page 取得するページ番号
+	 * @return 結果を受け取る Future
+	 */
+	public Future<List<Image>> getDailyRankingImages(final int page){
+
+		return this.executor.submit(new Callable<List<Image>>(){
+
+			@Override
+			public List<Image> call() {
+				return AsyncPixivAPI.this.api.getDailyRankingImages(page);
+			}
+
+		});
+
+	}
+
+	/**
+	 * 非同期にウィークリーランキングのイラスト数を取得する．
+	 *
+	 * @return 結果を受け取る Future
+	 */
+	public Future<Integer> getWeeklyRankingImageSize(){
+
+		return this.executor.submit(new Callable<Integer>(){
+
+			@Override
+			public Integer call() {
+				return AsyncPixivAPI.this.api.getWeeklyRankingImageSize();
+			}
+
+		});
+
+	}
+
+	/**
+	 * 非同期にウィークリーランキングのイラストを取得する．
+	 *
+	 * @param page 取得するページ番号
+	 * @return 結果を受け取る Future
+	 */
+	public Future<List<Image>> getWeeklyRankingImages(final int page){
+
+		return this.executor.submit(new Callable<List<Image>>(){
+
+			@Override
+			public List<Image> call() {
+				return AsyncPixivAPI.this.api.getWeeklyRankingImages(page);
+			}
+
+		});
+
+	}
+
+	/**
+	 * 非同期にマンスリーランキングのイラスト数を取得する．
+	 *
+	 * @return 結果を受け取る Future
+	 */
+	public Future<Integer> getMonthlyRankingImageSize(){
+
+		return this.executor.submit(new Callable<Integer>(){
+
+			@Override
+			public Integer call() {
+				return AsyncPixivAPI.this.api.getMonthlyRankingImageSize();
+			}
+
+		});
+
+	}
+
+	/**
+	 * 非同期にマンスリーランキングのイラストを取得する．
+	 *
+	 * @param page 取得するページ番号
+	 * @return 結果を受け取る Future
+	 */
+	public Future<List<Image>> getMonthlyRankingImages(final int page){
+
+		return this.executor.submit(new Callable<List<Image>>(){
+
+			@Override
+			public List<Image> call() {
+				return AsyncPixivAPI.this.api.getMonthlyRankingImages(page);
+			}
+
+		});
+
+	}
+
+	//----------------------------------------------------------------------------
+	//  APIs for search
+	//----------------------------------------------------------------------------
+	/**
+	 * 非同期に，与えられたキーワードに関連するタグを付加されたイラストを取得する．
+	 *
+	 * @param keyword 問い合わせるキーワード
+	 * @param size 取得するイラスト数
+	 * @return 結果を受け取る Future
+	 */
+	public Future<List<Image>> findImagesByTag(final String keyword, final int size){
+
+		return this.executor.submit(new Callable<List<Image>>(){
+
+			@Override
+			public List<Image> call() throws IOException {
+				return AsyncPixivAPI.this.api.findImagesByTag(keyword, size);
+			}
+
+		});
+
+	}
+
+	/**
+	 * 非同期に，与えられたキーワードに関連するタイトルを持つイラストを取得する．
+	 *
+	 * @param keyword 問い合わせるキーワード
+	 * @param size 取得するイラスト数
+	 * @return 結果を受け取る Future
+	 */
+	public Future<List<Image>> findImagesByTitle(final String keyword, final int size){
+
+		return this.executor.submit(new Callable<List<Image>>(){
+
+			@Override
+			public List<Image> call() throws IOException {
+				return AsyncPixivAPI.this.api.findImagesByTitle(keyword, size);
+			}
+
+		});
+
+	}
+
+	/**
+	 * 非同期に，与えられた名前のユーザを取得する．
+	 *
+	 * @param name 問い合わせるユーザの名前
+	 * @param size 取得するユーザ数
+	 * @return 結果を受け取る Future
+	 */
+	public Future<List<User>> findUsers(final String name, final int size){
+
+		return this.executor.submit(new Callable<List<User>>(){
+
+			@Override
+			public List<User> call() throws IOException {
+				return AsyncPixivAPI.this.api.findUsers(name, size);
+			}
+
+		});
+
+	}
+
+	/**
+	 * 非同期に，ID と名前を指定してユーザを取得する．
+	 *
+	 * @param id 取得するユーザの ID
+	 * @param name 取得するユーザの名前
+	 * @return 結果を受け取る Future
+	 */
+	public Future<User> findUser(final int id, final String name){
+
+		return this.executor.submit(new Callable<User>(){
+
+			@Override
+			public User call() {
+				return AsyncPixivAPI.this.api.findUser(id, name);
+			}
+
+		});
+
+	}
+
+	/**
+	 * 非同期に，イラストの作者を取得する．
+	 *
+	 * @param image イラスト
+	 * @return 結果を受け取る Future
+	 */
+	public Future<User> getAuthor(final Image image){
+
+		return this.executor.submit(new Callable<User>(){
+
+			@Override
+			public User call() {
+				return image.getAuthor();
+			}
+
+		});
+
+	}
+
+	//----------------------------------------------------------------------------
+	//  APIs for user
+	//----------------------------------------------------------------------------
+	/**
+	 * 非同期に，指定したユーザの投稿イラスト数を取得する．
+	 *
+	 * @param userId ユーザ ID
+	 * @return 結果を受け取る Future
+	 */
+	public Future<Integer> getImageSize(final int userId){
+
+		return this.executor.submit(new Callable<Integer>(){
+
+			@Override
+			public Integer call() {
+				return AsyncPixivAPI.this.api.getImageSize(userId);
+			}
+
+		});
+
+	}
+
+	/**
+	 * 非同期に，指定したユーザの投稿イラストを取得する．
+	 *
+	 * @param userId ユーザ ID
+	 * @param page ページ数
+	 * @return 結果を受け取る Future
+	 */
+	public Future<List<Image>> getImages(final int userId, final int page){
+
+		return this.executor.submit(new Callable<List<Image>>(){
+
+			@Override
+			public List<Image> call() {
+				return AsyncPixivAPI.this.api.getImages(userId, page);
+			}
+
+		});
+
+	}
+
+	/**
+	 * 非同期に，指定したユーザの MyPixiv ユーザ数を取得する．
+	 *
+	 * @param userId ユーザ ID
+	 * @return 結果を受け取る Future
+	 */
+	public Future<Integer> getMyPixivSize(final int userId){
+
+		return this.executor.submit(new Callable<Integer>(){
+
+			@Override
+			public Integer call() {
+				return AsyncPixivAPI.this.api.getMyPixivSize(userId);
+			}
+
+		});
+
+	}
+
+	/**
+	 * 非同期に，指定したユーザの MyPixiv ユーザを取得する．
+	 *
+	 * @param userId ユーザ ID
+	 * @param page ページ数
+	 * @return 結果を受け取る Future
+	 */
+	public Future<List<User>> getMyPixivUsers(final int userId, final int page){
+
+		return this.executor.submit(new Callable<List<User>>(){
+
+			@Override
+			public List<User> call() {
+				return AsyncPixivAPI.this.api.getMyPixivUsers(userId, page);
+			}
+
+		});
+
+	}
+
+	/**
+	 * 非同期に，指定したユーザのお気に入りユーザ数を取得する．
+	 *
+	 * @param userId ユーザ ID
+	 * @return 結果を受け取る Future
+	 */
+	public Future<Integer> getBookmarkedUserSize(final int userId){
+
+		return this.executor.submit(new Callable<Integer>(){
+
+			@Override
+			public Integer call() {
+				return AsyncPixivAPI.this.api.getBookmarkedUserSize(userId);
+			}
+
+		});
+
+	}
+
+	/**
+	 * 非同期に，指定したユーザのお気に入りユーザを取得する．
+	 *
+	 * @param userId ユーザ ID
+	 * @param page ページ数
+	 * @return 結果を受け取る Future
+	 */
+	public Future<List<User>> getBookmarkedUsers(final int userId, final int page){
+
+		return this.executor.submit(new Callable<List<User>>(){
+
+			@Override
+			public List<User> call() {
+				return AsyncPixivAPI.this.api.getBookmarkedUsers(userId, page);
+			}
+
+		});
+
+	}
+
+	/**
+	 * 非同期に，指定したユーザのブックマーク数を取得する．
+	 *
+	 * @param userId ユーザ ID
+	 * @return 結果を受け取る Future
+	 */
+	public Future<Integer> getBookmarkSize(final int userId){
+
+		return this.executor.submit(new Callable<Integer>(){
+
+			@Override
+			public Integer call() {
+				return AsyncPixivAPI.this.api.getBookmarkSize(userId);
+			}
+
+		});
+
+	}
+
+	/**
+	 * 非同期に，指定したユーザのブックマークを取得する．
+	 *
+	 * @param userId ユーザ ID
+	 * @param page ページ数
+	 * @return 結果を受け取る Future
+	 */
+	public Future<List<Image>> getBookmarks(final int userId, final int page){
+
+		return this.executor.submit(new Callable<List<Image>>(){
+
+			@Override
+			public List<Image> call() {
+				return AsyncPixivAPI.this.api.getBookmarks(userId, page);
+			}
+
+		});
+
+	}
+
+}
@@ -0,0 +1,594 @@
+/*
+ *  Copyright (C) 2010 Junpei Kawamoto
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package pxv;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 多数のユーザに対する問合せをまとめて実行するクラス．
+ * <p>
+ * ユーザ ID ごとのタスクをスレッドプールで実行し，結果を Sink に渡します．
+ * 同時に実行するタスクの数は，このインスタンスを共有する全ての run の呼び出しを通して maxConcurrency までに制限されます．
+ * run は全てのタスクが終わるまで戻りません．いずれかのタスクが例外を投げた場合，呼び出し元のスレッドが割り込まれた場合，
+ * または cancel が呼び出された場合は，残りのタスクを開始せず，実行中のタスクに割り込み，それらが終わるのを待ってから戻ります．
+ * </p>
+ * <p>
+ * スレッドプールを指定しない場合は，デーモンスレッドを必要に応じて作成するスレッドプールを使い，close で終了します．
+ * Java 21 以降では Executors.newVirtualThreadPerTaskExecutor() で作成したスレッドプールを渡すと，
+ * タスクごとに仮想スレッドで実行できます．
+ * </p>
+ * <pre>
+ * final BulkFetcher bulk = new BulkFetcher(api, 64);
+ * bulk.run(userIds, BulkFetcher.Images, new BulkFetcher.Sink&lt;List&lt;Image&gt;&gt;(){
+ *     public void accept(final int userId, final List&lt;Image&gt; images){ ... }
+ * });
+ * bulk.close();
+ * </pre>
+ *
+ * @since 0.2
+ */
+public class BulkFetcher implements Closeable {
+
+	/** 全ての投稿イラストを取得するタスク */
+	public static final Task<List<Image>> Images = new AllPages<Image>(){
+
+		@Override
+		List<Image> read(final PixivAPI api, final int userId, final int page) throws IOException {
+			return api.fetchImagesByUserId(PixivAPI.Type.member_illust, userId, page);
+		}
+
+	};
+
+	/** 全てのブックマークを取得するタスク */
+	public static final Task<List<Image>> Bookmarks = new AllPages<Image>(){
+
+		@Override
+		List<Image> read(final PixivAPI api, final int userId, final int page) throws IOException {
+			return api.fetchImagesByUserId(PixivAPI.Type.bookmark, userId, page);
+		}
+
+	};
+
+	/** 全てのブックマークのイラスト ID を取得するタスク */
+	public static final Task<IntBitmap> BookmarkIds = new Task<IntBitmap>(){
+
+		@Override
+		public IntBitmap fetch(final PixivAPI api, final int userId) throws IOException, InterruptedException {
+
+			final IntBitmap ret = api.getAllBookmarkIds(userId);
+			// 割り込まれた場合は途中までの結果を返さない
+			if(Thread.interrupted()){
+
+				throw new InterruptedException();
+
+			}
+			if(ret == null){
+
+				throw new IOException("Failed to read the bookmarks of " + userId);
+
+			}
+			return ret;
+
+		}
+
+	};
+
+	/** 全てのお気に入りユーザを取得するタスク */
+	public static final Task<List<User>> BookmarkedUsers = new AllPages<User>(){
+
+		@Override
+		List<User> read(final PixivAPI api, final int userId, final int page) throws IOException {
+			return api.fetchUsersById(PixivAPI.Type.bookmark_user_all, userId, page);
+		}
+
+	};
+
+	/** 問合せを実行する PixivAPI */
+	private final PixivAPI api;
+	/** タスクを実行するスレッドプール */
+	private final ExecutorService executor;
+	/** スレッドプールをこのインスタンスが作成した場合 true */
+	private final boolean owned;
+	/** 同時に実行するタスク数の制限 */
+	private final Semaphore permits;
+
+	/** 実行中の run */
+	private final Set<Batch> batches = Collections.newSetFromMap(new ConcurrentHashMap<Batch, Boolean>());
+
+	//============================================================================
+	//  Constructors
+	//============================================================================
+	/**
+	 * 必要に応じてデーモンスレッドを作成するスレッドプールを使うインスタンスを作成する．
+	 *
+	 * @param api 問合せを実行する PixivAPI
+	 * @param maxConcurrency 同時に実行するタスクの最大数
+	 */
+	public BulkFetcher(final PixivAPI api, final int maxConcurrency){
+		this(api, Executors.newCachedThreadPool(new DaemonThreadFactory()), maxConcurrency, true);
+	}
+
+	/**
+	 * スレッドプールを指定してインスタンスを作成する．スレッドプールの終了は呼び出し側で行って下さい．
+	 *
+	 * @param api 問合せを実行する PixivAPI
+	 * @param executor タスクを実行するスレッドプール
+	 * @param maxConcurrency 同時に実行するタスクの最大数
+	 */
+	public BulkFetcher(final PixivAPI api, final ExecutorService executor, final int maxConcurrency){
+		this(api, executor, maxConcurrency, false);
+	}
+
+	private BulkFetcher(final PixivAPI api, final ExecutorService executor, final int maxConcurrency, final boolean owned){
+
+		if(maxConcurrency < 1){
+
+			throw new IllegalArgumentException("maxConcurrency must be positive: " + maxConcurrency);
+
+		}
+
+		this.api = api;
+		this.executor = executor;
+		this.owned = owned;
+		this.permits = new Semaphore(maxConcurrency);
+
+	}
+
+	//============================================================================
+	//  Public methods
+	//============================================================================
+	/**
+	 * 各ユーザに対してタスクを実行し，結果を Sink に渡す．
+	 * 全てのタスクが終わるまで戻りません．
+	 *
+	 * @param userIds ユーザ ID
+	 * @param task ユーザごとに実行するタスク
+	 * @param sink タスクの結果を受け取る Sink，複数のスレッドから同時に呼び出される
+	 * @throws InterruptedException 待っている間に割り込まれた場合
+	 * @throws ExecutionException いずれかのタスクまたは Sink が例外を投げた場合，最初の例外を原因とする
+	 * @throws CancellationException cancel により中止された場合
+	 */
+	public <T> void run(final Iterable<Integer> userIds, final Task<T> task, final Sink<? super T> sink) throws InterruptedException, ExecutionException{
+
+		final Batch batch = new Batch();
+		this.batches.add(batch);
+		try{
+
+			final Iterator<Integer> i = userIds.iterator();
+			while(i.hasNext() && !batch.isStopped()){
+
+				this.permits.acquire();
+				final int userId = i.next();
+				batch.started();
+				try{
+
+					this.executor.execute(new Runnable(){
+
+						@Override
+						public void run() {
+							BulkFetcher.this.execute(batch, task, sink, userId);
+						}
+
+					});
+
+				}catch(final RejectedExecutionException e){
+
+					this.permits.release();
+					batch.finished(e);
+
+				}
+
+			}
+
+		}catch(final InterruptedException e){
+
+			batch.stop(null);
+			batch.await(true);
+			throw e;
+
+		}finally{
+
+			this.batches.remove(batch);
+
+		}
+
+		batch.await(false);
+		batch.check();
+
+	}
+
+	/**
+	 * 各ユーザに対してタスクを実行し，結果を Sink に渡す．
+	 *
+	 * @param userIds ユーザ ID
+	 * @param task ユーザごとに実行するタスク
+	 * @param sink タスクの結果を受け取る Sink
+	 * @throws InterruptedException 待っている間に割り込まれた場合
+	 * @throws ExecutionException いずれかのタスクまたは Sink が例外を投げた場合
+	 * @see #run(Iterable, Task, Sink)
+	 */
+	public <T> void run(final int[] userIds, final Task<T> task, final Sink<? super T> sink) throws InterruptedException, ExecutionException{
+
+		final List<Integer> ids = new ArrayList<Integer>(userIds.length);
+		for(final int id : userIds){
+
+			ids.add(id);
+
+		}
+		this.run(ids, task, sink);
+
+	}
+
+	/**
+	 * 実行中の全ての run を中止する．
+	 * 残りのタスクは開始されず，実行中のタスクには割り込みます．
+	 */
+	public void cancel(){
+
+		for(final Batch b : this.batches){
+
+			b.stop(null);
+
+		}
+
+	}
+
+	/**
+	 * 実行中のタスクの数を取得する．
+	 *
+	 * @return 実行中のタスクの数
+	 */
+	public int getActiveCount(){
+
+		int ret = 0;
+		for(final Batch b : this.batches){
+
+			ret += b.running.size();
+
+		}
+		return ret;
+
+	}
+
+	/**
+	 * 実行中の run を中止し，このインスタンスが作成したスレッドプールを終了する．
+	 */
+	@Override
+	public void close() {
+
+		this.cancel();
+		if(this.owned){
+
+			this.executor.shutdownNow();
+
+		}
+
+	}
+
+	//============================================================================
+	//  Private methods
+	//============================================================================
+	/**
+	 * 1 人分のタスクを実行する．
+	 */
+	private <T> void execute(final Batch batch, final Task<T> task, final Sink<? super T> sink, final int userId){
+
+		Throwable error = null;
+		try{
+
+			if(batch.enter()){
+
+				try{
+
+					sink.accept(userId, task.fetch(this.api, userId));
+
+				}finally{
+
+					batch.exit();
+
+				}
+
+			}
+
+		}catch(final Throwable e){
+
+			error = e;
+
+		}finally{
+
+			this.permits.release();
+			batch.finished(error);
+
+		}
+
+	}
+
+	//============================================================================
+	//  Inner classes
+	//============================================================================
+	/**
+	 * ユーザごとに実行するタスク．
+	 *
+	 * @param <T> 結果の型
+	 */
+	public interface Task<T>{
+
+		/**
+		 * 1 人分の問合せを実行する．
+		 * 中止された場合は実行中のスレッドに割り込まれるため，長い処理では割り込み状態を確認して下さい．
+		 *
+		 * @param api 問合せを実行する PixivAPI
+		 * @param userId ユーザ ID
+		 * @return 結果
+		 * @throws Exception 問合せに失敗した場合，run 全体を中止する
+		 */
+		public T fetch(final PixivAPI api, final int userId) throws Exception;
+
+	}
+
+	/**
+	 * タスクの結果を受け取る．
+	 *
+	 * @param <T> 結果の型
+	 */
+	public interface Sink<T>{
+
+		/**
+		 * 1 人分の結果を受け取る．複数のスレッドから同時に呼び出される．
+		 *
+		 * @param userId ユーザ ID
+		 * @param result 結果
+		 * @throws Exception 結果を処理できなかった場合，run 全体を中止する
+		 */
+		public void accept(final int userId, final T result) throws Exception;
+
+	}
+
+	/**
+	 * 空のページに達するまで全てのページを取得するタスク．
+	 * ページの取得に失敗した場合は，途中までの結果を渡さずに IOException を投げて run を中止する．
+	 */
+	private abstract static class AllPages<T> implements Task<List<T>>{
+
+		@Override
+		public List<T> fetch(final PixivAPI api, final int userId) throws IOException, InterruptedException {
+
+			final List<T> ret = new ArrayList<T>();
+			for(int page = 0; true; ++page){
+
+				final List<T> sub;
+				try{
+
+					sub = this.read(api, userId, page);
+
+				}catch(final IOException e){
+
+					// 割り込まれたために読み込みに失敗した場合は，中止されたことを優先して伝える
+					if(Thread.interrupted()){
+
+						throw new InterruptedException();
+
+					}
+					throw e;
+
+				}
+				if(Thread.interrupted()){
+
+					throw new InterruptedException();
+
+				}
+				if(sub.isEmpty()){
+
+					break;
+
+				}
+				ret.addAll(sub);
+
+			}
+			return ret;
+
+		}
+
+		/**
+		 * 1 ページを取得する．
+		 *
+		 * @throws IOException 取得に失敗した場合
+		 */
+		abstract List<T> read(final PixivAPI api, final int userId, final int page) throws IOException;
+
+	}
+
+	/**
+	 * 1 回の run の状態．
+	 */
+	private static final class Batch{
+
+		/** 実行中のタスクのスレッド */
+		final Set<Thread> running = Collections.newSetFromMap(new ConcurrentHashMap<Thread, Boolean>());
+		/** 終わっていないタスクの数 */
+		private final AtomicInteger pending = new AtomicInteger();
+		/** 中止された場合 true */
+		private volatile boolean stopped = false;
+		/** 最初の例外 */
+		private Throwable error = null;
+
+		boolean isStopped(){
+			return this.stopped;
+		}
+
+		void started(){
+			this.pending.incrementAndGet();
+		}
+
+		/**
+		 * タスクの開始を記録する．
+		 *
+		 * @return 中止されていない場合 true
+		 */
+		synchronized boolean enter(){
+
+			if(this.stopped){
+
+				return false;
+
+			}
+			this.running.add(Thread.currentThread());
+			return true;
+
+		}
+
+		synchronized void exit(){
+
+			this.running.remove(Thread.currentThread());
+			// cancel による割り込みを，スレッドプールの次のタスクに持ち越さない
+			Thread.interrupted();
+
+		}
+
+		void finished(final Throwable e){
+
+			if(e != null){
+
+				this.stop(e);
+
+			}
+			if(this.pending.decrementAndGet() == 0){
+
+				synchronized(this){
+
+					this.notifyAll();
+
+				}
+
+			}
+
+		}
+
+		/**
+		 * 中止し，実行中のタスクに割り込む．
+		 *
+		 * @param e 中止の原因となった例外，cancel による場合は null
+		 */
+		synchronized void stop(final Throwable e){
+
+			if(e != null && this.error == null && !this.stopped){
+
+				this.error = e;
+
+			}
+			if(!this.stopped){
+
+				this.stopped = true;
+				for(final Thread t : this.running){
+
+					t.interrupt();
+
+				}
+
+			}
+
+		}
+
+		/**
+		 * 全てのタスクが終わるのを待つ．
+		 *
+		 * @param uninterruptibly 割り込まれても待ち続ける場合 true
+		 */
+		synchronized void await(final boolean uninterruptibly) throws InterruptedException{
+
+			boolean interrupted = false;
+			while(this.pending.get() != 0){
+
+				try{
+
+					this.wait();
+
+				}catch(final InterruptedException e){
+
+					if(!uninterruptibly){
+
+						this.stop(null);
+						interrupted = true;
+
+					}
+
+				}
+
+			}
+			if(interrupted){
+
+				throw new InterruptedException();
+
+			}
+
+		}
+
+		/**
+		 * 結果を確認する．
+		 */
+		synchronized void check() throws ExecutionException{
+
+			if(this.error != null){
+
+				throw new ExecutionException(this.error);
+
+			}
+			if(this.stopped){
+
+				throw new CancellationException();
+
+			}
+
+		}
+
+	}
+
+	/**
+	 * デーモンスレッドを作成する．
+	 */
+	private static final class DaemonThreadFactory implements ThreadFactory{
+
+		private final AtomicInteger count = new AtomicInteger();
+
+		@Override
+		public Thread newThread(final Runnable r) {
+
+			final Thread ret = new Thread(r, "pxv-bulk-" + this.count.incrementAndGet());
+			ret.setDaemon(true);
+			return ret;
+
+		}
+
+	}
+
+}
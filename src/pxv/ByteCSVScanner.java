@@ -0,0 +1,255 @@
+/*
+ *  Copyright (C) 2010 Junpei Kawamoto
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package pxv;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+
+/**
+ * UTF-8 のバイト列を直接走査する CSV パーサ．
+ * <p>
+ * ReadableByteChannel から ByteBuffer に読み込んだバイト列の上で，CSVScanner と同じ規則で区切り文字
+ * (, &quot; \ CR LF) を探す．UTF-8 の複数バイト文字はこれらの ASCII 文字のバイトを含まないため，
+ * 区切り文字の判定に文字への変換は要らない．文字列への変換は Decoder が文字列として宣言した列に対してだけ行い，
+ * 読み飛ばす列や整数の列は一切変換しない．
+ * ウィンドウの管理と状態遷移は，CSVScanner と共通の AbstractCSVScanner が行う．
+ * </p>
+ * <p>
+ * 入力は常に UTF-8 として解釈し，プラットフォームのデフォルト文字コードには依存しない．
+ * </p>
+ * <p>
+ * ワード単位の走査を有効にすると，区切り文字を WordScan で 8 バイトずつ探す．
+ * 大きな応答を繰り返し読み込む場合に使用する．エスケープの扱いはバイト単位の走査と変わらない．
+ * </p>
+ */
+class ByteCSVScanner extends AbstractCSVScanner<byte[]> {
+
+	private static final int WindowSize = 8192;
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	/** 入力 */
+	private final ReadableByteChannel in;
+	/** ウィンドウを包む読み込みバッファ */
+	private final ByteBuffer buffer;
+	/** ワード単位で走査する場合 true */
+	private final boolean wide;
+
+	//============================================================================
+	//  Constructor
+	//============================================================================
+	ByteCSVScanner(final ReadableByteChannel in){
+		this(in, false);
+	}
+
+	/**
+	 * @param in 入力
+	 * @param wide 区切り文字をワード単位で探す場合 true
+	 */
+	ByteCSVScanner(final ReadableByteChannel in, final boolean wide){
+		this(in, wide, ByteBuffer.allocate(WindowSize).order(ByteOrder.LITTLE_ENDIAN));
+	}
+
+	private ByteCSVScanner(final ReadableByteChannel in, final boolean wide, final ByteBuffer buffer){
+
+		super(buffer.array(), new byte[256], 256);
+		this.in = in;
+		this.buffer = buffer;
+		this.wide = wide;
+
+	}
+
+	//============================================================================
+	//  Public methods
+	//============================================================================
+	/* (非 Javadoc)
+	 * @see java.io.Closeable#close()
+	 */
+	@Override
+	public void close() throws IOException{
+
+		this.in.close();
+
+	}
+
+	//============================================================================
+	//  Package private methods
+	//============================================================================
+	/* (非 Javadoc)
+	 * @see pxv.AbstractCSVScanner#read()
+	 */
+	@Override
+	int read() throws IOException{
+
+		this.buffer.clear();
+		final int n = this.in.read(this.buffer);
+		return n < 0 ? n : this.buffer.position();
+
+	}
+
+	/* (非 Javadoc)
+	 * @see pxv.AbstractCSVScanner#at(int)
+	 */
+	@Override
+	int at(final int p){
+
+		return this.window[p];
+
+	}
+
+	/**
+	 * 引用符の外側で区切りとなるバイトの位置を探す．
+	 * ワード単位で走査する場合は WordScan で 8 バイトずつ探す．
+	 *
+	 * @return 見つかった位置，見つからなかった場合は to
+	 */
+	@Override
+	int indexOfDelimiter(final int from, final int to){
+
+		if(this.wide){
+
+			return WordScan.indexOfDelimiter(this.buffer, from, to);
+
+		}
+
+		final byte[] w = this.window;
+		for(int p = from; p < to; ++p){
+
+			final byte c = w[p];
+			if(c == Comma || c == Quote || c == CR || c == LF){
+
+				return p;
+
+			}
+
+		}
+
+		return to;
+
+	}
+
+	/**
+	 * 引用符の内側で意味を持つバイトの位置を探す．
+	 * ワード単位で走査する場合は WordScan で 8 バイトずつ探す．
+	 *
+	 * @return 見つかった位置，見つからなかった場合は to
+	 */
+	@Override
+	int indexOfQuoteOrEscape(final int from, final int to){
+
+		if(this.wide){
+
+			return WordScan.indexOfQuoteOrEscape(this.buffer, from, to);
+
+		}
+
+		final byte[] w = this.window;
+		for(int p = from; p < to; ++p){
+
+			final byte c = w[p];
+			if(c == Quote || c == Escape){
+
+				return p;
+
+			}
+
+		}
+
+		return to;
+
+	}
+
+	/* (非 Javadoc)
+	 * @see pxv.AbstractCSVScanner#allocate(int)
+	 */
+	@Override
+	byte[] allocate(final int size){
+
+		return new byte[size];
+
+	}
+
+	/* (非 Javadoc)
+	 * @see pxv.AbstractCSVScanner#text(java.lang.Object, int, int)
+	 */
+	@Override
+	String text(final byte[] buf, final int start, final int length){
+
+		return new String(buf, start, length, UTF8);
+
+	}
+
+	/* (非 Javadoc)
+	 * @see pxv.AbstractCSVScanner#integer(java.lang.Object, int, int)
+	 */
+	@Override
+	int integer(final byte[] buf, final int start, final int length){
+
+		return parseInt(buf, start, length);
+
+	}
+
+	//============================================================================
+	//  Package private static methods
+	//============================================================================
+	/**
+	 * 文字列を経由せずに，ASCII のバイト列から 10 進数の整数を読み込む．
+	 *
+	 * @param buf バイト列
+	 * @param start 開始位置
+	 * @param length バイト数
+	 * @return 読み込んだ整数
+	 * @throws NumberFormatException 整数として解釈できない場合
+	 */
+	static int parseInt(final byte[] buf, final int start, final int length){
+
+		if(length == 0){
+
+			throw new NumberFormatException("For input string: \"\"");
+
+		}
+
+		final int end = start + length;
+		final boolean negative = buf[start] == '-';
+		int p = negative || buf[start] == '+' ? start + 1 : start;
+		if(p == end){
+
+			throw new NumberFormatException("For input string: \"" + new String(buf, start, length, UTF8) + "\"");
+
+		}
+
+		final long limit = negative ? -(long)Integer.MIN_VALUE : Integer.MAX_VALUE;
+		long ret = 0;
+		for(; p != end; ++p){
+
+			final int d = buf[p] - '0';
+			if(d < 0 || d > 9 || (ret = ret * 10 + d) > limit){
+
+				throw new NumberFormatException("For input string: \"" + new String(buf, start, length, UTF8) + "\"");
+
+			}
+
+		}
+
+		return (int)(negative ? -ret : ret);
+
+	}
+
+}
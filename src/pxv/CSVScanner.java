@@ -0,0 +1,411 @@
+/*
+ *  Copyright (C) 2010 Junpei Kawamoto
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package pxv;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+import pxv.CSVParser.Handler;
+
+/**
+ * バッファ走査型の CSV パーサ．
+ * <p>
+ * CSVParser と同じ Quoted/Escaped/CR の扱いで，再利用する char[] ウィンドウ上を
+ * 区切り文字まで一括で走査し，フィールドの終端でのみ文字列を切り出す．
+ * 1 つのセグメントで完結するフィールドはウィンドウから直接切り出し，
+ * 複数のセグメントやウィンドウ境界にまたがるフィールドだけを作業領域に連結する．
+ * ウィンドウの管理と状態遷移は，ByteCSVScanner と共通の AbstractCSVScanner が行う．
+ * </p>
+ * <p>
+ * レコードの末尾が区切り文字 (,) で終わる pixiv の応答に対しては，CSVParser と同じ結果を返す．
+ * 区切り文字で閉じられていない末尾のフィールドは，CSVParser が捨てるのに対しこちらはフィールドとして扱う．
+ * また空行は読み飛ばす．
+ * </p>
+ * <p>
+ * Decoder を渡して読み込む場合は，Decoder が宣言した列だけを取り出す．
+ * 宣言されていない列は文字列を作らずに読み飛ばし，整数の列はウィンドウ上の文字から直接数値に変換する．
+ * </p>
+ */
+class CSVScanner extends AbstractCSVScanner<char[]> {
+
+	private static final int WindowSize = 8192;
+
+	/** 入力 */
+	private final Reader in;
+
+	//============================================================================
+	//  Constructor
+	//============================================================================
+	CSVScanner(final Reader in){
+
+		super(new char[WindowSize], new char[256], 256);
+		this.in = in;
+
+	}
+
+	//============================================================================
+	//  Public methods
+	//============================================================================
+	/* (非 Javadoc)
+	 * @see java.io.Closeable#close()
+	 */
+	@Override
+	public void close() throws IOException{
+
+		this.in.close();
+
+	}
+
+	//============================================================================
+	//  Package private methods
+	//============================================================================
+	/* (非 Javadoc)
+	 * @see pxv.AbstractCSVScanner#read()
+	 */
+	@Override
+	int read() throws IOException{
+
+		return this.in.read(this.window, 0, this.window.length);
+
+	}
+
+	/* (非 Javadoc)
+	 * @see pxv.AbstractCSVScanner#at(int)
+	 */
+	@Override
+	int at(final int p){
+
+		return this.window[p];
+
+	}
+
+	/* (非 Javadoc)
+	 * @see pxv.AbstractCSVScanner#indexOfDelimiter(int, int)
+	 */
+	@Override
+	int indexOfDelimiter(final int from, final int to){
+
+		final char[] w = this.window;
+		for(int p = from; p < to; ++p){
+
+			final char c = w[p];
+			if(c == Comma || c == Quote || c == CR || c == LF){
+
+				return p;
+
+			}
+
+		}
+
+		return to;
+
+	}
+
+	/* (非 Javadoc)
+	 * @see pxv.AbstractCSVScanner#indexOfQuoteOrEscape(int, int)
+	 */
+	@Override
+	int indexOfQuoteOrEscape(final int from, final int to){
+
+		final char[] w = this.window;
+		for(int p = from; p < to; ++p){
+
+			final char c = w[p];
+			if(c == Quote || c == Escape){
+
+				return p;
+
+			}
+
+		}
+
+		return to;
+
+	}
+
+	/* (非 Javadoc)
+	 * @see pxv.AbstractCSVScanner#allocate(int)
+	 */
+	@Override
+	char[] allocate(final int size){
+
+		return new char[size];
+
+	}
+
+	/* (非 Javadoc)
+	 * @see pxv.AbstractCSVScanner#text(java.lang.Object, int, int)
+	 */
+	@Override
+	String text(final char[] buf, final int start, final int length){
+
+		return new String(buf, start, length);
+
+	}
+
+	/* (非 Javadoc)
+	 * @see pxv.AbstractCSVScanner#integer(java.lang.Object, int, int)
+	 */
+	@Override
+	int integer(final char[] buf, final int start, final int length){
+
+		return parseInt(buf, start, length);
+
+	}
+
+	//============================================================================
+	//  Package private static methods
+	//============================================================================
+	/**
+	 * 文字列を経由せずに，文字配列から 10 進数の整数を読み込む．
+	 *
+	 * @param buf 文字配列
+	 * @param start 開始位置
+	 * @param length 文字数
+	 * @return 読み込んだ整数
+	 * @throws NumberFormatException 整数として解釈できない場合
+	 */
+	static int parseInt(final char[] buf, final int start, final int length){
+
+		if(length == 0){
+
+			throw new NumberFormatException("For input string: \"\"");
+
+		}
+
+		final int end = start + length;
+		final boolean negative = buf[start] == '-';
+		int p = negative || buf[start] == '+' ? start + 1 : start;
+		if(p == end){
+
+			throw new NumberFormatException("For input string: \"" + new String(buf, start, length) + "\"");
+
+		}
+
+		final long limit = negative ? -(long)Integer.MIN_VALUE : Integer.MAX_VALUE;
+		long ret = 0;
+		for(; p != end; ++p){
+
+			final int d = buf[p] - '0';
+			if(d < 0 || d > 9 || (ret = ret * 10 + d) > limit){
+
+				throw new NumberFormatException("For input string: \"" + new String(buf, start, length) + "\"");
+
+			}
+
+		}
+
+		return (int)(negative ? -ret : ret);
+
+	}
+
+	//============================================================================
+	//  Public static methods
+	//============================================================================
+	/**
+	 * 入力を最後まで読み込み，レコードごとにハンドラを呼び出す．
+	 *
+	 * @param in 入力
+	 * @param callback ハンドラ
+	 * @throws IOException I/O エラーが発生した場合
+	 */
+	public static void parse(final Reader in, final Handler callback) throws IOException{
+
+		final CSVScanner scanner = new CSVScanner(in);
+		for(String[] data; (data = scanner.next()) != null;){
+
+			callback.update(data);
+
+		}
+
+	}
+
+	//============================================================================
+	//  Inner classes
+	//============================================================================
+	/**
+	 * レコードの各列の取り出し方．
+	 */
+	static final class Projection{
+
+		/** 読み飛ばす */
+		static final byte Skip = 0;
+		/** 文字列として取り出す */
+		static final byte Text = 1;
+		/** 整数として取り出す */
+		static final byte Int = 2;
+
+		/** 全ての列を文字列として取り出す */
+		static final Projection All = new Projection(Text);
+
+		private byte[] kinds = new byte[0];
+		private final byte rest;
+
+		/**
+		 * 宣言されていない列を読み飛ばす Projection を作成する．
+		 */
+		Projection(){
+			this(Skip);
+		}
+
+		private Projection(final byte rest){
+			this.rest = rest;
+		}
+
+		/**
+		 * 文字列として取り出す列を宣言する．
+		 *
+		 * @param columns 列番号
+		 * @return この Projection
+		 */
+		Projection text(final int... columns){
+			return this.set(Text, columns);
+		}
+
+		/**
+		 * 整数として取り出す列を宣言する．
+		 *
+		 * @param columns 列番号
+		 * @return この Projection
+		 */
+		Projection integer(final int... columns){
+			return this.set(Int, columns);
+		}
+
+		/**
+		 * 列の取り出し方を取得する．
+		 *
+		 * @param column 列番号
+		 * @return 取り出し方
+		 */
+		byte getKind(final int column){
+			return column < this.kinds.length ? this.kinds[column] : this.rest;
+		}
+
+		private Projection set(final byte kind, final int[] columns){
+
+			for(final int c : columns){
+
+				if(c >= this.kinds.length){
+
+					final byte[] buf = new byte[c + 1];
+					System.arraycopy(this.kinds, 0, buf, 0, this.kinds.length);
+					for(int i = this.kinds.length; i != buf.length; ++i){
+
+						buf[i] = this.rest;
+
+					}
+					this.kinds = buf;
+
+				}
+				this.kinds[c] = kind;
+
+			}
+
+			return this;
+
+		}
+
+	}
+
+	/**
+	 * 全ての列を文字列として受け取り，文字列の配列を組み立てる Decoder．
+	 */
+	static final class Fields implements Decoder<String[]>{
+
+		private final List<String> holder = new ArrayList<String>();
+
+		@Override
+		public Projection getProjection() {
+			return Projection.All;
+		}
+
+		@Override
+		public void begin() {
+			this.holder.clear();
+		}
+
+		@Override
+		public void text(final int column, final String value) {
+			this.holder.add(value);
+		}
+
+		/**
+		 * 整数として取り出した列を，10 進表記の文字列として受け取る．
+		 * Projection.All は全ての列を文字列として取り出すため，通常は呼び出されない．
+		 */
+		@Override
+		public void integer(final int column, final int value) {
+			this.holder.add(Integer.toString(value));
+		}
+
+		@Override
+		public String[] build() {
+			return this.holder.toArray(new String[this.holder.size()]);
+		}
+
+	}
+
+	/**
+	 * Projection で宣言した列を受け取り，レコードを組み立てるインタフェース．
+	 *
+	 * @param <T> 組み立てるレコードの型
+	 */
+	interface Decoder<T>{
+
+		/**
+		 * 列の取り出し方を取得する．
+		 *
+		 * @return 列の取り出し方
+		 */
+		public Projection getProjection();
+
+		/**
+		 * レコードの読み込み開始時に呼ばれる．
+		 */
+		public void begin();
+
+		/**
+		 * 文字列として宣言した列を受け取る．
+		 *
+		 * @param column 列番号
+		 * @param value 列の値
+		 */
+		public void text(final int column, final String value);
+
+		/**
+		 * 整数として宣言した列を受け取る．
+		 *
+		 * @param column 列番号
+		 * @param value 列の値
+		 */
+		public void integer(final int column, final int value);
+
+		/**
+		 * 受け取った列からレコードを組み立てる．
+		 *
+		 * @return 組み立てたレコード
+		 * @throws IOException レコードを組み立てられない場合
+		 */
+		public T build() throws IOException;
+
+	}
+
+}
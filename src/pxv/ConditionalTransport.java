@@ -0,0 +1,67 @@
+/*
+ *  Copyright (C) 2010 Junpei Kawamoto
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package pxv;
+
+import java.io.IOException;
+import java.net.URL;
+
+/**
+ * 条件付き GET (If-None-Match，If-Modified-Since) を送ることのできるトランスポート．
+ * <p>
+ * PixivAPI のディスクキャッシュは，トランスポートがこのインタフェースを実装している場合に，
+ * 有効期限の切れた応答をサーバに再検証させます．実装していない場合は応答を取得し直します．
+ * </p>
+ *
+ * @since 0.2
+ */
+public interface ConditionalTransport extends Transport {
+
+	/**
+	 * 検証子を付けて GET リクエストを送り，応答を取得する．
+	 * サーバが保持している内容が変わっていない場合，ステータスコード 304 の応答が返ります．
+	 *
+	 * @param url リクエストする URL
+	 * @param etag If-None-Match に指定する ETag，指定しない場合は null
+	 * @param lastModified If-Modified-Since に指定する時刻 (ミリ秒)，指定しない場合は 0
+	 * @return 応答
+	 * @throws IOException I/O エラーが発生した場合
+	 */
+	public Response get(final URL url, final String etag, final long lastModified) throws IOException;
+
+	/**
+	 * 検証子を取得できる HTTP の応答．
+	 */
+	public interface Response extends Transport.Response {
+
+		/**
+		 * ETag ヘッダの値を取得する．
+		 *
+		 * @return ETag，無い場合は null
+		 */
+		public String getETag();
+
+		/**
+		 * Last-Modified ヘッダの値を取得する．
+		 *
+		 * @return 最終更新時刻 (ミリ秒)，無い場合は 0
+		 */
+		public long getLastModified();
+
+	}
+
+}
@@ -0,0 +1,239 @@
+/*
+ *  Copyright (C) 2010 Junpei Kawamoto
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package pxv;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * API の応答を 1 件ずつ読み出すカーソル．
+ * <p>
+ * 応答全体をリストに溜めずに，HTTP の応答を読み込みながら 1 件ずつ返します．
+ * 途中で読み出しをやめる場合は close を呼び出して下さい．接続を切断します．
+ * 最後まで読み出した場合は自動的に閉じられます．
+ * </p>
+ * <p>
+ * このカーソルは 1 度だけ走査できます．iterator は常にこのオブジェクト自身を返します．
+ * </p>
+ *
+ * @param <T> 読み出す要素の型
+ * @since 0.2
+ */
+public class Cursor<T> implements Iterator<T>, Iterable<T>, Closeable {
+
+	/** 応答，空のカーソルの場合は null */
+	private final Transport.Response response;
+	/** 応答のパーサ */
+	private final RecordScanner scanner;
+	/** 要素を組み立てる Decoder */
+	private final CSVScanner.Decoder<T> decoder;
+
+	/** 先読みした要素 */
+	private T next = null;
+	/** 閉じられている場合 true */
+	private boolean closed;
+	/** 応答の読み込みに失敗して途中で閉じた場合 true */
+	private boolean failed = false;
+
+	//============================================================================
+	//  Constructors
+	//============================================================================
+	Cursor(final Transport.Response response, final RecordScanner scanner, final CSVScanner.Decoder<T> decoder){
+
+		this.response = response;
+		this.scanner = scanner;
+		this.decoder = decoder;
+		this.closed = false;
+
+	}
+
+	private Cursor(){
+
+		this.response = null;
+		this.scanner = null;
+		this.decoder = null;
+		this.closed = true;
+
+	}
+
+	//============================================================================
+	//  Public methods
+	//============================================================================
+	/* (非 Javadoc)
+	 * @see java.util.Iterator#hasNext()
+	 */
+	@Override
+	public boolean hasNext() {
+
+		while(this.next == null && !this.closed){
+
+			final boolean read;
+			try{
+
+				read = this.scanner.next(this.decoder);
+
+			}catch(final IOException e){
+
+				e.printStackTrace();
+				this.failed = true;
+				this.close();
+				break;
+
+			}catch(final RuntimeException e){
+
+				// 数値の列が壊れている場合など．接続と同時接続数の枠を解放してから投げ直す
+				this.failed = true;
+				this.close();
+				throw e;
+
+			}
+
+			if(!read){
+
+				this.release();
+				break;
+
+			}
+
+			try{
+
+				this.next = this.decoder.build();
+
+			}catch(final IOException e){
+
+				e.printStackTrace();
+
+			}catch(final RuntimeException e){
+
+				this.failed = true;
+				this.close();
+				throw e;
+
+			}
+
+		}
+
+		return this.next != null;
+
+	}
+
+	/* (非 Javadoc)
+	 * @see java.util.Iterator#next()
+	 */
+	@Override
+	public T next() {
+
+		if(!this.hasNext()){
+
+			throw new NoSuchElementException();
+
+		}
+
+		final T ret = this.next;
+		this.next = null;
+		return ret;
+
+	}
+
+	/**
+	 * サポートしていません．
+	 *
+	 * @throws UnsupportedOperationException 常に
+	 */
+	@Override
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * このカーソル自身を返す．
+	 *
+	 * @return このカーソル
+	 */
+	@Override
+	public Iterator<T> iterator() {
+		return this;
+	}
+
+	/**
+	 * 読み出しを終了し，接続を切断する．
+	 */
+	@Override
+	public void close() {
+
+		if(!this.closed){
+
+			this.closed = true;
+			this.next = null;
+			this.response.abort();
+
+		}
+
+	}
+
+	//============================================================================
+	//  Package private methods
+	//============================================================================
+	/**
+	 * 応答の読み込みに失敗して，最後まで読み出さずに閉じたか判定する．
+	 *
+	 * @return 読み込みに失敗した場合 true
+	 */
+	boolean isFailed(){
+		return this.failed;
+	}
+
+	//============================================================================
+	//  Private methods
+	//============================================================================
+	/**
+	 * 最後まで読み込んだ応答を閉じる．
+	 * 接続は切断せず，再利用できる状態でトランスポートに返す．
+	 */
+	private void release(){
+
+		this.closed = true;
+		this.next = null;
+		try{
+
+			this.response.close();
+
+		}catch(final IOException e){
+
+			e.printStackTrace();
+
+		}
+
+	}
+
+	//============================================================================
+	//  Package private static methods
+	//============================================================================
+	/**
+	 * 要素を持たないカーソルを作成する．
+	 *
+	 * @param <T> 要素の型
+	 * @return 空のカーソル
+	 */
+	static <T> Cursor<T> empty(){
+		return new Cursor<T>();
+	}
+
+}
@@ -0,0 +1,870 @@
+/*
+ *  Copyright (C) 2010 Junpei Kawamoto
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package pxv;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * 応答本文をディスクに保存するキャッシュ．
+ * <p>
+ * 本文は追記専用のセグメントファイル (responses.seg) に書き込み，キーからファイル上の位置を引く索引をメモリ上に持つ．
+ * 索引は close で索引ファイル (responses.idx) に書き出し，次に開く際に読み込む．
+ * 索引ファイルが無い場合や古い場合は，セグメントファイルを走査して索引を作り直す．
+ * 書き込みの途中で終了したために壊れた末尾のレコードは切り捨てる．
+ * 開いた際に無効なレコードがファイルの半分以上を占めている場合は，有効なレコードだけを書き出し直す．
+ * 本文を読み込む際は，レコードの CRC32 とキーを確かめ，一致しない場合は保存されていないものとして扱う．
+ * </p>
+ * <p>
+ * ファイルへの読み書きは FileChannel ではなく RandomAccessFile で行う．
+ * FileChannel は読み書き中のスレッドが割り込まれるとチャネルを閉じてしまい，他のスレッドからもキャッシュを使えなくなるためである．
+ * 同じディレクトリを複数のキャッシュで同時に開かないよう，開いている間はロックファイル (responses.lock) をロックする．
+ * </p>
+ * <p>
+ * 有効期限の切れた応答は，トランスポートが ConditionalTransport の場合は保存した ETag と Last-Modified を付けて
+ * 再検証し，304 が返った場合は保存した本文を使う．このとき本文を含まず保存時刻だけを記録したレコードを追記し，
+ * 再起動後も有効期間を引き継ぐ．本文は元のレコードのものを使い続けるため，再検証のたびにファイルが本文の大きさだけ伸びることはない．
+ * stale-while-revalidate の期間内であれば，期限切れの本文をすぐに返し，再検証はバックグラウンドで行う．
+ * </p>
+ */
+class DiskCache implements Closeable {
+
+	private static final String SegmentName = "responses.seg";
+	private static final String IndexName = "responses.idx";
+	private static final String LockName = "responses.lock";
+	private static final String TemporarySuffix = ".tmp";
+
+	/** ファイルの先頭に置く識別子 "PXVC" */
+	private static final int Magic = 0x50585643;
+	private static final int Version = 1;
+	/** セグメントファイルのヘッダの長さ (識別子，版，世代) */
+	private static final int HeaderSize = 16;
+	/** 書き出し直しを検討するセグメントファイルの大きさ */
+	private static final long CompactThreshold = 1 << 20;
+	/** 本文の長さの代わりに書き込む，保存時刻だけを更新したレコードの印 */
+	private static final int Refreshed = -1;
+
+	private final File directory;
+	private final Transport transport;
+	/** 再検証に使うスレッドプール，stale-while-revalidate を使わない場合は null */
+	private final ExecutorService revalidator;
+
+	/** 索引 */
+	private final Map<String, Entry> index = new ConcurrentHashMap<String, Entry>();
+	/** 再検証中のキー */
+	private final Map<String, Boolean> revalidating = new ConcurrentHashMap<String, Boolean>();
+
+	/** ディレクトリのロックを保持するファイル */
+	private final RandomAccessFile lockFile;
+	/** セグメントファイル，閉じた後は null．読み書きは this で同期する */
+	private RandomAccessFile file;
+	/** セグメントファイルの世代，書き出し直すたびに変わる */
+	private long generation;
+	/** 次に追記する位置 */
+	private long end;
+	/** 有効なレコードの長さの合計 */
+	private long live = 0;
+
+	//============================================================================
+	//  Constructors
+	//============================================================================
+	/**
+	 * キャッシュを開く．ディレクトリが無い場合は作成する．
+	 *
+	 * @param directory キャッシュを保存するディレクトリ
+	 * @param transport 応答の取得に使うトランスポート
+	 * @param revalidator 再検証に使うスレッドプール，stale-while-revalidate を使わない場合は null
+	 * @throws IOException キャッシュを開けなかった場合，または他のキャッシュが同じディレクトリを開いている場合
+	 */
+	DiskCache(final File directory, final Transport transport, final ExecutorService revalidator) throws IOException{
+
+		if(!directory.isDirectory() && !directory.mkdirs()){
+
+			throw new IOException("Cannot create a cache directory: " + directory);
+
+		}
+
+		this.directory = directory;
+		this.transport = transport;
+		this.revalidator = revalidator;
+
+		this.lockFile = new RandomAccessFile(new File(directory, LockName), "rw");
+		try{
+
+			FileLock lock;
+			try{
+
+				lock = this.lockFile.getChannel().tryLock();
+
+			}catch(final OverlappingFileLockException e){
+
+				// 同じ JVM 内の別のキャッシュがロックしている
+				lock = null;
+
+			}
+			if(lock == null){
+
+				throw new IOException("A cache directory is in use: " + directory);
+
+			}
+
+			this.openSegment();
+			if(this.end > CompactThreshold && this.live * 2 < this.end - HeaderSize){
+
+				this.compact();
+
+			}
+
+		}catch(final IOException e){
+
+			if(this.file != null){
+
+				this.file.close();
+
+			}
+			this.lockFile.close();
+			throw e;
+
+		}
+
+	}
+
+	//============================================================================
+	//  Package private methods
+	//============================================================================
+	/**
+	 * キャッシュを通して応答を取得する．
+	 *
+	 * @param key キー
+	 * @param url リクエストする URL
+	 * @param ttl 有効期間 (ナノ秒)
+	 * @param swr 有効期間が過ぎた後，期限切れの本文を返しつつ再検証する期間 (ナノ秒)
+	 * @return 応答，正常な応答はメモリ上の本文を返す
+	 * @throws IOException I/O エラーが発生した場合
+	 */
+	Transport.Response get(final String key, final URL url, final long ttl, final long swr) throws IOException{
+
+		final Entry e = this.index.get(key);
+		if(e != null){
+
+			final long age = System.currentTimeMillis() - e.storedAt;
+			if(age < TimeUnit.NANOSECONDS.toMillis(ttl)){
+
+				final byte[] body = this.read(key, e);
+				if(body != null){
+
+					return new ResponseCache.Buffered(url, body);
+
+				}
+
+			}else if(this.revalidator != null && age < TimeUnit.NANOSECONDS.toMillis(ttl + swr)){
+
+				final byte[] body = this.read(key, e);
+				if(body != null){
+
+					this.revalidateLater(key, url, e);
+					return new ResponseCache.Buffered(url, body);
+
+				}
+
+			}
+
+		}
+
+		return this.fetch(key, url, e);
+
+	}
+
+	/**
+	 * 索引を書き出して閉じる．
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+
+		if(this.file == null){
+
+			return;
+
+		}
+
+		try{
+
+			this.writeIndex();
+
+		}finally{
+
+			this.file.close();
+			this.file = null;
+			// ロックはファイルを閉じると解放される
+			this.lockFile.close();
+
+		}
+
+	}
+
+	//============================================================================
+	//  Private methods
+	//============================================================================
+	/**
+	 * 応答を取得し，正常な応答を保存する．
+	 * 保存済みの応答に検証子がある場合は条件付き GET で再検証する．
+	 */
+	private Transport.Response fetch(final String key, final URL url, final Entry e) throws IOException{
+
+		final long now = System.currentTimeMillis();
+		if(e != null && this.transport instanceof ConditionalTransport && (e.etag != null || e.lastModified > 0)){
+
+			final Transport.Response res = ((ConditionalTransport)this.transport).get(url, e.etag, e.lastModified);
+			if(res.getStatus() != 304){
+
+				return this.store(key, res, now);
+
+			}
+			res.close();
+
+			final byte[] body = this.read(key, e);
+			if(body != null){
+
+				try{
+
+					this.refresh(key, e, now);
+
+				}catch(final IOException ex){
+
+					ex.printStackTrace();
+
+				}
+				return new ResponseCache.Buffered(url, body);
+
+			}
+
+		}
+
+		return this.store(key, this.transport.get(url), now);
+
+	}
+
+	/**
+	 * 正常な応答の本文を読み込んで保存する．
+	 *
+	 * @return 正常な応答の場合は本文を読み込んだ応答，それ以外は res
+	 */
+	private Transport.Response store(final String key, final Transport.Response res, final long now) throws IOException{
+
+		if(res.getStatus() != 200){
+
+			return res;
+
+		}
+
+		final byte[] body;
+		try{
+
+			body = ResponseCache.readFully(res.getBody());
+
+		}catch(final IOException e){
+
+			res.abort();
+			throw e;
+
+		}
+		res.close();
+
+		String etag = null;
+		long lastModified = 0;
+		if(res instanceof ConditionalTransport.Response){
+
+			etag = ((ConditionalTransport.Response)res).getETag();
+			lastModified = ((ConditionalTransport.Response)res).getLastModified();
+
+		}
+
+		try{
+
+			this.append(key, now, lastModified, etag, body);
+
+		}catch(final IOException e){
+
+			// 保存に失敗しても取得した応答は返す
+			e.printStackTrace();
+
+		}
+
+		return new ResponseCache.Buffered(res.getURL(), body);
+
+	}
+
+	/**
+	 * バックグラウンドで再検証する．同じキーの再検証が実行中の場合は何もしない．
+	 */
+	private void revalidateLater(final String key, final URL url, final Entry e){
+
+		if(this.revalidating.put(key, Boolean.TRUE) != null){
+
+			return;
+
+		}
+
+		try{
+
+			this.revalidator.execute(new Runnable(){
+
+				@Override
+				public void run() {
+
+					try{
+
+						DiskCache.this.fetch(key, url, e).close();
+
+					}catch(final IOException e){
+
+						e.printStackTrace();
+
+					}finally{
+
+						DiskCache.this.revalidating.remove(key);
+
+					}
+
+				}
+
+			});
+
+		}catch(final RejectedExecutionException ex){
+
+			this.revalidating.remove(key);
+
+		}
+
+	}
+
+	/**
+	 * 保存した本文を読み込む．
+	 * レコードの長さ，CRC32，キーが索引と一致しない場合は読み込めなかったものとして扱う．
+	 *
+	 * @return 本文，読み込めなかった場合は null
+	 */
+	private byte[] read(final String key, final Entry e){
+
+		final byte[] record = new byte[e.size];
+		try{
+
+			synchronized(this){
+
+				if(this.file == null){
+
+					return null;
+
+				}
+				this.file.seek(e.offset + e.length + 4 - e.size);
+				this.file.readFully(record);
+
+			}
+
+			final ByteBuffer buf = ByteBuffer.wrap(record);
+			if(buf.getInt(0) != record.length - 4){
+
+				return null;
+
+			}
+
+			final CRC32 crc = new CRC32();
+			crc.update(record, 4, record.length - 8);
+			if((int)crc.getValue() != buf.getInt(record.length - 4)){
+
+				return null;
+
+			}
+
+			final DataInputStream in = new DataInputStream(new ByteArrayInputStream(record, 4, record.length - 8));
+			if(!key.equals(in.readUTF())){
+
+				return null;
+
+			}
+
+		}catch(final IOException ex){
+
+			ex.printStackTrace();
+			return null;
+
+		}
+
+		return Arrays.copyOfRange(record, record.length - 4 - e.length, record.length - 4);
+
+	}
+
+	/**
+	 * レコードを追記し，索引を更新する．
+	 */
+	private synchronized void append(final String key, final long storedAt, final long lastModified, final String etag, final byte[] body) throws IOException{
+
+		if(this.file == null){
+
+			return;
+
+		}
+
+		final byte[] record = encode(key, storedAt, lastModified, etag, body);
+		this.file.seek(this.end);
+		this.file.write(record);
+
+		final Entry e = new Entry(this.end + record.length - 4 - body.length, body.length, record.length, storedAt, lastModified, etag);
+		final Entry old = this.index.put(key, e);
+		if(old != null){
+
+			this.live -= old.size;
+
+		}
+		this.live += e.size;
+		this.end += record.length;
+
+	}
+
+	/**
+	 * 再検証した応答の保存時刻を更新する．
+	 * 本文を含まないレコードを追記して保存時刻をセグメントファイルにも残し，索引は元のレコードの本文を指したままにする．
+	 * 再検証の間に別の応答が保存された場合は何もしない．
+	 */
+	private synchronized void refresh(final String key, final Entry e, final long storedAt) throws IOException{
+
+		if(this.file == null || this.index.get(key) != e){
+
+			return;
+
+		}
+
+		final byte[] record = encode(key, storedAt, e.lastModified, e.etag, null);
+		this.file.seek(this.end);
+		this.file.write(record);
+
+		// 追記したレコードは本文を持たないため，有効なレコードの長さには数えない
+		this.index.put(key, new Entry(e.offset, e.length, e.size, storedAt, e.lastModified, e.etag));
+		this.end += record.length;
+
+	}
+
+	/**
+	 * セグメントファイルを開き，索引を読み込む．
+	 */
+	private void openSegment() throws IOException{
+
+		final File segment = new File(this.directory, SegmentName);
+		this.file = new RandomAccessFile(segment, "rw");
+
+		if(this.file.length() < HeaderSize){
+
+			this.generation = new Random().nextLong();
+			this.file.setLength(0);
+			this.file.write(header(this.generation));
+			this.end = HeaderSize;
+			return;
+
+		}
+
+		if(this.file.readInt() != Magic || this.file.readInt() != Version){
+
+			throw new IOException("Not a response cache: " + segment);
+
+		}
+		this.generation = this.file.readLong();
+
+		this.scan(this.readIndex());
+
+	}
+
+	/**
+	 * 索引ファイルを読み込む．
+	 *
+	 * @return 索引ファイルが対応しているセグメントファイルの長さ，索引ファイルを使えない場合はヘッダの長さ
+	 */
+	private long readIndex(){
+
+		final File f = new File(this.directory, IndexName);
+		if(!f.isFile()){
+
+			return HeaderSize;
+
+		}
+
+		try{
+
+			final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(f)));
+			try{
+
+				if(in.readInt() != Magic || in.readInt() != Version || in.readLong() != this.generation){
+
+					return HeaderSize;
+
+				}
+
+				final long length = in.readLong();
+				if(length > this.file.length()){
+
+					return HeaderSize;
+
+				}
+
+				final long live = in.readLong();
+				final int size = in.readInt();
+				for(int i = 0; i < size; ++i){
+
+					final String key = in.readUTF();
+					final long offset = in.readLong();
+					final int bodyLength = in.readInt();
+					final int recordSize = in.readInt();
+					final long storedAt = in.readLong();
+					final long lastModified = in.readLong();
+					final String etag = in.readBoolean() ? in.readUTF() : null;
+					this.index.put(key, new Entry(offset, bodyLength, recordSize, storedAt, lastModified, etag));
+
+				}
+				this.live = live;
+				return length;
+
+			}finally{
+
+				in.close();
+
+			}
+
+		}catch(final IOException e){
+
+			e.printStackTrace();
+			this.index.clear();
+			this.live = 0;
+			return HeaderSize;
+
+		}
+
+	}
+
+	/**
+	 * 索引ファイルを書き出す．
+	 */
+	private void writeIndex() throws IOException{
+
+		final File tmp = new File(this.directory, IndexName + TemporarySuffix);
+		final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+		try{
+
+			out.writeInt(Magic);
+			out.writeInt(Version);
+			out.writeLong(this.generation);
+			out.writeLong(this.end);
+			out.writeLong(this.live);
+
+			final Map<String, Entry> snapshot = new HashMap<String, Entry>(this.index);
+			out.writeInt(snapshot.size());
+			for(final Map.Entry<String, Entry> i : snapshot.entrySet()){
+
+				final Entry e = i.getValue();
+				out.writeUTF(i.getKey());
+				out.writeLong(e.offset);
+				out.writeInt(e.length);
+				out.writeInt(e.size);
+				out.writeLong(e.storedAt);
+				out.writeLong(e.lastModified);
+				out.writeBoolean(e.etag != null);
+				if(e.etag != null){
+
+					out.writeUTF(e.etag);
+
+				}
+
+			}
+
+		}finally{
+
+			out.close();
+
+		}
+
+		replace(tmp, new File(this.directory, IndexName));
+
+	}
+
+	/**
+	 * セグメントファイルを from から走査して索引に加える．
+	 * 壊れたレコードが見つかった場合は，その位置でファイルを切り詰める．
+	 */
+	private void scan(final long from) throws IOException{
+
+		// ファイル記述子を共有するため，このストリームは閉じない
+		final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(this.file.getFD())));
+		final long length = this.file.length();
+
+		this.file.seek(from);
+		long p = from;
+		final CRC32 crc = new CRC32();
+		while(p + 4 <= length){
+
+			final int size = in.readInt();
+			if(size < 4 || p + 4 + size > length){
+
+				break;
+
+			}
+
+			final byte[] payload = new byte[size - 4];
+			in.readFully(payload);
+			final int sum = in.readInt();
+			crc.reset();
+			crc.update(payload);
+			if((int)crc.getValue() != sum){
+
+				break;
+
+			}
+
+			final DataInputStream record = new DataInputStream(new ByteArrayInputStream(payload));
+			final String key = record.readUTF();
+			final long storedAt = record.readLong();
+			final long lastModified = record.readLong();
+			final String etag = record.readBoolean() ? record.readUTF() : null;
+			final int bodyLength = record.readInt();
+			p += 4 + size;
+
+			if(bodyLength == Refreshed){
+
+				// 保存時刻だけを更新したレコード，本文は先に読んだレコードのものを使う
+				final Entry old = this.index.get(key);
+				if(old != null){
+
+					this.index.put(key, new Entry(old.offset, old.length, old.size, storedAt, lastModified, etag));
+
+				}
+				continue;
+
+			}
+
+			final Entry e = new Entry(p - 4 - bodyLength, bodyLength, 4 + size, storedAt, lastModified, etag);
+			final Entry old = this.index.put(key, e);
+			if(old != null){
+
+				this.live -= old.size;
+
+			}
+			this.live += e.size;
+
+		}
+
+		if(p < length){
+
+			this.file.setLength(p);
+
+		}
+		this.end = p;
+
+	}
+
+	/**
+	 * 有効なレコードだけを新しいセグメントファイルに書き出し，置き換える．
+	 */
+	private void compact() throws IOException{
+
+		final File tmp = new File(this.directory, SegmentName + TemporarySuffix);
+		final long generation = new Random().nextLong();
+		final Map<String, Entry> entries = new HashMap<String, Entry>();
+
+		final FileOutputStream out = new FileOutputStream(tmp);
+		try{
+
+			final BufferedOutputStream dst = new BufferedOutputStream(out);
+			dst.write(header(generation));
+
+			long p = HeaderSize;
+			for(final Map.Entry<String, Entry> i : this.index.entrySet()){
+
+				final Entry e = i.getValue();
+				final byte[] body = this.read(i.getKey(), e);
+				if(body == null){
+
+					continue;
+
+				}
+
+				final byte[] record = encode(i.getKey(), e.storedAt, e.lastModified, e.etag, body);
+				dst.write(record);
+				entries.put(i.getKey(), new Entry(p + record.length - 4 - body.length, body.length, record.length, e.storedAt, e.lastModified, e.etag));
+				p += record.length;
+
+			}
+			dst.flush();
+			out.getFD().sync();
+
+		}finally{
+
+			out.close();
+
+		}
+
+		this.file.close();
+		this.file = null;
+		replace(tmp, new File(this.directory, SegmentName));
+
+		this.index.clear();
+		this.index.putAll(entries);
+		this.live = 0;
+		for(final Entry e : entries.values()){
+
+			this.live += e.size;
+
+		}
+
+		this.file = new RandomAccessFile(new File(this.directory, SegmentName), "rw");
+		this.generation = generation;
+		this.end = this.file.length();
+		this.writeIndex();
+
+	}
+
+	//============================================================================
+	//  Package private static methods
+	//============================================================================
+	/**
+	 * 一時ファイルで置き換える．
+	 */
+	static void replace(final File tmp, final File dst) throws IOException{
+
+		if(!tmp.renameTo(dst)){
+
+			// 上書きできない環境では削除してから置き換える
+			if(!dst.delete() || !tmp.renameTo(dst)){
+
+				throw new IOException("Cannot replace " + dst);
+
+			}
+
+		}
+
+	}
+
+	//============================================================================
+	//  Private static methods
+	//============================================================================
+	/**
+	 * レコードを作成する．
+	 * レコードは，長さ，キー，保存時刻，Last-Modified，ETag，本文の長さ，本文，CRC32 からなる．
+	 * 長さはそれ以降のバイト数 (CRC32 を含む)，CRC32 は長さと CRC32 自身を除いた部分から計算する．
+	 * body が null の場合は，本文の長さに Refreshed を書き込み，本文を持たないレコードを作成する．
+	 */
+	private static byte[] encode(final String key, final long storedAt, final long lastModified, final String etag, final byte[] body) throws IOException{
+
+		final ByteArrayOutputStream buf = new ByteArrayOutputStream((body != null ? body.length : 0) + 128);
+		final DataOutputStream out = new DataOutputStream(buf);
+		out.writeInt(0);
+		out.writeUTF(key);
+		out.writeLong(storedAt);
+		out.writeLong(lastModified);
+		out.writeBoolean(etag != null);
+		if(etag != null){
+
+			out.writeUTF(etag);
+
+		}
+		if(body != null){
+
+			out.writeInt(body.length);
+			out.write(body);
+
+		}else{
+
+			out.writeInt(Refreshed);
+
+		}
+		out.writeInt(0);
+		out.close();
+
+		final byte[] ret = buf.toByteArray();
+		final CRC32 crc = new CRC32();
+		crc.update(ret, 4, ret.length - 8);
+		ByteBuffer.wrap(ret).putInt(0, ret.length - 4).putInt(ret.length - 4, (int)crc.getValue());
+		return ret;
+
+	}
+
+	/**
+	 * セグメントファイルのヘッダを作成する．
+	 */
+	private static byte[] header(final long generation){
+
+		final ByteBuffer ret = ByteBuffer.allocate(HeaderSize);
+		ret.putInt(Magic).putInt(Version).putLong(generation);
+		return ret.array();
+
+	}
+
+	//============================================================================
+	//  Inner classes
+	//============================================================================
+	/**
+	 * 索引のエントリ．
+	 */
+	private static final class Entry{
+
+		/** 本文の位置 */
+		final long offset;
+		/** 本文の長さ */
+		final int length;
+		/** レコード全体の長さ */
+		final int size;
+		/** 保存または最後に再検証した時刻 (ミリ秒) */
+		final long storedAt;
+		/** Last-Modified，無い場合は 0 */
+		final long lastModified;
+		/** ETag，無い場合は null */
+		final String etag;
+
+		Entry(final long offset, final int length, final int size, final long storedAt, final long lastModified, final String etag){
+
+			this.offset = offset;
+			this.length = length;
+			this.size = size;
+			this.storedAt = storedAt;
+			this.lastModified = lastModified;
+			this.etag = etag;
+
+		}
+
+	}
+
+}
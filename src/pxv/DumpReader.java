@@ -0,0 +1,584 @@
+/*
+ *  Copyright (C) 2010 Junpei Kawamoto
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package pxv;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * 保存しておいた API の応答 (CSV) をファイルから並列に読み込むクラス．
+ * <p>
+ * ファイルをメモリにマップし，引用符の外側にあるレコードの区切りでチャンクに分割して，
+ * チャンクごとに別のスレッドで Image または User に変換します．
+ * 結果はファイル中の順序どおりに受け取るか，変換が終わったチャンクから順不同で受け取るかを選択できます．
+ * </p>
+ * <p>
+ * 分割位置は次のように決めます．まずファイルを等分したチャンクごとに，先頭が引用符の外側である場合と内側である場合の両方を仮定して，
+ * 末尾での状態と最初のレコード区切りを並列に求めます．次に先頭のチャンクから順に実際の状態をたどり，各チャンクで最初に現れる
+ * 引用符の外側の改行の直後を分割位置とします．
+ * </p>
+ *
+ * @since 0.2
+ */
+public class DumpReader {
+
+	/** 引用符の外側 */
+	private static final int Outside = 0;
+	/** 引用符の内側 */
+	private static final int Inside = 1;
+	/** 引用符の内側でエスケープ文字の直後 */
+	private static final int Escaped = 2;
+
+	/** 分割するチャンクの最小サイズ */
+	private static final long MinChunkSize = 1 << 20;
+	/** 分割するチャンクおよび一度にマップする領域の最大サイズ */
+	private static final long MaxChunkSize = 256L << 20;
+	/** 1 スレッドあたりのチャンク数 */
+	private static final int ChunksPerThread = 4;
+
+	/** 親オブジェクト */
+	private final PixivAPI api;
+	/** チャンクを処理するスレッドプール，読み込みごとに作成する場合は null */
+	private final ExecutorService executor;
+	/** 並列度 */
+	private final int parallelism;
+
+	//============================================================================
+	//  Constructors
+	//============================================================================
+	/**
+	 * 利用可能なプロセッサ数のスレッドで読み込む DumpReader を作成する．
+	 *
+	 * @param api 作成する Image や User が利用する PixivAPI
+	 */
+	public DumpReader(final PixivAPI api){
+
+		this.api = api;
+		this.executor = null;
+		this.parallelism = Runtime.getRuntime().availableProcessors();
+
+	}
+
+	/**
+	 * 与えられたスレッドプールで読み込む DumpReader を作成する．
+	 * スレッドプールの終了は呼び出し側で行って下さい．
+	 *
+	 * @param api 作成する Image や User が利用する PixivAPI
+	 * @param executor チャンクを処理するスレッドプール
+	 * @param parallelism スレッドプールの並列度
+	 */
+	public DumpReader(final PixivAPI api, final ExecutorService executor, final int parallelism){
+
+		this.api = api;
+		this.executor = executor;
+		this.parallelism = Math.max(1, parallelism);
+
+	}
+
+	//============================================================================
+	//  Public methods
+	//============================================================================
+	/**
+	 * イラストの応答を保存したファイルを読み込む．
+	 *
+	 * @param dump 読み込むファイル
+	 * @return 読み込んだイラストのリスト（ファイル中の順序）
+	 * @throws IOException I/O エラーが発生した場合
+	 */
+	public List<Image> readImages(final File dump) throws IOException{
+
+		final List<Image> ret = new ArrayList<Image>();
+		this.readImages(dump, new Handler<Image>(){
+
+			@Override
+			public void update(final Image item) {
+				ret.add(item);
+			}
+
+		}, true);
+
+		return ret;
+
+	}
+
+	/**
+	 * イラストの応答を保存したファイルを読み込み，1 件ずつハンドラに渡す．
+	 * <p>
+	 * ordered が false の場合，ハンドラはチャンクを処理するスレッドから並行に呼び出されます．
+	 * </p>
+	 *
+	 * @param dump 読み込むファイル
+	 * @param handler 読み込んだイラストを受け取るハンドラ
+	 * @param ordered ファイル中の順序どおりに受け取る場合 true
+	 * @throws IOException I/O エラーが発生した場合
+	 */
+	public void readImages(final File dump, final Handler<Image> handler, final boolean ordered) throws IOException{
+
+		this.read(dump, new Factory<Image>(){
+
+			@Override
+			public CSVScanner.Decoder<Image> newDecoder() {
+				return new Image.Decoder(DumpReader.this.api);
+			}
+
+		}, handler, ordered);
+
+	}
+
+	/**
+	 * ユーザの応答を保存したファイルを読み込む．
+	 *
+	 * @param dump 読み込むファイル
+	 * @return 読み込んだユーザのリスト（ファイル中の順序）
+	 * @throws IOException I/O エラーが発生した場合
+	 */
+	public List<User> readUsers(final File dump) throws IOException{
+
+		final List<User> ret = new ArrayList<User>();
+		this.readUsers(dump, new Handler<User>(){
+
+			@Override
+			public void update(final User item) {
+				ret.add(item);
+			}
+
+		}, true);
+
+		return ret;
+
+	}
+
+	/**
+	 * ユーザの応答を保存したファイルを読み込み，1 件ずつハンドラに渡す．
+	 * <p>
+	 * ordered が false の場合，ハンドラはチャンクを処理するスレッドから並行に呼び出されます．
+	 * </p>
+	 *
+	 * @param dump 読み込むファイル
+	 * @param handler 読み込んだユーザを受け取るハンドラ
+	 * @param ordered ファイル中の順序どおりに受け取る場合 true
+	 * @throws IOException I/O エラーが発生した場合
+	 */
+	public void readUsers(final File dump, final Handler<User> handler, final boolean ordered) throws IOException{
+
+		this.read(dump, new Factory<User>(){
+
+			@Override
+			public CSVScanner.Decoder<User> newDecoder() {
+				return new User.Decoder(DumpReader.this.api);
+			}
+
+		}, handler, ordered);
+
+	}
+
+	//============================================================================
+	//  Private methods
+	//============================================================================
+	/**
+	 * ファイルをチャンクに分割して並列に読み込む．
+	 */
+	private <T> void read(final File dump, final Factory<T> factory, final Handler<T> handler, final boolean ordered) throws IOException{
+
+		final RandomAccessFile file = new RandomAccessFile(dump, "r");
+		final ExecutorService executor = this.executor != null ? this.executor : Executors.newFixedThreadPool(this.parallelism);
+		try{
+
+			final FileChannel channel = file.getChannel();
+			final long[] bounds = this.split(channel, executor);
+
+			final List<Future<List<T>>> results = new ArrayList<Future<List<T>>>();
+			for(int i = 0; i + 1 < bounds.length; ++i){
+
+				final long start = bounds[i];
+				final long end = bounds[i + 1];
+				results.add(executor.submit(new Callable<List<T>>(){
+
+					@Override
+					public List<T> call() throws IOException {
+
+						final List<T> ret = new ArrayList<T>();
+						final RecordScanner scanner = new ByteCSVScanner(new MappedChannel(channel, start, end), true);
+						final CSVScanner.Decoder<T> decoder = factory.newDecoder();
+						while(scanner.next(decoder)){
+
+							try{
+
+								final T item = decoder.build();
+								if(ordered){
+
+									ret.add(item);
+
+								}else{
+
+									handler.update(item);
+
+								}
+
+							}catch(final IOException e){
+
+								e.printStackTrace();
+
+							}
+
+						}
+
+						return ret;
+
+					}
+
+				}));
+
+			}
+
+			for(final Future<List<T>> f : results){
+
+				for(final T item : get(f)){
+
+					handler.update(item);
+
+				}
+
+			}
+
+		}finally{
+
+			if(this.executor == null){
+
+				executor.shutdown();
+
+			}
+			file.close();
+
+		}
+
+	}
+
+	/**
+	 * ファイルを，引用符の外側にあるレコードの区切りで分割する．
+	 *
+	 * @param channel 分割するファイル
+	 * @param executor 走査に使用するスレッドプール
+	 * @return 各チャンクの開始位置とファイルサイズを並べた配列
+	 * @throws IOException I/O エラーが発生した場合
+	 */
+	private long[] split(final FileChannel channel, final ExecutorService executor) throws IOException{
+
+		final long size = channel.size();
+		final long chunk = Math.min(MaxChunkSize, Math.max(MinChunkSize, size / ((long)this.parallelism * ChunksPerThread) + 1));
+		final int n = (int)((size + chunk - 1) / chunk);
+
+		// 各チャンクの先頭が引用符の外側・内側それぞれの場合を並列に走査する
+		final List<Future<Scan[]>> scans = new ArrayList<Future<Scan[]>>();
+		for(int i = 0; i != n; ++i){
+
+			final long start = i * chunk;
+			final long end = Math.min(size, start + chunk);
+			scans.add(executor.submit(new Callable<Scan[]>(){
+
+				@Override
+				public Scan[] call() throws IOException {
+
+					final ByteBuffer buf = map(channel, start, end);
+					return new Scan[]{ Scan.run(buf, Outside), Scan.run(buf, Inside), null };
+
+				}
+
+			}));
+
+		}
+
+		// 先頭から実際の状態をたどり，分割位置を決める
+		final List<Long> bounds = new ArrayList<Long>();
+		bounds.add(0L);
+		int state = Outside;
+		for(int i = 0; i != n; ++i){
+
+			final long start = i * chunk;
+			final Scan[] candidates = get(scans.get(i));
+			if(candidates[state] == null){
+
+				// エスケープ文字がチャンクの境界をまたぐ場合だけ，ここで走査する
+				candidates[state] = Scan.run(map(channel, start, Math.min(size, start + chunk)), state);
+
+			}
+
+			final Scan s = candidates[state];
+			if(i != 0 && s.boundary >= 0){
+
+				bounds.add(start + s.boundary);
+
+			}
+			state = s.end;
+
+		}
+		if(bounds.get(bounds.size() - 1) != size){
+
+			bounds.add(size);
+
+		}
+
+		final long[] ret = new long[bounds.size()];
+		for(int i = 0; i != ret.length; ++i){
+
+			ret[i] = bounds.get(i);
+
+		}
+		return ret;
+
+	}
+
+	//============================================================================
+	//  Private static methods
+	//============================================================================
+	/**
+	 * ファイルの一部をメモリにマップする．
+	 */
+	private static ByteBuffer map(final FileChannel channel, final long start, final long end) throws IOException{
+		return channel.map(FileChannel.MapMode.READ_ONLY, start, end - start).order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	/**
+	 * 非同期処理の結果を取得する．
+	 */
+	private static <T> T get(final Future<T> future) throws IOException{
+
+		try{
+
+			return future.get();
+
+		}catch(final InterruptedException e){
+
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while reading a dump");
+
+		}catch(final ExecutionException e){
+
+			final Throwable cause = e.getCause();
+			if(cause instanceof IOException){
+
+				throw (IOException)cause;
+
+			}else if(cause instanceof RuntimeException){
+
+				throw (RuntimeException)cause;
+
+			}
+			throw new IOException(String.valueOf(cause));
+
+		}
+
+	}
+
+	//============================================================================
+	//  Inner classes
+	//============================================================================
+	/**
+	 * 読み込んだ要素を受け取るハンドラ．
+	 *
+	 * @param <T> 要素の型
+	 */
+	public interface Handler<T>{
+
+		/**
+		 * 読み込んだ要素を受け取る．
+		 *
+		 * @param item 読み込んだ要素
+		 */
+		public void update(final T item);
+
+	}
+
+	/**
+	 * チャンクごとに Decoder を作成するファクトリ．
+	 */
+	private interface Factory<T>{
+
+		public CSVScanner.Decoder<T> newDecoder();
+
+	}
+
+	/**
+	 * チャンクを走査した結果．
+	 */
+	private static final class Scan{
+
+		/** チャンクの末尾での状態 */
+		final int end;
+		/** 最初に現れる引用符の外側の改行の直後の位置，無い場合は -1 */
+		final int boundary;
+
+		private Scan(final int end, final int boundary){
+
+			this.end = end;
+			this.boundary = boundary;
+
+		}
+
+		/**
+		 * 与えられた状態から始めてチャンクを走査する．
+		 * 引用符とエスケープ文字の扱いは CSVScanner と同じ．
+		 *
+		 * @param buf チャンク
+		 * @param state 先頭での状態
+		 * @return 走査結果
+		 */
+		static Scan run(final ByteBuffer buf, final int state){
+
+			final int to = buf.limit();
+			int boundary = -1;
+			int st = state;
+			int p = 0;
+			if(st == Escaped && p < to){
+
+				++p;
+				st = Inside;
+
+			}
+
+			while(p < to){
+
+				if(st == Outside){
+
+					final int q = WordScan.indexOfDelimiter(buf, p, to);
+					if(q == to){
+
+						break;
+
+					}
+
+					final byte c = buf.get(q);
+					if(c == '\"'){
+
+						st = Inside;
+
+					}else if(c == '\n' && boundary < 0){
+
+						boundary = q + 1;
+
+					}
+					p = q + 1;
+
+				}else{
+
+					final int q = WordScan.indexOfQuoteOrEscape(buf, p, to);
+					if(q == to){
+
+						break;
+
+					}
+
+					if(buf.get(q) == '\"'){
+
+						st = Outside;
+						p = q + 1;
+
+					}else if(q + 1 == to){
+
+						st = Escaped;
+						p = to;
+
+					}else{
+
+						p = q + 2;
+
+					}
+
+				}
+
+			}
+
+			return new Scan(st, boundary);
+
+		}
+
+	}
+
+	/**
+	 * ファイルの一部を，MaxChunkSize ずつメモリにマップしながら読み込むチャネル．
+	 * 1 レコードが MaxChunkSize を超え，分割位置の間隔が広がった場合にも 1 度にマップする領域は制限されます．
+	 */
+	private static final class MappedChannel implements ReadableByteChannel{
+
+		private final FileChannel channel;
+		private final long end;
+		/** 次にマップする位置 */
+		private long next;
+		/** マップ済みの領域 */
+		private ByteBuffer src = ByteBuffer.allocate(0);
+		private boolean open = true;
+
+		MappedChannel(final FileChannel channel, final long start, final long end){
+
+			this.channel = channel;
+			this.next = start;
+			this.end = end;
+
+		}
+
+		@Override
+		public int read(final ByteBuffer dst) throws IOException {
+
+			if(!this.src.hasRemaining()){
+
+				if(this.next == this.end){
+
+					return -1;
+
+				}
+
+				final long limit = Math.min(this.end, this.next + MaxChunkSize);
+				this.src = map(this.channel, this.next, limit);
+				this.next = limit;
+
+			}
+
+			final int n = Math.min(dst.remaining(), this.src.remaining());
+			final ByteBuffer slice = this.src.slice();
+			slice.limit(n);
+			dst.put(slice);
+			this.src.position(this.src.position() + n);
+			return n;
+
+		}
+
+		@Override
+		public boolean isOpen() {
+			return this.open;
+		}
+
+		@Override
+		public void close() {
+			this.open = false;
+		}
+
+	}
+
+}
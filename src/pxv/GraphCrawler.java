@@ -0,0 +1,1048 @@
+/*
+ *  Copyright (C) 2010 Junpei Kawamoto
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package pxv;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * お気に入りユーザとマイピクの関係をたどってユーザのグラフを幅優先で探索するクラス．
+ * <p>
+ * 起点のユーザから指定した深さまで，各ユーザのお気に入りユーザとマイピクを全てのページについて取得し，
+ * 見つかった辺を EdgeSink に渡します．同じ深さのユーザは BulkFetcher により並行して取得し，
+ * 同時に実行する取得の数は maxConcurrency までに制限されます．
+ * 訪問済みのユーザ ID はボックス化しない圧縮ビットマップ (IntBitmap) で管理します．
+ * 関係の取得に失敗したユーザは，その深さの残りのユーザを取得した後で取得し直します．
+ * FetchRounds 回取得しても失敗したユーザが残る場合は，探索を中止して IOException を投げます．
+ * </p>
+ * <p>
+ * チェックポイントファイルを指定すると，深さが変わるごとに探索の状態全体をそのファイルに書き出し，
+ * その間は一定数のユーザを処理するごとに，前回からの差分 (関係を取得し終えたユーザと新しく見つかったユーザ) だけを
+ * ジャーナル (ファイル名に .log を付けたファイル) に追記します．このため書き出す量は訪問済みのユーザ数に比例しません．
+ * 同じファイルを指定して crawl を呼び出すと，書き出した状態から探索を再開します．
+ * 再開した場合，前回のチェックポイント以降に出力した辺は再び出力されます．
+ * 最後まで探索を終えるとチェックポイントファイルとジャーナルは削除されます．
+ * </p>
+ * <pre>
+ * final GraphCrawler crawler = new GraphCrawler(api, 32);
+ * crawler.setCheckpoint(new File("crawl.ckpt"), 10000);
+ * crawler.crawl(new int[]{ seed }, 3, new GraphCrawler.EdgeSink(){
+ *     public void accept(final int from, final int to, final GraphCrawler.Relation relation){ ... }
+ *     public void flush(){ ... }
+ * });
+ * crawler.close();
+ * </pre>
+ *
+ * @since 0.2
+ */
+public class GraphCrawler implements Closeable {
+
+	/** チェックポイントファイルの識別子 */
+	private static final int Magic = 0x50584743;
+	/** チェックポイントファイルの形式 */
+	private static final int Version = 2;
+	/** ジャーナルのファイル名に付ける接尾辞 */
+	private static final String JournalSuffix = ".log";
+	/** チェックポイントを書き出す間隔の既定値 */
+	private static final int DefaultCheckpointInterval = 10000;
+	/** 1 つの深さでユーザの関係を取得する最大の回数 */
+	private static final int FetchRounds = 3;
+
+	/** ユーザごとの取得を実行する */
+	private final BulkFetcher fetcher;
+
+	/** お気に入りユーザをたどる場合 true */
+	private volatile boolean bookmarks = true;
+	/** マイピクをたどる場合 true */
+	private volatile boolean myPixiv = true;
+	/** チェックポイントファイル，書き出さない場合は null */
+	private volatile File checkpoint = null;
+	/** チェックポイントを書き出す間隔 (ユーザ数) */
+	private volatile int checkpointInterval = DefaultCheckpointInterval;
+
+	/** 実行中の探索の状態 */
+	private volatile State state = null;
+
+	//============================================================================
+	//  Constructors
+	//============================================================================
+	/**
+	 * 必要に応じてデーモンスレッドを作成するスレッドプールを使うインスタンスを作成する．
+	 *
+	 * @param api 問合せを実行する PixivAPI
+	 * @param maxConcurrency 同時に取得するユーザの最大数
+	 */
+	public GraphCrawler(final PixivAPI api, final int maxConcurrency){
+		this.fetcher = new BulkFetcher(api, maxConcurrency);
+	}
+
+	/**
+	 * スレッドプールを指定してインスタンスを作成する．スレッドプールの終了は呼び出し側で行って下さい．
+	 *
+	 * @param api 問合せを実行する PixivAPI
+	 * @param executor 取得を実行するスレッドプール
+	 * @param maxConcurrency 同時に取得するユーザの最大数
+	 */
+	public GraphCrawler(final PixivAPI api, final ExecutorService executor, final int maxConcurrency){
+		this.fetcher = new BulkFetcher(api, executor, maxConcurrency);
+	}
+
+	//============================================================================
+	//  Public methods
+	//============================================================================
+	//----------------------------------------------------------------------------
+	//  Configuration
+	//----------------------------------------------------------------------------
+	/**
+	 * たどる関係を設定する．既定では両方をたどります．
+	 *
+	 * @param bookmarks お気に入りユーザをたどる場合 true
+	 * @param myPixiv マイピクをたどる場合 true
+	 */
+	public void setRelations(final boolean bookmarks, final boolean myPixiv){
+
+		this.bookmarks = bookmarks;
+		this.myPixiv = myPixiv;
+
+	}
+
+	/**
+	 * チェックポイントファイルを設定する．
+	 *
+	 * @param file チェックポイントファイル，書き出さない場合は null
+	 * @param interval ジャーナルに差分を追記する間隔 (処理したユーザ数)
+	 */
+	public void setCheckpoint(final File file, final int interval){
+
+		if(interval < 1){
+
+			throw new IllegalArgumentException("interval must be positive: " + interval);
+
+		}
+
+		this.checkpoint = file;
+		this.checkpointInterval = interval;
+
+	}
+
+	//----------------------------------------------------------------------------
+	//  Crawling
+	//----------------------------------------------------------------------------
+	/**
+	 * 起点のユーザから幅優先で探索する．
+	 * <p>
+	 * 深さ 0 の起点のユーザから，深さが maxDepth 未満のユーザについて関係を取得し，辺を出力します．
+	 * つまり maxDepth が 1 の場合は起点のユーザの辺だけを出力します．
+	 * チェックポイントファイルが存在する場合は seeds を使わず，ファイルの状態から再開します．
+	 * 再開する場合は前回と同じ maxDepth を指定して下さい．
+	 * </p>
+	 * <p>
+	 * 途中で例外が発生した場合，割り込まれた場合，または cancel により中止された場合も，
+	 * チェックポイントファイルを設定していればその時点の状態を書き出します．
+	 * </p>
+	 *
+	 * @param seeds 起点のユーザ ID
+	 * @param maxDepth 探索する深さ
+	 * @param sink 辺を受け取る EdgeSink，同時に複数のスレッドから呼び出されることはない
+	 * @throws IOException チェックポイントファイルを読み書きできなかった場合
+	 * @throws InterruptedException 探索中に割り込まれた場合
+	 * @throws ExecutionException 取得または EdgeSink が例外を投げた場合
+	 * @throws CancellationException cancel により中止された場合
+	 */
+	public void crawl(final int[] seeds, final int maxDepth, final EdgeSink sink) throws IOException, InterruptedException, ExecutionException{
+
+		final File file = this.checkpoint;
+		final boolean resume = file != null && file.exists();
+		final State s = resume ? State.load(file) : State.start(seeds);
+		final Neighbors task = new Neighbors(this.bookmarks, this.myPixiv);
+		this.state = s;
+
+		boolean finished = false;
+		try{
+
+			if(file != null && !resume){
+
+				synchronized(s){
+
+					checkpoint(s, sink, file, true);
+
+				}
+
+			}
+
+			while(s.depth < maxDepth && s.level.length != 0){
+
+				final boolean expand = s.depth + 1 < maxDepth;
+				final BulkFetcher.Sink<int[][]> accept = new BulkFetcher.Sink<int[][]>(){
+
+					@Override
+					public void accept(final int userId, final int[][] result) throws Exception {
+
+						// 取得に失敗したユーザは取得し終えたことにせず，次の回で取得し直す
+						if(result == null){
+
+							return;
+
+						}
+
+						synchronized(s){
+
+							s.expand(userId, result, expand, sink);
+							if(file != null && ++s.sinceCheckpoint >= GraphCrawler.this.checkpointInterval){
+
+								save(s, sink, file, false);
+
+							}
+
+						}
+
+					}
+
+				};
+
+				for(int round = 1; true; ++round){
+
+					this.fetcher.run(s.pending(), task, accept);
+					final int failed = s.countPending();
+					if(failed == 0){
+
+						break;
+
+					}
+					if(round == FetchRounds){
+
+						throw new IOException(String.format("Failed to fetch the relations of %d users at depth %d", failed, s.depth));
+
+					}
+
+				}
+
+				synchronized(s){
+
+					s.advance();
+					if(file != null){
+
+						checkpoint(s, sink, file, true);
+
+					}
+
+				}
+
+			}
+			finished = true;
+
+		}finally{
+
+			if(file != null){
+
+				if(finished){
+
+					file.delete();
+					journalFile(file).delete();
+
+				}else{
+
+					try{
+
+						synchronized(s){
+
+							save(s, sink, file, false);
+
+						}
+
+					}catch(final Exception e){
+
+						e.printStackTrace();
+
+					}
+
+				}
+
+			}
+			this.state = null;
+
+		}
+
+	}
+
+	/**
+	 * 実行中の探索を中止する．
+	 */
+	public void cancel(){
+		this.fetcher.cancel();
+	}
+
+	//----------------------------------------------------------------------------
+	//  Statistics
+	//----------------------------------------------------------------------------
+	/**
+	 * 実行中の探索で見つかった，関係を取得する対象のユーザの数を取得する．
+	 *
+	 * @return ユーザ数，探索中でない場合は 0
+	 */
+	public int getVisitedCount(){
+
+		final State s = this.state;
+		if(s == null){
+
+			return 0;
+
+		}
+		synchronized(s){
+
+			return s.visited.size();
+
+		}
+
+	}
+
+	/**
+	 * 実行中の探索で関係を取得し終えたユーザの数を取得する．
+	 *
+	 * @return ユーザ数，探索中でない場合は 0
+	 */
+	public int getExpandedCount(){
+
+		final State s = this.state;
+		if(s == null){
+
+			return 0;
+
+		}
+		synchronized(s){
+
+			return s.expanded;
+
+		}
+
+	}
+
+	/**
+	 * 実行中の探索を中止し，このインスタンスが作成したスレッドプールを終了する．
+	 */
+	@Override
+	public void close() {
+		this.fetcher.close();
+	}
+
+	//============================================================================
+	//  Private static methods
+	//============================================================================
+	/**
+	 * EdgeSink を flush してから状態を書き出す．
+	 *
+	 * @param full 状態全体を書き出す場合 true，前回からの差分をジャーナルに追記する場合 false
+	 */
+	private static void save(final State s, final EdgeSink sink, final File file, final boolean full) throws Exception{
+
+		sink.flush();
+		if(full){
+
+			s.snapshot(file);
+
+		}else{
+
+			s.journal(file);
+
+		}
+		s.sinceCheckpoint = 0;
+
+	}
+
+	/**
+	 * save と同じく状態を書き出し，EdgeSink が投げた例外を ExecutionException で包む．
+	 */
+	private static void checkpoint(final State s, final EdgeSink sink, final File file, final boolean full) throws IOException, ExecutionException{
+
+		try{
+
+			save(s, sink, file, full);
+
+		}catch(final IOException e){
+
+			throw e;
+
+		}catch(final Exception e){
+
+			throw new ExecutionException(e);
+
+		}
+
+	}
+
+	/**
+	 * チェックポイントファイルに対応するジャーナル．
+	 */
+	private static File journalFile(final File file){
+		return new File(file.getPath() + JournalSuffix);
+	}
+
+	//============================================================================
+	//  Inner classes
+	//============================================================================
+	/**
+	 * 辺の種類．
+	 */
+	public enum Relation{
+
+		/** from が to をお気に入りユーザに登録している */
+		Bookmark,
+
+		/** from と to がマイピクである */
+		MyPixiv
+
+	}
+
+	/**
+	 * 探索で見つかった辺を受け取る．
+	 */
+	public interface EdgeSink{
+
+		/**
+		 * 辺を受け取る．同時に複数のスレッドから呼び出されることはない．
+		 *
+		 * @param from 関係を取得したユーザの ID
+		 * @param to 関係の相手のユーザ ID
+		 * @param relation 辺の種類
+		 * @throws Exception 辺を処理できなかった場合，探索全体を中止する
+		 */
+		public void accept(final int from, final int to, final Relation relation) throws Exception;
+
+		/**
+		 * チェックポイントを書き出す前に呼び出される．
+		 * 再開時に辺が失われないよう，それまでに受け取った辺を永続化して下さい．
+		 *
+		 * @throws Exception 永続化できなかった場合，探索全体を中止する
+		 */
+		public void flush() throws Exception;
+
+	}
+
+	/**
+	 * 1 人分のお気に入りユーザとマイピクの ID を取得するタスク．
+	 * 結果は Relation の順序に対応する ID の配列である．
+	 */
+	private static final class Neighbors implements BulkFetcher.Task<int[][]>{
+
+		private final boolean bookmarks;
+		private final boolean myPixiv;
+
+		Neighbors(final boolean bookmarks, final boolean myPixiv){
+
+			this.bookmarks = bookmarks;
+			this.myPixiv = myPixiv;
+
+		}
+
+		/**
+		 * 取得に失敗した場合は null を返す．
+		 */
+		@Override
+		public int[][] fetch(final PixivAPI api, final int userId) throws InterruptedException {
+
+			final int[][] ret = new int[Relation.values().length][];
+			for(final Relation r : Relation.values()){
+
+				if(r == Relation.Bookmark ? this.bookmarks : this.myPixiv){
+
+					ret[r.ordinal()] = ids(api, userId, r);
+					if(ret[r.ordinal()] == null){
+
+						return null;
+
+					}
+
+				}else{
+
+					ret[r.ordinal()] = new int[0];
+
+				}
+
+			}
+			return ret;
+
+		}
+
+		/**
+		 * 空のページに達するまで全てのページから ID を集める．
+		 *
+		 * @return ID，いずれかのページの取得に失敗した場合は null
+		 */
+		private static int[] ids(final PixivAPI api, final int userId, final Relation relation) throws InterruptedException{
+
+			final PixivAPI.Type type = relation == Relation.Bookmark ? PixivAPI.Type.bookmark_user_all : PixivAPI.Type.mypixiv_all;
+			int[] ret = new int[0];
+			int size = 0;
+			for(int page = 0; true; ++page){
+
+				final Cursor<User> cursor = api.tryOpenUsersById(type, userId, page);
+				int n = 0;
+				if(cursor != null){
+
+					try{
+
+						for(final User u : cursor){
+
+							if(size == ret.length){
+
+								ret = Arrays.copyOf(ret, Math.max(16, size << 1));
+
+							}
+							ret[size++] = u.getId();
+							++n;
+
+						}
+
+					}finally{
+
+						cursor.close();
+
+					}
+
+				}
+
+				// 割り込まれた場合は読み込みに失敗するため，失敗ではなく割り込みとして扱う
+				if(Thread.interrupted()){
+
+					throw new InterruptedException();
+
+				}
+				if(cursor == null || cursor.isFailed()){
+
+					return null;
+
+				}
+				if(n == 0){
+
+					break;
+
+				}
+
+			}
+			return Arrays.copyOf(ret, size);
+
+		}
+
+	}
+
+	/**
+	 * 探索の状態．全てのメンバはこのオブジェクトのロックで保護する．
+	 * <p>
+	 * チェックポイントは，深さの区切りで書き出すスナップショット (深さ，現在の深さのユーザ，見つかったユーザ) と，
+	 * その後に関係を取得し終えたユーザごとの差分を追記するジャーナルからなる．
+	 * ジャーナルの各チャンクは，int の個数，(ユーザ ID，新しく見つかったユーザ数，その ID) の繰り返し，CRC32 からなり，
+	 * 途中で書き込みが止まったチャンクは読み込む際に切り捨てる．
+	 * ジャーナルのヘッダにはスナップショットの識別子を書き，別のスナップショットのジャーナルは使わない．
+	 * </p>
+	 */
+	private static final class State{
+
+		/** 現在の深さ */
+		int depth;
+		/** 現在の深さのユーザ */
+		int[] level;
+		/** 現在の深さで関係を取得し終えたユーザ */
+		final IntHashSet done;
+		/** 次の深さのユーザ */
+		int[] next;
+		/** 次の深さのユーザ数 */
+		int nextSize;
+		/** 見つかったユーザ */
+		final IntBitmap visited;
+		/** 関係を取得し終えたユーザの数 */
+		int expanded;
+		/** 前回のチェックポイント以降に処理したユーザの数 */
+		int sinceCheckpoint = 0;
+
+		/** 書き出したスナップショットの識別子 */
+		private long snapshot = 0;
+		/** ジャーナルが snapshot のヘッダを持ち，追記できる場合 true */
+		private boolean journalReady = false;
+		/** ジャーナルに追記していない差分 */
+		private int[] log = new int[64];
+		/** ジャーナルに追記していない差分の int の個数 */
+		private int logSize = 0;
+
+		private State(final int depth, final int[] level, final IntBitmap visited, final int expanded){
+
+			this.depth = depth;
+			this.level = level;
+			this.done = new IntHashSet();
+			this.next = new int[0];
+			this.nextSize = 0;
+			this.visited = visited;
+			this.expanded = expanded;
+
+		}
+
+		/**
+		 * 起点のユーザから新しい状態を作成する．
+		 */
+		static State start(final int[] seeds){
+
+			final IntBitmap visited = new IntBitmap();
+			final int[] level = new int[seeds.length];
+			int n = 0;
+			for(final int id : seeds){
+
+				if(visited.add(id)){
+
+					level[n++] = id;
+
+				}
+
+			}
+			return new State(0, Arrays.copyOf(level, n), visited, 0);
+
+		}
+
+		/**
+		 * 現在の深さで関係を取得していないユーザ．
+		 */
+		Iterable<Integer> pending(){
+
+			return new Iterable<Integer>(){
+
+				@Override
+				public Iterator<Integer> iterator() {
+
+					return new Iterator<Integer>(){
+
+						private int i = 0;
+
+						@Override
+						public boolean hasNext() {
+
+							synchronized(State.this){
+
+								while(this.i < State.this.level.length && State.this.done.contains(State.this.level[this.i])){
+
+									++this.i;
+
+								}
+								return this.i < State.this.level.length;
+
+							}
+
+						}
+
+						@Override
+						public Integer next() {
+
+							if(!this.hasNext()){
+
+								throw new NoSuchElementException();
+
+							}
+							return State.this.level[this.i++];
+
+						}
+
+						@Override
+						public void remove() {
+							throw new UnsupportedOperationException();
+						}
+
+					};
+
+				}
+
+			};
+
+		}
+
+		/**
+		 * 現在の深さで関係を取得していないユーザの数を数える．
+		 */
+		synchronized int countPending(){
+
+			int ret = 0;
+			for(final int id : this.level){
+
+				if(!this.done.contains(id)){
+
+					++ret;
+
+				}
+
+			}
+			return ret;
+
+		}
+
+		/**
+		 * 取得した関係を辺として出力し，未訪問のユーザを次の深さに加える．
+		 */
+		void expand(final int userId, final int[][] neighbors, final boolean discover, final EdgeSink sink) throws Exception{
+
+			// EdgeSink が例外を投げた場合に途中までの差分が残らないよう，先に辺をすべて出力する
+			for(final Relation r : Relation.values()){
+
+				for(final int to : neighbors[r.ordinal()]){
+
+					sink.accept(userId, to, r);
+
+				}
+
+			}
+
+			final int mark = this.logSize;
+			this.push(userId);
+			this.push(0);
+			if(discover){
+
+				for(final int[] ids : neighbors){
+
+					for(final int to : ids){
+
+						if(this.visited.add(to)){
+
+							this.addNext(to);
+							this.push(to);
+
+						}
+
+					}
+
+				}
+
+			}
+			this.log[mark + 1] = this.logSize - mark - 2;
+			this.done.add(userId);
+			++this.expanded;
+
+		}
+
+		/**
+		 * 次の深さに進む．
+		 */
+		void advance(){
+
+			++this.depth;
+			this.level = Arrays.copyOf(this.next, this.nextSize);
+			this.next = new int[0];
+			this.nextSize = 0;
+			this.done.clear();
+
+		}
+
+		/**
+		 * 深さの区切りで，状態全体をスナップショットとして書き出す．
+		 * 一時ファイルに書き出してからチェックポイントファイルを置き換え，それまでのジャーナルを削除する．
+		 */
+		void snapshot(final File file) throws IOException{
+
+			final long id = new Random().nextLong();
+			final File tmp = new File(file.getPath() + ".tmp");
+			final CheckedOutputStream checked = new CheckedOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)), new CRC32());
+			final DataOutputStream out = new DataOutputStream(checked);
+			try{
+
+				out.writeInt(Magic);
+				out.writeInt(Version);
+				out.writeLong(id);
+				out.writeInt(this.depth);
+				out.writeInt(this.expanded);
+				write(out, this.level, this.level.length);
+				final int[] visited = this.visited.toArray();
+				write(out, visited, visited.length);
+				out.writeLong(checked.getChecksum().getValue());
+
+			}finally{
+
+				out.close();
+
+			}
+			DiskCache.replace(tmp, file);
+
+			// 置き換えた後で削除するため，途中で終了しても古いジャーナルは識別子が合わず使われない
+			journalFile(file).delete();
+			this.snapshot = id;
+			this.journalReady = false;
+			this.logSize = 0;
+
+		}
+
+		/**
+		 * 前回からの差分をジャーナルに追記する．
+		 */
+		void journal(final File file) throws IOException{
+
+			final File journal = journalFile(file);
+			if(!this.journalReady){
+
+				final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(journal)));
+				try{
+
+					out.writeInt(Magic);
+					out.writeLong(this.snapshot);
+
+				}finally{
+
+					out.close();
+
+				}
+				this.journalReady = true;
+
+			}
+			if(this.logSize == 0){
+
+				return;
+
+			}
+
+			final ByteArrayOutputStream buf = new ByteArrayOutputStream(4 + this.logSize * 4);
+			final DataOutputStream chunk = new DataOutputStream(buf);
+			write(chunk, this.log, this.logSize);
+			chunk.close();
+			final byte[] bytes = buf.toByteArray();
+			final CRC32 crc = new CRC32();
+			crc.update(bytes);
+
+			final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(journal, true)));
+			try{
+
+				out.write(bytes);
+				out.writeLong(crc.getValue());
+
+			}finally{
+
+				out.close();
+
+			}
+			this.logSize = 0;
+
+		}
+
+		/**
+		 * チェックポイントファイルとジャーナルから状態を読み込む．
+		 */
+		static State load(final File file) throws IOException{
+
+			final State ret;
+			final CheckedInputStream checked = new CheckedInputStream(new BufferedInputStream(new FileInputStream(file)), new CRC32());
+			final DataInputStream in = new DataInputStream(checked);
+			try{
+
+				if(in.readInt() != Magic || in.readInt() != Version){
+
+					throw new IOException("Not a checkpoint file: " + file);
+
+				}
+
+				final long id = in.readLong();
+				final int depth = in.readInt();
+				final int expanded = in.readInt();
+				final int[] level = read(in);
+				final int[] visited = read(in);
+				final long crc = checked.getChecksum().getValue();
+				if(in.readLong() != crc){
+
+					throw new IOException("Broken checkpoint file: " + file);
+
+				}
+
+				final IntBitmap visitedSet = new IntBitmap();
+				visitedSet.addAll(visited);
+				ret = new State(depth, level, visitedSet, expanded);
+				ret.snapshot = id;
+
+			}finally{
+
+				in.close();
+
+			}
+
+			ret.replay(journalFile(file));
+			return ret;
+
+		}
+
+		/**
+		 * ジャーナルの差分を適用する．途中で書き込みが止まったチャンクは切り捨て，続きを追記できるようにする．
+		 */
+		private void replay(final File journal) throws IOException{
+
+			if(!journal.isFile()){
+
+				return;
+
+			}
+
+			final long length = journal.length();
+			long valid = 0;
+			final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(journal)));
+			try{
+
+				if(in.readInt() != Magic || in.readLong() != this.snapshot){
+
+					// 別のスナップショットのジャーナルは作り直す
+					return;
+
+				}
+				valid = 12;
+
+				final CRC32 crc = new CRC32();
+				while(true){
+
+					final int size = in.readInt();
+					if(size < 0 || valid + 4 + size * 4L + 8 > length){
+
+						break;
+
+					}
+
+					final byte[] bytes = new byte[4 + size * 4];
+					in.readFully(bytes, 4, bytes.length - 4);
+					bytes[0] = (byte)(size >>> 24);
+					bytes[1] = (byte)(size >>> 16);
+					bytes[2] = (byte)(size >>> 8);
+					bytes[3] = (byte)size;
+					crc.reset();
+					crc.update(bytes);
+					if(in.readLong() != crc.getValue()){
+
+						break;
+
+					}
+
+					final DataInputStream chunk = new DataInputStream(new ByteArrayInputStream(bytes, 4, bytes.length - 4));
+					for(int i = 0; i < size;){
+
+						final int userId = chunk.readInt();
+						final int found = chunk.readInt();
+						for(int j = 0; j != found; ++j){
+
+							final int to = chunk.readInt();
+							this.visited.add(to);
+							this.addNext(to);
+
+						}
+						this.done.add(userId);
+						++this.expanded;
+						i += 2 + found;
+
+					}
+					valid += bytes.length + 8;
+
+				}
+
+			}catch(final EOFException e){
+
+				// 末尾のチャンクが途中で終わっている
+
+			}finally{
+
+				in.close();
+
+			}
+
+			if(valid != 0){
+
+				final RandomAccessFile f = new RandomAccessFile(journal, "rw");
+				try{
+
+					f.setLength(valid);
+
+				}finally{
+
+					f.close();
+
+				}
+				this.journalReady = true;
+
+			}
+
+		}
+
+		private void addNext(final int id){
+
+			if(this.nextSize == this.next.length){
+
+				this.next = Arrays.copyOf(this.next, Math.max(16, this.nextSize << 1));
+
+			}
+			this.next[this.nextSize++] = id;
+
+		}
+
+		private void push(final int value){
+
+			if(this.logSize == this.log.length){
+
+				this.log = Arrays.copyOf(this.log, this.logSize << 1);
+
+			}
+			this.log[this.logSize++] = value;
+
+		}
+
+		private static void write(final DataOutputStream out, final int[] values, final int size) throws IOException{
+
+			out.writeInt(size);
+			for(int i = 0; i < size; ++i){
+
+				out.writeInt(values[i]);
+
+			}
+
+		}
+
+		private static int[] read(final DataInputStream in) throws IOException{
+
+			final int size = in.readInt();
+			if(size < 0){
+
+				throw new IOException("Broken checkpoint file");
+
+			}
+
+			final int[] ret = new int[size];
+			for(int i = 0; i < size; ++i){
+
+				ret[i] = in.readInt();
+
+			}
+			return ret;
+
+		}
+
+	}
+
+}
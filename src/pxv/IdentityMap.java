@@ -0,0 +1,137 @@
+/*
+ *  Copyright (C) 2010 Junpei Kawamoto
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package pxv;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * ID ごとに 1 つのオブジェクトを保持する対応 (identity map)．
+ * <p>
+ * オブジェクトは弱参照で保持し，どこからも参照されなくなったものはガベージコレクションにより取り除かれる．
+ * 各メソッドはスレッドセーフである．
+ * </p>
+ *
+ * @param <T> 保持するオブジェクトの型
+ */
+class IdentityMap<T> {
+
+	private final ConcurrentMap<Integer, Ref<T>> entries = new ConcurrentHashMap<Integer, Ref<T>>();
+	/** 回収されたオブジェクトの参照 */
+	private final ReferenceQueue<T> queue = new ReferenceQueue<T>();
+
+	//============================================================================
+	//  Package private methods
+	//============================================================================
+	/**
+	 * ID に対応するオブジェクトを取得する．
+	 *
+	 * @param id ID
+	 * @return 対応するオブジェクト，無い場合は null
+	 */
+	T get(final int id){
+
+		this.purge();
+		final Ref<T> ref = this.entries.get(id);
+		return ref != null ? ref.get() : null;
+
+	}
+
+	/**
+	 * ID に対応するオブジェクトを登録する．
+	 * 既に対応するオブジェクトがある場合は登録せず，そのオブジェクトを返す．
+	 *
+	 * @param id ID
+	 * @param value 登録するオブジェクト
+	 * @return ID に対応するオブジェクト
+	 */
+	T intern(final int id, final T value){
+
+		this.purge();
+		final Ref<T> ref = new Ref<T>(id, value, this.queue);
+		while(true){
+
+			final Ref<T> old = this.entries.putIfAbsent(id, ref);
+			if(old == null){
+
+				return value;
+
+			}
+
+			final T current = old.get();
+			if(current != null){
+
+				return current;
+
+			}
+			if(this.entries.replace(id, old, ref)){
+
+				return value;
+
+			}
+
+		}
+
+	}
+
+	/**
+	 * 保持しているオブジェクトの数を取得する．回収済みで取り除いていないものを含む場合がある．
+	 */
+	int size(){
+
+		this.purge();
+		return this.entries.size();
+
+	}
+
+	//============================================================================
+	//  Private methods
+	//============================================================================
+	/**
+	 * 回収されたオブジェクトのエントリを取り除く．
+	 */
+	@SuppressWarnings("unchecked")
+	private void purge(){
+
+		for(Ref<T> ref; (ref = (Ref<T>)this.queue.poll()) != null;){
+
+			this.entries.remove(ref.id, ref);
+
+		}
+
+	}
+
+	//============================================================================
+	//  Inner classes
+	//============================================================================
+	private static final class Ref<T> extends WeakReference<T>{
+
+		final int id;
+
+		Ref(final int id, final T value, final ReferenceQueue<T> queue){
+
+			super(value, queue);
+			this.id = id;
+
+		}
+
+	}
+
+}
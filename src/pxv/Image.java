@@ -1,314 +1,457 @@
-/*
- *  Copyright (C) 2010 Junpei Kawamoto
- *
- *  This program is free software: you can redistribute it and/or modify
- *  it under the terms of the GNU Lesser General Public License as published by
- *  the Free Software Foundation, either version 3 of the License, or
- *  (at your option) any later version.
- *
- *  This program is distributed in the hope that it will be useful,
- *  but WITHOUT ANY WARRANTY; without even the implied warranty of
- *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
- *  GNU Lesser General Public License for more details.
- *
- *  You should have received a copy of the GNU Lesser General Public License
- *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
- *
- */
-package pxv;
-
-import java.io.IOException;
-import java.net.URL;
-
-/**
- * Pixiv における画像データをラップするクラス．
- * <p>
- * このオブジェクトが画像そのものを表すわけではありません．
- * 実際の画像 URL は，getImageURL から取得できます．
- * </p>
- *
- * @since 0.1
- */
-public class Image {
-
-	/** 親オブジェクト */
-	private final PixivAPI api;
-
-	/** イラストID */
-	private final int id;
-	/** ユーザーID */
-	private final int authorId;
-	/** 拡張子 */
-	private final String ext;
-	/** タイトル */
-	private final String title;
-	/** 画像サーバ */
-	private final String server;
-	/** 作者 */
-	private final String authorName;
-	/** サムネイル URL */
-	private final URL thumbURL;
-	/** モバイル画像 URL */
-	private final URL mobileURL;
-	/** 日付 */
-	private final String date;
-	/** タグ */
-	private final String tags;
-	/** 制作ツール */
-	private final String tool;
-	/** 評価点 */
-	private final int feedback;
-	/** 総合点 */
-	private final int point;
-	/** 閲覧数 */
-	private final int views;
-	/** 作者コメント */
-	private final String comment;
-	/** 画像ページの URL */
-	private final URL url;
-	/** 画像の URL */
-	private final URL imageURL;
-
-	Image(final PixivAPI api, final String[] data) throws IOException{
-		assert data.length > 17;
-
-		this.api = api;
-		this.id = Integer.parseInt(data[0]);
-		this.authorId = Integer.parseInt(data[1]);
-		this.ext = data[2];
-		this.title = data[3];
-		this.server = data[4];
-		this.authorName = data[5];
-		this.thumbURL = new URL(data[6]);
-		this.mobileURL = new URL(data[9]);
-		this.date = data[12];
-		this.tags = data[13];
-		this.tool = data[14];
-		this.feedback = Integer.parseInt(data[15]);
-		this.point = Integer.parseInt(data[16]);
-		this.views = Integer.parseInt(data[17]);
-		this.comment = data[18];
-
-		this.url = new URL(String.format("http://www.pixiv.net/member_illust.php?mode=medium&illust_id=%s", this.id));
-
-		final String rawMobileURL = this.mobileURL.toString();
-		this.imageURL = new URL(rawMobileURL.substring(0, rawMobileURL.lastIndexOf("/mobile/") + 1) + this.id + "." + this.ext);
-
-	}
-
-	/**
-	 * イラスト ID を取得する．
-	 *
-	 * @return イラスト ID
-	 */
-	public int getId(){
-		return this.id;
-	}
-
-	/**
-	 * 作者の ID を取得する．
-	 *
-	 * @return このイラストの作者 ID
-	 */
-	public int getAuthorId() {
-		return authorId;
-	}
-
-	/**
-	 * イラストの拡張子を取得する．
-	 *
-	 * @return このイラストの拡張子
-	 */
-	public String getExt() {
-		return ext;
-	}
-
-	/**
-	 * タイトルを取得する．
-	 *
-	 * @return このイラストのタイトル
-	 */
-	public String getTitle() {
-		return title;
-	}
-
-	/**
-	 * サーバ名を取得する．
-	 *
-	 * @return このイラストが保管されているサーバ名
-	 */
-	public String getServer() {
-		return server;
-	}
-
-	/**
-	 * 作者名を取得する．
-	 *
-	 * @return このイラストの作者
-	 */
-	public String getAuthorName() {
-		return authorName;
-	}
-
-	/**
-	 * サムネイル画像の URL を取得する．
-	 *
-	 * @return サムネイル画像の URL
-	 */
-	public URL getThumbURL() {
-		return thumbURL;
-	}
-
-	/**
-	 * モバイル用画像の URL を取得する．
-	 *
-	 * @return モバイル用画像の URL
-	 */
-	public URL getMobileURL() {
-		return mobileURL;
-	}
-
-	/**
-	 * 投稿日を取得する．
-	 *
-	 * @return このイラストの投稿日
-	 */
-	public String getDate() {
-		return date;
-	}
-
-	/**
-	 * このイラストに付加されたタグを取得する．
-	 *
-	 * @return このイラストに付けられたタグ
-	 */
-	public String getTags() {
-		return tags;
-	}
-
-	/**
-	 * 制作ツール名を取得する．
-	 *
-	 * @return 制作ツール名
-	 */
-	public String getTool() {
-		return tool;
-	}
-
-	/**
-	 * 評価点を取得する．
-	 *
-	 * @return 評価点
-	 */
-	public int getFeedback() {
-		return feedback;
-	}
-
-	/**
-	 * 総合点を取得する
-	 *
-	 * @return 総合点
-	 */
-	public int getPoint() {
-		return point;
-	}
-
-	/**
-	 * 閲覧数を取得する．
-	 *
-	 * @return 閲覧数
-	 */
-	public int getViews() {
-		return views;
-	}
-
-	/**
-	 * 作者コメントを取得する．
-	 *
-	 * @return 作者コメント
-	 */
-	public String getComment() {
-		return comment;
-	}
-
-	/**
-	 * 画像ページの URL を取得する．
-	 *
-	 * @return 画像ページの URL
-	 */
-	public URL getUrl() {
-		return url;
-	}
-
-	/**
-	 * 画像の URL を取得する．
-	 *
-	 * @return 画像の URL
-	 */
-	public URL getImageURL() {
-		return imageURL;
-	}
-
-	//----------------------------------------------------------------------------
-
-	/**
-	 * このイラストの作者を取得する．
-	 *
-	 * @return このイラストの作者を表す User オブジェクト
-	 */
-	public User getAuthor(){
-		return this.api.findUser(this.getAuthorId(), this.getAuthorName());
-	}
-
-	//----------------------------------------------------------------------------
-
-	/* (非 Javadoc)
-	 * @see java.lang.Object#toString()
-	 */
-	@Override
-	public String toString(){
-
-		final StringBuilder ret = new StringBuilder();
-		ret.append(this.getClass().getName());
-		ret.append("[id: ");
-		ret.append(this.getId());
-		ret.append(", title: ");
-		ret.append(this.getTitle());
-		ret.append(", author name: ");
-		ret.append(this.getAuthorName());
-		ret.append(", data: ");
-		ret.append(this.getDate());
-		ret.append("]");
-
-		return ret.toString();
-
-	}
-
-	/* (非 Javadoc)
-	 * @see java.lang.Object#hashCode()
-	 */
-	@Override
-	public int hashCode() {
-
-		return Integer.valueOf(this.id).hashCode();
-
-	}
-
-	/* (非 Javadoc)
-	 * @see java.lang.Object#equals(java.lang.Object)
-	 */
-	@Override
-	public boolean equals(final Object obj) {
-
-		if(obj instanceof Image){
-
-			final Image that = (Image)obj;
-			return this.getId() == that.getId();
-
-		}
-
-		return super.equals(obj);
-	}
-
-
-}
+/*
+ *  Copyright (C) 2010 Junpei Kawamoto
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package pxv;
+
+import java.io.IOException;
+import java.net.URL;
+
+/**
+ * Pixiv における画像データをラップするクラス．
+ * <p>
+ * このオブジェクトが画像そのものを表すわけではありません．
+ * 実際の画像 URL は，getImageURL から取得できます．
+ * </p>
+ *
+ * @since 0.1
+ */
+public class Image {
+
+	/** 親オブジェクト */
+	private final PixivAPI api;
+
+	/** イラストID */
+	private final int id;
+	/** ユーザーID */
+	private final int authorId;
+	/** 拡張子 */
+	private final String ext;
+	/** タイトル */
+	private final String title;
+	/** 画像サーバ */
+	private final String server;
+	/** 作者 */
+	private final String authorName;
+	/** サムネイル URL */
+	private final URL thumbURL;
+	/** モバイル画像 URL */
+	private final URL mobileURL;
+	/** 日付 */
+	private final String date;
+	/** タグ */
+	private final String tags;
+	/** 制作ツール */
+	private final String tool;
+	/** 評価点，同じイラストを再び読み込んだ際に更新される */
+	private volatile int feedback;
+	/** 総合点，同じイラストを再び読み込んだ際に更新される */
+	private volatile int point;
+	/** 閲覧数，同じイラストを再び読み込んだ際に更新される */
+	private volatile int views;
+	/** 作者コメント */
+	private final String comment;
+	/** 画像ページの URL */
+	private final URL url;
+	/** 画像の URL */
+	private final URL imageURL;
+
+	Image(final PixivAPI api, final String[] data) throws IOException{
+		this(api, Integer.parseInt(data[0]), Integer.parseInt(data[1]), data[2], data[3], data[4], data[5], data[6], data[9],
+				data[12], data[13], data[14], Integer.parseInt(data[15]), Integer.parseInt(data[16]), Integer.parseInt(data[17]), data[18]);
+	}
+
+	Image(final PixivAPI api, final int id, final int authorId, final String ext, final String title, final String server, final String authorName,
+			final String thumbURL, final String mobileURL, final String date, final String tags, final String tool,
+			final int feedback, final int point, final int views, final String comment) throws IOException{
+
+		this.api = api;
+		this.id = id;
+		this.authorId = authorId;
+		this.ext = ext;
+		this.title = title;
+		this.server = server;
+		this.authorName = authorName;
+		this.thumbURL = new URL(thumbURL);
+		this.mobileURL = new URL(mobileURL);
+		this.date = date;
+		this.tags = tags;
+		this.tool = tool;
+		this.feedback = feedback;
+		this.point = point;
+		this.views = views;
+		this.comment = comment;
+
+		this.url = new URL(String.format("http://www.pixiv.net/member_illust.php?mode=medium&illust_id=%s", this.id));
+
+		final String rawMobileURL = this.mobileURL.toString();
+		this.imageURL = new URL(rawMobileURL.substring(0, rawMobileURL.lastIndexOf("/mobile/") + 1) + this.id + "." + this.ext);
+
+	}
+
+	/**
+	 * イラスト ID を取得する．
+	 *
+	 * @return イラスト ID
+	 */
+	public int getId(){
+		return this.id;
+	}
+
+	/**
+	 * 作者の ID を取得する．
+	 *
+	 * @return このイラストの作者 ID
+	 */
+	public int getAuthorId() {
+		return authorId;
+	}
+
+	/**
+	 * イラストの拡張子を取得する．
+	 *
+	 * @return このイラストの拡張子
+	 */
+	public String getExt() {
+		return ext;
+	}
+
+	/**
+	 * タイトルを取得する．
+	 *
+	 * @return このイラストのタイトル
+	 */
+	public String getTitle() {
+		return title;
+	}
+
+	/**
+	 * サーバ名を取得する．
+	 *
+	 * @return このイラストが保管されているサーバ名
+	 */
+	public String getServer() {
+		return server;
+	}
+
+	/**
+	 * 作者名を取得する．
+	 *
+	 * @return このイラストの作者
+	 */
+	public String getAuthorName() {
+		return authorName;
+	}
+
+	/**
+	 * サムネイル画像の URL を取得する．
+	 *
+	 * @return サムネイル画像の URL
+	 */
+	public URL getThumbURL() {
+		return thumbURL;
+	}
+
+	/**
+	 * モバイル用画像の URL を取得する．
+	 *
+	 * @return モバイル用画像の URL
+	 */
+	public URL getMobileURL() {
+		return mobileURL;
+	}
+
+	/**
+	 * 投稿日を取得する．
+	 *
+	 * @return このイラストの投稿日
+	 */
+	public String getDate() {
+		return date;
+	}
+
+	/**
+	 * このイラストに付加されたタグを取得する．
+	 *
+	 * @return このイラストに付けられたタグ
+	 */
+	public String getTags() {
+		return tags;
+	}
+
+	/**
+	 * 制作ツール名を取得する．
+	 *
+	 * @return 制作ツール名
+	 */
+	public String getTool() {
+		return tool;
+	}
+
+	/**
+	 * 評価点を取得する．
+	 *
+	 * @return 評価点
+	 */
+	public int getFeedback() {
+		return feedback;
+	}
+
+	/**
+	 * 総合点を取得する
+	 *
+	 * @return 総合点
+	 */
+	public int getPoint() {
+		return point;
+	}
+
+	/**
+	 * 閲覧数を取得する．
+	 *
+	 * @return 閲覧数
+	 */
+	public int getViews() {
+		return views;
+	}
+
+	/**
+	 * 作者コメントを取得する．
+	 *
+	 * @return 作者コメント
+	 */
+	public String getComment() {
+		return comment;
+	}
+
+	/**
+	 * 画像ページの URL を取得する．
+	 *
+	 * @return 画像ページの URL
+	 */
+	public URL getUrl() {
+		return url;
+	}
+
+	/**
+	 * 画像の URL を取得する．
+	 *
+	 * @return 画像の URL
+	 */
+	public URL getImageURL() {
+		return imageURL;
+	}
+
+	//----------------------------------------------------------------------------
+
+	/**
+	 * このイラストの作者を取得する．
+	 *
+	 * @return このイラストの作者を表す User オブジェクト
+	 */
+	public User getAuthor(){
+		return this.api.findUser(this.getAuthorId(), this.getAuthorName());
+	}
+
+	//----------------------------------------------------------------------------
+
+	/* (非 Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString(){
+
+		final StringBuilder ret = new StringBuilder();
+		ret.append(this.getClass().getName());
+		ret.append("[id: ");
+		ret.append(this.getId());
+		ret.append(", title: ");
+		ret.append(this.getTitle());
+		ret.append(", author name: ");
+		ret.append(this.getAuthorName());
+		ret.append(", data: ");
+		ret.append(this.getDate());
+		ret.append("]");
+
+		return ret.toString();
+
+	}
+
+	/**
+	 * 再び読み込んだ値で評価点，総合点，閲覧数を更新する．
+	 * これらは増えるだけの値なので，キャッシュやダンプから読み込んだ古い値で戻さないように大きい方を残す．
+	 */
+	synchronized void update(final int feedback, final int point, final int views){
+
+		this.feedback = Math.max(this.feedback, feedback);
+		this.point = Math.max(this.point, point);
+		this.views = Math.max(this.views, views);
+
+	}
+
+	/* (非 Javadoc)
+	 * @see java.lang.Object#hashCode()
+	 */
+	@Override
+	public int hashCode() {
+
+		return Integer.valueOf(this.id).hashCode();
+
+	}
+
+	/* (非 Javadoc)
+	 * @see java.lang.Object#equals(java.lang.Object)
+	 */
+	@Override
+	public boolean equals(final Object obj) {
+
+		if(obj instanceof Image){
+
+			final Image that = (Image)obj;
+			return this.getId() == that.getId();
+
+		}
+
+		return super.equals(obj);
+	}
+
+	//============================================================================
+	//  Inner classes
+	//============================================================================
+	/**
+	 * CSV のレコードから Image が利用する列だけを取り出して保持する Decoder．
+	 * 取り出した列からレコードを組み立てる build はサブクラスで実装する．
+	 *
+	 * @param <T> 組み立てるレコードの型
+	 */
+	abstract static class RowDecoder<T> implements CSVScanner.Decoder<T>{
+
+		/** Image が利用する列 */
+		private static final CSVScanner.Projection Columns = new CSVScanner.Projection()
+			.integer(0, 1, 15, 16, 17)
+			.text(2, 3, 4, 5, 6, 9, 12, 13, 14, 18);
+
+		int id;
+		int authorId;
+		String ext;
+		String title;
+		String server;
+		String authorName;
+		String thumbURL;
+		String mobileURL;
+		String date;
+		String tags;
+		String tool;
+		int feedback;
+		int point;
+		int views;
+		String comment;
+
+		@Override
+		public CSVScanner.Projection getProjection() {
+			return Columns;
+		}
+
+		@Override
+		public void begin() {
+
+			this.id = this.authorId = this.feedback = this.point = this.views = 0;
+			this.ext = this.title = this.server = this.authorName = this.thumbURL = this.mobileURL = null;
+			this.date = this.tags = this.tool = this.comment = null;
+
+		}
+
+		@Override
+		public void text(final int column, final String value) {
+
+			switch(column){
+			case 2: this.ext = value; break;
+			case 3: this.title = value; break;
+			case 4: this.server = value; break;
+			case 5: this.authorName = value; break;
+			case 6: this.thumbURL = value; break;
+			case 9: this.mobileURL = value; break;
+			case 12: this.date = value; break;
+			case 13: this.tags = value; break;
+			case 14: this.tool = value; break;
+			case 18: this.comment = value; break;
+			}
+
+		}
+
+		@Override
+		public void integer(final int column, final int value) {
+
+			switch(column){
+			case 0: this.id = value; break;
+			case 1: this.authorId = value; break;
+			case 15: this.feedback = value; break;
+			case 16: this.point = value; break;
+			case 17: this.views = value; break;
+			}
+
+		}
+
+	}
+
+	/**
+	 * CSV のレコードから，Image が利用する列だけを取り出して Image を組み立てる Decoder．
+	 */
+	static final class Decoder extends RowDecoder<Image>{
+
+		private final PixivAPI api;
+
+		Decoder(final PixivAPI api){
+			this.api = api;
+		}
+
+		@Override
+		public Image build() throws IOException {
+
+			if(this.api != null){
+
+				final Image known = this.api.lookupImage(this.id);
+				if(known != null){
+
+					known.update(this.feedback, this.point, this.views);
+					return known;
+
+				}
+
+			}
+
+			final Image ret = new Image(this.api, this.id, this.authorId, this.ext, this.title, this.server, this.authorName, this.thumbURL, this.mobileURL,
+					this.date, this.tags, this.tool, this.feedback, this.point, this.views, this.comment);
+			if(this.api == null){
+
+				return ret;
+
+			}
+
+			// 他のスレッドが先に登録した場合は，そのイラストを今回読み込んだ値で更新する
+			final Image interned = this.api.intern(ret);
+			if(interned != ret){
+
+				interned.update(this.feedback, this.point, this.views);
+
+			}
+			return interned;
+
+		}
+
+	}
+
+}
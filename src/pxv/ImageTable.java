@@ -0,0 +1,668 @@
+/*
+ *  Copyright (C) 2010 Junpei Kawamoto
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package pxv;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 多数のイラストの情報を列ごとの配列で保持する表．
+ * <p>
+ * Image は URL オブジェクトを 4 つと多数の文字列を持つため，数百万件を保持するとギガバイト単位のメモリを消費します．
+ * この表は ID，作者 ID，評価点，総合点，閲覧数を int の配列で保持し，
+ * 繰り返し現れるサーバ，拡張子，制作ツール，作者名は辞書に登録した文字列の番号で保持します．
+ * サムネイルとモバイル用画像の URL はディレクトリとファイル名に分けて辞書に登録し，
+ * ファイル名がイラスト ID で始まる場合は ID を除いた残りだけを登録します．
+ * 画像ページと画像の URL は保持せず，Image を作成する際に求めます．
+ * </p>
+ * <p>
+ * 同じ ID のイラストを再び追加した場合は，行を追加せずに評価点，総合点，閲覧数を更新します．
+ * これらは増えるだけの値なので，それぞれ大きい方の値を残します．
+ * 各行の値は行番号を指定して取得し，Image は getImage を呼び出した時点で作成します．
+ * このクラスはスレッドセーフではありません．
+ * </p>
+ * <pre>
+ * final ImageTable table = new ImageTable(api);
+ * for(int page = 0; api.appendDailyRankingImages(table, page) != 0; ++page);
+ * for(final int row : table.sortedRows(ImageTable.IntColumn.Views, true)){ ... }
+ * </pre>
+ *
+ * @since 0.2
+ */
+public class ImageTable {
+
+	/** ファイル名がイラスト ID で始まることを表す印 */
+	private static final char IdPrefix = '\0';
+
+	/** Image を作成する際に使う PixivAPI */
+	private final PixivAPI api;
+
+	/** 行数 */
+	private int size = 0;
+	/** イラスト ID から行番号を引く表 */
+	private final IntIntHashMap rows;
+
+	/** int の列，IntColumn の順序に対応する */
+	private final int[][] ints = new int[IntColumn.values().length][];
+
+	/** 拡張子の番号 */
+	private int[] ext;
+	/** 画像サーバの番号 */
+	private int[] server;
+	/** 作者名の番号 */
+	private int[] authorName;
+	/** 制作ツールの番号 */
+	private int[] tool;
+	/** サムネイル URL のディレクトリの番号 */
+	private int[] thumbDir;
+	/** サムネイル URL のファイル名の番号 */
+	private int[] thumbName;
+	/** モバイル画像 URL のディレクトリの番号 */
+	private int[] mobileDir;
+	/** モバイル画像 URL のファイル名の番号 */
+	private int[] mobileName;
+
+	/** タイトル */
+	private String[] title;
+	/** 投稿日 */
+	private String[] date;
+	/** タグ */
+	private String[] tags;
+	/** 作者コメント */
+	private String[] comment;
+
+	/** 拡張子，画像サーバ，作者名，制作ツールの辞書 */
+	private final Dictionary labels = new Dictionary();
+	/** URL のディレクトリとファイル名の辞書 */
+	private final Dictionary paths = new Dictionary();
+
+	//============================================================================
+	//  Constructors
+	//============================================================================
+	/**
+	 * 空の表を作成する．
+	 *
+	 * @param api Image を作成する際に使う PixivAPI
+	 */
+	public ImageTable(final PixivAPI api){
+		this(api, 256);
+	}
+
+	/**
+	 * 想定する行数を指定して空の表を作成する．
+	 *
+	 * @param api Image を作成する際に使う PixivAPI
+	 * @param capacity 想定する行数
+	 */
+	public ImageTable(final PixivAPI api, final int capacity){
+
+		this.api = api;
+		this.rows = new IntIntHashMap(capacity);
+		this.allocate(Math.max(capacity, 16));
+
+	}
+
+	//============================================================================
+	//  Public methods
+	//============================================================================
+	//----------------------------------------------------------------------------
+	//  Rows
+	//----------------------------------------------------------------------------
+	/**
+	 * 行数を取得する．
+	 *
+	 * @return 行数
+	 */
+	public int size(){
+		return this.size;
+	}
+
+	/**
+	 * イラストを追加する．同じ ID のイラストがある場合は評価点，総合点，閲覧数を更新する．
+	 *
+	 * @param image 追加するイラスト
+	 * @return 行番号
+	 */
+	public int add(final Image image){
+
+		return this.append(image.getId(), image.getAuthorId(), image.getExt(), image.getTitle(), image.getServer(), image.getAuthorName(),
+				image.getThumbURL().toString(), image.getMobileURL().toString(), image.getDate(), image.getTags(), image.getTool(),
+				image.getFeedback(), image.getPoint(), image.getViews(), image.getComment());
+
+	}
+
+	/**
+	 * イラスト ID に対応する行番号を取得する．
+	 *
+	 * @param id イラスト ID
+	 * @return 行番号，無い場合は -1
+	 */
+	public int indexOf(final int id){
+		return this.rows.get(id, -1);
+	}
+
+	/**
+	 * 行のイラストを表す Image を作成する．
+	 *
+	 * @param row 行番号
+	 * @return 作成した Image
+	 * @throws IOException 保持している URL が正しくない場合
+	 */
+	public Image getImage(final int row) throws IOException{
+
+		this.check(row);
+		return new Image(this.api, this.getId(row), this.getAuthorId(row), this.getExt(row), this.title[row], this.getServer(row), this.getAuthorName(row),
+				this.getThumbURL(row), this.getMobileURL(row), this.date[row], this.tags[row], this.getTool(row),
+				this.getFeedback(row), this.getPoint(row), this.getViews(row), this.comment[row]);
+
+	}
+
+	/**
+	 * int の列で並べ替えた行番号を取得する．値が等しい行は行番号の順に並ぶ．
+	 * 並べ替えはオブジェクトを作らずに行う．
+	 *
+	 * @param column 並べ替えに使う列
+	 * @param descending 降順に並べる場合 true
+	 * @return 並べ替えた行番号
+	 */
+	public int[] sortedRows(final IntColumn column, final boolean descending){
+
+		final int[] values = this.ints[column.ordinal()];
+		final long[] keys = new long[this.size];
+		for(int row = 0; row != this.size; ++row){
+
+			final int v = descending ? ~values[row] : values[row];
+			keys[row] = (long)v << 32 | row;
+
+		}
+		Arrays.sort(keys);
+
+		final int[] ret = new int[this.size];
+		for(int i = 0; i != this.size; ++i){
+
+			ret[i] = (int)keys[i];
+
+		}
+		return ret;
+
+	}
+
+	/**
+	 * int の列の値を取得する．
+	 *
+	 * @param column 列
+	 * @param row 行番号
+	 * @return 値
+	 */
+	public int get(final IntColumn column, final int row){
+
+		this.check(row);
+		return this.ints[column.ordinal()][row];
+
+	}
+
+	/**
+	 * int の列の全ての値を配列で取得する．
+	 *
+	 * @param column 列
+	 * @return 行番号の順に並べた値
+	 */
+	public int[] toArray(final IntColumn column){
+		return Arrays.copyOf(this.ints[column.ordinal()], this.size);
+	}
+
+	//----------------------------------------------------------------------------
+	//  Columns
+	//----------------------------------------------------------------------------
+	/**
+	 * イラスト ID を取得する．
+	 *
+	 * @param row 行番号
+	 * @return イラスト ID
+	 */
+	public int getId(final int row){
+		return this.get(IntColumn.Id, row);
+	}
+
+	/**
+	 * 作者の ID を取得する．
+	 *
+	 * @param row 行番号
+	 * @return 作者 ID
+	 */
+	public int getAuthorId(final int row){
+		return this.get(IntColumn.AuthorId, row);
+	}
+
+	/**
+	 * 評価点を取得する．
+	 *
+	 * @param row 行番号
+	 * @return 評価点
+	 */
+	public int getFeedback(final int row){
+		return this.get(IntColumn.Feedback, row);
+	}
+
+	/**
+	 * 総合点を取得する．
+	 *
+	 * @param row 行番号
+	 * @return 総合点
+	 */
+	public int getPoint(final int row){
+		return this.get(IntColumn.Point, row);
+	}
+
+	/**
+	 * 閲覧数を取得する．
+	 *
+	 * @param row 行番号
+	 * @return 閲覧数
+	 */
+	public int getViews(final int row){
+		return this.get(IntColumn.Views, row);
+	}
+
+	/**
+	 * 拡張子を取得する．
+	 *
+	 * @param row 行番号
+	 * @return 拡張子
+	 */
+	public String getExt(final int row){
+
+		this.check(row);
+		return this.labels.decode(this.ext[row]);
+
+	}
+
+	/**
+	 * 画像サーバ名を取得する．
+	 *
+	 * @param row 行番号
+	 * @return 画像サーバ名
+	 */
+	public String getServer(final int row){
+
+		this.check(row);
+		return this.labels.decode(this.server[row]);
+
+	}
+
+	/**
+	 * 作者名を取得する．
+	 *
+	 * @param row 行番号
+	 * @return 作者名
+	 */
+	public String getAuthorName(final int row){
+
+		this.check(row);
+		return this.labels.decode(this.authorName[row]);
+
+	}
+
+	/**
+	 * 制作ツール名を取得する．
+	 *
+	 * @param row 行番号
+	 * @return 制作ツール名
+	 */
+	public String getTool(final int row){
+
+		this.check(row);
+		return this.labels.decode(this.tool[row]);
+
+	}
+
+	/**
+	 * タイトルを取得する．
+	 *
+	 * @param row 行番号
+	 * @return タイトル
+	 */
+	public String getTitle(final int row){
+
+		this.check(row);
+		return this.title[row];
+
+	}
+
+	/**
+	 * 投稿日を取得する．
+	 *
+	 * @param row 行番号
+	 * @return 投稿日
+	 */
+	public String getDate(final int row){
+
+		this.check(row);
+		return this.date[row];
+
+	}
+
+	/**
+	 * タグを取得する．
+	 *
+	 * @param row 行番号
+	 * @return タグ
+	 */
+	public String getTags(final int row){
+
+		this.check(row);
+		return this.tags[row];
+
+	}
+
+	/**
+	 * 作者コメントを取得する．
+	 *
+	 * @param row 行番号
+	 * @return 作者コメント
+	 */
+	public String getComment(final int row){
+
+		this.check(row);
+		return this.comment[row];
+
+	}
+
+	/**
+	 * サムネイル画像の URL を取得する．
+	 *
+	 * @param row 行番号
+	 * @return サムネイル画像の URL
+	 */
+	public String getThumbURL(final int row){
+
+		this.check(row);
+		return this.joinPath(row, this.thumbDir[row], this.thumbName[row]);
+
+	}
+
+	/**
+	 * モバイル用画像の URL を取得する．
+	 *
+	 * @param row 行番号
+	 * @return モバイル用画像の URL
+	 */
+	public String getMobileURL(final int row){
+
+		this.check(row);
+		return this.joinPath(row, this.mobileDir[row], this.mobileName[row]);
+
+	}
+
+	//============================================================================
+	//  Package private methods
+	//============================================================================
+	/**
+	 * 応答の各行をこの表に追加する Decoder を作成する．
+	 */
+	CSVScanner.Decoder<ImageTable> decoder(){
+		return new Decoder(this);
+	}
+
+	/**
+	 * 1 行追加する．同じ ID の行がある場合は評価点，総合点，閲覧数をそれぞれ大きい方の値に更新する．
+	 *
+	 * @return 行番号
+	 */
+	int append(final int id, final int authorId, final String ext, final String title, final String server, final String authorName,
+			final String thumbURL, final String mobileURL, final String date, final String tags, final String tool,
+			final int feedback, final int point, final int views, final String comment){
+
+		final int row = this.rows.putIfAbsent(id, this.size);
+		if(row == this.size){
+
+			if(this.size == this.title.length){
+
+				this.allocate(this.size << 1);
+
+			}
+
+			this.ints[IntColumn.Id.ordinal()][row] = id;
+			this.ints[IntColumn.AuthorId.ordinal()][row] = authorId;
+			this.ext[row] = this.labels.encode(ext);
+			this.server[row] = this.labels.encode(server);
+			this.authorName[row] = this.labels.encode(authorName);
+			this.tool[row] = this.labels.encode(tool);
+			this.thumbDir[row] = this.paths.encode(directory(thumbURL));
+			this.thumbName[row] = this.paths.encode(fileName(thumbURL, id));
+			this.mobileDir[row] = this.paths.encode(directory(mobileURL));
+			this.mobileName[row] = this.paths.encode(fileName(mobileURL, id));
+			this.title[row] = title;
+			this.date[row] = date;
+			this.tags[row] = tags;
+			this.comment[row] = comment;
+			this.ints[IntColumn.Feedback.ordinal()][row] = feedback;
+			this.ints[IntColumn.Point.ordinal()][row] = point;
+			this.ints[IntColumn.Views.ordinal()][row] = views;
+			++this.size;
+
+		}else{
+
+			// Image.update と同様に，古い応答の値で戻さないように大きい方を残す
+			this.ints[IntColumn.Feedback.ordinal()][row] = Math.max(this.ints[IntColumn.Feedback.ordinal()][row], feedback);
+			this.ints[IntColumn.Point.ordinal()][row] = Math.max(this.ints[IntColumn.Point.ordinal()][row], point);
+			this.ints[IntColumn.Views.ordinal()][row] = Math.max(this.ints[IntColumn.Views.ordinal()][row], views);
+
+		}
+		return row;
+
+	}
+
+	//============================================================================
+	//  Private methods
+	//============================================================================
+	private void check(final int row){
+
+		if(row < 0 || row >= this.size){
+
+			throw new IndexOutOfBoundsException("row: " + row + ", size: " + this.size);
+
+		}
+
+	}
+
+	/**
+	 * 全ての列を指定した行数に拡張する．
+	 */
+	private void allocate(final int capacity){
+
+		for(int c = 0; c != this.ints.length; ++c){
+
+			this.ints[c] = this.ints[c] == null ? new int[capacity] : Arrays.copyOf(this.ints[c], capacity);
+
+		}
+		this.ext = grow(this.ext, capacity);
+		this.server = grow(this.server, capacity);
+		this.authorName = grow(this.authorName, capacity);
+		this.tool = grow(this.tool, capacity);
+		this.thumbDir = grow(this.thumbDir, capacity);
+		this.thumbName = grow(this.thumbName, capacity);
+		this.mobileDir = grow(this.mobileDir, capacity);
+		this.mobileName = grow(this.mobileName, capacity);
+		this.title = grow(this.title, capacity);
+		this.date = grow(this.date, capacity);
+		this.tags = grow(this.tags, capacity);
+		this.comment = grow(this.comment, capacity);
+
+	}
+
+	/**
+	 * 辞書に登録したディレクトリとファイル名から URL を組み立てる．
+	 */
+	private String joinPath(final int row, final int dir, final int name){
+
+		final String d = this.paths.decode(dir);
+		final String n = this.paths.decode(name);
+		if(d == null || n == null){
+
+			return null;
+
+		}
+		if(!n.isEmpty() && n.charAt(0) == IdPrefix){
+
+			return d + this.getId(row) + n.substring(1);
+
+		}
+		return d + n;
+
+	}
+
+	//============================================================================
+	//  Private static methods
+	//============================================================================
+	private static int[] grow(final int[] column, final int capacity){
+		return column == null ? new int[capacity] : Arrays.copyOf(column, capacity);
+	}
+
+	private static String[] grow(final String[] column, final int capacity){
+		return column == null ? new String[capacity] : Arrays.copyOf(column, capacity);
+	}
+
+	/**
+	 * URL の最後の / までを取り出す．
+	 */
+	private static String directory(final String url){
+
+		if(url == null){
+
+			return null;
+
+		}
+		return url.substring(0, url.lastIndexOf('/') + 1);
+
+	}
+
+	/**
+	 * URL の最後の / より後ろを取り出す．イラスト ID で始まる場合は ID を印に置き換える．
+	 */
+	private static String fileName(final String url, final int id){
+
+		if(url == null){
+
+			return null;
+
+		}
+
+		final int start = url.lastIndexOf('/') + 1;
+		final String prefix = Integer.toString(id);
+		if(url.startsWith(prefix, start)){
+
+			return IdPrefix + url.substring(start + prefix.length());
+
+		}
+		return url.substring(start);
+
+	}
+
+	//============================================================================
+	//  Inner classes
+	//============================================================================
+	/**
+	 * int で保持する列．
+	 */
+	public enum IntColumn{
+
+		/** イラスト ID */
+		Id,
+
+		/** 作者 ID */
+		AuthorId,
+
+		/** 評価点 */
+		Feedback,
+
+		/** 総合点 */
+		Point,
+
+		/** 閲覧数 */
+		Views
+
+	}
+
+	/**
+	 * 文字列に番号を付ける辞書．null には -1 を対応付ける．
+	 */
+	private static final class Dictionary{
+
+		private final Map<String, Integer> codes = new HashMap<String, Integer>();
+		private String[] values = new String[16];
+
+		int encode(final String value){
+
+			if(value == null){
+
+				return -1;
+
+			}
+
+			final Integer code = this.codes.get(value);
+			if(code != null){
+
+				return code;
+
+			}
+
+			final int ret = this.codes.size();
+			if(ret == this.values.length){
+
+				this.values = Arrays.copyOf(this.values, ret << 1);
+
+			}
+			this.values[ret] = value;
+			this.codes.put(value, ret);
+			return ret;
+
+		}
+
+		String decode(final int code){
+			return code < 0 ? null : this.values[code];
+		}
+
+	}
+
+	/**
+	 * CSV のレコードから，Image を作らずに表へ 1 行追加する Decoder．
+	 * build は追加した表自身を返す．
+	 */
+	private static final class Decoder extends Image.RowDecoder<ImageTable>{
+
+		private final ImageTable table;
+
+		Decoder(final ImageTable table){
+			this.table = table;
+		}
+
+		@Override
+		public ImageTable build() {
+
+			this.table.append(this.id, this.authorId, this.ext, this.title, this.server, this.authorName, this.thumbURL, this.mobileURL,
+					this.date, this.tags, this.tool, this.feedback, this.point, this.views, this.comment);
+			return this.table;
+
+		}
+
+	}
+
+}
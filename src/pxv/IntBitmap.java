@@ -0,0 +1,889 @@
+/*
+ *  Copyright (C) 2010 Junpei Kawamoto
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package pxv;
+
+import java.util.Arrays;
+
+/**
+ * int の値を要素とする圧縮ビットマップ．
+ * <p>
+ * Roaring bitmap と同様に，値の上位 16 ビットごとにコンテナを作り，下位 16 ビットをコンテナに格納する．
+ * 要素が 4096 個以下のコンテナは下位 16 ビットの整列済み配列，それを超えるコンテナは 65536 ビットのビットマップで保持する．
+ * 連続した ID が多い集合では要素 1 つあたり 1〜2 バイト程度で保持でき，
+ * 和集合，積集合，差集合はコンテナ単位でボックス化せずに計算する．
+ * </p>
+ * <p>
+ * 要素は符号なし 32 ビット整数としての順序で並ぶ．このクラスはスレッドセーフではない．
+ * </p>
+ * <pre>
+ * final IntBitmap x = api.getAllBookmarkIds(a);
+ * final IntBitmap y = api.getAllBookmarkIds(b);
+ * if(x != null &amp;&amp; y != null){
+ *     final IntBitmap common = IntBitmap.and(x, y);
+ * }
+ * </pre>
+ *
+ * @since 0.2
+ */
+public class IntBitmap {
+
+	/** 配列で保持するコンテナの最大要素数 */
+	private static final int ArrayLimit = 4096;
+	/** ビットマップのコンテナのワード数 */
+	private static final int Words = 1 << 16 >>> 6;
+
+	/** コンテナの上位 16 ビット，昇順 */
+	private char[] keys;
+	/** コンテナ */
+	private Container[] containers;
+	/** コンテナ数 */
+	private int count;
+	/** 要素数 */
+	private int size;
+
+	//============================================================================
+	//  Constructors
+	//============================================================================
+	/**
+	 * 空の集合を作成する．
+	 */
+	public IntBitmap(){
+		this(4);
+	}
+
+	private IntBitmap(final int capacity){
+
+		this.keys = new char[capacity];
+		this.containers = new Container[capacity];
+		this.count = 0;
+		this.size = 0;
+
+	}
+
+	//============================================================================
+	//  Public methods
+	//============================================================================
+	/**
+	 * 要素を追加する．
+	 *
+	 * @param value 追加する値
+	 * @return 集合に含まれていなかった場合 true
+	 */
+	public boolean add(final int value){
+
+		final char key = (char)(value >>> 16);
+		int i = this.find(key);
+		if(i < 0){
+
+			i = -i - 1;
+			this.insert(i, key, new ArrayContainer());
+
+		}
+
+		final Container c = this.containers[i];
+		if(!c.add((char)value)){
+
+			return false;
+
+		}
+		if(c.cardinality() > ArrayLimit && c instanceof ArrayContainer){
+
+			this.containers[i] = ((ArrayContainer)c).toBitmap();
+
+		}
+		++this.size;
+		return true;
+
+	}
+
+	/**
+	 * 全ての値を追加する．
+	 *
+	 * @param values 追加する値
+	 */
+	public void addAll(final int[] values){
+
+		for(final int v : values){
+
+			this.add(v);
+
+		}
+
+	}
+
+	/**
+	 * 要素を削除する．
+	 *
+	 * @param value 削除する値
+	 * @return 集合に含まれていた場合 true
+	 */
+	public boolean remove(final int value){
+
+		final int i = this.find((char)(value >>> 16));
+		if(i < 0){
+
+			return false;
+
+		}
+
+		final Container c = this.containers[i];
+		if(!c.remove((char)value)){
+
+			return false;
+
+		}
+		--this.size;
+		if(c.cardinality() == 0){
+
+			System.arraycopy(this.keys, i + 1, this.keys, i, this.count - i - 1);
+			System.arraycopy(this.containers, i + 1, this.containers, i, this.count - i - 1);
+			this.containers[--this.count] = null;
+
+		}else if(c.cardinality() <= ArrayLimit && c instanceof BitmapContainer){
+
+			this.containers[i] = ((BitmapContainer)c).toArray();
+
+		}
+		return true;
+
+	}
+
+	/**
+	 * 要素が含まれるか調べる．
+	 *
+	 * @param value 調べる値
+	 * @return 含まれる場合 true
+	 */
+	public boolean contains(final int value){
+
+		final int i = this.find((char)(value >>> 16));
+		return i >= 0 && this.containers[i].contains((char)value);
+
+	}
+
+	/**
+	 * 要素数を取得する．
+	 *
+	 * @return 要素数
+	 */
+	public int size(){
+		return this.size;
+	}
+
+	/**
+	 * 空か調べる．
+	 *
+	 * @return 要素が無い場合 true
+	 */
+	public boolean isEmpty(){
+		return this.size == 0;
+	}
+
+	/**
+	 * 全ての要素を削除する．
+	 */
+	public void clear(){
+
+		Arrays.fill(this.containers, 0, this.count, null);
+		this.count = 0;
+		this.size = 0;
+
+	}
+
+	/**
+	 * 全ての要素を符号なしの昇順に並べた配列を取得する．
+	 *
+	 * @return 要素の配列
+	 */
+	public int[] toArray(){
+
+		final int[] ret = new int[this.size];
+		int pos = 0;
+		for(int i = 0; i != this.count; ++i){
+
+			pos = this.containers[i].fill(ret, pos, this.keys[i] << 16);
+
+		}
+		return ret;
+
+	}
+
+	/* (非 Javadoc)
+	 * @see java.lang.Object#hashCode()
+	 */
+	@Override
+	public int hashCode() {
+		return Arrays.hashCode(this.toArray());
+	}
+
+	/* (非 Javadoc)
+	 * @see java.lang.Object#equals(java.lang.Object)
+	 */
+	@Override
+	public boolean equals(final Object obj) {
+
+		if(this == obj){
+
+			return true;
+
+		}
+		if(!(obj instanceof IntBitmap)){
+
+			return false;
+
+		}
+
+		final IntBitmap other = (IntBitmap)obj;
+		return this.size == other.size && Arrays.equals(this.toArray(), other.toArray());
+
+	}
+
+	//============================================================================
+	//  Public static methods
+	//============================================================================
+	/**
+	 * 和集合を計算する．
+	 *
+	 * @param a 集合
+	 * @param b 集合
+	 * @return a と b の和集合
+	 */
+	public static IntBitmap or(final IntBitmap a, final IntBitmap b){
+
+		final IntBitmap ret = new IntBitmap(a.count + b.count);
+		int i = 0;
+		int j = 0;
+		while(i != a.count && j != b.count){
+
+			if(a.keys[i] < b.keys[j]){
+
+				ret.append(a.keys[i], a.containers[i].copy());
+				++i;
+
+			}else if(a.keys[i] > b.keys[j]){
+
+				ret.append(b.keys[j], b.containers[j].copy());
+				++j;
+
+			}else{
+
+				ret.append(a.keys[i], or(a.containers[i], b.containers[j]));
+				++i;
+				++j;
+
+			}
+
+		}
+		for(; i != a.count; ++i){
+
+			ret.append(a.keys[i], a.containers[i].copy());
+
+		}
+		for(; j != b.count; ++j){
+
+			ret.append(b.keys[j], b.containers[j].copy());
+
+		}
+		return ret;
+
+	}
+
+	/**
+	 * 積集合を計算する．
+	 *
+	 * @param a 集合
+	 * @param b 集合
+	 * @return a と b の積集合
+	 */
+	public static IntBitmap and(final IntBitmap a, final IntBitmap b){
+
+		final IntBitmap ret = new IntBitmap(Math.max(1, Math.min(a.count, b.count)));
+		int i = 0;
+		int j = 0;
+		while(i != a.count && j != b.count){
+
+			if(a.keys[i] < b.keys[j]){
+
+				++i;
+
+			}else if(a.keys[i] > b.keys[j]){
+
+				++j;
+
+			}else{
+
+				ret.append(a.keys[i], and(a.containers[i], b.containers[j]));
+				++i;
+				++j;
+
+			}
+
+		}
+		return ret;
+
+	}
+
+	/**
+	 * 差集合を計算する．
+	 *
+	 * @param a 集合
+	 * @param b 取り除く集合
+	 * @return a から b の要素を取り除いた集合
+	 */
+	public static IntBitmap andNot(final IntBitmap a, final IntBitmap b){
+
+		final IntBitmap ret = new IntBitmap(Math.max(1, a.count));
+		int j = 0;
+		for(int i = 0; i != a.count; ++i){
+
+			while(j != b.count && b.keys[j] < a.keys[i]){
+
+				++j;
+
+			}
+			if(j != b.count && b.keys[j] == a.keys[i]){
+
+				ret.append(a.keys[i], andNot(a.containers[i], b.containers[j]));
+
+			}else{
+
+				ret.append(a.keys[i], a.containers[i].copy());
+
+			}
+
+		}
+		return ret;
+
+	}
+
+	//============================================================================
+	//  Private methods
+	//============================================================================
+	/**
+	 * コンテナを探す．
+	 *
+	 * @return 位置，無い場合は -(挿入位置) - 1
+	 */
+	private int find(final char key){
+
+		int low = 0;
+		int high = this.count - 1;
+		while(low <= high){
+
+			final int mid = (low + high) >>> 1;
+			final char k = this.keys[mid];
+			if(k < key){
+
+				low = mid + 1;
+
+			}else if(k > key){
+
+				high = mid - 1;
+
+			}else{
+
+				return mid;
+
+			}
+
+		}
+		return -(low + 1);
+
+	}
+
+	private void insert(final int i, final char key, final Container c){
+
+		if(this.count == this.keys.length){
+
+			this.keys = Arrays.copyOf(this.keys, this.count << 1);
+			this.containers = Arrays.copyOf(this.containers, this.count << 1);
+
+		}
+		System.arraycopy(this.keys, i, this.keys, i + 1, this.count - i);
+		System.arraycopy(this.containers, i, this.containers, i + 1, this.count - i);
+		this.keys[i] = key;
+		this.containers[i] = c;
+		++this.count;
+
+	}
+
+	/**
+	 * 末尾にコンテナを追加する．空のコンテナは追加しない．
+	 */
+	private void append(final char key, final Container c){
+
+		if(c.cardinality() != 0){
+
+			this.insert(this.count, key, c);
+			this.size += c.cardinality();
+
+		}
+
+	}
+
+	//============================================================================
+	//  Private static methods
+	//============================================================================
+	private static Container or(final Container a, final Container b){
+
+		if(a instanceof ArrayContainer && b instanceof ArrayContainer){
+
+			final ArrayContainer x = (ArrayContainer)a;
+			final ArrayContainer y = (ArrayContainer)b;
+			if(x.size + y.size <= ArrayLimit){
+
+				final char[] values = new char[x.size + y.size];
+				int i = 0;
+				int j = 0;
+				int n = 0;
+				while(i != x.size && j != y.size){
+
+					final char u = x.values[i];
+					final char v = y.values[j];
+					if(u <= v){
+
+						++i;
+
+					}
+					if(v <= u){
+
+						++j;
+
+					}
+					values[n++] = u < v ? u : v;
+
+				}
+				while(i != x.size){
+
+					values[n++] = x.values[i++];
+
+				}
+				while(j != y.size){
+
+					values[n++] = y.values[j++];
+
+				}
+				return new ArrayContainer(values, n);
+
+			}
+
+			final BitmapContainer ret = x.toBitmap();
+			ret.addAll(y);
+			return normalize(ret);
+
+		}
+
+		if(a instanceof BitmapContainer && b instanceof BitmapContainer){
+
+			final BitmapContainer x = (BitmapContainer)a;
+			final BitmapContainer y = (BitmapContainer)b;
+			final long[] words = new long[Words];
+			for(int w = 0; w != Words; ++w){
+
+				words[w] = x.words[w] | y.words[w];
+
+			}
+			return new BitmapContainer(words);
+
+		}
+
+		final BitmapContainer ret = (BitmapContainer)(a instanceof BitmapContainer ? a : b).copy();
+		ret.addAll((ArrayContainer)(a instanceof ArrayContainer ? a : b));
+		return ret;
+
+	}
+
+	private static Container and(final Container a, final Container b){
+
+		if(a instanceof ArrayContainer && b instanceof ArrayContainer){
+
+			final ArrayContainer x = (ArrayContainer)a;
+			final ArrayContainer y = (ArrayContainer)b;
+			final char[] values = new char[Math.min(x.size, y.size)];
+			int i = 0;
+			int j = 0;
+			int n = 0;
+			while(i != x.size && j != y.size){
+
+				final char u = x.values[i];
+				final char v = y.values[j];
+				if(u < v){
+
+					++i;
+
+				}else if(u > v){
+
+					++j;
+
+				}else{
+
+					values[n++] = u;
+					++i;
+					++j;
+
+				}
+
+			}
+			return new ArrayContainer(values, n);
+
+		}
+
+		if(a instanceof BitmapContainer && b instanceof BitmapContainer){
+
+			final BitmapContainer x = (BitmapContainer)a;
+			final BitmapContainer y = (BitmapContainer)b;
+			final long[] words = new long[Words];
+			for(int w = 0; w != Words; ++w){
+
+				words[w] = x.words[w] & y.words[w];
+
+			}
+			return normalize(new BitmapContainer(words));
+
+		}
+
+		final ArrayContainer x = (ArrayContainer)(a instanceof ArrayContainer ? a : b);
+		final BitmapContainer y = (BitmapContainer)(a instanceof BitmapContainer ? a : b);
+		return x.filter(y, true);
+
+	}
+
+	private static Container andNot(final Container a, final Container b){
+
+		if(a instanceof ArrayContainer){
+
+			final ArrayContainer x = (ArrayContainer)a;
+			if(b instanceof BitmapContainer){
+
+				return x.filter((BitmapContainer)b, false);
+
+			}
+
+			final ArrayContainer y = (ArrayContainer)b;
+			final char[] values = new char[x.size];
+			int j = 0;
+			int n = 0;
+			for(int i = 0; i != x.size; ++i){
+
+				final char u = x.values[i];
+				while(j != y.size && y.values[j] < u){
+
+					++j;
+
+				}
+				if(j == y.size || y.values[j] != u){
+
+					values[n++] = u;
+
+				}
+
+			}
+			return new ArrayContainer(values, n);
+
+		}
+
+		final BitmapContainer x = (BitmapContainer)a;
+		final long[] words = new long[Words];
+		if(b instanceof BitmapContainer){
+
+			final BitmapContainer y = (BitmapContainer)b;
+			for(int w = 0; w != Words; ++w){
+
+				words[w] = x.words[w] & ~y.words[w];
+
+			}
+
+		}else{
+
+			System.arraycopy(x.words, 0, words, 0, Words);
+			final ArrayContainer y = (ArrayContainer)b;
+			for(int i = 0; i != y.size; ++i){
+
+				words[y.values[i] >>> 6] &= ~(1L << y.values[i]);
+
+			}
+
+		}
+		return normalize(new BitmapContainer(words));
+
+	}
+
+	/**
+	 * 要素が少ないビットマップのコンテナを配列のコンテナに変換する．
+	 */
+	private static Container normalize(final BitmapContainer c){
+		return c.cardinality() <= ArrayLimit ? c.toArray() : c;
+	}
+
+	//============================================================================
+	//  Inner classes
+	//============================================================================
+	/**
+	 * 上位 16 ビットが共通の値の下位 16 ビットを保持するコンテナ．
+	 */
+	private abstract static class Container{
+
+		abstract int cardinality();
+
+		abstract boolean contains(final char value);
+
+		abstract boolean add(final char value);
+
+		abstract boolean remove(final char value);
+
+		/**
+		 * 要素に上位ビットを付けて配列に書き出す．
+		 *
+		 * @return 書き出した後の位置
+		 */
+		abstract int fill(final int[] out, final int pos, final int high);
+
+		abstract Container copy();
+
+	}
+
+	/**
+	 * 整列済みの配列で保持するコンテナ．
+	 */
+	private static final class ArrayContainer extends Container{
+
+		char[] values;
+		int size;
+
+		ArrayContainer(){
+			this(new char[4], 0);
+		}
+
+		ArrayContainer(final char[] values, final int size){
+
+			this.values = values;
+			this.size = size;
+
+		}
+
+		@Override
+		int cardinality() {
+			return this.size;
+		}
+
+		@Override
+		boolean contains(final char value) {
+			return Arrays.binarySearch(this.values, 0, this.size, value) >= 0;
+		}
+
+		@Override
+		boolean add(final char value) {
+
+			int i = Arrays.binarySearch(this.values, 0, this.size, value);
+			if(i >= 0){
+
+				return false;
+
+			}
+
+			i = -i - 1;
+			if(this.size == this.values.length){
+
+				this.values = Arrays.copyOf(this.values, Math.max(4, this.size << 1));
+
+			}
+			System.arraycopy(this.values, i, this.values, i + 1, this.size - i);
+			this.values[i] = value;
+			++this.size;
+			return true;
+
+		}
+
+		@Override
+		boolean remove(final char value) {
+
+			final int i = Arrays.binarySearch(this.values, 0, this.size, value);
+			if(i < 0){
+
+				return false;
+
+			}
+			System.arraycopy(this.values, i + 1, this.values, i, this.size - i - 1);
+			--this.size;
+			return true;
+
+		}
+
+		@Override
+		int fill(final int[] out, int pos, final int high) {
+
+			for(int i = 0; i != this.size; ++i){
+
+				out[pos++] = high | this.values[i];
+
+			}
+			return pos;
+
+		}
+
+		@Override
+		Container copy() {
+			return new ArrayContainer(Arrays.copyOf(this.values, Math.max(this.size, 1)), this.size);
+		}
+
+		BitmapContainer toBitmap(){
+
+			final BitmapContainer ret = new BitmapContainer(new long[Words]);
+			ret.addAll(this);
+			return ret;
+
+		}
+
+		/**
+		 * ビットマップのコンテナに含まれる (keep が true)，または含まれない (keep が false) 要素だけを残したコンテナを作る．
+		 */
+		ArrayContainer filter(final BitmapContainer other, final boolean keep){
+
+			final char[] values = new char[this.size];
+			int n = 0;
+			for(int i = 0; i != this.size; ++i){
+
+				if(other.contains(this.values[i]) == keep){
+
+					values[n++] = this.values[i];
+
+				}
+
+			}
+			return new ArrayContainer(values, n);
+
+		}
+
+	}
+
+	/**
+	 * 65536 ビットのビットマップで保持するコンテナ．
+	 */
+	private static final class BitmapContainer extends Container{
+
+		final long[] words;
+		int cardinality;
+
+		BitmapContainer(final long[] words){
+
+			this.words = words;
+			int c = 0;
+			for(final long w : words){
+
+				c += Long.bitCount(w);
+
+			}
+			this.cardinality = c;
+
+		}
+
+		@Override
+		int cardinality() {
+			return this.cardinality;
+		}
+
+		@Override
+		boolean contains(final char value) {
+			return (this.words[value >>> 6] & 1L << value) != 0;
+		}
+
+		@Override
+		boolean add(final char value) {
+
+			final long before = this.words[value >>> 6];
+			final long after = before | 1L << value;
+			this.words[value >>> 6] = after;
+			if(before == after){
+
+				return false;
+
+			}
+			++this.cardinality;
+			return true;
+
+		}
+
+		@Override
+		boolean remove(final char value) {
+
+			final long before = this.words[value >>> 6];
+			final long after = before & ~(1L << value);
+			this.words[value >>> 6] = after;
+			if(before == after){
+
+				return false;
+
+			}
+			--this.cardinality;
+			return true;
+
+		}
+
+		@Override
+		int fill(final int[] out, int pos, final int high) {
+
+			for(int w = 0; w != Words; ++w){
+
+				for(long word = this.words[w]; word != 0; word &= word - 1){
+
+					out[pos++] = high | w << 6 | Long.numberOfTrailingZeros(word);
+
+				}
+
+			}
+			return pos;
+
+		}
+
+		@Override
+		Container copy() {
+
+			return new BitmapContainer(this.words.clone());
+
+		}
+
+		void addAll(final ArrayContainer other){
+
+			for(int i = 0; i != other.size; ++i){
+
+				this.add(other.values[i]);
+
+			}
+
+		}
+
+		ArrayContainer toArray(){
+
+			final char[] values = new char[Math.max(this.cardinality, 1)];
+			int n = 0;
+			for(int w = 0; w != Words; ++w){
+
+				for(long word = this.words[w]; word != 0; word &= word - 1){
+
+					values[n++] = (char)(w << 6 | Long.numberOfTrailingZeros(word));
+
+				}
+
+			}
+			return new ArrayContainer(values, n);
+
+		}
+
+	}
+
+}
@@ -0,0 +1,330 @@
+/*
+ *  Copyright (C) 2010 Junpei Kawamoto
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package pxv;
+
+import java.util.Arrays;
+
+/**
+ * int の値を要素とするハッシュ集合．
+ * <p>
+ * 要素をボックス化せず，オープンアドレス法（線形探索）で int の配列に直接格納する．
+ * 削除した場合は後続の要素を詰め直すため，削除済みの印は残らない．
+ * このクラスはスレッドセーフではない．
+ * </p>
+ *
+ * @since 0.2
+ */
+public class IntHashSet {
+
+	/** 空きスロットを表す値，0 そのものは hasZero で管理する */
+	private static final int Free = 0;
+	/** 最大負荷率 */
+	private static final float LoadFactor = 0.5f;
+	/** 最大スロット数 */
+	private static final int MaxCapacity = 1 << 30;
+
+	/** スロット */
+	private int[] slots;
+	/** スロット数 - 1 */
+	private int mask;
+	/** 0 を含む場合 true */
+	private boolean hasZero = false;
+	/** 要素数 */
+	private int size = 0;
+	/** スロットを拡張する要素数 */
+	private int threshold;
+
+	//============================================================================
+	//  Constructors
+	//============================================================================
+	/**
+	 * 空の集合を作成する．
+	 */
+	public IntHashSet(){
+		this(16);
+	}
+
+	/**
+	 * 想定する要素数を指定して空の集合を作成する．
+	 *
+	 * @param expected 想定する要素数，MaxCapacity を超える分は無視する
+	 * @throws IllegalArgumentException expected が負の場合
+	 */
+	public IntHashSet(final int expected){
+
+		if(expected < 0){
+
+			throw new IllegalArgumentException("Negative expected size: " + expected);
+
+		}
+
+		int capacity = 16;
+		while(capacity < MaxCapacity && capacity * LoadFactor < expected){
+
+			capacity <<= 1;
+
+		}
+		this.allocate(capacity);
+
+	}
+
+	//============================================================================
+	//  Public methods
+	//============================================================================
+	/**
+	 * 要素を追加する．
+	 *
+	 * @param value 追加する値
+	 * @return 集合に含まれていなかった場合 true
+	 */
+	public boolean add(final int value){
+
+		if(value == Free){
+
+			if(this.hasZero){
+
+				return false;
+
+			}
+			this.hasZero = true;
+			++this.size;
+			return true;
+
+		}
+
+		int i = mix(value) & this.mask;
+		for(int v; (v = this.slots[i]) != Free; i = (i + 1) & this.mask){
+
+			if(v == value){
+
+				return false;
+
+			}
+
+		}
+
+		if(this.size >= this.threshold && this.slots.length == MaxCapacity){
+
+			throw new IllegalStateException("Too many elements");
+
+		}
+		this.slots[i] = value;
+		if(++this.size > this.threshold){
+
+			this.rehash(this.slots.length << 1);
+
+		}
+		return true;
+
+	}
+
+	/**
+	 * 全ての値を追加する．
+	 *
+	 * @param values 追加する値
+	 */
+	public void addAll(final int[] values){
+
+		for(final int v : values){
+
+			this.add(v);
+
+		}
+
+	}
+
+	/**
+	 * 要素を削除する．
+	 *
+	 * @param value 削除する値
+	 * @return 集合に含まれていた場合 true
+	 */
+	public boolean remove(final int value){
+
+		if(value == Free){
+
+			if(!this.hasZero){
+
+				return false;
+
+			}
+			this.hasZero = false;
+			--this.size;
+			return true;
+
+		}
+
+		int i = mix(value) & this.mask;
+		for(int v; (v = this.slots[i]) != value; i = (i + 1) & this.mask){
+
+			if(v == Free){
+
+				return false;
+
+			}
+
+		}
+
+		// 削除した位置より後ろにあり，本来の位置がそれより前の要素を詰める
+		for(int j = (i + 1) & this.mask, v; (v = this.slots[j]) != Free; j = (j + 1) & this.mask){
+
+			final int home = mix(v) & this.mask;
+			if(((j - home) & this.mask) >= ((j - i) & this.mask)){
+
+				this.slots[i] = v;
+				i = j;
+
+			}
+
+		}
+		this.slots[i] = Free;
+		--this.size;
+		return true;
+
+	}
+
+	/**
+	 * 要素が含まれるか調べる．
+	 *
+	 * @param value 調べる値
+	 * @return 含まれる場合 true
+	 */
+	public boolean contains(final int value){
+
+		if(value == Free){
+
+			return this.hasZero;
+
+		}
+
+		int i = mix(value) & this.mask;
+		for(int v; (v = this.slots[i]) != Free; i = (i + 1) & this.mask){
+
+			if(v == value){
+
+				return true;
+
+			}
+
+		}
+
+		return false;
+
+	}
+
+	/**
+	 * 要素数を取得する．
+	 *
+	 * @return 要素数
+	 */
+	public int size(){
+		return this.size;
+	}
+
+	/**
+	 * 空か調べる．
+	 *
+	 * @return 要素が無い場合 true
+	 */
+	public boolean isEmpty(){
+		return this.size == 0;
+	}
+
+	/**
+	 * 全ての要素を配列で取得する．順序は不定．
+	 *
+	 * @return 要素の配列
+	 */
+	public int[] toArray(){
+
+		final int[] ret = new int[this.size];
+		int n = 0;
+		if(this.hasZero){
+
+			ret[n++] = Free;
+
+		}
+		for(final int value : this.slots){
+
+			if(value != Free){
+
+				ret[n++] = value;
+
+			}
+
+		}
+		return ret;
+
+	}
+
+	/**
+	 * 全ての要素を削除する．
+	 */
+	public void clear(){
+
+		Arrays.fill(this.slots, Free);
+		this.hasZero = false;
+		this.size = 0;
+
+	}
+
+	//============================================================================
+	//  Private methods
+	//============================================================================
+	private void allocate(final int capacity){
+
+		this.slots = new int[capacity];
+		this.mask = capacity - 1;
+		// 最大スロット数では拡張せず，探索が止まるよう空きスロットを必ず残す
+		this.threshold = capacity == MaxCapacity ? capacity - 2 : (int)(capacity * LoadFactor);
+
+	}
+
+	private void rehash(final int capacity){
+
+		final int[] old = this.slots;
+		this.allocate(capacity);
+		for(final int value : old){
+
+			if(value != Free){
+
+				int i = mix(value) & this.mask;
+				while(this.slots[i] != Free){
+
+					i = (i + 1) & this.mask;
+
+				}
+				this.slots[i] = value;
+
+			}
+
+		}
+
+	}
+
+	/**
+	 * 連続した ID がスロット上で偏らないように値を攪拌する．
+	 */
+	private static int mix(final int value){
+
+		final int h = value * 0x9E3779B9;
+		return h ^ (h >>> 16);
+
+	}
+
+}
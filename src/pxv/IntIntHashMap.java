@@ -0,0 +1,376 @@
+/*
+ *  Copyright (C) 2010 Junpei Kawamoto
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package pxv;
+
+import java.util.Arrays;
+
+/**
+ * int のキーから int の値を引くハッシュ表．
+ * <p>
+ * キーと値をボックス化せず，オープンアドレス法（線形探索）で int の配列に直接格納する．
+ * 削除した場合は後続の要素を詰め直すため，削除済みの印は残らない．
+ * このクラスはスレッドセーフではない．
+ * </p>
+ *
+ * @since 0.2
+ */
+public class IntIntHashMap {
+
+	/** 空きスロットを表すキー，0 そのものは hasZero で管理する */
+	private static final int Free = 0;
+	/** 最大負荷率 */
+	private static final float LoadFactor = 0.5f;
+	/** 最大スロット数 */
+	private static final int MaxCapacity = 1 << 30;
+
+	/** キーのスロット */
+	private int[] keys;
+	/** 値のスロット */
+	private int[] values;
+	/** スロット数 - 1 */
+	private int mask;
+	/** キー 0 を含む場合 true */
+	private boolean hasZero = false;
+	/** キー 0 に対応する値 */
+	private int zeroValue = 0;
+	/** 要素数 */
+	private int size = 0;
+	/** スロットを拡張する要素数 */
+	private int threshold;
+
+	//============================================================================
+	//  Constructors
+	//============================================================================
+	/**
+	 * 空の表を作成する．
+	 */
+	public IntIntHashMap(){
+		this(16);
+	}
+
+	/**
+	 * 想定する要素数を指定して空の表を作成する．
+	 *
+	 * @param expected 想定する要素数，MaxCapacity を超える分は無視する
+	 * @throws IllegalArgumentException expected が負の場合
+	 */
+	public IntIntHashMap(final int expected){
+
+		if(expected < 0){
+
+			throw new IllegalArgumentException("Negative expected size: " + expected);
+
+		}
+
+		int capacity = 16;
+		while(capacity < MaxCapacity && capacity * LoadFactor < expected){
+
+			capacity <<= 1;
+
+		}
+		this.allocate(capacity);
+
+	}
+
+	//============================================================================
+	//  Public methods
+	//============================================================================
+	/**
+	 * キーに対応する値を取得する．
+	 *
+	 * @param key キー
+	 * @param missing キーが無い場合に返す値
+	 * @return 対応する値，無い場合は missing
+	 */
+	public int get(final int key, final int missing){
+
+		if(key == Free){
+
+			return this.hasZero ? this.zeroValue : missing;
+
+		}
+
+		int i = mix(key) & this.mask;
+		for(int k; (k = this.keys[i]) != Free; i = (i + 1) & this.mask){
+
+			if(k == key){
+
+				return this.values[i];
+
+			}
+
+		}
+
+		return missing;
+
+	}
+
+	/**
+	 * キーに値を対応付ける．
+	 *
+	 * @param key キー
+	 * @param value 値
+	 */
+	public void put(final int key, final int value){
+
+		if(key == Free){
+
+			if(!this.hasZero){
+
+				this.hasZero = true;
+				++this.size;
+
+			}
+			this.zeroValue = value;
+			return;
+
+		}
+
+		final int i = this.slot(key);
+		if(this.keys[i] == key){
+
+			this.values[i] = value;
+			return;
+
+		}
+		this.insert(i, key, value);
+
+	}
+
+	/**
+	 * キーが無い場合だけ値を対応付ける．
+	 *
+	 * @param key キー
+	 * @param value 値
+	 * @return 既に対応する値がある場合はその値，それ以外は value
+	 */
+	public int putIfAbsent(final int key, final int value){
+
+		if(key == Free){
+
+			if(!this.hasZero){
+
+				this.hasZero = true;
+				this.zeroValue = value;
+				++this.size;
+
+			}
+			return this.zeroValue;
+
+		}
+
+		final int i = this.slot(key);
+		if(this.keys[i] == key){
+
+			return this.values[i];
+
+		}
+		this.insert(i, key, value);
+		return value;
+
+	}
+
+	/**
+	 * キーを削除する．
+	 *
+	 * @param key 削除するキー
+	 * @return キーが含まれていた場合 true
+	 */
+	public boolean remove(final int key){
+
+		if(key == Free){
+
+			if(!this.hasZero){
+
+				return false;
+
+			}
+			this.hasZero = false;
+			--this.size;
+			return true;
+
+		}
+
+		int i = this.slot(key);
+		if(this.keys[i] != key){
+
+			return false;
+
+		}
+
+		// 削除した位置より後ろにあり，本来の位置がそれより前の要素を詰める
+		for(int j = (i + 1) & this.mask, k; (k = this.keys[j]) != Free; j = (j + 1) & this.mask){
+
+			final int home = mix(k) & this.mask;
+			if(((j - home) & this.mask) >= ((j - i) & this.mask)){
+
+				this.keys[i] = k;
+				this.values[i] = this.values[j];
+				i = j;
+
+			}
+
+		}
+		this.keys[i] = Free;
+		--this.size;
+		return true;
+
+	}
+
+	/**
+	 * キーが含まれるか調べる．
+	 *
+	 * @param key 調べるキー
+	 * @return 含まれる場合 true
+	 */
+	public boolean containsKey(final int key){
+
+		if(key == Free){
+
+			return this.hasZero;
+
+		}
+		return this.keys[this.slot(key)] == key;
+
+	}
+
+	/**
+	 * 要素数を取得する．
+	 *
+	 * @return 要素数
+	 */
+	public int size(){
+		return this.size;
+	}
+
+	/**
+	 * 全てのキーを配列で取得する．順序は不定．
+	 *
+	 * @return キーの配列
+	 */
+	public int[] keys(){
+
+		final int[] ret = new int[this.size];
+		int n = 0;
+		if(this.hasZero){
+
+			ret[n++] = Free;
+
+		}
+		for(final int key : this.keys){
+
+			if(key != Free){
+
+				ret[n++] = key;
+
+			}
+
+		}
+		return ret;
+
+	}
+
+	/**
+	 * 全ての要素を削除する．
+	 */
+	public void clear(){
+
+		Arrays.fill(this.keys, Free);
+		this.hasZero = false;
+		this.size = 0;
+
+	}
+
+	//============================================================================
+	//  Private methods
+	//============================================================================
+	/**
+	 * キーが格納されているスロット，無い場合は格納すべき空きスロットを探す．
+	 */
+	private int slot(final int key){
+
+		int i = mix(key) & this.mask;
+		for(int k; (k = this.keys[i]) != Free && k != key; i = (i + 1) & this.mask){
+		}
+		return i;
+
+	}
+
+	private void insert(final int slot, final int key, final int value){
+
+		if(this.size >= this.threshold && this.keys.length == MaxCapacity){
+
+			throw new IllegalStateException("Too many entries");
+
+		}
+		this.keys[slot] = key;
+		this.values[slot] = value;
+		if(++this.size > this.threshold){
+
+			this.rehash(this.keys.length << 1);
+
+		}
+
+	}
+
+	private void allocate(final int capacity){
+
+		this.keys = new int[capacity];
+		this.values = new int[capacity];
+		this.mask = capacity - 1;
+		// 最大スロット数では拡張せず，探索が止まるよう空きスロットを必ず残す
+		this.threshold = capacity == MaxCapacity ? capacity - 2 : (int)(capacity * LoadFactor);
+
+	}
+
+	private void rehash(final int capacity){
+
+		final int[] oldKeys = this.keys;
+		final int[] oldValues = this.values;
+		this.allocate(capacity);
+		for(int j = 0; j != oldKeys.length; ++j){
+
+			final int key = oldKeys[j];
+			if(key != Free){
+
+				int i = mix(key) & this.mask;
+				while(this.keys[i] != Free){
+
+					i = (i + 1) & this.mask;
+
+				}
+				this.keys[i] = key;
+				this.values[i] = oldValues[j];
+
+			}
+
+		}
+
+	}
+
+	/**
+	 * 連続した ID がスロット上で偏らないようにキーを攪拌する．
+	 */
+	private static int mix(final int key){
+
+		final int h = key * 0x9E3779B9;
+		return h ^ (h >>> 16);
+
+	}
+
+}
@@ -0,0 +1,39 @@
+/*
+ *  Copyright (C) 2010 Junpei Kawamoto
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package pxv;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * ページ番号を指定して 1 ページ分の要素を取得する処理．
+ *
+ * @param <T> 要素の型
+ */
+interface PageReader<T> {
+
+	/**
+	 * 1 ページ分の要素を取得する．
+	 *
+	 * @param page 取得するページ番号
+	 * @return 取得した要素のリスト，最後のページより後ろの場合は空のリスト
+	 * @throws IOException 取得に失敗した場合
+	 */
+	public List<T> read(final int page) throws IOException;
+
+}
@@ -0,0 +1,338 @@
+/*
+ *  Copyright (C) 2010 Junpei Kawamoto
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package pxv;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * ページ送りを意識せずに全てのページの要素を順に読み出すカーソル．
+ * <p>
+ * 0 ページ目から順にページを取得し，空のページに達したところで終了します．
+ * ページの取得に失敗した場合や割り込まれた場合もそこで終了しますが，
+ * その場合は isFailed が true を返すため，最後のページまで読み出した場合と区別できます．
+ * スレッドプールが与えられている場合，現在のページを読み出している間に続く数ページを
+ * バックグラウンドで先読みします．
+ * 途中で読み出しをやめる場合は close を呼び出して下さい．先読み中のページを取り消します．
+ * </p>
+ * <p>
+ * PixivAPI の openAll で始まるメソッドが返すカーソルは，既に読み出した ID の要素を読み飛ばします．
+ * 取得中にランキングや新着が更新されると，同じ要素が次のページにずれて現れることがあるためです．
+ * 読み出した ID はボックス化しない IntHashSet に保持するため，メモリ使用量は読み出した要素数に比例します．
+ * </p>
+ * <p>
+ * このカーソルは 1 度だけ走査できます．iterator は常にこのオブジェクト自身を返します．
+ * </p>
+ *
+ * @param <T> 読み出す要素の型
+ * @since 0.2
+ */
+public class PagedCursor<T> implements Iterator<T>, Iterable<T>, Closeable {
+
+	/** 1 ページを取得する処理 */
+	private final PageReader<T> reader;
+	/** 先読みに使うスレッドプール，先読みしない場合は null */
+	private final ExecutorService executor;
+	/** 先読みするページ数 */
+	private final int depth;
+
+	/** 先読み中のページ，ページ順 */
+	private final LinkedList<FutureTask<List<T>>> ahead = new LinkedList<FutureTask<List<T>>>();
+	/** 次に要求するページ番号 */
+	private int requested = 0;
+	/** 読み出し中のページ */
+	private Iterator<T> current = Collections.<T>emptyList().iterator();
+	/** 閉じられている場合 true */
+	private boolean closed = false;
+	/** ページの取得に失敗して途中で終了した場合 true */
+	private boolean failed = false;
+
+	/** 要素の ID，重複を除かない場合は null */
+	private final Key<? super T> key;
+	/** 既に読み出した要素の ID，重複を除かない場合は null */
+	private final IntHashSet seen;
+	/** 読み飛ばした要素を数えるカウンタ，数えない場合は null */
+	private final AtomicLong dropped;
+
+	//============================================================================
+	//  Constructors
+	//============================================================================
+	/**
+	 * カーソルを作成する．
+	 *
+	 * @param reader 1 ページを取得する処理
+	 * @param executor 先読みに使うスレッドプール，null の場合は先読みしない
+	 * @param depth 先読みするページ数，0 以下の場合は先読みしない
+	 * @param key 要素の ID，null の場合は重複を除かない
+	 * @param dropped 読み飛ばした要素を数えるカウンタ，null の場合は数えない
+	 */
+	PagedCursor(final PageReader<T> reader, final ExecutorService executor, final int depth, final Key<? super T> key, final AtomicLong dropped){
+
+		this.reader = reader;
+		this.executor = depth > 0 ? executor : null;
+		this.depth = depth;
+		this.key = key;
+		this.seen = key != null ? new IntHashSet() : null;
+		this.dropped = dropped;
+
+	}
+
+	//============================================================================
+	//  Public methods
+	//============================================================================
+	/* (非 Javadoc)
+	 * @see java.util.Iterator#hasNext()
+	 */
+	@Override
+	public boolean hasNext() {
+
+		while(!this.current.hasNext() && !this.closed){
+
+			final List<T> page = this.nextPage();
+			if(page.isEmpty()){
+
+				this.close();
+				break;
+
+			}
+			// 全ての要素が重複していたページは読み飛ばして次のページに進む
+			this.current = this.unseen(page).iterator();
+
+		}
+
+		return this.current.hasNext();
+
+	}
+
+	/* (非 Javadoc)
+	 * @see java.util.Iterator#next()
+	 */
+	@Override
+	public T next() {
+
+		if(!this.hasNext()){
+
+			throw new NoSuchElementException();
+
+		}
+		return this.current.next();
+
+	}
+
+	/**
+	 * サポートしていません．
+	 *
+	 * @throws UnsupportedOperationException 常に
+	 */
+	@Override
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * このカーソル自身を返す．
+	 *
+	 * @return このカーソル
+	 */
+	@Override
+	public Iterator<T> iterator() {
+		return this;
+	}
+
+	/**
+	 * ページの取得に失敗したか割り込まれたため，最後のページに達する前に終了したか判定する．
+	 * 読み出した要素が全てのページの要素であることは，走査を終えた後でこのメソッドが false を返すことで確かめて下さい．
+	 *
+	 * @return 途中で終了した場合 true
+	 */
+	public boolean isFailed(){
+		return this.failed;
+	}
+
+	/**
+	 * 読み出しを終了し，まだ取得を始めていない先読みのページを取り消す．
+	 * 読み出し中のページに残っている要素も破棄します．
+	 */
+	@Override
+	public void close() {
+
+		if(!this.closed){
+
+			this.closed = true;
+			this.current = Collections.<T>emptyList().iterator();
+			for(final FutureTask<List<T>> f : this.ahead){
+
+				f.cancel(false);
+
+			}
+			this.ahead.clear();
+
+		}
+
+	}
+
+	//============================================================================
+	//  Private methods
+	//============================================================================
+	/**
+	 * 次のページを取得する．
+	 * 先読みしている場合は先読みしたページを受け取り，先読みするページを補充する．
+	 *
+	 * @return 次のページの要素，取得できなかった場合は failed を設定して空のリスト
+	 */
+	private List<T> nextPage(){
+
+		if(this.executor == null){
+
+			try{
+
+				return this.reader.read(this.requested++);
+
+			}catch(final IOException e){
+
+				this.failed = true;
+				return Collections.emptyList();
+
+			}
+
+		}
+
+		while(this.ahead.size() < this.depth + 1){
+
+			final FutureTask<List<T>> f = new FutureTask<List<T>>(new PageTask<T>(this.reader, this.requested++));
+			this.executor.execute(f);
+			this.ahead.add(f);
+
+		}
+
+		// スレッドプールがまだ始めていない場合は，このスレッドで取得する．
+		// 同じスレッドプールのスレッドからカーソルを読み出しても，空きを待ち続けて止まらないようにするため
+		final FutureTask<List<T>> f = this.ahead.removeFirst();
+		f.run();
+		try{
+
+			return f.get();
+
+		}catch(final InterruptedException e){
+
+			Thread.currentThread().interrupt();
+
+		}catch(final ExecutionException e){
+
+			if(e.getCause() instanceof RuntimeException){
+
+				throw (RuntimeException)e.getCause();
+
+			}
+			if(!(e.getCause() instanceof IOException)){
+
+				e.printStackTrace();
+
+			}
+
+		}
+
+		this.failed = true;
+		return Collections.emptyList();
+
+	}
+
+	/**
+	 * 既に読み出した ID の要素を取り除く．
+	 *
+	 * @param page 取得したページの要素
+	 * @return 初めて現れた要素
+	 */
+	private List<T> unseen(final List<T> page){
+
+		if(this.key == null){
+
+			return page;
+
+		}
+
+		final List<T> ret = new ArrayList<T>(page.size());
+		for(final T e : page){
+
+			if(this.seen.add(this.key.of(e))){
+
+				ret.add(e);
+
+			}else if(this.dropped != null){
+
+				this.dropped.incrementAndGet();
+
+			}
+
+		}
+		return ret;
+
+	}
+
+	//============================================================================
+	//  Inner classes
+	//============================================================================
+	/**
+	 * 重複を判定するために要素の ID を取り出す．
+	 *
+	 * @param <T> 要素の型
+	 */
+	interface Key<T>{
+
+		/**
+		 * @param element 要素
+		 * @return 要素の ID
+		 */
+		int of(final T element);
+
+	}
+
+	/**
+	 * 1 ページを取得するタスク．
+	 */
+	private static final class PageTask<T> implements Callable<List<T>>{
+
+		private final PageReader<T> reader;
+		private final int page;
+
+		PageTask(final PageReader<T> reader, final int page){
+
+			this.reader = reader;
+			this.page = page;
+
+		}
+
+		@Override
+		public List<T> call() throws IOException {
+			return this.reader.read(this.page);
+		}
+
+	}
+
+}
@@ -1,790 +1,2398 @@
-/*
- *  Copyright (C) 2010 Junpei Kawamoto
- *
- *  This program is free software: you can redistribute it and/or modify
- *  it under the terms of the GNU Lesser General Public License as published by
- *  the Free Software Foundation, either version 3 of the License, or
- *  (at your option) any later version.
- *
- *  This program is distributed in the hope that it will be useful,
- *  but WITHOUT ANY WARRANTY; without even the implied warranty of
- *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
- *  GNU Lesser General Public License for more details.
- *
- *  You should have received a copy of the GNU Lesser General Public License
- *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
- *
- */
-package pxv;
-
-import java.io.BufferedReader;
-import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.Reader;
-import java.net.HttpURLConnection;
-import java.net.URL;
-import java.net.URLEncoder;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-
-import pxv.CSVParser.Handler;
-
-/**
- * Pixiv API．
- *
- * @since 0.1
- */
-public class PixivAPI {
-
-	private final URL base;
-
-	private String session = Zero;
-
-	//============================================================================
-	//  Constants
-	//============================================================================
-	private static final String BaseURL = "http://iphone.pxv.jp/iphone/";
-	private static final String SessionID = "PHPSESSID";
-
-	private enum Type{
-		new_illust, mypixiv_new_illust, bookmark_user_new_illust, ranking, search, search_user, bookmark, bookmark_user_all, mypixiv_all, member_illust
-	}
-
-	private static final String DummyParameter = "dummy=0";
-	private static final String Daily = "mode=day";
-	private static final String Weekly = "mode=week";
-	private static final String Monthly = "mode=month";
-
-	private static final String IDParamTemplate = "id=%d";
-
-	private static final String UTF8 = "UTF-8";
-	private static final String Zero = "0";
-
-	//============================================================================
-	//  Constructors
-	//============================================================================
-	/**
-	 * PixivAPI インスタンスを作成する．
-	 *
-	 * @throws IOException I/O エラーが発生した場合．
-	 */
-	public PixivAPI() throws IOException{
-
-		this.base = new URL(BaseURL);
-
-	}
-
-	//============================================================================
-	//  Public methods
-	//============================================================================
-	//----------------------------------------------------------------------------
-	//  APIs for user's account
-	//----------------------------------------------------------------------------
-	/**
-	 * ログインする．
-	 *
-	 * @param id ユーザ ID
-	 * @param password パスワード
-	 * @return ログインに成功した場合 true
-	 */
-	public boolean login(final String id, final String password){
-
-		try {
-
-			final URL url = new URL(base, String.format("login.php?mode=login&pixiv_id=%s&pass=%s&skip=0", id, password));
-			final HttpURLConnection con = (HttpURLConnection)url.openConnection();
-			con.setRequestMethod("GET");
-			con.connect();
-
-			if(con.getResponseCode() == 200){
-
-				final URL res = con.getURL();
-				this.session = this.parseParameters(res.getQuery()).get(SessionID);
-
-			}
-
-		} catch (final IOException e) {
-
-			// TODO 自動生成された catch ブロック
-			e.printStackTrace();
-
-		}
-
-		return this.logined();
-
-	}
-
-	/**
-	 * ログインしているか調べる．
-	 *
-	 * @return ログインしている場合 true
-	 */
-	public boolean logined(){
-
-		return this.session != Zero;
-
-	}
-
-	/**
-	 * システムの稼働状態を調べる．
-	 *
-	 * @return システムが稼働している場合 true
-	 */
-	public boolean status(){
-
-		try {
-
-			final URL url = new URL(this.base, "maintenance.php?software-version=1.0");
-			final HttpURLConnection con = (HttpURLConnection) url.openConnection();
-			con.connect();
-
-			return con.getResponseCode() == 200;
-
-		} catch (final IOException e) {
-
-			e.printStackTrace();
-
-		}
-
-		return false;
-
-	}
-
-	/**
-	 * ログインユーザのプロフィールを取得する．
-	 *
-	 * @return プロフィール
-	 */
-	public String profile(){
-
-		final StringBuffer ret = new StringBuffer();
-		try {
-
-			final URL url = new URL(this.base, String.format("profile.php?dummy=0&%s=%s", SessionID, this.session));
-			final HttpURLConnection con = (HttpURLConnection) url.openConnection();
-			con.connect();
-
-			if(con.getResponseCode() == 200){
-
-				final BufferedReader in = new BufferedReader(new InputStreamReader(con.getInputStream()));
-				for(String buf; (buf = in.readLine()) != null;){
-
-					ret.append(buf);
-					ret.append("\n");
-
-				}
-				in.close();
-
-			}
-
-		} catch (final IOException e) {
-
-			e.printStackTrace();
-
-		}
-
-		return ret.toString();
-
-	}
-
-	//----------------------------------------------------------------------------
-	//  APIs for new images
-	//----------------------------------------------------------------------------
-	/**
-	 * 新着イラスト数を取得する．
-	 *
-	 * @return 新着イラスト数
-	 */
-	public int getNewImageSize(){
-		return this.getSize(Type.new_illust, DummyParameter);
-	}
-
-	/**
-	 * 新着イラストを取得する．
-	 *
-	 * @param page 取得するページ番号
-	 * @return 取得したイラストのリスト
-	 */
-	public List<Image> getNewImages(final int page){
-		return this.getImages(Type.new_illust, DummyParameter, page);
-	}
-
-	/**
-	 * 新着 MyPixiv イラストの数を取得する．
-	 *
-	 * @return 新着 MyPixiv イラスト数
-	 */
-	public int getMyPixivNewImageSize(){
-		return this.getSize(Type.mypixiv_new_illust, DummyParameter);
-	}
-
-	/**
-	 * 新着 MyPixiv イラストを取得する．
-	 *
-	 * @param page 取得するページ番号
-	 * @return 取得したイラストのリスト
-	 */
-	public List<Image> getMyPixivNewImages(final int page){
-		return this.getImages(Type.mypixiv_new_illust, DummyParameter, page);
-	}
-
-	/**
-	 * お気に入りユーザの新着イラスト数を取得する．
-	 *
-	 * @return お気に入りユーザの新着イラスト数
-	 */
-	public int getBookmarkedUserNewImageSize(){
-		return this.getSize(Type.bookmark_user_new_illust, DummyParameter);
-	}
-
-	/**
-	 * お気に入りユーザの新着イラストを取得する．
-	 *
-	 * @param page 取得するページ番号
-	 * @return 取得したイラストのリスト
-	 */
-	public List<Image> getBookmarkedUserNewImages(final int page){
-		return this.getImages(Type.bookmark_user_new_illust, DummyParameter, page);
-	}
-
-	//----------------------------------------------------------------------------
-
-	/**
-	 * デイリーランキングのイラスト数を取得する．
-	 *
-	 * @return デイリーランキングのイラスト数
-	 */
-	public int getDailyRankingImageSize(){
-		return this.getSize(Type.ranking, Daily);
-	}
-
-	/**
-	 * デイリーランキングのイラストを取得する．
-	 *
-	 * @param page 取得するページ番号
-	 * @return 取得したイラストのリスト
-	 */
-	public List<Image> getDailyRankingImages(final int page){
-		return this.getImages(Type.ranking, Daily, page);
-	}
-
-	/**
-	 * ウィークリーランキングのイラスト数を取得する．
-	 *
-	 * @return ウィークリーランキングのイラスト数
-	 */
-	public int getWeeklyRankingImageSize(){
-		return this.getSize(Type.ranking, Weekly);
-	}
-
-	/**
-	 * ウィークリーランキングのイラストを取得する．
-	 *
-	 * @param page 取得するページ番号
-	 * @return 取得したイラストのリスト
-	 */
-	public List<Image> getWeeklyRankingImages(final int page){
-		return this.getImages(Type.ranking, Weekly, page);
-	}
-
-	/**
-	 * マンスリーランキングのイラスト数を取得する．
-	 *
-	 * @return マンスリーランキングのイラスト数
-	 */
-	public int getMonthlyRankingImageSize(){
-		return this.getSize(Type.ranking, Monthly);
-	}
-
-	/**
-	 * マンスリーランキングのイラストを取得する．
-	 *
-	 * @param page 取得するページ番号
-	 * @return 取得したイラストのリスト
-	 */
-	public List<Image> getMonthlyRankingImages(final int page){
-		return this.getImages(Type.ranking, Monthly, page);
-	}
-
-
-	//----------------------------------------------------------------------------
-	//  APIs for search
-	//----------------------------------------------------------------------------
-	/**
-	 * 与えられたキーワードに関連するタグを付加されたイラストを取得する．
-	 *
-	 * @param keyword 問い合わせるキーワード
-	 * @param size 取得するイラスト数
-	 * @return 取得したイラストのリスト
-	 * @throws IOException IOエラーが発生した場合
-	 */
-	public List<Image> findImagesByTag(final String keyword, final int size) throws IOException{
-
-		final String param = String.format("s_mode=s_tag&word=%s", URLEncoder.encode(keyword , UTF8));
-		return this.findImages(param, size);
-	}
-
-	/**
-	 * 与えられたキーワードに関連するタイトルを持つイラストを取得する．
-	 *
-	 * @param keyword 問い合わせるキーワード
-	 * @param size 取得するイラスト数
-	 * @return 取得したイラストのリスト
-	 * @throws IOException IOエラーが発生した場合
-	 */
-	public List<Image> findImagesByTitle(final String keyword, final int size) throws IOException{
-
-		final String param = String.format("s_mode=s_tc&word=%s", URLEncoder.encode(keyword , UTF8));
-		return this.findImages(param, size);
-
-	}
-
-	/**
-	 * 与えられた名前のユーザを取得する．
-	 *
-	 * @param name 問い合わせるユーザの名前
-	 * @param size 取得するユーザ数
-	 * @return 取得したユーザのリスト
-	 * @throws IOException IOエラーが発生した場合
-	 */
-	public List<User> findUsers(final String name, final int size) throws IOException{
-
-		final List<User> ret = new ArrayList<User>();
-		final String param = String.format("nick=%s", URLEncoder.encode(name , UTF8));
-		for(int i = 0; true; ++i){
-
-			final List<User> sub = this.getUsers(Type.search, param, i);
-			if(sub.size() == 0){
-
-				break;
-
-			}
-
-			ret.addAll(sub);
-
-		}
-
-		return ret;
-
-	}
-
-	/**
-	 * ID と名前を指定してユーザを取得する．
-	 *
-	 * @param id 取得するユーザの ID
-	 * @param name 取得するユーザの名前
-	 * @return 取得したユーザの User オブジェクト，ユーザが見つからなかった場合は null
-	 */
-	public User findUser(final int id, final String name){
-
-		final List<User> ret = new ArrayList<User>();
-		try{
-
-			for(int i = 0; ret.size() == 0 && i < 100; ++i){
-
-				final URL url = new URL(this.base, String.format("%s.php?nick=%s&%s=%s&p=%d", Type.search_user, URLEncoder.encode(name, UTF8), SessionID, this.session, i));
-				final HttpURLConnection con = (HttpURLConnection) url.openConnection();
-				con.connect();
-
-				if(con.getResponseCode() == 200){
-
-					final Reader in = new InputStreamReader(con.getInputStream());
-					CSVParser.parse(in, new Handler(){
-
-						@Override
-						public void update(final String[] data) {
-
-							try {
-
-								final User u = new User(PixivAPI.this, data);
-								if(u.getId() == id){
-
-									ret.add(u);
-
-								}
-
-							} catch (IOException e) {
-
-								// TODO 自動生成された catch ブロック
-								e.printStackTrace();
-
-							}
-
-						}
-
-					});
-					in.close();
-
-				}else{
-
-					break;
-
-				}
-
-			}
-
-		}catch(final IOException e){
-
-			// TODO 自動生成された catch ブロック
-			e.printStackTrace();
-
-		}
-
-		if(ret.size() != 0){
-
-			return ret.get(0);
-
-		}else{
-
-			return null;
-
-		}
-
-	}
-
-	//----------------------------------------------------------------------------
-	//  APIs for user
-	//----------------------------------------------------------------------------
-	/**
-	 * 指定したユーザの投稿イラスト数を取得する．
-	 *
-	 * @param userId ユーザ ID
-	 * @return 指定したユーザ ID を持つユーザの投稿イラスト数
-	 */
-	public int getImageSize(final int userId){
-		return this.getSizeById(Type.member_illust, userId);
-	}
-
-	/**
-	 * 指定したユーザの投稿イラストを取得する．
-	 *
-	 * @param userId ユーザ ID
-	 * @param page ページ数
-	 * @return 指定したユーザ ID を持つユーザの投稿イラスト
-	 */
-	public List<Image> getImages(final int userId, final int page){
-		return this.getImagesByUserId(Type.member_illust, userId, page);
-	}
-
-	/**
-	 * 指定したユーザの MyPixiv ユーザ数を取得する．
-	 *
-	 * @param userId ユーザ ID
-	 * @return 指定したユーザ ID を持つユーザの MyPixiv ユーザ数
-	 */
-	public int getMyPixivSize(final int usrId){
-		return this.getSizeById(Type.mypixiv_all, usrId);
-	}
-
-	/**
-	 * 指定したユーザの MyPixiv ユーザを取得する．
-	 *
-	 * @param userId ユーザ ID
-	 * @param page ページ数
-	 * @return 指定したユーザ ID を持つユーザの MyPixiv ユーザ
-	 */
-	public List<User> getMyPixivUsers(final int usrId, final int page){
-		return this.getUsersById(Type.mypixiv_all, usrId, page);
-	}
-
-	/**
-	 * 指定したユーザのお気に入りユーザ数を取得する．
-	 *
-	 * @param userId ユーザ ID
-	 * @return 指定したユーザ ID を持つユーザのお気に入りユーザ数
-	 */
-	public int getBookmarkedUserSize(final int id){
-		return this.getSizeById(Type.bookmark_user_all, id);
-	}
-
-	/**
-	 * 指定したユーザのお気に入りユーザを取得する．
-	 *
-	 * @param userId ユーザ ID
-	 * @param page ページ数
-	 * @return 指定したユーザ ID を持つユーザのお気に入りユーザ
-	 */
-	public List<User> getBookmarkedUsers(final int id, final int page){
-		return this.getUsersById(Type.bookmark_user_all, id, page);
-	}
-
-	/**
-	 * 指定したユーザのブックマーク数を取得する．
-	 *
-	 * @param userId ユーザ ID
-	 * @return 指定したユーザ ID を持つユーザのブックマーク数
-	 */
-	public int getBookmarkSize(final int id){
-		return this.getSizeById(Type.bookmark, id);
-	}
-
-	/**
-	 * 指定したユーザのブックマークを取得する．
-	 *
-	 * @param userId ユーザ ID
-	 * @param page ページ数
-	 * @return 指定したユーザ ID を持つユーザのブックマーク
-	 */
-	public List<Image> getBookmarks(final int id, final int page){
-		return this.getImagesByUserId(Type.bookmark, id, page);
-	}
-
-	//============================================================================
-	//  Private methods
-	//============================================================================
-	private Map<String, String> parseParameters(final String params){
-
-		final Map<String, String> ret = new HashMap<String, String>();
-
-		final Pattern param = Pattern.compile("(\\w+)=(\\w+)");
-		final Matcher m = param.matcher(params);
-		while(m.find()){
-
-			final String key = m.group(1);
-			final String value = m.group(2);
-
-			ret.put(key, value);
-
-		}
-
-		return ret;
-
-	}
-
-	/**
-	 * ユーザまたは画像の総数を取得する．
-	 *
-	 * @param type 取得する総数の種類
-	 * @param param 問合せ用パラメータ
-	 * @return 取得したユーザまたは画像の総数
-	 */
-	private int getSize(final Type type, final String param){
-
-		int ret = -1;
-		try{
-
-			final URL url = new URL(this.base, String.format("%s.php?%s&%s=%s&c_mode=count", type, param, SessionID, this.session));
-			final HttpURLConnection con = (HttpURLConnection) url.openConnection();
-			con.connect();
-
-			if(con.getResponseCode() == 200){
-
-				final BufferedReader in = new BufferedReader(new InputStreamReader(con.getInputStream()));
-				final String buf = in.readLine();
-				if(buf != null){
-
-					ret = Integer.parseInt(buf);
-
-				}
-
-				in.close();
-
-			}
-
-		}catch(final IOException e){
-
-			e.printStackTrace();
-
-		}
-
-		return ret;
-
-	}
-
-	/**
-	 * ID を指定してユーザまたは画像の総数を取得する．
-	 *
-	 * @param type 取得する総数の種類
-	 * @param id 問合せに使用する ID
-	 * @return 取得したユーザまたは画像の総数
-	 */
-	private int getSizeById(final Type type, final int id){
-		return this.getSize(type, String.format(IDParamTemplate, id));
-	}
-
-	/**
-	 * 画像に関する情報を取得する．
-	 *
-	 * @param type 取得する画像の種類
-	 * @param param 問合せ用パラメータ
-	 * @param page 取得するページ
-	 * @return 取得した画像のリスト
-	 */
-	private List<Image> getImages(final Type type, final String param, final int page){
-
-		final List<Image> ret = new ArrayList<Image>();
-		try{
-
-			final URL url = new URL(this.base, String.format("%s.php?%s&%s=%s&p=%d", type, param, SessionID, this.session, page));
-			final HttpURLConnection con = (HttpURLConnection) url.openConnection();
-			con.connect();
-
-			if(con.getResponseCode() == 200){
-
-				final Reader in = new InputStreamReader(con.getInputStream());
-				CSVParser.parse(in, new Handler(){
-
-					@Override
-					public void update(final String[] data) {
-
-						try {
-
-							final Image image = new Image(PixivAPI.this, data);
-							if(!ret.contains(image)){
-
-								ret.add(image);
-
-							}
-
-						} catch (IOException e) {
-
-							e.printStackTrace();
-
-						}
-
-					}
-
-				});
-				in.close();
-
-			}
-
-		}catch(final IOException e){
-
-			e.printStackTrace();
-
-		}
-
-		return ret;
-
-	}
-
-	private List<Image> getImagesByUserId(final Type type, final int id, final int page){
-		return this.getImages(type, String.format(IDParamTemplate, id), page);
-	}
-
-	private List<Image> findImages(final String param, final int size) throws IOException{
-
-		final List<Image> ret = new ArrayList<Image>();
-		for(int i = 0; ret.size() < size; ++i){
-
-			final List<Image> sub = this.getImages(Type.search, param, i);
-			if(sub.size() == 0){
-
-				break;
-
-			}
-
-			ret.addAll(sub);
-
-		}
-
-
-		return ret;
-
-	}
-
-	private List<User> getUsers(final Type type, final String param, final int page){
-
-		final List<User> ret = new ArrayList<User>();
-		try{
-
-			final URL url = new URL(this.base, String.format("%s.php?%s&%s=%s&p=%d", type, param, SessionID, this.session, page));
-			final HttpURLConnection con = (HttpURLConnection) url.openConnection();
-			con.connect();
-
-			if(con.getResponseCode() == 200){
-
-				final Reader in = new InputStreamReader(con.getInputStream());
-				CSVParser.parse(in, new Handler(){
-
-					@Override
-					public void update(final String[] data) {
-
-						try {
-
-							ret.add(new User(PixivAPI.this, data));
-
-						} catch (IOException e) {
-
-							// TODO 自動生成された catch ブロック
-							e.printStackTrace();
-
-						}
-
-					}
-
-				});
-				in.close();
-
-			}
-
-
-		}catch(final IOException e){
-
-			e.printStackTrace();
-
-		}
-
-		return ret;
-
-	}
-
-	private List<User> getUsersById(final Type type, final int id, final int page){
-		return this.getUsers(type, String.format(IDParamTemplate, id), page);
-	}
-
-	//============================================================================
-	//  Public static methods
-	//============================================================================
-	/**
-	 * サンプルプログラム．
-	 *
-	 * @param args ユーザ名，パスワード，タグ検索用キーワード
-	 * @throws IOException IOエラーが発生した場合．
-	 */
-	public static void main(final String[] args) throws IOException{
-
-		final PixivAPI api = new PixivAPI();
-		System.out.println("Status: " + api.status());
-
-		System.out.println("= new images on the 1st page");
-		for(final Image i : api.getNewImages(0)){
-
-			System.out.println(String.format("%s by %s (%s)", i.getTitle(), i.getAuthorName(), i.getImageURL()));
-
-			final User author = i.getAuthor();
-			if(author != null){
-
-				for(final User user : author.getBookmarkedUsers(0)){
-
-					System.out.println(">> " + user);
-
-				}
-
-			}
-
-		}
-
-		System.out.println("= find images by tag");
-		for(final Image i : api.findImagesByTag(args[2], 10)){
-
-			System.out.println(String.format("%s by %s (%s)", i.getTitle(), i.getAuthorName(), i.getImageURL()));
-
-		}
-
-		// Login
-		if(api.login(args[0], args[1])){
-
-			System.out.println("Profile: " + api.profile());
-			System.out.println("My pixiv new images: " + api.getMyPixivNewImageSize());
-
-		}
-
-	}
-
-}
+/*
+ *  Copyright (C) 2010 Junpei Kawamoto
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package pxv;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Pixiv API．
+ *
+ * @since 0.1
+ */
+public class PixivAPI {
+
+	private final URL base;
+	private final Transport transport;
+
+	/** セッション ID，複数のスレッドから参照されるため volatile とする */
+	private volatile String session = Zero;
+
+	/** 重複として取り除いたイラストの数 */
+	private final AtomicLong duplicates = new AtomicLong();
+
+	/** 検索結果のページを並列に取得するスレッドプール，逐次取得する場合は null */
+	private volatile ExecutorService fanOutExecutor = null;
+	/** 同時に取得するページ数 */
+	private volatile int fanOutParallelism = 1;
+
+	/** 全ページを読み出すカーソルが先読みに使うスレッドプール，先読みしない場合は null */
+	private volatile ExecutorService readAheadExecutor = null;
+	/** 全ページを読み出すカーソルが先読みするページ数 */
+	private volatile int readAheadDepth = 0;
+
+	/** 応答のキャッシュ，キャッシュしない場合は null */
+	private volatile ResponseCache cache = null;
+	/** 問合せの種類ごとのキャッシュの有効期間 (ナノ秒) */
+	private final AtomicLongArray ttls = defaultTTLs();
+	/** 読み込んだユーザの ID から User への対応，参照順．並列に読み込むスレッドが奪い合わないようストライプに分ける */
+	private final StripedLRUMap<User> users = new StripedLRUMap<User>(DefaultUserCacheSize);
+
+	/** イラストの identity map，使用しない場合は null */
+	private volatile IdentityMap<Image> imageIdentities = null;
+	/** ユーザの identity map，使用しない場合は null */
+	private volatile IdentityMap<User> userIdentities = null;
+
+	/** 同時に呼び出された同じ問合せをまとめる */
+	private final SingleFlight inflight = new SingleFlight();
+
+	/** 応答のディスクキャッシュ，使用しない場合は null */
+	private volatile DiskCache disk = null;
+	/** 問合せの種類ごとの stale-while-revalidate の期間 (ナノ秒) */
+	private final AtomicLongArray swrs = defaultSWRs();
+
+	//============================================================================
+	//  Constants
+	//============================================================================
+	private static final String BaseURL = "http://iphone.pxv.jp/iphone/";
+	private static final String SessionID = "PHPSESSID";
+
+	/**
+	 * 問合せの種類．
+	 *
+	 * @since 0.2
+	 */
+	public enum Type{
+		/** 新着イラスト */
+		new_illust,
+		/** 新着 MyPixiv イラスト (ログインしたユーザごとの結果) */
+		mypixiv_new_illust,
+		/** お気に入りユーザの新着イラスト (ログインしたユーザごとの結果) */
+		bookmark_user_new_illust,
+		/** ランキング (デイリー，ウィークリー，マンスリー) */
+		ranking,
+		/** イラストとユーザの検索 */
+		search,
+		/** ユーザの名前による検索 */
+		search_user,
+		/** ブックマーク */
+		bookmark,
+		/** お気に入りユーザ */
+		bookmark_user_all,
+		/** MyPixiv ユーザ */
+		mypixiv_all,
+		/** 投稿イラスト */
+		member_illust
+	}
+
+	private static final String DummyParameter = "dummy=0";
+	private static final String Daily = "mode=day";
+	private static final String Weekly = "mode=week";
+	private static final String Monthly = "mode=month";
+
+	private static final String IDParamTemplate = "id=%d";
+
+	/** ID から User への対応に保持するユーザ数の上限の既定値 */
+	private static final int DefaultUserCacheSize = 65536;
+	/** ユーザ名で検索する際にたどる最大ページ数 */
+	private static final int MaxUserSearchPages = 100;
+
+	/** 全ページを読み出すカーソルで重複を判定するイラストの ID */
+	private static final PagedCursor.Key<Image> ImageKey = new PagedCursor.Key<Image>(){
+
+		@Override
+		public int of(final Image element) {
+			return element.getId();
+		}
+
+	};
+
+	/** 全ページを読み出すカーソルで重複を判定するユーザの ID */
+	private static final PagedCursor.Key<User> UserKey = new PagedCursor.Key<User>(){
+
+		@Override
+		public int of(final User element) {
+			return element.getId();
+		}
+
+	};
+
+	private static final String UTF8 = "UTF-8";
+	private static final String Zero = "0";
+
+	//============================================================================
+	//  Constructors
+	//============================================================================
+	/**
+	 * PixivAPI インスタンスを作成する．
+	 *
+	 * @throws IOException I/O エラーが発生した場合．
+	 */
+	public PixivAPI() throws IOException{
+		this(new URLConnectionTransport());
+	}
+
+	/**
+	 * 通信に使用するトランスポートを指定して PixivAPI インスタンスを作成する．
+	 *
+	 * @param transport HTTP 通信に使用するトランスポート
+	 * @throws IOException I/O エラーが発生した場合．
+	 * @since 0.2
+	 */
+	public PixivAPI(final Transport transport) throws IOException{
+
+		this.base = new URL(BaseURL);
+		this.transport = transport;
+
+	}
+
+	//============================================================================
+	//  Public methods
+	//============================================================================
+	//----------------------------------------------------------------------------
+	//  APIs for user's account
+	//----------------------------------------------------------------------------
+	/**
+	 * ログインする．
+	 *
+	 * @param id ユーザ ID
+	 * @param password パスワード
+	 * @return ログインに成功した場合 true
+	 */
+	public boolean login(final String id, final String password){
+
+		try {
+
+			final URL url = new URL(base, String.format("login.php?mode=login&pixiv_id=%s&pass=%s&skip=0", id, password));
+			final Transport.Response res = this.transport.get(url);
+			try{
+
+				if(res.getStatus() == 200){
+
+					this.session = this.parseParameters(res.getURL().getQuery()).get(SessionID);
+
+				}
+
+			}finally{
+
+				res.close();
+
+			}
+
+		} catch (final IOException e) {
+
+			// TODO 自動生成された catch ブロック
+			e.printStackTrace();
+
+		}
+
+		return this.logined();
+
+	}
+
+	/**
+	 * ログインしているか調べる．
+	 *
+	 * @return ログインしている場合 true
+	 */
+	public boolean logined(){
+
+		return this.session != Zero;
+
+	}
+
+	/**
+	 * システムの稼働状態を調べる．
+	 *
+	 * @return システムが稼働している場合 true
+	 */
+	public boolean status(){
+
+		try {
+
+			final URL url = new URL(this.base, "maintenance.php?software-version=1.0");
+			final Transport.Response res = this.transport.get(url);
+			try{
+
+				return res.getStatus() == 200;
+
+			}finally{
+
+				res.close();
+
+			}
+
+		} catch (final IOException e) {
+
+			e.printStackTrace();
+
+		}
+
+		return false;
+
+	}
+
+	/**
+	 * ログインユーザのプロフィールを取得する．
+	 *
+	 * @return プロフィール
+	 */
+	public String profile(){
+
+		final StringBuffer ret = new StringBuffer();
+		try {
+
+			final URL url = new URL(this.base, String.format("profile.php?dummy=0&%s=%s", SessionID, this.session));
+			final Transport.Response res = this.transport.get(url);
+			try{
+
+				if(res.getStatus() == 200){
+
+					final BufferedReader in = new BufferedReader(new InputStreamReader(res.getBody(), UTF8));
+					for(String buf; (buf = in.readLine()) != null;){
+
+						ret.append(buf);
+						ret.append("\n");
+
+					}
+
+				}
+
+			}finally{
+
+				res.close();
+
+			}
+
+		} catch (final IOException e) {
+
+			e.printStackTrace();
+
+		}
+
+		return ret.toString();
+
+	}
+
+	//----------------------------------------------------------------------------
+	//  APIs for new images
+	//----------------------------------------------------------------------------
+	/**
+	 * 新着イラスト数を取得する．
+	 *
+	 * @return 新着イラスト数
+	 */
+	public int getNewImageSize(){
+		return this.getSize(Type.new_illust, DummyParameter);
+	}
+
+	/**
+	 * 新着イラストを取得する．
+	 *
+	 * @param page 取得するページ番号
+	 * @return 取得したイラストのリスト
+	 */
+	public List<Image> getNewImages(final int page){
+		return this.getImages(Type.new_illust, DummyParameter, page);
+	}
+
+	/**
+	 * 新着イラストを 1 件ずつ読み出すカーソルを取得する．
+	 *
+	 * @param page 取得するページ番号
+	 * @return 取得したイラストのカーソル
+	 */
+	public Cursor<Image> openNewImages(final int page){
+		return this.openImages(Type.new_illust, DummyParameter, page);
+	}
+
+	/**
+	 * 新着イラストを全ページにわたって 1 件ずつ読み出すカーソルを取得する．
+	 *
+	 * @return 取得したイラストのカーソル
+	 */
+	public PagedCursor<Image> openAllNewImages(){
+		return this.openAllImages(Type.new_illust, DummyParameter);
+	}
+
+	/**
+	 * 新着イラストを Image を作らずに表へ追加する．
+	 *
+	 * @param table 追加する表
+	 * @param page 取得するページ番号
+	 * @return 読み込んだ行数，最後のページを過ぎた場合や取得できなかった場合は 0
+	 * @since 0.2
+	 */
+	public int appendNewImages(final ImageTable table, final int page){
+		return this.appendImages(table, Type.new_illust, DummyParameter, page);
+	}
+
+	/**
+	 * 新着 MyPixiv イラストの数を取得する．
+	 *
+	 * @return 新着 MyPixiv イラスト数
+	 */
+	public int getMyPixivNewImageSize(){
+		return this.getSize(Type.mypixiv_new_illust, DummyParameter);
+	}
+
+	/**
+	 * 新着 MyPixiv イラストを取得する．
+	 *
+	 * @param page 取得するページ番号
+	 * @return 取得したイラストのリスト
+	 */
+	public List<Image> getMyPixivNewImages(final int page){
+		return this.getImages(Type.mypixiv_new_illust, DummyParameter, page);
+	}
+
+	/**
+	 * 新着 MyPixiv イラストを 1 件ずつ読み出すカーソルを取得する．
+	 *
+	 * @param page 取得するページ番号
+	 * @return 取得したイラストのカーソル
+	 */
+	public Cursor<Image> openMyPixivNewImages(final int page){
+		return this.openImages(Type.mypixiv_new_illust, DummyParameter, page);
+	}
+
+	/**
+	 * 新着 MyPixiv イラストを全ページにわたって 1 件ずつ読み出すカーソルを取得する．
+	 *
+	 * @return 取得したイラストのカーソル
+	 */
+	public PagedCursor<Image> openAllMyPixivNewImages(){
+		return this.openAllImages(Type.mypixiv_new_illust, DummyParameter);
+	}
+
+	/**
+	 * 新着 MyPixiv イラストを Image を作らずに表へ追加する．
+	 *
+	 * @param table 追加する表
+	 * @param page 取得するページ番号
+	 * @return 読み込んだ行数，最後のページを過ぎた場合や取得できなかった場合は 0
+	 * @since 0.2
+	 */
+	public int appendMyPixivNewImages(final ImageTable table, final int page){
+		return this.appendImages(table, Type.mypixiv_new_illust, DummyParameter, page);
+	}
+
+	/**
+	 * お気に入りユーザの新着イラスト数を取得する．
+	 *
+	 * @return お気に入りユーザの新着イラスト数
+	 */
+	public int getBookmarkedUserNewImageSize(){
+		return this.getSize(Type.bookmark_user_new_illust, DummyParameter);
+	}
+
+	/**
+	 * お気に入りユーザの新着イラストを取得する．
+	 *
+	 * @param page 取得するページ番号
+	 * @return 取得したイラストのリスト
+	 */
+	public List<Image> getBookmarkedUserNewImages(final int page){
+		return this.getImages(Type.bookmark_user_new_illust, DummyParameter, page);
+	}
+
+	/**
+	 * お気に入りユーザの新着イラストを 1 件ずつ読み出すカーソルを取得する．
+	 *
+	 * @param page 取得するページ番号
+	 * @return 取得したイラストのカーソル
+	 */
+	public Cursor<Image> openBookmarkedUserNewImages(final int page){
+		return this.openImages(Type.bookmark_user_new_illust, DummyParameter, page);
+	}
+
+	/**
+	 * お気に入りユーザの新着イラストを全ページにわたって 1 件ずつ読み出すカーソルを取得する．
+	 *
+	 * @return 取得したイラストのカーソル
+	 */
+	public PagedCursor<Image> openAllBookmarkedUserNewImages(){
+		return this.openAllImages(Type.bookmark_user_new_illust, DummyParameter);
+	}
+
+	/**
+	 * お気に入りユーザの新着イラストを Image を作らずに表へ追加する．
+	 *
+	 * @param table 追加する表
+	 * @param page 取得するページ番号
+	 * @return 読み込んだ行数，最後のページを過ぎた場合や取得できなかった場合は 0
+	 * @since 0.2
+	 */
+	public int appendBookmarkedUserNewImages(final ImageTable table, final int page){
+		return this.appendImages(table, Type.bookmark_user_new_illust, DummyParameter, page);
+	}
+
+	//----------------------------------------------------------------------------
+
+	/**
+	 * デイリーランキングのイラスト数を取得する．
+	 *
+	 * @return デイリーランキングのイラスト数
+	 */
+	public int getDailyRankingImageSize(){
+		return this.getSize(Type.ranking, Daily);
+	}
+
+	/**
+	 * デイリーランキングのイラストを取得する．
+	 *
+	 * @param page 取得するページ番号
+	 * @return 取得したイラストのリスト
+	 */
+	public List<Image> getDailyRankingImages(final int page){
+		return this.getImages(Type.ranking, Daily, page);
+	}
+
+	/**
+	 * デイリーランキングのイラストを 1 件ずつ読み出すカーソルを取得する．
+	 *
+	 * @param page 取得するページ番号
+	 * @return 取得したイラストのカーソル
+	 */
+	public Cursor<Image> openDailyRankingImages(final int page){
+		return this.openImages(Type.ranking, Daily, page);
+	}
+
+	/**
+	 * デイリーランキングのイラストを全ページにわたって 1 件ずつ読み出すカーソルを取得する．
+	 *
+	 * @return 取得したイラストのカーソル
+	 */
+	public PagedCursor<Image> openAllDailyRankingImages(){
+		return this.openAllImages(Type.ranking, Daily);
+	}
+
+	/**
+	 * デイリーランキングのイラストを Image を作らずに表へ追加する．
+	 *
+	 * @param table 追加する表
+	 * @param page 取得するページ番号
+	 * @return 読み込んだ行数，最後のページを過ぎた場合や取得できなかった場合は 0
+	 * @since 0.2
+	 */
+	public int appendDailyRankingImages(final ImageTable table, final int page){
+		return this.appendImages(table, Type.ranking, Daily, page);
+	}
+
+	/**
+	 * ウィークリーランキングのイラスト数を取得する．
+	 *
+	 * @return ウィークリーランキングのイラスト数
+	 */
+	public int getWeeklyRankingImageSize(){
+		return this.getSize(Type.ranking, Weekly);
+	}
+
+	/**
+	 * ウィークリーランキングのイラストを取得する．
+	 *
+	 * @param page 取得するページ番号
+	 * @return 取得したイラストのリスト
+	 */
+	public List<Image> getWeeklyRankingImages(final int page){
+		return this.getImages(Type.ranking, Weekly, page);
+	}
+
+	/**
+	 * ウィークリーランキングのイラストを 1 件ずつ読み出すカーソルを取得する．
+	 *
+	 * @param page 取得するページ番号
+	 * @return 取得したイラストのカーソル
+	 */
+	public Cursor<Image> openWeeklyRankingImages(final int page){
+		return this.openImages(Type.ranking, Weekly, page);
+	}
+
+	/**
+	 * ウィークリーランキングのイラストを全ページにわたって 1 件ずつ読み出すカーソルを取得する．
+	 *
+	 * @return 取得したイラストのカーソル
+	 */
+	public PagedCursor<Image> openAllWeeklyRankingImages(){
+		return this.openAllImages(Type.ranking, Weekly);
+	}
+
+	/**
+	 * ウィークリーランキングのイラストを Image を作らずに表へ追加する．
+	 *
+	 * @param table 追加する表
+	 * @param page 取得するページ番号
+	 * @return 読み込んだ行数，最後のページを過ぎた場合や取得できなかった場合は 0
+	 * @since 0.2
+	 */
+	public int appendWeeklyRankingImages(final ImageTable table, final int page){
+		return this.appendImages(table, Type.ranking, Weekly, page);
+	}
+
+	/**
+	 * マンスリーランキングのイラスト数を取得する．
+	 *
+	 * @return マンスリーランキングのイラスト数
+	 */
+	public int getMonthlyRankingImageSize(){
+		return this.getSize(Type.ranking, Monthly);
+	}
+
+	/**
+	 * マンスリーランキングのイラストを取得する．
+	 *
+	 * @param page 取得するページ番号
+	 * @return 取得したイラストのリスト
+	 */
+	public List<Image> getMonthlyRankingImages(final int page){
+		return this.getImages(Type.ranking, Monthly, page);
+	}
+
+	/**
+	 * マンスリーランキングのイラストを 1 件ずつ読み出すカーソルを取得する．
+	 *
+	 * @param page 取得するページ番号
+	 * @return 取得したイラストのカーソル
+	 */
+	public Cursor<Image> openMonthlyRankingImages(final int page){
+		return this.openImages(Type.ranking, Monthly, page);
+	}
+
+	/**
+	 * マンスリーランキングのイラストを全ページにわたって 1 件ずつ読み出すカーソルを取得する．
+	 *
+	 * @return 取得したイラストのカーソル
+	 */
+	public PagedCursor<Image> openAllMonthlyRankingImages(){
+		return this.openAllImages(Type.ranking, Monthly);
+	}
+
+	/**
+	 * マンスリーランキングのイラストを Image を作らずに表へ追加する．
+	 *
+	 * @param table 追加する表
+	 * @param page 取得するページ番号
+	 * @return 読み込んだ行数，最後のページを過ぎた場合や取得できなかった場合は 0
+	 * @since 0.2
+	 */
+	public int appendMonthlyRankingImages(final ImageTable table, final int page){
+		return this.appendImages(table, Type.ranking, Monthly, page);
+	}
+
+
+	//----------------------------------------------------------------------------
+	//  APIs for search
+	//----------------------------------------------------------------------------
+	/**
+	 * 与えられたキーワードに関連するタグを付加されたイラストを取得する．
+	 *
+	 * @param keyword 問い合わせるキーワード
+	 * @param size 取得するイラスト数
+	 * @return 取得したイラストのリスト
+	 * @throws IOException IOエラーが発生した場合
+	 */
+	public List<Image> findImagesByTag(final String keyword, final int size) throws IOException{
+
+		final String param = String.format("s_mode=s_tag&word=%s", URLEncoder.encode(keyword , UTF8));
+		return this.findImages(param, size);
+	}
+
+	/**
+	 * 与えられたキーワードに関連するタイトルを持つイラストを取得する．
+	 *
+	 * @param keyword 問い合わせるキーワード
+	 * @param size 取得するイラスト数
+	 * @return 取得したイラストのリスト
+	 * @throws IOException IOエラーが発生した場合
+	 */
+	public List<Image> findImagesByTitle(final String keyword, final int size) throws IOException{
+
+		final String param = String.format("s_mode=s_tc&word=%s", URLEncoder.encode(keyword , UTF8));
+		return this.findImages(param, size);
+
+	}
+
+	/**
+	 * 与えられた名前のユーザを取得する．
+	 *
+	 * @param name 問い合わせるユーザの名前
+	 * @param size 取得するユーザ数
+	 * @return 取得したユーザのリスト
+	 * @throws IOException IOエラーが発生した場合
+	 */
+	public List<User> findUsers(final String name, final int size) throws IOException{
+
+		final List<User> ret = new ArrayList<User>();
+		final String param = String.format("nick=%s", URLEncoder.encode(name , UTF8));
+
+		int page = 0;
+		final ExecutorService executor = this.fanOutExecutor;
+		if(executor != null){
+
+			final FutureTask<Integer> count = fork(executor, this.sizeTask(Type.search, param));
+			final List<User> first = this.fetchUsers(Type.search, param, 0);
+			ret.addAll(first);
+			if(first.size() == 0){
+
+				return ret;
+
+			}
+
+			final int pages = pageCount(get(count, -1), first.size());
+			if(pages >= 0){
+
+				// 件数から求めたページ数を信頼し，最後の空のページは取得しない
+				for(final List<User> sub : this.fetchPages(executor, 1, pages, new PageReader<User>(){
+
+					@Override
+					public List<User> read(final int page) throws IOException {
+						return PixivAPI.this.fetchUsers(Type.search, param, page);
+					}
+
+				})){
+
+					ret.addAll(sub);
+
+				}
+				return ret;
+
+			}
+			page = 1;
+
+		}
+
+		for(int i = page; true; ++i){
+
+			final List<User> sub = this.fetchUsers(Type.search, param, i);
+			if(sub.size() == 0){
+
+				break;
+
+			}
+
+			ret.addAll(sub);
+
+		}
+
+		return ret;
+
+	}
+
+	/**
+	 * ID と名前を指定してユーザを取得する．
+	 * これまでに読み込んだユーザの中に ID が一致するものがあれば，問い合わせずにそれを返す．
+	 *
+	 * @param id 取得するユーザの ID
+	 * @param name 取得するユーザの名前
+	 * @return 取得したユーザの User オブジェクト，ユーザが見つからなかった場合は null
+	 */
+	public User findUser(final int id, final String name){
+
+		final User cached = this.lookup(id);
+		if(cached != null){
+
+			return cached;
+
+		}
+
+		final String key = String.format("user:%d:%s:%s", id, name, this.session);
+		return this.inflight.execute(key, new Callable<User>(){
+
+			@Override
+			public User call() {
+				return PixivAPI.this.searchUser(id, name);
+			}
+
+		}, null);
+
+	}
+
+	/**
+	 * イラストの作者をまとめて取得する．
+	 * <p>
+	 * これまでに読み込んだユーザの中に無い作者は，作者名ごとに 1 度だけ検索し，
+	 * その名前で探している ID が全て見つかった時点でページをたどるのをやめます．
+	 * </p>
+	 *
+	 * @param images 作者を取得するイラスト
+	 * @return 作者の ID から User への対応，見つからなかった作者は含まない
+	 * @since 0.2
+	 */
+	public Map<Integer, User> resolveAuthors(final Collection<Image> images){
+
+		final Map<Integer, User> ret = new HashMap<Integer, User>();
+		final Map<String, IntHashSet> wanted = new LinkedHashMap<String, IntHashSet>();
+		for(final Image i : images){
+
+			final int id = i.getAuthorId();
+			if(ret.containsKey(id)){
+
+				continue;
+
+			}
+
+			final User cached = this.lookup(id);
+			if(cached != null){
+
+				ret.put(id, cached);
+				continue;
+
+			}
+
+			IntHashSet ids = wanted.get(i.getAuthorName());
+			if(ids == null){
+
+				ids = new IntHashSet();
+				wanted.put(i.getAuthorName(), ids);
+
+			}
+			ids.add(id);
+
+		}
+
+		for(final Map.Entry<String, IntHashSet> e : wanted.entrySet()){
+
+			this.searchUsers(e.getKey(), e.getValue(), ret);
+
+		}
+
+		return ret;
+
+	}
+
+	//----------------------------------------------------------------------------
+	//  APIs for user
+	//----------------------------------------------------------------------------
+	/**
+	 * 指定したユーザの投稿イラスト数を取得する．
+	 *
+	 * @param userId ユーザ ID
+	 * @return 指定したユーザ ID を持つユーザの投稿イラスト数
+	 */
+	public int getImageSize(final int userId){
+		return this.getSizeById(Type.member_illust, userId);
+	}
+
+	/**
+	 * 指定したユーザの投稿イラストを取得する．
+	 *
+	 * @param userId ユーザ ID
+	 * @param page ページ数
+	 * @return 指定したユーザ ID を持つユーザの投稿イラスト
+	 */
+	public List<Image> getImages(final int userId, final int page){
+		return this.getImagesByUserId(Type.member_illust, userId, page);
+	}
+
+	/**
+	 * 指定したユーザの投稿イラストを 1 件ずつ読み出すカーソルを取得する．
+	 *
+	 * @param userId ユーザ ID
+	 * @param page ページ数
+	 * @return 取得したイラストのカーソル
+	 */
+	public Cursor<Image> openImages(final int userId, final int page){
+		return this.openImagesByUserId(Type.member_illust, userId, page);
+	}
+
+	/**
+	 * 指定したユーザの投稿イラストを全ページにわたって 1 件ずつ読み出すカーソルを取得する．
+	 *
+	 * @param userId ユーザ ID
+	 * @return 取得したイラストのカーソル
+	 */
+	public PagedCursor<Image> openAllImages(final int userId){
+		return this.openAllImagesByUserId(Type.member_illust, userId);
+	}
+
+	/**
+	 * 指定したユーザの投稿イラストを Image を作らずに表へ追加する．
+	 *
+	 * @param table 追加する表
+	 * @param userId ユーザ ID
+	 * @param page ページ数
+	 * @return 読み込んだ行数，最後のページを過ぎた場合や取得できなかった場合は 0
+	 * @since 0.2
+	 */
+	public int appendImages(final ImageTable table, final int userId, final int page){
+		return this.appendImages(table, Type.member_illust, String.format(IDParamTemplate, userId), page);
+	}
+
+	/**
+	 * 指定したユーザの MyPixiv ユーザ数を取得する．
+	 *
+	 * @param userId ユーザ ID
+	 * @return 指定したユーザ ID を持つユーザの MyPixiv ユーザ数
+	 */
+	public int getMyPixivSize(final int usrId){
+		return this.getSizeById(Type.mypixiv_all, usrId);
+	}
+
+	/**
+	 * 指定したユーザの MyPixiv ユーザを取得する．
+	 *
+	 * @param userId ユーザ ID
+	 * @param page ページ数
+	 * @return 指定したユーザ ID を持つユーザの MyPixiv ユーザ
+	 */
+	public List<User> getMyPixivUsers(final int usrId, final int page){
+		return this.getUsersById(Type.mypixiv_all, usrId, page);
+	}
+
+	/**
+	 * 指定したユーザの MyPixiv ユーザを 1 件ずつ読み出すカーソルを取得する．
+	 *
+	 * @param userId ユーザ ID
+	 * @param page ページ数
+	 * @return 取得したユーザのカーソル
+	 */
+	public Cursor<User> openMyPixivUsers(final int usrId, final int page){
+		return this.openUsersById(Type.mypixiv_all, usrId, page);
+	}
+
+	/**
+	 * 指定したユーザの MyPixiv ユーザを全ページにわたって 1 件ずつ読み出すカーソルを取得する．
+	 *
+	 * @param userId ユーザ ID
+	 * @return 取得したユーザのカーソル
+	 */
+	public PagedCursor<User> openAllMyPixivUsers(final int usrId){
+		return this.openAllUsersById(Type.mypixiv_all, usrId);
+	}
+
+	/**
+	 * 指定したユーザのお気に入りユーザ数を取得する．
+	 *
+	 * @param userId ユーザ ID
+	 * @return 指定したユーザ ID を持つユーザのお気に入りユーザ数
+	 */
+	public int getBookmarkedUserSize(final int id){
+		return this.getSizeById(Type.bookmark_user_all, id);
+	}
+
+	/**
+	 * 指定したユーザのお気に入りユーザを取得する．
+	 *
+	 * @param userId ユーザ ID
+	 * @param page ページ数
+	 * @return 指定したユーザ ID を持つユーザのお気に入りユーザ
+	 */
+	public List<User> getBookmarkedUsers(final int id, final int page){
+		return this.getUsersById(Type.bookmark_user_all, id, page);
+	}
+
+	/**
+	 * 指定したユーザのお気に入りユーザを 1 件ずつ読み出すカーソルを取得する．
+	 *
+	 * @param userId ユーザ ID
+	 * @param page ページ数
+	 * @return 取得したユーザのカーソル
+	 */
+	public Cursor<User> openBookmarkedUsers(final int id, final int page){
+		return this.openUsersById(Type.bookmark_user_all, id, page);
+	}
+
+	/**
+	 * 指定したユーザのお気に入りユーザを全ページにわたって 1 件ずつ読み出すカーソルを取得する．
+	 *
+	 * @param userId ユーザ ID
+	 * @return 取得したユーザのカーソル
+	 */
+	public PagedCursor<User> openAllBookmarkedUsers(final int id){
+		return this.openAllUsersById(Type.bookmark_user_all, id);
+	}
+
+	/**
+	 * 指定したユーザのブックマーク数を取得する．
+	 *
+	 * @param userId ユーザ ID
+	 * @return 指定したユーザ ID を持つユーザのブックマーク数
+	 */
+	public int getBookmarkSize(final int id){
+		return this.getSizeById(Type.bookmark, id);
+	}
+
+	/**
+	 * 指定したユーザのブックマークを取得する．
+	 *
+	 * @param userId ユーザ ID
+	 * @param page ページ数
+	 * @return 指定したユーザ ID を持つユーザのブックマーク
+	 */
+	public List<Image> getBookmarks(final int id, final int page){
+		return this.getImagesByUserId(Type.bookmark, id, page);
+	}
+
+	/**
+	 * 指定したユーザのブックマークを 1 件ずつ読み出すカーソルを取得する．
+	 *
+	 * @param userId ユーザ ID
+	 * @param page ページ数
+	 * @return 取得したイラストのカーソル
+	 */
+	public Cursor<Image> openBookmarks(final int id, final int page){
+		return this.openImagesByUserId(Type.bookmark, id, page);
+	}
+
+	/**
+	 * 指定したユーザのブックマークを全ページにわたって 1 件ずつ読み出すカーソルを取得する．
+	 *
+	 * @param userId ユーザ ID
+	 * @return 取得したイラストのカーソル
+	 */
+	public PagedCursor<Image> openAllBookmarks(final int id){
+		return this.openAllImagesByUserId(Type.bookmark, id);
+	}
+
+	/**
+	 * 指定したユーザのブックマークを Image を作らずに表へ追加する．
+	 *
+	 * @param table 追加する表
+	 * @param userId ユーザ ID
+	 * @param page ページ数
+	 * @return 読み込んだ行数，最後のページを過ぎた場合や取得できなかった場合は 0
+	 * @since 0.2
+	 */
+	public int appendBookmarks(final ImageTable table, final int userId, final int page){
+		return this.appendImages(table, Type.bookmark, String.format(IDParamTemplate, userId), page);
+	}
+
+	/**
+	 * 指定したユーザの全てのブックマークのイラスト ID を取得する．
+	 * <p>
+	 * 全ページを 1 件ずつ読み出しながら ID だけを集めるため，Image のリストを保持しません．
+	 * 複数のユーザの結果は IntBitmap.and や IntBitmap.or でボックス化せずに比較できます．
+	 * 途中のページの取得に失敗した場合は，一部だけの集合で誤った比較をしないように null を返します．
+	 * </p>
+	 *
+	 * @param id ユーザ ID
+	 * @return ブックマークしたイラストの ID の集合，取得に失敗した場合は null
+	 * @since 0.2
+	 */
+	public IntBitmap getAllBookmarkIds(final int id){
+
+		final IntBitmap ret = new IntBitmap();
+		final PagedCursor<Image> cursor = this.openAllBookmarks(id);
+		try{
+
+			for(final Image i : cursor){
+
+				ret.add(i.getId());
+
+			}
+
+		}finally{
+
+			cursor.close();
+
+		}
+		return cursor.isFailed() ? null : ret;
+
+	}
+
+	//----------------------------------------------------------------------------
+	//  Configuration
+	//----------------------------------------------------------------------------
+	/**
+	 * 検索結果のページを並列に取得するように設定する．
+	 * <p>
+	 * 設定すると findImagesByTag，findImagesByTitle，findUsers は，まず件数の問合せ (c_mode=count) と
+	 * 最初のページを同時に取得してページ数を求め，残りのページを最大 parallelism ページずつ並列に取得します．
+	 * 結果はページ順に並べられます．件数が取得できなかった場合は，従来どおり 1 ページずつ取得します．
+	 * </p>
+	 * <p>
+	 * 呼び出し元は，スレッドプールがまだ始めていないページを待たずに自分のスレッドで取得します．
+	 * このため，AsyncPixivAPI，BulkFetcher，先読みと同じ上限のあるスレッドプールを共有し，
+	 * そのスレッドから検索を呼び出しても，全てのスレッドが待ち合って止まることはありません．
+	 * ただし共有した場合は，空いたスレッドが少ないほど並列に取得できるページは減ります．
+	 * </p>
+	 *
+	 * @param executor ページを取得するスレッドプール，null の場合は 1 ページずつ取得する
+	 * @param parallelism 同時に取得するページ数
+	 * @since 0.2
+	 */
+	public void setFanOut(final ExecutorService executor, final int parallelism){
+
+		this.fanOutParallelism = Math.max(1, parallelism);
+		this.fanOutExecutor = executor;
+
+	}
+
+	/**
+	 * 全ページを読み出すカーソル (openAll で始まるメソッド) の先読みを設定する．
+	 * <p>
+	 * 設定すると，カーソルは現在のページを読み出している間に続く depth ページを
+	 * executor で取得しておきます．設定はこれ以降に作成したカーソルに適用されます．
+	 * 先読みがまだ始まっていないページは読み出すスレッドで取得するため，
+	 * executor のスレッドからカーソルを読み出しても止まりません．
+	 * </p>
+	 *
+	 * @param executor 先読みに使うスレッドプール，null の場合は先読みしない
+	 * @param depth 先読みするページ数
+	 * @since 0.2
+	 */
+	public void setReadAhead(final ExecutorService executor, final int depth){
+
+		this.readAheadDepth = Math.max(0, depth);
+		this.readAheadExecutor = executor;
+
+	}
+
+	/**
+	 * 読み込んだユーザを ID から引けるように記録しておく数の上限を設定する．
+	 * findUser，resolveAuthors，Image.getAuthor は，記録したユーザを問い合わせずに返します．
+	 * 既定値は 65536 です．
+	 *
+	 * @param size 記録するユーザ数の上限，0 の場合は記録しない
+	 * @since 0.2
+	 */
+	public void setUserCacheSize(final int size){
+
+		this.users.setCapacity(Math.max(0, size));
+
+	}
+
+	/**
+	 * 同じ ID のイラストとユーザを 1 つのオブジェクトにまとめるか設定する．
+	 * <p>
+	 * 有効にすると，新着イラスト，ランキング，ブックマークなど異なるページに同じイラストが現れた場合も，
+	 * 既に読み込んだ Image オブジェクトを返します．その際，評価点，総合点，閲覧数は新しく読み込んだ値に更新されます．
+	 * ただしキャッシュやダンプから読み込んだ古い値で減ることはなく，これまでに読み込んだ最大の値を保ちます．
+	 * ユーザについても同様に，既に読み込んだ User オブジェクトを返します．
+	 * オブジェクトは弱参照で保持するため，どこからも参照されなくなったものは通常どおり回収されます．
+	 * 既定では無効です．
+	 * </p>
+	 *
+	 * @param enabled 有効にする場合 true
+	 * @since 0.2
+	 */
+	public synchronized void setIdentityMap(final boolean enabled){
+
+		if(enabled && this.imageIdentities == null){
+
+			this.imageIdentities = new IdentityMap<Image>();
+			this.userIdentities = new IdentityMap<User>();
+
+		}else if(!enabled){
+
+			this.imageIdentities = null;
+			this.userIdentities = null;
+
+		}
+
+	}
+
+	/**
+	 * 応答をメモリ上にキャッシュするように設定する．
+	 * <p>
+	 * 問合せの種類，パラメータ，ページの組ごとに応答本文を保持し，有効期間内の同じ問合せには
+	 * ネットワークに接続せずに応答します．保持する本文の合計が capacity バイトを超えた場合は，
+	 * 最も長く参照されていない応答から破棄します．
+	 * 新着 MyPixiv イラストなどログインしたユーザごとに結果が異なる問合せは，セッションごとに別々に保持します．
+	 * 設定し直すと，それまでにキャッシュした応答と統計は破棄されます．
+	 * </p>
+	 *
+	 * @param capacity キャッシュする本文の合計の上限 (バイト)，0 以下の場合はキャッシュしない
+	 * @since 0.2
+	 */
+	public void setCache(final long capacity){
+
+		this.cache = capacity > 0 ? new ResponseCache(capacity) : null;
+
+	}
+
+	/**
+	 * 問合せの種類ごとにキャッシュの有効期間を設定する．
+	 * 有効期間はこれ以降にキャッシュする応答に適用されます．
+	 *
+	 * @param type 問合せの種類
+	 * @param duration 有効期間，0 以下の場合はこの種類の応答をキャッシュしない
+	 * @param unit duration の単位
+	 * @since 0.2
+	 */
+	public void setCacheTTL(final Type type, final long duration, final TimeUnit unit){
+
+		this.ttls.set(type.ordinal(), unit.toNanos(duration));
+
+	}
+
+	/**
+	 * 応答をディスクにキャッシュするように設定する．
+	 * <p>
+	 * 応答本文をディレクトリ内の追記専用のファイルに保存し，再起動後も有効期間内の問合せには
+	 * ネットワークに接続せずに応答します．有効期間は setCacheTTL で設定した値を使います．
+	 * 有効期間の切れた応答は，トランスポートが ConditionalTransport の場合，保存した ETag と
+	 * Last-Modified で再検証し，変更が無ければ保存した本文を使います．
+	 * revalidator を指定した場合，有効期間が切れてから setStaleWhileRevalidate で設定した期間内は，
+	 * 保存した本文をすぐに返し，再検証をバックグラウンドで行います．
+	 * ログインしたユーザごとに結果が異なる問合せはディスクに保存しません．
+	 * </p>
+	 * <p>
+	 * 索引は次に設定し直した際 (directory に null を指定した場合を含む) に書き出されます．
+	 * 書き出さずに終了した場合も，次に開く際にファイルを走査して索引を作り直します．
+	 * </p>
+	 *
+	 * @param directory キャッシュを保存するディレクトリ，null の場合はディスクキャッシュを閉じる
+	 * @param revalidator バックグラウンドで再検証するスレッドプール，null の場合は stale-while-revalidate を使わない
+	 * @throws IOException キャッシュを開けなかった場合
+	 * @since 0.2
+	 */
+	public synchronized void setDiskCache(final File directory, final ExecutorService revalidator) throws IOException{
+
+		final DiskCache old = this.disk;
+		this.disk = null;
+		if(old != null){
+
+			old.close();
+
+		}
+
+		if(directory != null){
+
+			this.disk = new DiskCache(directory, this.transport, revalidator);
+
+		}
+
+	}
+
+	/**
+	 * 問合せの種類ごとに stale-while-revalidate の期間を設定する．
+	 * 既定ではランキングだけ 1 時間で，それ以外は使用しません．
+	 *
+	 * @param type 問合せの種類
+	 * @param duration 有効期間が切れた後，保存した本文を返しつつ再検証する期間
+	 * @param unit duration の単位
+	 * @since 0.2
+	 */
+	public void setStaleWhileRevalidate(final Type type, final long duration, final TimeUnit unit){
+
+		this.swrs.set(type.ordinal(), unit.toNanos(duration));
+
+	}
+
+	/**
+	 * キャッシュした応答を全て破棄する．
+	 *
+	 * @since 0.2
+	 */
+	public void clearCache(){
+
+		final ResponseCache cache = this.cache;
+		if(cache != null){
+
+			cache.clear();
+
+		}
+
+	}
+
+	//----------------------------------------------------------------------------
+	//  Statistics
+	//----------------------------------------------------------------------------
+	/**
+	 * 重複として取り除いたイラストの数を取得する．
+	 * <p>
+	 * 1 ページ内の重複と，複数ページにわたる検索や openAll で始まるメソッドのカーソルでページ間に現れた重複の合計です．
+	 * ランキングや検索結果が取得中に変化した度合いの目安になります．
+	 * </p>
+	 *
+	 * @return これまでに取り除いたイラストの数
+	 */
+	public long getDroppedDuplicateCount(){
+		return this.duplicates.get();
+	}
+
+	/**
+	 * 同時に呼び出された同じ問合せをまとめたことで，通信せずに済んだ呼び出しの数を取得する．
+	 * <p>
+	 * ページ単位のリストを返すメソッド，総数を返すメソッド，findUser と Image.getAuthor は，
+	 * 同じ問合せ (種類，パラメータ，ページ，セッションが同じもの) が他のスレッドで実行中の場合，
+	 * 通信せずにその結果を共有します．リストは呼び出しごとに複製されますが，要素のオブジェクトは共有されます．
+	 * </p>
+	 *
+	 * @return まとめられた呼び出しの数
+	 * @since 0.2
+	 */
+	public long getCoalescedRequestCount(){
+		return this.inflight.getCoalescedCount();
+	}
+
+	/**
+	 * キャッシュから応答した問合せの数を取得する．
+	 *
+	 * @return キャッシュのヒット数，キャッシュが無効な場合は 0
+	 * @since 0.2
+	 */
+	public long getCacheHitCount(){
+
+		final ResponseCache cache = this.cache;
+		return cache != null ? cache.getHitCount() : 0;
+
+	}
+
+	/**
+	 * キャッシュに無くネットワークに問い合わせた数を取得する．
+	 *
+	 * @return キャッシュのミス数，キャッシュが無効な場合は 0
+	 * @since 0.2
+	 */
+	public long getCacheMissCount(){
+
+		final ResponseCache cache = this.cache;
+		return cache != null ? cache.getMissCount() : 0;
+
+	}
+
+	/**
+	 * 容量の上限を超えたためにキャッシュから破棄した応答の数を取得する．
+	 *
+	 * @return 破棄した応答の数，キャッシュが無効な場合は 0
+	 * @since 0.2
+	 */
+	public long getCacheEvictionCount(){
+
+		final ResponseCache cache = this.cache;
+		return cache != null ? cache.getEvictionCount() : 0;
+
+	}
+
+	//============================================================================
+	//  Package private methods
+	//============================================================================
+	/**
+	 * identity map から ID が一致するイラストを探す．
+	 *
+	 * @param id イラスト ID
+	 * @return 既に読み込んだイラスト，無い場合や identity map を使用しない場合は null
+	 */
+	Image lookupImage(final int id){
+
+		final IdentityMap<Image> map = this.imageIdentities;
+		return map != null ? map.get(id) : null;
+
+	}
+
+	/**
+	 * イラストを identity map に登録する．
+	 *
+	 * @param image 読み込んだイラスト
+	 * @return 同じ ID のイラストが既にある場合はそのイラスト，それ以外は image
+	 */
+	Image intern(final Image image){
+
+		final IdentityMap<Image> map = this.imageIdentities;
+		return map != null ? map.intern(image.getId(), image) : image;
+
+	}
+
+	/**
+	 * identity map から ID が一致するユーザを探す．
+	 *
+	 * @param id ユーザ ID
+	 * @return 既に読み込んだユーザ，無い場合や identity map を使用しない場合は null
+	 */
+	User lookupUser(final int id){
+
+		final IdentityMap<User> map = this.userIdentities;
+		return map != null ? map.get(id) : null;
+
+	}
+
+	/**
+	 * ユーザを identity map に登録する．
+	 *
+	 * @param user 読み込んだユーザ
+	 * @return 同じ ID のユーザが既にある場合はそのユーザ，それ以外は user
+	 */
+	User intern(final User user){
+
+		final IdentityMap<User> map = this.userIdentities;
+		return map != null ? map.intern(user.getId(), user) : user;
+
+	}
+
+	/**
+	 * 読み込んだユーザを ID から引けるように記録する．
+	 * 上限を超えた場合は最も長く参照されていないユーザから忘れる．
+	 * ID ごとのストライプで同期するため，並列にデコードするスレッドから呼び出しても互いに待つことはほとんどない．
+	 *
+	 * @param user 読み込んだユーザ
+	 */
+	void remember(final User user){
+		this.users.put(user.getId(), user);
+	}
+
+	/**
+	 * ID を指定したユーザの一覧の 1 ページを読み出すカーソルを作成する．
+	 * 公開している open 系のメソッドと異なり，取得に失敗した場合は空のカーソルではなく null を返すため，
+	 * 空のページと失敗を区別できる．本文の途中で失敗したかは Cursor.isFailed で判定する．
+	 *
+	 * @param type 問合せの種類
+	 * @param id ユーザ ID
+	 * @param page ページ数
+	 * @return 取得したユーザのカーソル，取得に失敗した場合は null
+	 */
+	Cursor<User> tryOpenUsersById(final Type type, final int id, final int page){
+		return this.open(type, String.format(IDParamTemplate, id), page, new User.Decoder(this));
+	}
+
+	/**
+	 * ID を指定したイラストの一覧の 1 ページを取得する．
+	 * 公開している get 系のメソッドと異なり，取得に失敗した場合は空のリストではなく例外を投げる．
+	 *
+	 * @param type 問合せの種類
+	 * @param id ユーザ ID
+	 * @param page ページ数
+	 * @return 取得したイラストのリスト，最後のページより後ろの場合は空のリスト
+	 * @throws IOException 取得に失敗した場合
+	 */
+	List<Image> fetchImagesByUserId(final Type type, final int id, final int page) throws IOException{
+		return this.fetchImages(type, String.format(IDParamTemplate, id), page);
+	}
+
+	/**
+	 * ID を指定したユーザの一覧の 1 ページを取得する．
+	 * 公開している get 系のメソッドと異なり，取得に失敗した場合は空のリストではなく例外を投げる．
+	 *
+	 * @param type 問合せの種類
+	 * @param id ユーザ ID
+	 * @param page ページ数
+	 * @return 取得したユーザのリスト，最後のページより後ろの場合は空のリスト
+	 * @throws IOException 取得に失敗した場合
+	 */
+	List<User> fetchUsersById(final Type type, final int id, final int page) throws IOException{
+		return this.fetchUsers(type, String.format(IDParamTemplate, id), page);
+	}
+
+	//============================================================================
+	//  Private methods
+	//============================================================================
+	private Map<String, String> parseParameters(final String params){
+
+		final Map<String, String> ret = new HashMap<String, String>();
+
+		final Pattern param = Pattern.compile("(\\w+)=(\\w+)");
+		final Matcher m = param.matcher(params);
+		while(m.find()){
+
+			final String key = m.group(1);
+			final String value = m.group(2);
+
+			ret.put(key, value);
+
+		}
+
+		return ret;
+
+	}
+
+	/**
+	 * ユーザ名で検索し，指定した ID のユーザを探す．
+	 */
+	private User searchUser(final int id, final String name){
+
+		final IntHashSet wanted = new IntHashSet();
+		wanted.add(id);
+
+		final Map<Integer, User> found = new HashMap<Integer, User>();
+		this.searchUsers(name, wanted, found);
+		return found.get(id);
+
+	}
+
+	/**
+	 * ユーザ名で検索し，指定した ID のユーザを探す．
+	 * 全ての ID が見つかった時点，または空のページに達した時点でページをたどるのをやめる．
+	 *
+	 * @param name ユーザ名
+	 * @param wanted 探すユーザの ID，見つかったものは取り除かれる
+	 * @param found 見つかったユーザを追加する対応
+	 */
+	private void searchUsers(final String name, final IntHashSet wanted, final Map<Integer, User> found){
+
+		try{
+
+			final String param = String.format("nick=%s", URLEncoder.encode(name, UTF8));
+			for(int i = 0; !wanted.isEmpty() && i < MaxUserSearchPages; ++i){
+
+				final Cursor<User> cursor = this.open(Type.search_user, param, i, new User.Decoder(this));
+				if(cursor == null){
+
+					break;
+
+				}
+
+				int read = 0;
+				try{
+
+					for(final User u : cursor){
+
+						++read;
+						if(wanted.remove(u.getId())){
+
+							found.put(u.getId(), u);
+
+						}
+
+					}
+
+				}finally{
+
+					cursor.close();
+
+				}
+
+				if(read == 0){
+
+					break;
+
+				}
+
+			}
+
+		}catch(final IOException e){
+
+			e.printStackTrace();
+
+		}
+
+	}
+
+	/**
+	 * これまでに読み込んだユーザから ID が一致するものを探す．
+	 *
+	 * @return 見つかったユーザ，無い場合は null
+	 */
+	private User lookup(final int id){
+		return this.users.get(id);
+	}
+
+	/**
+	 * ユーザまたは画像の総数を取得する．
+	 *
+	 * @param type 取得する総数の種類
+	 * @param param 問合せ用パラメータ
+	 * @return 取得したユーザまたは画像の総数
+	 */
+	private int getSize(final Type type, final String param){
+
+		return this.inflight.execute(this.flightKey("size", type, param, -1), new Callable<Integer>(){
+
+			@Override
+			public Integer call() {
+				return PixivAPI.this.loadSize(type, param);
+			}
+
+		}, -1);
+
+	}
+
+	/**
+	 * ユーザまたは画像の総数を問い合わせる．
+	 */
+	private int loadSize(final Type type, final String param){
+
+		int ret = -1;
+		try{
+
+			final Transport.Response res = this.request(type, param, "c_mode=count");
+			try{
+
+				if(res.getStatus() == 200){
+
+					final BufferedReader in = new BufferedReader(new InputStreamReader(res.getBody(), UTF8));
+					final String buf = in.readLine();
+					if(buf != null){
+
+						ret = Integer.parseInt(buf);
+
+					}
+
+				}
+
+			}finally{
+
+				res.close();
+
+			}
+
+		}catch(final IOException e){
+
+			e.printStackTrace();
+
+		}
+
+		return ret;
+
+	}
+
+	/**
+	 * ID を指定してユーザまたは画像の総数を取得する．
+	 *
+	 * @param type 取得する総数の種類
+	 * @param id 問合せに使用する ID
+	 * @return 取得したユーザまたは画像の総数
+	 */
+	private int getSizeById(final Type type, final int id){
+		return this.getSize(type, String.format(IDParamTemplate, id));
+	}
+
+	/**
+	 * 画像に関する情報を取得する．
+	 *
+	 * @param type 取得する画像の種類
+	 * @param param 問合せ用パラメータ
+	 * @param page 取得するページ
+	 * @return 取得した画像のリスト，取得に失敗した場合は空のリスト
+	 */
+	private List<Image> getImages(final Type type, final String param, final int page){
+
+		final List<Image> ret = this.shareImages(type, param, page);
+		return ret != null ? ret : new ArrayList<Image>();
+
+	}
+
+	/**
+	 * 画像に関する情報を取得する．最後のページより後ろの場合は空のリストを返す．
+	 *
+	 * @param type 取得する画像の種類
+	 * @param param 問合せ用パラメータ
+	 * @param page 取得するページ
+	 * @return 取得した画像のリスト
+	 * @throws IOException 取得に失敗した場合
+	 */
+	private List<Image> fetchImages(final Type type, final String param, final int page) throws IOException{
+
+		final List<Image> ret = this.shareImages(type, param, page);
+		if(ret == null){
+
+			throw pageFailure(type, param, page);
+
+		}
+		return ret;
+
+	}
+
+	/**
+	 * 1 ページ分のイラストをページ内の重複を除いて取得する．同時に呼び出された同じ問合せはまとめる．
+	 *
+	 * @return 取得した画像のリスト，取得に失敗した場合は null
+	 */
+	private List<Image> shareImages(final Type type, final String param, final int page){
+
+		final List<Image> shared = this.inflight.execute(this.flightKey("images", type, param, page), new Callable<List<Image>>(){
+
+			@Override
+			public List<Image> call() {
+
+				try{
+
+					final List<Image> ret = new ArrayList<Image>();
+					PixivAPI.this.collectImages(PixivAPI.this.readImages(type, param, page), new IntHashSet(), ret);
+					return ret;
+
+				}catch(final IOException e){
+
+					e.printStackTrace();
+					return null;
+
+				}
+
+			}
+
+		}, null);
+
+		// 結果を共有した呼び出し元どうしでリストの変更が影響しないように複製する
+		return shared != null ? new ArrayList<Image>(shared) : null;
+
+	}
+
+	/**
+	 * カーソルから読み出したイラストを，既に読み出したものを除いてリストに追加する．
+	 * 順序は応答中の順序のまま保たれる．
+	 *
+	 * @param cursor イラストのリスト
+	 * @param seen 既に読み出したイラストの ID
+	 * @param ret 追加するリスト
+	 * @return カーソルから読み出したイラスト数（重複を含む）
+	 */
+	private int collectImages(final Iterable<Image> cursor, final IntHashSet seen, final List<Image> ret){
+
+		int read = 0;
+		for(final Image image : cursor){
+
+			++read;
+			if(seen.add(image.getId())){
+
+				ret.add(image);
+
+			}else{
+
+				this.duplicates.incrementAndGet();
+
+			}
+
+		}
+
+		return read;
+
+	}
+
+	/**
+	 * 画像に関する情報を 1 件ずつ読み出すカーソルを取得する．
+	 *
+	 * @param type 取得する画像の種類
+	 * @param param 問合せ用パラメータ
+	 * @param page 取得するページ
+	 * @return 画像のカーソル
+	 */
+	private Cursor<Image> openImages(final Type type, final String param, final int page){
+
+		final Cursor<Image> ret = this.open(type, param, page, new Image.Decoder(this));
+		return ret != null ? ret : Cursor.<Image>empty();
+
+	}
+
+	/**
+	 * 1 ページ分の画像を Image を作らずに表へ追加する．
+	 *
+	 * @param table 追加する表
+	 * @param type 取得する画像の種類
+	 * @param param 問合せ用パラメータ
+	 * @param page 取得するページ
+	 * @return 読み込んだ行数
+	 */
+	private int appendImages(final ImageTable table, final Type type, final String param, final int page){
+
+		final Cursor<ImageTable> cursor = this.open(type, param, page, table.decoder());
+		if(cursor == null){
+
+			return 0;
+
+		}
+
+		int ret = 0;
+		try{
+
+			while(cursor.hasNext()){
+
+				cursor.next();
+				++ret;
+
+			}
+
+		}finally{
+
+			cursor.close();
+
+		}
+		return ret;
+
+	}
+
+	private List<Image> getImagesByUserId(final Type type, final int id, final int page){
+		return this.getImages(type, String.format(IDParamTemplate, id), page);
+	}
+
+	private Cursor<Image> openImagesByUserId(final Type type, final int id, final int page){
+		return this.openImages(type, String.format(IDParamTemplate, id), page);
+	}
+
+	private List<Image> findImages(final String param, final int size) throws IOException{
+
+		// ページをまたいで重複を除く．検索結果が変化すると，同じイラストが次のページにずれて現れることがある
+		final List<Image> ret = new ArrayList<Image>();
+		final IntHashSet seen = new IntHashSet(Math.max(0, Math.min(size, 1024)));
+
+		int page = 0;
+		final ExecutorService executor = this.fanOutExecutor;
+		if(executor != null && size > 0){
+
+			final FutureTask<Integer> count = fork(executor, this.sizeTask(Type.search, param));
+			final List<Image> first = this.readImages(Type.search, param, 0);
+			this.collectImages(first, seen, ret);
+			if(first.size() == 0){
+
+				return ret;
+
+			}
+
+			page = 1;
+			final int pageSize = first.size();
+			final int pages = pageCount(get(count, -1), pageSize);
+			if(pages >= 0){
+
+				final int last = Math.min(pages, (size + pageSize - 1) / pageSize);
+				List<Image> tail = first;
+				for(final List<Image> sub : this.fetchPages(executor, 1, last, new PageReader<Image>(){
+
+					@Override
+					public List<Image> read(final int page) throws IOException {
+						return PixivAPI.this.readImages(Type.search, param, page);
+					}
+
+				})){
+
+					this.collectImages(sub, seen, ret);
+					tail = sub;
+
+				}
+				page = Math.max(page, last);
+
+				// 最後のページまで取得したか，重複を除いても件数が足りている場合は終了する
+				if(page >= pages || tail.size() < pageSize || ret.size() >= size){
+
+					return ret;
+
+				}
+
+			}
+
+		}
+
+		for(int i = page; ret.size() < size; ++i){
+
+			if(this.collectImages(this.readImages(Type.search, param, i), seen, ret) == 0){
+
+				break;
+
+			}
+
+		}
+
+		return ret;
+
+	}
+
+	/**
+	 * 1 ページ分のイラストを，重複を除かずに取得する．
+	 *
+	 * @throws IOException 取得に失敗した場合
+	 */
+	private List<Image> readImages(final Type type, final String param, final int page) throws IOException{
+		return this.readPage(type, param, page, new Image.Decoder(this));
+	}
+
+	/**
+	 * 1 ページ分の要素を読み込む．
+	 * 応答を取得できなかった場合や，応答を最後まで読み込めなかった場合は，
+	 * 最後のページと区別できるように空のリストではなく例外を投げる．
+	 *
+	 * @throws IOException 取得に失敗した場合
+	 */
+	private <T> List<T> readPage(final Type type, final String param, final int page, final CSVScanner.Decoder<T> decoder) throws IOException{
+
+		final Cursor<T> cursor = this.open(type, param, page, decoder);
+		if(cursor == null){
+
+			throw pageFailure(type, param, page);
+
+		}
+
+		final List<T> ret = new ArrayList<T>();
+		try{
+
+			for(final T e : cursor){
+
+				ret.add(e);
+
+			}
+
+		}finally{
+
+			cursor.close();
+
+		}
+		if(cursor.isFailed()){
+
+			throw pageFailure(type, param, page);
+
+		}
+		return ret;
+
+	}
+
+	/**
+	 * 総数を取得する処理を作成する．
+	 */
+	private Callable<Integer> sizeTask(final Type type, final String param){
+
+		return new Callable<Integer>(){
+
+			@Override
+			public Integer call() {
+				return PixivAPI.this.getSize(type, param);
+			}
+
+		};
+
+	}
+
+	/**
+	 * ページ [from, to) を並列に取得し，ページ順に並べて返す．
+	 * 同時に取得するページ数は fanOutParallelism までに制限する．
+	 *
+	 * @param executor ページを取得するスレッドプール
+	 * @param from 最初のページ
+	 * @param to 最後のページの次
+	 * @param reader 1 ページを取得する処理
+	 * @return 取得したページのリスト
+	 * @throws IOException いずれかのページの取得に失敗した場合，残りのページは取り消す
+	 */
+	private <T> List<List<T>> fetchPages(final ExecutorService executor, final int from, final int to, final PageReader<T> reader) throws IOException{
+
+		final List<List<T>> ret = new ArrayList<List<T>>();
+		final LinkedList<FutureTask<List<T>>> window = new LinkedList<FutureTask<List<T>>>();
+		final int parallelism = Math.max(1, this.fanOutParallelism);
+
+		int next = from;
+		for(; next < to && next - from < parallelism; ++next){
+
+			window.add(fork(executor, pageTask(reader, next)));
+
+		}
+
+		try{
+
+			while(!window.isEmpty()){
+
+				final List<T> page = getPage(window.removeFirst());
+				if(next < to){
+
+					window.add(fork(executor, pageTask(reader, next++)));
+
+				}
+				ret.add(page);
+
+			}
+
+		}finally{
+
+			// 途中のページが欠けた結果は返さないため，失敗した時点で残りのページを取り消す
+			for(final FutureTask<List<T>> f : window){
+
+				f.cancel(true);
+
+			}
+
+		}
+
+		return ret;
+
+	}
+
+	private List<User> getUsers(final Type type, final String param, final int page){
+
+		final List<User> ret = this.shareUsers(type, param, page);
+		return ret != null ? ret : new ArrayList<User>();
+
+	}
+
+	/**
+	 * ユーザに関する情報を取得する．最後のページより後ろの場合は空のリストを返す．
+	 *
+	 * @throws IOException 取得に失敗した場合
+	 */
+	private List<User> fetchUsers(final Type type, final String param, final int page) throws IOException{
+
+		final List<User> ret = this.shareUsers(type, param, page);
+		if(ret == null){
+
+			throw pageFailure(type, param, page);
+
+		}
+		return ret;
+
+	}
+
+	/**
+	 * 1 ページ分のユーザを取得する．同時に呼び出された同じ問合せはまとめる．
+	 *
+	 * @return 取得したユーザのリスト，取得に失敗した場合は null
+	 */
+	private List<User> shareUsers(final Type type, final String param, final int page){
+
+		final List<User> shared = this.inflight.execute(this.flightKey("users", type, param, page), new Callable<List<User>>(){
+
+			@Override
+			public List<User> call() {
+
+				try{
+
+					return PixivAPI.this.readPage(type, param, page, new User.Decoder(PixivAPI.this));
+
+				}catch(final IOException e){
+
+					e.printStackTrace();
+					return null;
+
+				}
+
+			}
+
+		}, null);
+
+		return shared != null ? new ArrayList<User>(shared) : null;
+
+	}
+
+	private Cursor<User> openUsers(final Type type, final String param, final int page){
+
+		final Cursor<User> ret = this.open(type, param, page, new User.Decoder(this));
+		return ret != null ? ret : Cursor.<User>empty();
+
+	}
+
+	/**
+	 * 同時に呼び出された同じ問合せをまとめるためのキーを作成する．
+	 * セッションをキーに含め，異なるユーザの問合せはまとめない．
+	 */
+	private String flightKey(final String kind, final Type type, final String param, final int page){
+		return String.format("%s:%s?%s&p=%d&%s=%s", kind, type, param, page, SessionID, this.session);
+	}
+
+	/**
+	 * 問合せを送り，応答を取得する．
+	 * キャッシュが有効な場合は，有効期限内の応答をキャッシュから返し，
+	 * 新たに取得した正常な応答をキャッシュに登録する．
+	 * メモリ上のキャッシュに無い応答はディスクキャッシュから探す．
+	 *
+	 * @param type 問合せの種類
+	 * @param param 問合せ用パラメータ
+	 * @param suffix セッション ID の後に付けるパラメータ
+	 * @return 応答
+	 * @throws IOException I/O エラーが発生した場合
+	 */
+	private Transport.Response request(final Type type, final String param, final String suffix) throws IOException{
+
+		final String session = this.session;
+		final URL url = new URL(this.base, String.format("%s.php?%s&%s=%s&%s", type, param, SessionID, session, suffix));
+
+		final ResponseCache cache = this.cache;
+		final DiskCache disk = isSessionScoped(type) ? null : this.disk;
+		final long ttl = this.ttls.get(type.ordinal());
+		if((cache == null && disk == null) || ttl <= 0){
+
+			return this.transport.get(url);
+
+		}
+
+		// ログインしたユーザごとに結果が異なる問合せは，セッションをキーに含めて共有しない
+		final String key = isSessionScoped(type)
+				? String.format("%s?%s&%s&%s=%s", type, param, suffix, SessionID, session)
+				: String.format("%s?%s&%s", type, param, suffix);
+		if(cache == null){
+
+			return disk.get(key, url, ttl, this.swrs.get(type.ordinal()));
+
+		}
+
+		final byte[] hit = cache.get(key);
+		if(hit != null){
+
+			return new ResponseCache.Buffered(url, hit);
+
+		}
+
+		final Transport.Response res = disk != null ? disk.get(key, url, ttl, this.swrs.get(type.ordinal())) : this.transport.get(url);
+		if(res.getStatus() != 200){
+
+			return res;
+
+		}
+
+		final byte[] body;
+		try{
+
+			body = ResponseCache.readFully(res.getBody());
+
+		}catch(final IOException e){
+
+			res.abort();
+			throw e;
+
+		}
+		res.close();
+
+		cache.put(key, body, ttl);
+		return new ResponseCache.Buffered(res.getURL(), body);
+
+	}
+
+	/**
+	 * 問合せを送り，応答を 1 件ずつ読み出すカーソルを取得する．
+	 *
+	 * @param type 問合せの種類
+	 * @param param 問合せ用パラメータ
+	 * @param page 取得するページ
+	 * @param decoder 応答の各行から要素を組み立てる Decoder
+	 * @return 応答のカーソル，応答が得られなかった場合は null
+	 */
+	private <T> Cursor<T> open(final Type type, final String param, final int page, final CSVScanner.Decoder<T> decoder){
+
+		try{
+
+			final Transport.Response res = this.request(type, param, String.format("p=%d", page));
+			if(res.getStatus() == 200){
+
+				// カーソルに渡せなかった応答は，接続と同時接続数の枠を解放するために中断する
+				try{
+
+					return new Cursor<T>(res, new ByteCSVScanner(Channels.newChannel(res.getBody())), decoder);
+
+				}catch(final IOException e){
+
+					res.abort();
+					throw e;
+
+				}catch(final RuntimeException e){
+
+					res.abort();
+					throw e;
+
+				}
+
+			}
+			res.close();
+
+		}catch(final IOException e){
+
+			e.printStackTrace();
+
+		}
+
+		return null;
+
+	}
+
+	/**
+	 * 全ページのイラストを読み出すカーソルを作成する．
+	 */
+	private PagedCursor<Image> openAllImages(final Type type, final String param){
+
+		return this.openAll(new PageReader<Image>(){
+
+			@Override
+			public List<Image> read(final int page) throws IOException {
+				return PixivAPI.this.fetchImages(type, param, page);
+			}
+
+		}, ImageKey, this.duplicates);
+
+	}
+
+	private PagedCursor<Image> openAllImagesByUserId(final Type type, final int id){
+		return this.openAllImages(type, String.format(IDParamTemplate, id));
+	}
+
+	/**
+	 * 全ページのユーザを読み出すカーソルを作成する．
+	 */
+	private PagedCursor<User> openAllUsers(final Type type, final String param){
+
+		return this.openAll(new PageReader<User>(){
+
+			@Override
+			public List<User> read(final int page) throws IOException {
+				return PixivAPI.this.fetchUsers(type, param, page);
+			}
+
+		}, UserKey, null);
+
+	}
+
+	private PagedCursor<User> openAllUsersById(final Type type, final int id){
+		return this.openAllUsers(type, String.format(IDParamTemplate, id));
+	}
+
+	/**
+	 * 現在の先読みの設定で，ページをまたいで重複を除きながら全ページを読み出すカーソルを作成する．
+	 *
+	 * @param dropped 読み飛ばした要素を数えるカウンタ，null の場合は数えない
+	 */
+	private <T> PagedCursor<T> openAll(final PageReader<T> reader, final PagedCursor.Key<? super T> key, final AtomicLong dropped){
+		return new PagedCursor<T>(reader, this.readAheadExecutor, this.readAheadDepth, key, dropped);
+	}
+
+	private List<User> getUsersById(final Type type, final int id, final int page){
+		return this.getUsers(type, String.format(IDParamTemplate, id), page);
+	}
+
+	private Cursor<User> openUsersById(final Type type, final int id, final int page){
+		return this.openUsers(type, String.format(IDParamTemplate, id), page);
+	}
+
+	//============================================================================
+	//  Package private static methods
+	//============================================================================
+	/**
+	 * URL からエンドポイントの名前を取り出す．
+	 * パスの最後の要素から .php を除いたもので，Type の名前と一致する．
+	 * トランスポートがエンドポイントごとに統計や設定を持つ際のキーに使う．
+	 */
+	static String endpoint(final URL url){
+
+		final String path = url.getPath();
+		final int begin = path.lastIndexOf('/') + 1;
+		final int end = path.endsWith(".php") ? path.length() - 4 : path.length();
+		return begin <= end ? path.substring(begin, end) : path;
+
+	}
+
+	//============================================================================
+	//  Private static methods
+	//============================================================================
+	/**
+	 * ログインしたユーザごとに結果が異なる問合せか調べる．
+	 */
+	private static boolean isSessionScoped(final Type type){
+		return type == Type.mypixiv_new_illust || type == Type.bookmark_user_new_illust;
+	}
+
+	/**
+	 * stale-while-revalidate の期間の既定値を作成する．
+	 * 1 日に 1 度しか更新されないランキングだけ 1 時間とする．
+	 */
+	private static AtomicLongArray defaultSWRs(){
+
+		final AtomicLongArray ret = new AtomicLongArray(Type.values().length);
+		ret.set(Type.ranking.ordinal(), TimeUnit.HOURS.toNanos(1));
+		return ret;
+
+	}
+
+	/**
+	 * キャッシュの有効期間の既定値を作成する．
+	 * 更新の頻繁な新着イラストは短く，ランキングやユーザの一覧は長くする．
+	 */
+	private static AtomicLongArray defaultTTLs(){
+
+		final AtomicLongArray ret = new AtomicLongArray(Type.values().length);
+		ret.set(Type.new_illust.ordinal(), TimeUnit.MINUTES.toNanos(1));
+		ret.set(Type.mypixiv_new_illust.ordinal(), TimeUnit.MINUTES.toNanos(1));
+		ret.set(Type.bookmark_user_new_illust.ordinal(), TimeUnit.MINUTES.toNanos(1));
+		ret.set(Type.ranking.ordinal(), TimeUnit.MINUTES.toNanos(30));
+		ret.set(Type.search.ordinal(), TimeUnit.MINUTES.toNanos(5));
+		ret.set(Type.search_user.ordinal(), TimeUnit.MINUTES.toNanos(5));
+		ret.set(Type.bookmark.ordinal(), TimeUnit.MINUTES.toNanos(5));
+		ret.set(Type.bookmark_user_all.ordinal(), TimeUnit.MINUTES.toNanos(10));
+		ret.set(Type.mypixiv_all.ordinal(), TimeUnit.MINUTES.toNanos(10));
+		ret.set(Type.member_illust.ordinal(), TimeUnit.MINUTES.toNanos(5));
+		return ret;
+
+	}
+
+	/**
+	 * 総数と 1 ページあたりの件数からページ数を求める．
+	 *
+	 * @return ページ数，総数が得られなかった場合は -1
+	 */
+	private static int pageCount(final int total, final int pageSize){
+
+		if(total < 0){
+
+			return -1;
+
+		}
+		return (total + pageSize - 1) / pageSize;
+
+	}
+
+	/**
+	 * 1 ページを取得する処理を作成する．
+	 */
+	private static <T> Callable<List<T>> pageTask(final PageReader<T> reader, final int page){
+
+		return new Callable<List<T>>(){
+
+			@Override
+			public List<T> call() throws IOException {
+				return reader.read(page);
+			}
+
+		};
+
+	}
+
+	/**
+	 * 処理をスレッドプールに渡す．結果は get または getPage で受け取る．
+	 */
+	private static <T> FutureTask<T> fork(final ExecutorService executor, final Callable<T> task){
+
+		final FutureTask<T> ret = new FutureTask<T>(task);
+		executor.execute(ret);
+		return ret;
+
+	}
+
+	/**
+	 * 非同期処理の結果を取得する．
+	 * スレッドプールがまだ処理を始めていない場合は，呼び出し元のスレッドで実行する．
+	 * 同じスレッドプールのスレッドから呼び出された場合に，空きを待ち続けて止まらないようにするため．
+	 *
+	 * @param future 結果を受け取る FutureTask
+	 * @param failed 処理が中断された場合に返す値
+	 * @return 処理の結果
+	 */
+	private static <T> T get(final FutureTask<T> future, final T failed){
+
+		// 既に始まっている場合や終わっている場合は何もしない
+		future.run();
+		try{
+
+			return future.get();
+
+		}catch(final InterruptedException e){
+
+			Thread.currentThread().interrupt();
+			future.cancel(true);
+
+		}catch(final ExecutionException e){
+
+			if(e.getCause() instanceof RuntimeException){
+
+				throw (RuntimeException)e.getCause();
+
+			}
+			e.printStackTrace();
+
+		}
+
+		return failed;
+
+	}
+
+	/**
+	 * 並列に取得したページを受け取る．
+	 * get と同様に，スレッドプールがまだ始めていない場合は呼び出し元のスレッドで取得する．
+	 *
+	 * @param future ページを受け取る FutureTask
+	 * @return ページの要素
+	 * @throws IOException ページの取得に失敗した場合，または待っている間に割り込まれた場合
+	 */
+	private static <T> T getPage(final FutureTask<T> future) throws IOException{
+
+		future.run();
+		try{
+
+			return future.get();
+
+		}catch(final InterruptedException e){
+
+			Thread.currentThread().interrupt();
+			future.cancel(true);
+			throw new IOException("Interrupted while waiting for a page");
+
+		}catch(final ExecutionException e){
+
+			final Throwable cause = e.getCause();
+			if(cause instanceof IOException){
+
+				throw (IOException)cause;
+
+			}
+			if(cause instanceof RuntimeException){
+
+				throw (RuntimeException)cause;
+
+			}
+			throw new IOException(cause);
+
+		}
+
+	}
+
+	/**
+	 * ページの取得に失敗したことを表す例外を作成する．
+	 */
+	private static IOException pageFailure(final Type type, final String param, final int page){
+		return new IOException(String.format("Failed to read page %d of %s?%s", page, type, param));
+	}
+
+	//============================================================================
+	//  Public static methods
+	//============================================================================
+	/**
+	 * サンプルプログラム．
+	 *
+	 * @param args ユーザ名，パスワード，タグ検索用キーワード
+	 * @throws IOException IOエラーが発生した場合．
+	 */
+	public static void main(final String[] args) throws IOException{
+
+		final PixivAPI api = new PixivAPI();
+		System.out.println("Status: " + api.status());
+
+		System.out.println("= new images on the 1st page");
+		for(final Image i : api.getNewImages(0)){
+
+			System.out.println(String.format("%s by %s (%s)", i.getTitle(), i.getAuthorName(), i.getImageURL()));
+
+			final User author = i.getAuthor();
+			if(author != null){
+
+				for(final User user : author.getBookmarkedUsers(0)){
+
+					System.out.println(">> " + user);
+
+				}
+
+			}
+
+		}
+
+		System.out.println("= find images by tag");
+		for(final Image i : api.findImagesByTag(args[2], 10)){
+
+			System.out.println(String.format("%s by %s (%s)", i.getTitle(), i.getAuthorName(), i.getImageURL()));
+
+		}
+
+		// Login
+		if(api.login(args[0], args[1])){
+
+			System.out.println("Profile: " + api.profile());
+			System.out.println("My pixiv new images: " + api.getMyPixivNewImageSize());
+
+		}
+
+	}
+
+}
@@ -0,0 +1,38 @@
+/*
+ *  Copyright (C) 2010 Junpei Kawamoto
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package pxv;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * CSV の入力からレコードを 1 件ずつ読み込むインタフェース．
+ */
+interface RecordScanner extends Closeable {
+
+	/**
+	 * 次のレコードを読み込み，Decoder が宣言した列を Decoder に渡す．
+	 * 読み込んだレコードは Decoder の build で取得する．
+	 *
+	 * @param decoder レコードを受け取る Decoder
+	 * @return レコードを読み込んだ場合 true，入力の終わりに達した場合 false
+	 * @throws IOException I/O エラーが発生した場合
+	 */
+	public boolean next(final CSVScanner.Decoder<?> decoder) throws IOException;
+
+}
@@ -0,0 +1,319 @@
+/*
+ *  Copyright (C) 2010 Junpei Kawamoto
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package pxv;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 応答本文をメモリ上に保持するキャッシュ．
+ * <p>
+ * キーごとに有効期限付きで本文を保持し，保持している本文の重さ (バイト数) の合計が
+ * 上限を超えた場合は，最も長く参照されていないものから追い出す (LRU)．
+ * 各メソッドはスレッドセーフである．
+ * </p>
+ */
+class ResponseCache {
+
+	/** 1 エントリあたりの本文以外の重さの見積もり */
+	private static final int EntryOverhead = 64;
+
+	/** 重さの上限 */
+	private final long capacity;
+	/** エントリ，参照順 */
+	private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+	/** 保持しているエントリの重さの合計 */
+	private long weight = 0;
+
+	/** ヒット数 */
+	private long hits = 0;
+	/** ミス数 */
+	private long misses = 0;
+	/** 追い出したエントリ数 */
+	private long evictions = 0;
+
+	//============================================================================
+	//  Constructors
+	//============================================================================
+	/**
+	 * @param capacity 保持する本文の重さ (バイト数) の上限
+	 */
+	ResponseCache(final long capacity){
+
+		this.capacity = capacity;
+
+	}
+
+	//============================================================================
+	//  Package private methods
+	//============================================================================
+	/**
+	 * 本文を取得する．
+	 *
+	 * @param key キー
+	 * @return 有効期限内の本文，無い場合は null
+	 */
+	synchronized byte[] get(final String key){
+
+		final Entry e = this.entries.get(key);
+		if(e != null){
+
+			if(e.expires - System.nanoTime() > 0){
+
+				++this.hits;
+				return e.body;
+
+			}
+			this.remove(key, e);
+
+		}
+
+		++this.misses;
+		return null;
+
+	}
+
+	/**
+	 * 本文を登録する．
+	 * 登録後，重さの合計が上限を超えた場合は古いエントリから追い出す．
+	 *
+	 * @param key キー
+	 * @param body 本文
+	 * @param ttl 有効期間 (ナノ秒)
+	 */
+	synchronized void put(final String key, final byte[] body, final long ttl){
+
+		final Entry e = new Entry(body, System.nanoTime() + ttl, weigh(key, body));
+		if(e.weight > this.capacity){
+
+			return;
+
+		}
+
+		final Entry old = this.entries.put(key, e);
+		if(old != null){
+
+			this.weight -= old.weight;
+
+		}
+		this.weight += e.weight;
+
+		final Iterator<Map.Entry<String, Entry>> i = this.entries.entrySet().iterator();
+		while(this.weight > this.capacity && i.hasNext()){
+
+			final Entry victim = i.next().getValue();
+			i.remove();
+			this.weight -= victim.weight;
+			++this.evictions;
+
+		}
+
+	}
+
+	/**
+	 * 全てのエントリを破棄する．
+	 */
+	synchronized void clear(){
+
+		this.entries.clear();
+		this.weight = 0;
+
+	}
+
+	synchronized long getHitCount(){
+		return this.hits;
+	}
+
+	synchronized long getMissCount(){
+		return this.misses;
+	}
+
+	synchronized long getEvictionCount(){
+		return this.evictions;
+	}
+
+	synchronized long getWeight(){
+		return this.weight;
+	}
+
+	//============================================================================
+	//  Private methods
+	//============================================================================
+	private void remove(final String key, final Entry e){
+
+		this.entries.remove(key);
+		this.weight -= e.weight;
+
+	}
+
+	//============================================================================
+	//  Package private static methods
+	//============================================================================
+	/**
+	 * 応答本文を最後まで読み込む．
+	 *
+	 * @param in 応答本文
+	 * @return 読み込んだ本文
+	 * @throws IOException I/O エラーが発生した場合
+	 */
+	static byte[] readFully(final InputStream in) throws IOException{
+
+		final ByteArrayOutputStream out = new ByteArrayOutputStream(8192);
+		final byte[] buf = new byte[8192];
+		int n;
+		while((n = in.read(buf)) != -1){
+
+			out.write(buf, 0, n);
+
+		}
+
+		return out.toByteArray();
+
+	}
+
+	//============================================================================
+	//  Private static methods
+	//============================================================================
+	private static long weigh(final String key, final byte[] body){
+		return EntryOverhead + 2L * key.length() + body.length;
+	}
+
+	//============================================================================
+	//  Inner classes
+	//============================================================================
+	/**
+	 * キャッシュのエントリ．
+	 */
+	private static final class Entry{
+
+		final byte[] body;
+		/** 有効期限 (System.nanoTime の値) */
+		final long expires;
+		final long weight;
+
+		Entry(final byte[] body, final long expires, final long weight){
+
+			this.body = body;
+			this.expires = expires;
+			this.weight = weight;
+
+		}
+
+	}
+
+	/**
+	 * メモリ上の本文を返す応答．
+	 */
+	static final class Buffered implements ConditionalTransport.Response{
+
+		private final URL url;
+		private final int status;
+		private final byte[] body;
+		private final String etag;
+		private final long lastModified;
+
+		/**
+		 * ステータスコードが 200 の応答を作成する．
+		 *
+		 * @param url 応答を返した URL
+		 * @param body 本文
+		 */
+		Buffered(final URL url, final byte[] body){
+			this(url, 200, body, null, 0);
+		}
+
+		/**
+		 * @param url 応答を返した URL
+		 * @param status ステータスコード
+		 * @param body 本文
+		 * @param etag ETag，無い場合は null
+		 * @param lastModified 最終更新時刻 (ミリ秒)，無い場合は 0
+		 */
+		Buffered(final URL url, final int status, final byte[] body, final String etag, final long lastModified){
+
+			this.url = url;
+			this.status = status;
+			this.body = body;
+			this.etag = etag;
+			this.lastModified = lastModified;
+
+		}
+
+		/* (非 Javadoc)
+		 * @see pxv.Transport.Response#getStatus()
+		 */
+		@Override
+		public int getStatus() {
+			return this.status;
+		}
+
+		/* (非 Javadoc)
+		 * @see pxv.ConditionalTransport.Response#getETag()
+		 */
+		@Override
+		public String getETag() {
+			return this.etag;
+		}
+
+		/* (非 Javadoc)
+		 * @see pxv.ConditionalTransport.Response#getLastModified()
+		 */
+		@Override
+		public long getLastModified() {
+			return this.lastModified;
+		}
+
+		/* (非 Javadoc)
+		 * @see pxv.Transport.Response#getURL()
+		 */
+		@Override
+		public URL getURL() {
+			return this.url;
+		}
+
+		/* (非 Javadoc)
+		 * @see pxv.Transport.Response#getBody()
+		 */
+		@Override
+		public InputStream getBody() {
+			return new ByteArrayInputStream(this.body);
+		}
+
+		/* (非 Javadoc)
+		 * @see pxv.Transport.Response#close()
+		 */
+		@Override
+		public void close() {
+		}
+
+		/* (非 Javadoc)
+		 * @see pxv.Transport.Response#abort()
+		 */
+		@Override
+		public void abort() {
+		}
+
+	}
+
+}
@@ -0,0 +1,559 @@
+/*
+ *  Copyright (C) 2010 Junpei Kawamoto
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package pxv;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 失敗したリクエストの再試行と，遅いリクエストの複製 (hedged request) を行うトランスポート．
+ * <p>
+ * 他のトランスポートを包み，応答本文を最後まで読み込んでから返します．
+ * I/O エラー (本文の読み込み中のものを含む) や 429，5xx の応答は，エンドポイントごとのポリシーに従い，
+ * ジッタ付きの指数バックオフで待ってから再試行します．待ち時間は 0 から min(maxDelay, baseDelay * 2^(n-1)) の間の乱数です．
+ * </p>
+ * <p>
+ * スレッドプールを指定した場合，ポリシーの hedgePercentile が正のエンドポイントでは，
+ * 応答がこれまでの待ち時間のそのパーセンタイルを超えても返らないときに同じリクエストをもう 1 つ送り，
+ * 先に返った応答を使います．待ち時間を十分に観測するまでは複製しません．
+ * 使われなかったリクエストは取り消し，本文を読み込み中であれば応答を abort して接続を解放します．
+ * </p>
+ * <p>
+ * エンドポイントは URL のパスの最後の要素から .php を除いたもの (例えば member_illust) で，
+ * PixivAPI.Type の名前と一致します．
+ * </p>
+ * <pre>
+ * final RetryingTransport transport = new RetryingTransport(new URLConnectionTransport(), executor);
+ * transport.setPolicy(PixivAPI.Type.search, new RetryingTransport.Policy(5, 200, 5000, TimeUnit.MILLISECONDS, 0.95));
+ * final PixivAPI api = new PixivAPI(transport);
+ * </pre>
+ *
+ * @since 0.2
+ */
+public class RetryingTransport implements ConditionalTransport {
+
+	/** 複製を始めるのに必要な待ち時間の観測数 */
+	private static final int MinSamples = 20;
+	/** 待ち時間を記録するエンドポイントごとの件数 */
+	private static final int Window = 256;
+
+	private final Transport transport;
+	/** 複製したリクエストを送るスレッドプール，複製しない場合は null */
+	private final ExecutorService executor;
+
+	/** エンドポイントごとのポリシー */
+	private final Map<String, Policy> policies = new ConcurrentHashMap<String, Policy>();
+	/** エンドポイントごとの待ち時間 */
+	private final ConcurrentMap<String, Latencies> latencies = new ConcurrentHashMap<String, Latencies>();
+	/** ポリシーを設定していないエンドポイントのポリシー */
+	private volatile Policy defaultPolicy = Policy.Default;
+
+	private final Random random = new Random();
+
+	/** 再試行した回数 */
+	private final AtomicLong retries = new AtomicLong();
+	/** 複製したリクエストの数 */
+	private final AtomicLong hedges = new AtomicLong();
+	/** 複製したリクエストの応答が先に返った回数 */
+	private final AtomicLong hedgeWins = new AtomicLong();
+
+	//============================================================================
+	//  Constructors
+	//============================================================================
+	/**
+	 * 再試行だけを行うトランスポートを作成する．
+	 *
+	 * @param transport リクエストを送るトランスポート
+	 */
+	public RetryingTransport(final Transport transport){
+		this(transport, null);
+	}
+
+	/**
+	 * 再試行と複製を行うトランスポートを作成する．
+	 *
+	 * @param transport リクエストを送るトランスポート
+	 * @param executor 複製したリクエストを送るスレッドプール，null の場合は複製しない
+	 */
+	public RetryingTransport(final Transport transport, final ExecutorService executor){
+
+		this.transport = transport;
+		this.executor = executor;
+
+	}
+
+	//============================================================================
+	//  Public methods
+	//============================================================================
+	/**
+	 * エンドポイントのポリシーを設定する．
+	 *
+	 * @param type エンドポイントに対応する問合せの種類
+	 * @param policy ポリシー
+	 */
+	public void setPolicy(final PixivAPI.Type type, final Policy policy){
+		this.policies.put(type.name(), policy);
+	}
+
+	/**
+	 * ポリシーを設定していないエンドポイントのポリシーを設定する．
+	 * 既定値は Policy.Default です．
+	 *
+	 * @param policy ポリシー
+	 */
+	public void setDefaultPolicy(final Policy policy){
+		this.defaultPolicy = policy;
+	}
+
+	/* (非 Javadoc)
+	 * @see pxv.Transport#get(java.net.URL)
+	 */
+	@Override
+	public Response get(final URL url) throws IOException {
+		return this.get(url, null, 0);
+	}
+
+	/* (非 Javadoc)
+	 * @see pxv.ConditionalTransport#get(java.net.URL, java.lang.String, long)
+	 */
+	@Override
+	public Response get(final URL url, final String etag, final long lastModified) throws IOException {
+
+		final String endpoint = PixivAPI.endpoint(url);
+		final Policy p = this.policies.get(endpoint);
+		final Policy policy = p != null ? p : this.defaultPolicy;
+
+		for(int attempt = 1; true; ++attempt){
+
+			if(attempt > 1){
+
+				this.retries.incrementAndGet();
+				this.backoff(policy, attempt - 1);
+
+			}
+
+			try{
+
+				final Response res = this.attempt(url, etag, lastModified, endpoint, policy);
+				if(!retryable(res.getStatus()) || attempt >= policy.maxAttempts){
+
+					return res;
+
+				}
+
+			}catch(final IOException e){
+
+				if(attempt >= policy.maxAttempts){
+
+					throw e;
+
+				}
+
+			}
+
+		}
+
+	}
+
+	/**
+	 * 再試行した回数を取得する．
+	 *
+	 * @return 再試行した回数
+	 */
+	public long getRetryCount(){
+		return this.retries.get();
+	}
+
+	/**
+	 * 複製して送ったリクエストの数を取得する．
+	 *
+	 * @return 複製したリクエストの数
+	 */
+	public long getHedgeCount(){
+		return this.hedges.get();
+	}
+
+	/**
+	 * 複製したリクエストの応答が元のリクエストより先に返った回数を取得する．
+	 *
+	 * @return 複製したリクエストが使われた回数
+	 */
+	public long getHedgeWinCount(){
+		return this.hedgeWins.get();
+	}
+
+	//============================================================================
+	//  Private methods
+	//============================================================================
+	/**
+	 * 1 回分のリクエストを送る．条件を満たす場合は複製したリクエストも送る．
+	 */
+	private Response attempt(final URL url, final String etag, final long lastModified, final String endpoint, final Policy policy) throws IOException{
+
+		final Latencies observed = this.latencies(endpoint);
+		final long threshold = policy.hedgePercentile > 0 ? observed.percentile(policy.hedgePercentile) : -1;
+		if(this.executor == null || threshold < 0){
+
+			return this.fetch(url, etag, lastModified, observed, null);
+
+		}
+
+		final CompletionService<Response> cs = new ExecutorCompletionService<Response>(this.executor);
+		final Flight first = new Flight(url, etag, lastModified, observed);
+		final Future<Response> primary = cs.submit(first);
+		Flight second = null;
+		Future<Response> hedge = null;
+		Future<Response> winner = null;
+		int pending = 1;
+		try{
+
+			Future<Response> done = cs.poll(threshold, TimeUnit.NANOSECONDS);
+			if(done == null){
+
+				this.hedges.incrementAndGet();
+				second = new Flight(url, etag, lastModified, observed);
+				hedge = cs.submit(second);
+				++pending;
+				done = cs.take();
+
+			}
+
+			while(true){
+
+				--pending;
+				try{
+
+					final Response ret = done.get();
+					if(done != primary){
+
+						this.hedgeWins.incrementAndGet();
+
+					}
+					winner = done;
+					return ret;
+
+				}catch(final ExecutionException e){
+
+					if(pending == 0){
+
+						if(e.getCause() instanceof IOException){
+
+							throw (IOException)e.getCause();
+
+						}
+						throw new IOException(e.getCause());
+
+					}
+
+				}
+				done = cs.take();
+
+			}
+
+		}catch(final InterruptedException e){
+
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while waiting for a response");
+
+		}finally{
+
+			// 使われなかったリクエストを取り消す
+			if(winner != primary){
+
+				first.cancel(primary);
+
+			}
+			if(hedge != null && winner != hedge){
+
+				second.cancel(hedge);
+
+			}
+
+		}
+
+	}
+
+	/**
+	 * リクエストを送り，本文を最後まで読み込んだ応答を返す．正常な応答の待ち時間を記録する．
+	 *
+	 * @param flight 取り消すことのあるリクエスト，取り消さない場合は null
+	 */
+	private Response fetch(final URL url, final String etag, final long lastModified, final Latencies observed, final Flight flight) throws IOException{
+
+		final long start = System.nanoTime();
+		final Transport.Response res = this.transport instanceof ConditionalTransport
+				? ((ConditionalTransport)this.transport).get(url, etag, lastModified)
+				: this.transport.get(url);
+		if(flight != null){
+
+			flight.started(res);
+
+		}
+
+		final byte[] body;
+		try{
+
+			body = ResponseCache.readFully(res.getBody());
+
+		}catch(final IOException e){
+
+			res.abort();
+			throw e;
+
+		}
+		res.close();
+
+		String tag = null;
+		long modified = 0;
+		if(res instanceof ConditionalTransport.Response){
+
+			tag = ((ConditionalTransport.Response)res).getETag();
+			modified = ((ConditionalTransport.Response)res).getLastModified();
+
+		}
+
+		if(!retryable(res.getStatus())){
+
+			observed.add(System.nanoTime() - start);
+
+		}
+		return new ResponseCache.Buffered(res.getURL(), res.getStatus(), body, tag, modified);
+
+	}
+
+	/**
+	 * 再試行の前に待つ．
+	 *
+	 * @param retry 何回目の再試行か (1 から)
+	 */
+	private void backoff(final Policy policy, final int retry) throws IOException{
+
+		final long cap = Math.min(policy.maxDelay, policy.baseDelay << Math.min(retry - 1, 30));
+		final long delay;
+		synchronized(this.random){
+
+			delay = (long)(this.random.nextDouble() * cap);
+
+		}
+
+		try{
+
+			TimeUnit.NANOSECONDS.sleep(delay);
+
+		}catch(final InterruptedException e){
+
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while backing off");
+
+		}
+
+	}
+
+	private Latencies latencies(final String endpoint){
+
+		Latencies ret = this.latencies.get(endpoint);
+		if(ret == null){
+
+			ret = new Latencies();
+			final Latencies old = this.latencies.putIfAbsent(endpoint, ret);
+			if(old != null){
+
+				ret = old;
+
+			}
+
+		}
+		return ret;
+
+	}
+
+	//============================================================================
+	//  Private static methods
+	//============================================================================
+	/**
+	 * 再試行の対象となるステータスコードか調べる．
+	 */
+	private static boolean retryable(final int status){
+		return status == 429 || status >= 500;
+	}
+
+	//============================================================================
+	//  Inner classes
+	//============================================================================
+	/**
+	 * 複製することのある 1 回分のリクエスト．
+	 * 使われなかった場合は cancel で取り消し，本文を読み込み中の応答を abort する．
+	 */
+	private final class Flight implements Callable<Response>{
+
+		private final URL url;
+		private final String etag;
+		private final long lastModified;
+		private final Latencies observed;
+
+		/** 本文を読み込み中の応答 */
+		private final AtomicReference<Transport.Response> response = new AtomicReference<Transport.Response>();
+		/** 取り消された場合 true */
+		private volatile boolean cancelled = false;
+
+		Flight(final URL url, final String etag, final long lastModified, final Latencies observed){
+
+			this.url = url;
+			this.etag = etag;
+			this.lastModified = lastModified;
+			this.observed = observed;
+
+		}
+
+		@Override
+		public Response call() throws IOException {
+			return RetryingTransport.this.fetch(this.url, this.etag, this.lastModified, this.observed, this);
+		}
+
+		/**
+		 * 応答を受け取った際に呼ばれる．既に取り消されていた場合は応答を abort する．
+		 */
+		void started(final Transport.Response res) throws IOException{
+
+			this.response.set(res);
+			if(this.cancelled){
+
+				res.abort();
+				throw new IOException("Cancelled");
+
+			}
+
+		}
+
+		/**
+		 * リクエストを取り消す．
+		 *
+		 * @param future このリクエストを実行している Future
+		 */
+		void cancel(final Future<Response> future){
+
+			this.cancelled = true;
+			future.cancel(true);
+
+			// 受け取り済みの応答は，読み込み中の本文ごと接続を切る
+			final Transport.Response res = this.response.get();
+			if(res != null){
+
+				res.abort();
+
+			}
+
+		}
+
+	}
+
+	/**
+	 * 再試行と複製のポリシー．
+	 */
+	public static final class Policy{
+
+		/** 既定のポリシー: 3 回まで試行し，200 ミリ秒から 5 秒の範囲で待つ．複製は 95 パーセンタイルで行う． */
+		public static final Policy Default = new Policy(3, 200, 5000, TimeUnit.MILLISECONDS, 0.95);
+		/** 再試行も複製もしないポリシー */
+		public static final Policy None = new Policy(1, 0, 0, TimeUnit.MILLISECONDS, 0);
+
+		/** 最大試行回数 */
+		final int maxAttempts;
+		/** 待ち時間の基準値 (ナノ秒) */
+		final long baseDelay;
+		/** 待ち時間の最大値 (ナノ秒) */
+		final long maxDelay;
+		/** 複製を始める待ち時間のパーセンタイル，複製しない場合は 0 */
+		final double hedgePercentile;
+
+		/**
+		 * ポリシーを作成する．
+		 *
+		 * @param maxAttempts 最初の試行を含む最大試行回数
+		 * @param baseDelay 1 回目の再試行の前に待つ時間の上限
+		 * @param maxDelay 再試行の前に待つ時間の上限の最大値
+		 * @param unit baseDelay と maxDelay の単位
+		 * @param hedgePercentile 複製を始める待ち時間のパーセンタイル (0 より大きく 1 未満)，0 の場合は複製しない
+		 */
+		public Policy(final int maxAttempts, final long baseDelay, final long maxDelay, final TimeUnit unit, final double hedgePercentile){
+
+			if(maxAttempts < 1 || baseDelay < 0 || maxDelay < 0 || hedgePercentile < 0 || hedgePercentile >= 1){
+
+				throw new IllegalArgumentException(String.format("maxAttempts: %d, baseDelay: %d, maxDelay: %d, hedgePercentile: %f", maxAttempts, baseDelay, maxDelay, hedgePercentile));
+
+			}
+
+			this.maxAttempts = maxAttempts;
+			this.baseDelay = unit.toNanos(baseDelay);
+			this.maxDelay = unit.toNanos(maxDelay);
+			this.hedgePercentile = hedgePercentile;
+
+		}
+
+	}
+
+	/**
+	 * 最近の待ち時間の記録．
+	 */
+	private static final class Latencies{
+
+		private final long[] samples = new long[Window];
+		private int count = 0;
+
+		synchronized void add(final long latency){
+
+			this.samples[this.count % Window] = latency;
+			++this.count;
+
+		}
+
+		/**
+		 * @return 待ち時間のパーセンタイル (ナノ秒)，観測数が足りない場合は -1
+		 */
+		synchronized long percentile(final double p){
+
+			final int n = Math.min(this.count, Window);
+			if(n < MinSamples){
+
+				return -1;
+
+			}
+
+			final long[] sorted = Arrays.copyOf(this.samples, n);
+			Arrays.sort(sorted);
+			return sorted[Math.min(n - 1, (int)(p * n))];
+
+		}
+
+	}
+
+}
@@ -0,0 +1,133 @@
+/*
+ *  Copyright (C) 2010 Junpei Kawamoto
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package pxv;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 同じキーの処理が同時に呼び出された場合に，1 度だけ実行して結果を共有する (single-flight)．
+ * <p>
+ * 最初に呼び出したスレッドが呼び出し元のスレッドで処理を実行し，
+ * 実行中に同じキーで呼び出したスレッドはその結果を待って受け取る．
+ * 待っているスレッドは割り込まれると待つのをやめるが，処理を実行しているスレッドは最後まで実行する．
+ * 処理が終わった後の呼び出しは，改めて処理を実行する．
+ * </p>
+ */
+class SingleFlight {
+
+	/** 実行中の処理 */
+	private final ConcurrentMap<String, FutureTask<?>> calls = new ConcurrentHashMap<String, FutureTask<?>>();
+	/** 実行中の処理の結果を受け取った呼び出しの数 */
+	private final AtomicLong coalesced = new AtomicLong();
+
+	//============================================================================
+	//  Package private methods
+	//============================================================================
+	/**
+	 * 処理を実行する．同じキーの処理が実行中の場合は，その結果を待って返す．
+	 * 処理が実行時例外を投げた場合は，結果を待っていた全ての呼び出しに同じ例外を投げる．
+	 * 結果を待っている間に割り込まれた場合は，割り込み状態を復元して interrupted を返す．
+	 * 処理を実行している呼び出しは，割り込まれても処理を最後まで実行して，待っている呼び出しに結果を渡す．
+	 *
+	 * @param key 処理を識別するキー，キーが同じ処理は同じ型の結果を返すこと
+	 * @param task 処理
+	 * @param interrupted 結果を待つ間に割り込まれた場合に返す値
+	 * @return 処理の結果
+	 */
+	@SuppressWarnings("unchecked")
+	<V> V execute(final String key, final Callable<V> task, final V interrupted){
+
+		final FutureTask<V> f = new FutureTask<V>(task);
+		final FutureTask<V> running = (FutureTask<V>)this.calls.putIfAbsent(key, f);
+		if(running != null){
+
+			this.coalesced.incrementAndGet();
+
+		}else{
+
+			try{
+
+				f.run();
+
+			}finally{
+
+				this.calls.remove(key, f);
+
+			}
+
+		}
+
+		try{
+
+			return get(running != null ? running : f);
+
+		}catch(final InterruptedException e){
+
+			Thread.currentThread().interrupt();
+			return interrupted;
+
+		}
+
+	}
+
+	/**
+	 * 実行中の処理の結果を受け取った呼び出しの数を取得する．
+	 */
+	long getCoalescedCount(){
+		return this.coalesced.get();
+	}
+
+	//============================================================================
+	//  Private static methods
+	//============================================================================
+	/**
+	 * 処理の終了を待って結果を返す．
+	 *
+	 * @throws InterruptedException 待っている間に割り込まれた場合
+	 */
+	private static <V> V get(final FutureTask<V> f) throws InterruptedException{
+
+		try{
+
+			return f.get();
+
+		}catch(final ExecutionException e){
+
+			final Throwable cause = e.getCause();
+			if(cause instanceof RuntimeException){
+
+				throw (RuntimeException)cause;
+
+			}
+			if(cause instanceof Error){
+
+				throw (Error)cause;
+
+			}
+			throw new IllegalStateException(cause);
+
+		}
+
+	}
+
+}
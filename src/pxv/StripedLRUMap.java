@@ -0,0 +1,187 @@
+/*
+ *  Copyright (C) 2010 Junpei Kawamoto
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package pxv;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * ID をキーとする，容量に上限のある参照順 (LRU) の対応．
+ * <p>
+ * ID によって分けたストライプごとに参照順の LinkedHashMap を持ち，ストライプごとに同期する．
+ * 参照するだけで順序が変わるため読み込みにもロックが必要だが，並列に読み込むスレッドが同じロックを奪い合わないようにする．
+ * 上限はストライプごとに容量を等分して守るため，忘れる順序は全体としては近似的な LRU になる．
+ * 各メソッドはスレッドセーフである．
+ * </p>
+ *
+ * @param <V> 値の型
+ */
+class StripedLRUMap<V> {
+
+	/** ストライプ数，2 のべき乗 */
+	private static final int Stripes = 16;
+
+	private final Stripe<V>[] stripes;
+
+	//============================================================================
+	//  Constructor
+	//============================================================================
+	/**
+	 * 空の対応を作成する．
+	 *
+	 * @param capacity 保持する値の数の上限
+	 */
+	@SuppressWarnings("unchecked")
+	StripedLRUMap(final int capacity){
+
+		this.stripes = (Stripe<V>[])new Stripe<?>[Stripes];
+		for(int i = 0; i != Stripes; ++i){
+
+			this.stripes[i] = new Stripe<V>(share(capacity));
+
+		}
+
+	}
+
+	//============================================================================
+	//  Package private methods
+	//============================================================================
+	/**
+	 * ID に対応する値を取得し，最近参照したものとして扱う．
+	 *
+	 * @param id ID
+	 * @return 対応する値，無い場合は null
+	 */
+	V get(final int id){
+
+		final Stripe<V> s = this.stripe(id);
+		synchronized(s){
+
+			return s.get(id);
+
+		}
+
+	}
+
+	/**
+	 * ID に対応する値を記録する．上限を超えた場合は，同じストライプで最も長く参照されていない値から忘れる．
+	 *
+	 * @param id ID
+	 * @param value 値
+	 */
+	void put(final int id, final V value){
+
+		final Stripe<V> s = this.stripe(id);
+		synchronized(s){
+
+			if(s.capacity != 0){
+
+				s.put(id, value);
+
+			}
+
+		}
+
+	}
+
+	/**
+	 * 保持する値の数の上限を変更し，超えた分を最も長く参照されていないものから忘れる．
+	 *
+	 * @param capacity 保持する値の数の上限
+	 */
+	void setCapacity(final int capacity){
+
+		final int share = share(capacity);
+		for(final Stripe<V> s : this.stripes){
+
+			synchronized(s){
+
+				s.capacity = share;
+				s.trim();
+
+			}
+
+		}
+
+	}
+
+	//============================================================================
+	//  Private methods
+	//============================================================================
+	private Stripe<V> stripe(final int id){
+
+		// 連続した ID が同じストライプに偏らないように攪拌する
+		final int h = id * 0x9E3779B9;
+		return this.stripes[(h ^ (h >>> 16)) & (Stripes - 1)];
+
+	}
+
+	//============================================================================
+	//  Private static methods
+	//============================================================================
+	/**
+	 * 全体の上限から 1 つのストライプの上限を求める．
+	 */
+	private static int share(final int capacity){
+		return capacity <= 0 ? 0 : (capacity - 1) / Stripes + 1;
+	}
+
+	//============================================================================
+	//  Inner classes
+	//============================================================================
+	/**
+	 * 参照順の LinkedHashMap によるストライプ．
+	 */
+	private static final class Stripe<V> extends LinkedHashMap<Integer, V>{
+
+		private static final long serialVersionUID = 1L;
+
+		/** 保持する値の数の上限 */
+		int capacity;
+
+		Stripe(final int capacity){
+
+			super(16, 0.75f, true);
+			this.capacity = capacity;
+
+		}
+
+		@Override
+		protected boolean removeEldestEntry(final Map.Entry<Integer, V> eldest) {
+			return this.size() > this.capacity;
+		}
+
+		/**
+		 * 上限を超えた分を，最も長く参照されていないものから取り除く．
+		 */
+		void trim(){
+
+			final Iterator<Integer> i = this.keySet().iterator();
+			while(this.size() > this.capacity && i.hasNext()){
+
+				i.next();
+				i.remove();
+
+			}
+
+		}
+
+	}
+
+}
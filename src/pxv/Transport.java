@@ -0,0 +1,93 @@
+/*
+ *  Copyright (C) 2010 Junpei Kawamoto
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package pxv;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+
+/**
+ * PixivAPI が HTTP 通信に使用するトランスポート．
+ * <p>
+ * PixivAPI は全ての問合せをこのインタフェースを通して送ります．
+ * 既定の実装は URLConnectionTransport です．
+ * 独自の実装を PixivAPI のコンストラクタに渡すと，接続の管理方法を変えたり，
+ * ネットワークを使わずにローカルで応答を返す代替実装に差し替えたりできます．
+ * </p>
+ *
+ * @since 0.2
+ */
+public interface Transport {
+
+	/**
+	 * GET リクエストを送り，応答を取得する．
+	 * 取得した応答は，必ず close または abort で閉じて下さい．
+	 *
+	 * @param url リクエストする URL
+	 * @return 応答
+	 * @throws IOException I/O エラーが発生した場合
+	 */
+	public Response get(final URL url) throws IOException;
+
+	/**
+	 * HTTP の応答．
+	 */
+	public interface Response extends Closeable {
+
+		/**
+		 * ステータスコードを取得する．
+		 *
+		 * @return ステータスコード
+		 */
+		public int getStatus();
+
+		/**
+		 * リダイレクトをたどった後の URL を取得する．
+		 *
+		 * @return 応答を返した URL
+		 */
+		public URL getURL();
+
+		/**
+		 * 応答本文を取得する．
+		 * エラー応答の場合はエラー本文を返す．本文が無い場合は空のストリームを返す．
+		 *
+		 * @return 応答本文
+		 * @throws IOException I/O エラーが発生した場合
+		 */
+		public InputStream getBody() throws IOException;
+
+		/**
+		 * 応答を閉じる．
+		 * 読み残した本文を読み捨て，接続を再利用できる状態にする．
+		 *
+		 * @throws IOException I/O エラーが発生した場合
+		 */
+		@Override
+		public void close() throws IOException;
+
+		/**
+		 * 応答を破棄し，接続を切断する．
+		 * 本文を途中で読むのをやめる場合に使用する．
+		 */
+		public void abort();
+
+	}
+
+}
@@ -0,0 +1,501 @@
+/*
+ *  Copyright (C) 2010 Junpei Kawamoto
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package pxv;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * HttpURLConnection を使用する既定のトランスポート．
+ * <p>
+ * HttpURLConnection は，本文を最後まで読んで閉じた接続を JVM 全体のキャッシュに保持し，
+ * 同じホストへの次のリクエストで再利用します (HTTP keep-alive)．
+ * このトランスポートは接続を再利用できるように，応答を閉じる際に読み残した本文とエラー本文を読み捨てます．
+ * 読み捨てる量が DrainLimit を超える場合は，読み捨てずに接続を切断します．
+ * </p>
+ * <p>
+ * 同時に使用する接続数は maxConnections までに制限され，超えたリクエストは空きが出るまで待ちます．
+ * keep-alive で保持する接続数は，JVM 全体の設定であるシステムプロパティ http.maxConnections (既定値 5) で決まり，
+ * このクラスは変更しません．maxConnections に合わせる場合は，HttpURLConnection を最初に使用する前に
+ * アプリケーションが -Dhttp.maxConnections などで設定してください．
+ * </p>
+ * <p>
+ * HttpURLConnection は HTTP/1.1 のみをサポートします．
+ * </p>
+ * <p>
+ * 応答は ConditionalTransport.Response を実装しており，ETag と Last-Modified を取得できます．
+ * </p>
+ * <p>
+ * 既定では Accept-Encoding: gzip, deflate を送り，圧縮された本文は読み込みながら展開して返します．
+ * 本文全体を展開してから返すことはしません．
+ * 受信したバイト数 (圧縮後) と展開後のバイト数は，エンドポイント (PixivAPI.Type) ごとに集計します．
+ * </p>
+ *
+ * @since 0.2
+ */
+public class URLConnectionTransport implements ConditionalTransport {
+
+	/** 既定の最大接続数 */
+	public static final int DefaultMaxConnections = 8;
+
+	/** 接続を再利用するために読み捨てる本文の最大バイト数 */
+	private static final int DrainLimit = 64 * 1024;
+
+	/** 同時に使用する接続数の制限 */
+	private final Semaphore connections;
+
+	/** 接続タイムアウト (ミリ秒) */
+	private int connectTimeout = 0;
+	/** 読み込みタイムアウト (ミリ秒) */
+	private int readTimeout = 0;
+	/** 圧縮した本文を要求する場合 true */
+	private volatile boolean compression = true;
+
+	/** エンドポイントごとの受信したバイト数 */
+	private final ConcurrentMap<String, AtomicLong> compressedBytes = new ConcurrentHashMap<String, AtomicLong>();
+	/** エンドポイントごとの展開後のバイト数 */
+	private final ConcurrentMap<String, AtomicLong> decompressedBytes = new ConcurrentHashMap<String, AtomicLong>();
+
+	//============================================================================
+	//  Constructors
+	//============================================================================
+	/**
+	 * 最大接続数が DefaultMaxConnections のトランスポートを作成する．
+	 */
+	public URLConnectionTransport(){
+		this(DefaultMaxConnections);
+	}
+
+	/**
+	 * 最大接続数を指定してトランスポートを作成する．
+	 *
+	 * @param maxConnections 同時に使用する最大接続数
+	 */
+	public URLConnectionTransport(final int maxConnections){
+
+		if(maxConnections < 1){
+
+			throw new IllegalArgumentException("maxConnections must be positive: " + maxConnections);
+
+		}
+
+		this.connections = new Semaphore(maxConnections, true);
+
+	}
+
+	//============================================================================
+	//  Public methods
+	//============================================================================
+	/**
+	 * 接続タイムアウトを設定する．
+	 *
+	 * @param timeout タイムアウト (ミリ秒)，0 の場合は無制限
+	 */
+	public void setConnectTimeout(final int timeout){
+		this.connectTimeout = timeout;
+	}
+
+	/**
+	 * 読み込みタイムアウトを設定する．
+	 *
+	 * @param timeout タイムアウト (ミリ秒)，0 の場合は無制限
+	 */
+	public void setReadTimeout(final int timeout){
+		this.readTimeout = timeout;
+	}
+
+	/**
+	 * 圧縮した本文 (gzip，deflate) を要求するか設定する．既定では要求する．
+	 *
+	 * @param compression 要求する場合 true
+	 */
+	public void setCompression(final boolean compression){
+		this.compression = compression;
+	}
+
+	/**
+	 * 問合せの種類ごとに，受信した本文のバイト数 (圧縮されている場合は圧縮後) を取得する．
+	 *
+	 * @param type 問合せの種類
+	 * @return 受信したバイト数
+	 */
+	public long getCompressedBytes(final PixivAPI.Type type){
+
+		final AtomicLong ret = this.compressedBytes.get(type.name());
+		return ret != null ? ret.get() : 0;
+
+	}
+
+	/**
+	 * 問合せの種類ごとに，展開後の本文のバイト数を取得する．
+	 * 圧縮されていない本文は，受信したバイト数と同じだけ数えます．
+	 *
+	 * @param type 問合せの種類
+	 * @return 展開後のバイト数
+	 */
+	public long getDecompressedBytes(final PixivAPI.Type type){
+
+		final AtomicLong ret = this.decompressedBytes.get(type.name());
+		return ret != null ? ret.get() : 0;
+
+	}
+
+	/* (非 Javadoc)
+	 * @see pxv.Transport#get(java.net.URL)
+	 */
+	@Override
+	public ConditionalTransport.Response get(final URL url) throws IOException {
+		return this.get(url, null, 0);
+	}
+
+	/* (非 Javadoc)
+	 * @see pxv.ConditionalTransport#get(java.net.URL, java.lang.String, long)
+	 */
+	@Override
+	public ConditionalTransport.Response get(final URL url, final String etag, final long lastModified) throws IOException {
+
+		try{
+
+			this.connections.acquire();
+
+		}catch(final InterruptedException e){
+
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while waiting for a connection");
+
+		}
+
+		boolean done = false;
+		try{
+
+			final HttpURLConnection con = (HttpURLConnection)url.openConnection();
+			con.setRequestMethod("GET");
+			con.setConnectTimeout(this.connectTimeout);
+			con.setReadTimeout(this.readTimeout);
+			if(this.compression){
+
+				con.setRequestProperty("Accept-Encoding", "gzip, deflate");
+
+			}
+			if(etag != null){
+
+				con.setRequestProperty("If-None-Match", etag);
+
+			}
+			if(lastModified > 0){
+
+				con.setIfModifiedSince(lastModified);
+
+			}
+			con.connect();
+
+			final ConditionalTransport.Response ret = new URLConnectionResponse(con, con.getResponseCode());
+			done = true;
+			return ret;
+
+		}finally{
+
+			if(!done){
+
+				this.connections.release();
+
+			}
+
+		}
+
+	}
+
+	//============================================================================
+	//  Private static methods
+	//============================================================================
+	private static AtomicLong counter(final ConcurrentMap<String, AtomicLong> counters, final String endpoint){
+
+		AtomicLong ret = counters.get(endpoint);
+		if(ret == null){
+
+			ret = new AtomicLong();
+			final AtomicLong old = counters.putIfAbsent(endpoint, ret);
+			if(old != null){
+
+				ret = old;
+
+			}
+
+		}
+		return ret;
+
+	}
+
+	/**
+	 * Content-Encoding に従って本文を展開するストリームを作成する．
+	 * 本文が空の場合や未知の符号化の場合はそのまま返す．
+	 * deflate は zlib 形式と，ヘッダの無い raw 形式の両方を受け付ける．
+	 *
+	 * @param in 受信した本文
+	 * @param encoding Content-Encoding，無い場合は null
+	 * @return 展開した本文
+	 * @throws IOException I/O エラーが発生した場合
+	 */
+	private static InputStream decode(final InputStream in, final String encoding) throws IOException{
+
+		if(encoding == null){
+
+			return in;
+
+		}
+
+		final boolean gzip = encoding.equalsIgnoreCase("gzip") || encoding.equalsIgnoreCase("x-gzip");
+		if(!gzip && !encoding.equalsIgnoreCase("deflate")){
+
+			return in;
+
+		}
+
+		final PushbackInputStream head = new PushbackInputStream(in, 2);
+		final byte[] buf = new byte[2];
+		int n = 0;
+		for(int r; n < buf.length && (r = head.read(buf, n, buf.length - n)) != -1;){
+
+			n += r;
+
+		}
+		if(n == 0){
+
+			return head;
+
+		}
+		head.unread(buf, 0, n);
+
+		if(gzip){
+
+			return new GZIPInputStream(head, 8192);
+
+		}
+
+		final boolean zlib = n == 2 && (buf[0] & 0x0F) == 8 && (((buf[0] & 0xFF) << 8) | (buf[1] & 0xFF)) % 31 == 0;
+		final Inflater inflater = new Inflater(!zlib);
+		return new InflaterInputStream(head, inflater, 8192){
+
+			@Override
+			public void close() throws IOException {
+
+				try{
+
+					super.close();
+
+				}finally{
+
+					inflater.end();
+
+				}
+
+			}
+
+		};
+
+	}
+
+	//============================================================================
+	//  Inner classes
+	//============================================================================
+	/**
+	 * 読み込んだバイト数を数えるストリーム．
+	 */
+	private static final class CountingInputStream extends FilterInputStream {
+
+		private final AtomicLong counter;
+
+		CountingInputStream(final InputStream in, final AtomicLong counter){
+
+			super(in);
+			this.counter = counter;
+
+		}
+
+		@Override
+		public int read() throws IOException {
+
+			final int ret = super.read();
+			if(ret != -1){
+
+				this.counter.incrementAndGet();
+
+			}
+			return ret;
+
+		}
+
+		@Override
+		public int read(final byte[] b, final int off, final int len) throws IOException {
+
+			final int ret = super.read(b, off, len);
+			if(ret > 0){
+
+				this.counter.addAndGet(ret);
+
+			}
+			return ret;
+
+		}
+
+		@Override
+		public long skip(final long n) throws IOException {
+
+			final long ret = super.skip(n);
+			this.counter.addAndGet(ret);
+			return ret;
+
+		}
+
+	}
+
+	/**
+	 * HttpURLConnection の応答．
+	 */
+	private final class URLConnectionResponse implements ConditionalTransport.Response {
+
+		private final HttpURLConnection con;
+		private final int status;
+
+		/** 受信した本文，圧縮されている場合は展開前 */
+		private InputStream raw = null;
+		/** 取得済みの本文 */
+		private InputStream body = null;
+		/** 閉じられている場合 true，他のスレッドから abort されることがある */
+		private final AtomicBoolean closed = new AtomicBoolean();
+
+		URLConnectionResponse(final HttpURLConnection con, final int status){
+
+			this.con = con;
+			this.status = status;
+
+		}
+
+		@Override
+		public int getStatus() {
+			return this.status;
+		}
+
+		@Override
+		public URL getURL() {
+			return this.con.getURL();
+		}
+
+		@Override
+		public String getETag() {
+			return this.con.getHeaderField("ETag");
+		}
+
+		@Override
+		public long getLastModified() {
+			return this.con.getLastModified();
+		}
+
+		@Override
+		public InputStream getBody() throws IOException {
+
+			if(this.body == null){
+
+				final InputStream in = this.status < 400 ? this.con.getInputStream() : this.con.getErrorStream();
+				final String endpoint = PixivAPI.endpoint(this.con.getURL());
+				this.raw = new CountingInputStream(in != null ? in : new ByteArrayInputStream(new byte[0]), counter(compressedBytes, endpoint));
+				this.body = new CountingInputStream(decode(this.raw, this.con.getContentEncoding()), counter(decompressedBytes, endpoint));
+
+			}
+
+			return this.body;
+
+		}
+
+		@Override
+		public void close() throws IOException {
+
+			if(this.closed.get()){
+
+				return;
+
+			}
+
+			boolean reusable = false;
+			try{
+
+				// 展開前のストリームを読み捨てる
+				final InputStream in = this.getBody();
+				final byte[] buf = new byte[4096];
+				int drained = 0;
+				for(int n; drained <= DrainLimit && (n = this.raw.read(buf)) != -1;){
+
+					drained += n;
+
+				}
+				reusable = drained <= DrainLimit;
+				in.close();
+
+			}finally{
+
+				if(!reusable){
+
+					this.con.disconnect();
+
+				}
+				this.release();
+
+			}
+
+		}
+
+		@Override
+		public void abort() {
+
+			if(this.closed.get()){
+
+				return;
+
+			}
+
+			this.con.disconnect();
+			this.release();
+
+		}
+
+		private void release(){
+
+			if(this.closed.compareAndSet(false, true)){
+
+				URLConnectionTransport.this.connections.release();
+
+			}
+
+		}
+
+	}
+
+}
@@ -1,225 +1,419 @@
-/*
- *  Copyright (C) 2010 Junpei Kawamoto
- *
- *  This program is free software: you can redistribute it and/or modify
- *  it under the terms of the GNU Lesser General Public License as published by
- *  the Free Software Foundation, either version 3 of the License, or
- *  (at your option) any later version.
- *
- *  This program is distributed in the hope that it will be useful,
- *  but WITHOUT ANY WARRANTY; without even the implied warranty of
- *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
- *  GNU Lesser General Public License for more details.
- *
- *  You should have received a copy of the GNU Lesser General Public License
- *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
- *
- */
-package pxv;
-
-import java.io.IOException;
-import java.net.URL;
-import java.util.List;
-
-/**
- * Pixiv におけるユーザデータをラップするクラス．
- *
- * @since 0.1
- */
-public class User {
-
-	/** 親オブジェクト */
-	private final PixivAPI api;
-
-	/** ユーザ ID */
-	private final int id;
-	/** ユーザ名 */
-	private final String name;
-	/** モバイル画像のURL */
-	private final URL mobileURL;
-	/** アルファベットユーザ名 */
-	private final String ename;
-
-	//============================================================================
-	//  Constructor
-	//============================================================================
-	User(final PixivAPI api, final String[] data) throws IOException{
-		assert data.length >= 25;
-
-		this.api = api;
-		this.id = Integer.parseInt(data[1]);
-		this.name = data[5];
-		this.mobileURL = new URL(data[6]);
-		this.ename = data[24];
-
-	}
-
-	//============================================================================
-	//  Public methods
-	//============================================================================
-	//----------------------------------------------------------------------------
-	// For getting this user's information
-	//----------------------------------------------------------------------------
-	/**
-	 * ユーザ ID を取得する．
-	 *
-	 * @return このユーザの ID
-	 */
-	public int getId() {
-		return id;
-	}
-
-	/**
-	 * ユーザ名を取得する．
-	 *
-	 * @return このユーザの名前
-	 */
-	public String getName() {
-		return name;
-	}
-
-	/**
-	 * モバイルプロフィール画像の URL を取得する．
-	 *
-	 * @return モバイルプロフィール画像の URL
-	 */
-	public URL getMobileURL() {
-		return mobileURL;
-	}
-
-	/**
-	 * アルファベット表記のユーザ名を取得する．
-	 *
-	 * @return このユーザのアルファベット表記名
-	 */
-	public String getEname() {
-		return ename;
-	}
-
-	//----------------------------------------------------------------------------
-
-	/**
-	 * このユーザの投稿画像数を取得する．
-	 *
-	 * @return 投稿画像総数
-	 */
-	public int getImageSize(){
-		return this.api.getImageSize(this.getId());
-	}
-
-	/**
-	 * このユーザの投稿画像を取得する．
-	 *
-	 * @param page 取得する画像のページ
-	 * @return 取得した画像のリスト
-	 */
-	public List<Image> getImages(final int page){
-		return this.api.getImages(this.getId(), page);
-	}
-
-	/**
-	 * MyPixiv に登録しているユーザ数を取得する．
-	 *
-	 * @return
-	 */
-	public int getMyPixivSize(){
-		return this.api.getMyPixivSize(this.getId());
-	}
-
-	/**
-	 * MyPixiv ユーザを取得する．
-	 *
-	 * @param page 取得するページ
-	 * @return 取得したユーザのリスト
-	 */
-	public List<User> getMyPixivUsers(final int page){
-		return this.api.getMyPixivUsers(this.getId(), page);
-	}
-
-	/**
-	 * お気に入りユーザ数を取得する．
-	 *
-	 * @return このユーザのお気に入りユーザ数
-	 */
-	public int getBookmarkedUserSize(){
-		return this.api.getBookmarkedUserSize(this.getId());
-	}
-
-	/**
-	 * お気に入りユーザを取得する．
-	 *
-	 * @param page 取得するページ
-	 * @return 取得したユーザのリスト
-	 */
-	public List<User> getBookmarkedUsers(final int page){
-		return this.api.getBookmarkedUsers(this.getId(), page);
-	}
-
-	/**
-	 * ブックマークイラストの数を取得する．
-	 *
-	 * @return ブックマークしたイラストの数
-	 */
-	public int getBookmarkSize(){
-		return this.api.getBookmarkSize(this.getId());
-	}
-
-	/**
-	 * ブックマークイラストを取得する．
-	 *
-	 * @param page 取得するページ数
-	 * @return 取得したイラストのリスト
-	 */
-	public List<Image> getBookmarks(final int page){
-		return this.api.getBookmarks(this.getId(), page);
-	}
-
-	//----------------------------------------------------------------------------
-
-	/* (非 Javadoc)
-	 * @see java.lang.Object#toString()
-	 */
-	@Override
-	public String toString(){
-
-		final StringBuilder ret = new StringBuilder();
-		ret.append(this.getClass().getName());
-		ret.append("[id: ");
-		ret.append(this.getId());
-		ret.append(", name: ");
-		ret.append(this.getName());
-		ret.append(", mobile url: ");
-		ret.append(this.getMobileURL());
-		ret.append(", ename: ");
-		ret.append(this.getEname());
-		ret.append("]");
-
-		return ret.toString();
-
-	}
-
-	/* (非 Javadoc)
-	 * @see java.lang.Object#hashCode()
-	 */
-	@Override
-	public int hashCode() {
-		return Integer.valueOf(this.getId()).hashCode();
-	}
-
-	/* (非 Javadoc)
-	 * @see java.lang.Object#equals(java.lang.Object)
-	 */
-	@Override
-	public boolean equals(final Object obj) {
-
-		if(obj instanceof User){
-
-			final User that = (User)obj;
-			return this.getId() == that.getId();
-
-		}
-
-		return super.equals(obj);
-	}
-
-}
+/*
+ *  Copyright (C) 2010 Junpei Kawamoto
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package pxv;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.List;
+
+/**
+ * Pixiv におけるユーザデータをラップするクラス．
+ *
+ * @since 0.1
+ */
+public class User {
+
+	/** 親オブジェクト */
+	private final PixivAPI api;
+
+	/** ユーザ ID */
+	private final int id;
+	/** ユーザ名 */
+	private final String name;
+	/** モバイル画像のURL */
+	private final URL mobileURL;
+	/** アルファベットユーザ名 */
+	private final String ename;
+
+	//============================================================================
+	//  Constructor
+	//============================================================================
+	User(final PixivAPI api, final String[] data) throws IOException{
+		this(api, Integer.parseInt(data[1]), data[5], data[6], data[24]);
+	}
+
+	User(final PixivAPI api, final int id, final String name, final String mobileURL, final String ename) throws IOException{
+
+		this.api = api;
+		this.id = id;
+		this.name = name;
+		this.mobileURL = new URL(mobileURL);
+		this.ename = ename;
+
+	}
+
+	//============================================================================
+	//  Public methods
+	//============================================================================
+	//----------------------------------------------------------------------------
+	// For getting this user's information
+	//----------------------------------------------------------------------------
+	/**
+	 * ユーザ ID を取得する．
+	 *
+	 * @return このユーザの ID
+	 */
+	public int getId() {
+		return id;
+	}
+
+	/**
+	 * ユーザ名を取得する．
+	 *
+	 * @return このユーザの名前
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * モバイルプロフィール画像の URL を取得する．
+	 *
+	 * @return モバイルプロフィール画像の URL
+	 */
+	public URL getMobileURL() {
+		return mobileURL;
+	}
+
+	/**
+	 * アルファベット表記のユーザ名を取得する．
+	 *
+	 * @return このユーザのアルファベット表記名
+	 */
+	public String getEname() {
+		return ename;
+	}
+
+	//----------------------------------------------------------------------------
+
+	/**
+	 * このユーザの投稿画像数を取得する．
+	 *
+	 * @return 投稿画像総数
+	 */
+	public int getImageSize(){
+		return this.api.getImageSize(this.getId());
+	}
+
+	/**
+	 * このユーザの投稿画像を取得する．
+	 *
+	 * @param page 取得する画像のページ
+	 * @return 取得した画像のリスト
+	 */
+	public List<Image> getImages(final int page){
+		return this.api.getImages(this.getId(), page);
+	}
+
+	/**
+	 * このユーザの投稿画像を 1 件ずつ読み出すカーソルを取得する．
+	 *
+	 * @param page 取得する画像のページ
+	 * @return 取得した画像のカーソル
+	 */
+	public Cursor<Image> openImages(final int page){
+		return this.api.openImages(this.getId(), page);
+	}
+
+	/**
+	 * このユーザの投稿画像を全ページにわたって 1 件ずつ読み出すカーソルを取得する．
+	 *
+	 * @return 取得した画像のカーソル
+	 */
+	public PagedCursor<Image> openAllImages(){
+		return this.api.openAllImages(this.getId());
+	}
+
+	/**
+	 * 投稿イラストを Image を作らずに表へ追加する．
+	 *
+	 * @param table 追加する表
+	 * @param page 取得するページ数
+	 * @return 読み込んだ行数，最後のページを過ぎた場合や取得できなかった場合は 0
+	 * @since 0.2
+	 */
+	public int appendImages(final ImageTable table, final int page){
+		return this.api.appendImages(table, this.getId(), page);
+	}
+
+	/**
+	 * MyPixiv に登録しているユーザ数を取得する．
+	 *
+	 * @return
+	 */
+	public int getMyPixivSize(){
+		return this.api.getMyPixivSize(this.getId());
+	}
+
+	/**
+	 * MyPixiv ユーザを取得する．
+	 *
+	 * @param page 取得するページ
+	 * @return 取得したユーザのリスト
+	 */
+	public List<User> getMyPixivUsers(final int page){
+		return this.api.getMyPixivUsers(this.getId(), page);
+	}
+
+	/**
+	 * MyPixiv ユーザを 1 件ずつ読み出すカーソルを取得する．
+	 *
+	 * @param page 取得するページ
+	 * @return 取得したユーザのカーソル
+	 */
+	public Cursor<User> openMyPixivUsers(final int page){
+		return this.api.openMyPixivUsers(this.getId(), page);
+	}
+
+	/**
+	 * MyPixiv ユーザを全ページにわたって 1 件ずつ読み出すカーソルを取得する．
+	 *
+	 * @return 取得したユーザのカーソル
+	 */
+	public PagedCursor<User> openAllMyPixivUsers(){
+		return this.api.openAllMyPixivUsers(this.getId());
+	}
+
+	/**
+	 * お気に入りユーザ数を取得する．
+	 *
+	 * @return このユーザのお気に入りユーザ数
+	 */
+	public int getBookmarkedUserSize(){
+		return this.api.getBookmarkedUserSize(this.getId());
+	}
+
+	/**
+	 * お気に入りユーザを取得する．
+	 *
+	 * @param page 取得するページ
+	 * @return 取得したユーザのリスト
+	 */
+	public List<User> getBookmarkedUsers(final int page){
+		return this.api.getBookmarkedUsers(this.getId(), page);
+	}
+
+	/**
+	 * お気に入りユーザを 1 件ずつ読み出すカーソルを取得する．
+	 *
+	 * @param page 取得するページ
+	 * @return 取得したユーザのカーソル
+	 */
+	public Cursor<User> openBookmarkedUsers(final int page){
+		return this.api.openBookmarkedUsers(this.getId(), page);
+	}
+
+	/**
+	 * お気に入りユーザを全ページにわたって 1 件ずつ読み出すカーソルを取得する．
+	 *
+	 * @return 取得したユーザのカーソル
+	 */
+	public PagedCursor<User> openAllBookmarkedUsers(){
+		return this.api.openAllBookmarkedUsers(this.getId());
+	}
+
+	/**
+	 * ブックマークイラストの数を取得する．
+	 *
+	 * @return ブックマークしたイラストの数
+	 */
+	public int getBookmarkSize(){
+		return this.api.getBookmarkSize(this.getId());
+	}
+
+	/**
+	 * ブックマークイラストを取得する．
+	 *
+	 * @param page 取得するページ数
+	 * @return 取得したイラストのリスト
+	 */
+	public List<Image> getBookmarks(final int page){
+		return this.api.getBookmarks(this.getId(), page);
+	}
+
+	/**
+	 * ブックマークイラストを 1 件ずつ読み出すカーソルを取得する．
+	 *
+	 * @param page 取得するページ数
+	 * @return 取得したイラストのカーソル
+	 */
+	public Cursor<Image> openBookmarks(final int page){
+		return this.api.openBookmarks(this.getId(), page);
+	}
+
+	/**
+	 * ブックマークイラストを全ページにわたって 1 件ずつ読み出すカーソルを取得する．
+	 *
+	 * @return 取得したイラストのカーソル
+	 */
+	public PagedCursor<Image> openAllBookmarks(){
+		return this.api.openAllBookmarks(this.getId());
+	}
+
+	/**
+	 * ブックマークイラストを Image を作らずに表へ追加する．
+	 *
+	 * @param table 追加する表
+	 * @param page 取得するページ数
+	 * @return 読み込んだ行数，最後のページを過ぎた場合や取得できなかった場合は 0
+	 * @since 0.2
+	 */
+	public int appendBookmarks(final ImageTable table, final int page){
+		return this.api.appendBookmarks(table, this.getId(), page);
+	}
+
+	/**
+	 * 全てのブックマークイラストの ID を取得する．
+	 *
+	 * @return ブックマークしたイラストの ID の集合，取得に失敗した場合は null
+	 * @since 0.2
+	 */
+	public IntBitmap getAllBookmarkIds(){
+		return this.api.getAllBookmarkIds(this.getId());
+	}
+
+	//----------------------------------------------------------------------------
+
+	/* (非 Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString(){
+
+		final StringBuilder ret = new StringBuilder();
+		ret.append(this.getClass().getName());
+		ret.append("[id: ");
+		ret.append(this.getId());
+		ret.append(", name: ");
+		ret.append(this.getName());
+		ret.append(", mobile url: ");
+		ret.append(this.getMobileURL());
+		ret.append(", ename: ");
+		ret.append(this.getEname());
+		ret.append("]");
+
+		return ret.toString();
+
+	}
+
+	/* (非 Javadoc)
+	 * @see java.lang.Object#hashCode()
+	 */
+	@Override
+	public int hashCode() {
+		return Integer.valueOf(this.getId()).hashCode();
+	}
+
+	/* (非 Javadoc)
+	 * @see java.lang.Object#equals(java.lang.Object)
+	 */
+	@Override
+	public boolean equals(final Object obj) {
+
+		if(obj instanceof User){
+
+			final User that = (User)obj;
+			return this.getId() == that.getId();
+
+		}
+
+		return super.equals(obj);
+	}
+
+	//============================================================================
+	//  Inner classes
+	//============================================================================
+	/**
+	 * CSV のレコードから，User が利用する列だけを取り出して User を組み立てる Decoder．
+	 */
+	static final class Decoder implements CSVScanner.Decoder<User>{
+
+		/** User が利用する列 */
+		private static final CSVScanner.Projection Columns = new CSVScanner.Projection()
+			.integer(1)
+			.text(5, 6, 24);
+
+		private final PixivAPI api;
+
+		private int id;
+		private String name;
+		private String mobileURL;
+		private String ename;
+
+		Decoder(final PixivAPI api){
+			this.api = api;
+		}
+
+		@Override
+		public CSVScanner.Projection getProjection() {
+			return Columns;
+		}
+
+		@Override
+		public void begin() {
+
+			this.id = 0;
+			this.name = this.mobileURL = this.ename = null;
+
+		}
+
+		@Override
+		public void text(final int column, final String value) {
+
+			switch(column){
+			case 5: this.name = value; break;
+			case 6: this.mobileURL = value; break;
+			case 24: this.ename = value; break;
+			}
+
+		}
+
+		@Override
+		public void integer(final int column, final int value) {
+
+			if(column == 1){
+
+				this.id = value;
+
+			}
+
+		}
+
+		@Override
+		public User build() throws IOException {
+
+			if(this.api == null){
+
+				return new User(this.api, this.id, this.name, this.mobileURL, this.ename);
+
+			}
+
+			User ret = this.api.lookupUser(this.id);
+			if(ret == null){
+
+				ret = this.api.intern(new User(this.api, this.id, this.name, this.mobileURL, this.ename));
+
+			}
+			this.api.remember(ret);
+			return ret;
+
+		}
+
+	}
+
+}
@@ -0,0 +1,853 @@
+/*
+ *  Copyright (C) 2010 Junpei Kawamoto
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package pxv;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * ユーザ間の有向グラフを圧縮行格納 (CSR: compressed sparse row) 形式で保持するクラス．
+ * <p>
+ * ユーザ ID を昇順に並べ，その位置を頂点番号とする．各頂点から出る辺の相手の頂点番号を 1 つの int 配列に並べ，
+ * 頂点ごとの開始位置を別の配列に持つ．辺 1 本あたり 4 バイト，頂点 1 つあたり 8 バイトで保持できる．
+ * 同じ頂点の組を結ぶ辺は 1 本にまとめる．
+ * </p>
+ * <p>
+ * save で書き出したファイルは open でメモリマップして読み込めるため，ヒープを消費せずに大きなグラフを扱える．
+ * ただし，1 つのファイルは 2GB 未満でなければならない．
+ * </p>
+ * <p>
+ * 入次数，PageRank，連結成分の計算は，頂点を辺の数が均等になるように分割し，スレッドプールで並行して実行する．
+ * 各メソッドはスレッドセーフである．
+ * </p>
+ * <pre>
+ * final UserGraph.Builder builder = new UserGraph.Builder();
+ * crawler.crawl(seeds, 3, builder);
+ * final UserGraph graph = builder.build();
+ * final double[] rank = graph.pageRank(0.85, 1e-6, 100, executor, 8);
+ * </pre>
+ *
+ * @since 0.2
+ */
+public class UserGraph {
+
+	/** ファイルの識別子 */
+	private static final int Magic = 0x50585547;
+	/** ファイルの形式 */
+	private static final int Version = 1;
+	/** ファイルのヘッダの長さ */
+	private static final int HeaderSize = 16;
+
+	/** 頂点番号に対応するユーザ ID，昇順 */
+	private final IntBuffer ids;
+	/** 各頂点から出る辺の開始位置，頂点数 + 1 個 */
+	private final IntBuffer offsets;
+	/** 辺の相手の頂点番号 */
+	private final IntBuffer targets;
+
+	//============================================================================
+	//  Constructors
+	//============================================================================
+	private UserGraph(final IntBuffer ids, final IntBuffer offsets, final IntBuffer targets){
+
+		this.ids = ids;
+		this.offsets = offsets;
+		this.targets = targets;
+
+	}
+
+	//============================================================================
+	//  Public methods
+	//============================================================================
+	//----------------------------------------------------------------------------
+	//  Structure
+	//----------------------------------------------------------------------------
+	/**
+	 * 頂点数を取得する．
+	 *
+	 * @return 頂点数
+	 */
+	public int getVertexCount(){
+		return this.ids.limit();
+	}
+
+	/**
+	 * 辺の数を取得する．
+	 *
+	 * @return 辺の数
+	 */
+	public int getEdgeCount(){
+		return this.targets.limit();
+	}
+
+	/**
+	 * 頂点に対応するユーザ ID を取得する．
+	 *
+	 * @param vertex 頂点番号
+	 * @return ユーザ ID
+	 */
+	public int getUserId(final int vertex){
+		return this.ids.get(vertex);
+	}
+
+	/**
+	 * ユーザ ID に対応する頂点番号を取得する．
+	 *
+	 * @param userId ユーザ ID
+	 * @return 頂点番号，グラフに含まれない場合は -1
+	 */
+	public int indexOf(final int userId){
+
+		int low = 0;
+		int high = this.ids.limit() - 1;
+		while(low <= high){
+
+			final int mid = (low + high) >>> 1;
+			final int v = this.ids.get(mid);
+			if(v < userId){
+
+				low = mid + 1;
+
+			}else if(v > userId){
+
+				high = mid - 1;
+
+			}else{
+
+				return mid;
+
+			}
+
+		}
+		return -1;
+
+	}
+
+	/**
+	 * 頂点から出る辺の数を取得する．
+	 *
+	 * @param vertex 頂点番号
+	 * @return 出次数
+	 */
+	public int getOutDegree(final int vertex){
+		return this.offsets.get(vertex + 1) - this.offsets.get(vertex);
+	}
+
+	/**
+	 * 頂点から出る辺の相手の頂点番号を取得する．
+	 *
+	 * @param vertex 頂点番号
+	 * @return 相手の頂点番号，昇順
+	 */
+	public int[] getNeighbors(final int vertex){
+
+		final int from = this.offsets.get(vertex);
+		final int[] ret = new int[this.offsets.get(vertex + 1) - from];
+		for(int i = 0; i < ret.length; ++i){
+
+			ret[i] = this.targets.get(from + i);
+
+		}
+		return ret;
+
+	}
+
+	//----------------------------------------------------------------------------
+	//  Analytics
+	//----------------------------------------------------------------------------
+	/**
+	 * 各頂点の入次数を計算する．
+	 *
+	 * @param executor 計算を実行するスレッドプール
+	 * @param parallelism 分割数
+	 * @return 頂点番号ごとの入次数
+	 * @throws InterruptedException 計算中に割り込まれた場合
+	 * @throws ExecutionException 計算に失敗した場合
+	 */
+	public int[] inDegrees(final ExecutorService executor, final int parallelism) throws InterruptedException, ExecutionException{
+
+		final int n = this.getVertexCount();
+
+		// 分割ごとに作業用の配列を持つと分割数 × 頂点数のメモリが必要になるため，共有の配列に数える
+		final AtomicIntegerArray counts = new AtomicIntegerArray(n);
+		final int[] bounds = partition(this.offsets, parallelism);
+		final List<Callable<Void>> count = new ArrayList<Callable<Void>>();
+		for(int p = 0; p != bounds.length - 1; ++p){
+
+			final int from = bounds[p];
+			final int to = bounds[p + 1];
+			count.add(new Callable<Void>(){
+
+				@Override
+				public Void call() {
+
+					final IntBuffer targets = UserGraph.this.targets;
+					for(int e = UserGraph.this.offsets.get(from), end = UserGraph.this.offsets.get(to); e != end; ++e){
+
+						counts.incrementAndGet(targets.get(e));
+
+					}
+					return null;
+
+				}
+
+			});
+
+		}
+		invokeAll(executor, count);
+
+		final int[] ret = new int[n];
+		final List<Callable<Void>> copy = new ArrayList<Callable<Void>>();
+		final int ranges = Math.min(parallelism, n);
+		for(int p = 0; p != ranges; ++p){
+
+			final int from = (int)((long)n * p / ranges);
+			final int to = (int)((long)n * (p + 1) / ranges);
+			copy.add(new Callable<Void>(){
+
+				@Override
+				public Void call() {
+
+					for(int v = from; v != to; ++v){
+
+						ret[v] = counts.get(v);
+
+					}
+					return null;
+
+				}
+
+			});
+
+		}
+		invokeAll(executor, copy);
+		return ret;
+
+	}
+
+	/**
+	 * 各頂点の PageRank を計算する．
+	 * <p>
+	 * 出る辺の無い頂点の値は全ての頂点に均等に分配する．
+	 * 前回との差の絶対値の合計が tolerance を下回るか，maxIterations 回繰り返すと終了する．
+	 * </p>
+	 *
+	 * @param damping ダンピング係数，通常は 0.85
+	 * @param tolerance 収束の判定に使う値
+	 * @param maxIterations 最大の繰り返し回数
+	 * @param executor 計算を実行するスレッドプール
+	 * @param parallelism 分割数
+	 * @return 頂点番号ごとの PageRank，合計は 1
+	 * @throws InterruptedException 計算中に割り込まれた場合
+	 * @throws ExecutionException 計算に失敗した場合
+	 */
+	public double[] pageRank(final double damping, final double tolerance, final int maxIterations, final ExecutorService executor, final int parallelism)
+			throws InterruptedException, ExecutionException{
+
+		final int n = this.getVertexCount();
+		if(n == 0){
+
+			return new double[0];
+
+		}
+
+		// 入る辺の CSR を作る
+		final int[] in = this.inDegrees(executor, parallelism);
+		final int[] inOffsets = new int[n + 1];
+		for(int v = 0; v != n; ++v){
+
+			inOffsets[v + 1] = inOffsets[v] + in[v];
+
+		}
+		final int[] sources = new int[this.getEdgeCount()];
+		final int[] cursor = Arrays.copyOf(inOffsets, n);
+		for(int u = 0; u != n; ++u){
+
+			for(int e = this.offsets.get(u), end = this.offsets.get(u + 1); e != end; ++e){
+
+				sources[cursor[this.targets.get(e)]++] = u;
+
+			}
+
+		}
+
+		final int[] outBounds = partition(this.offsets, parallelism);
+		final int[] inBounds = partition(IntBuffer.wrap(inOffsets), parallelism);
+		final double[] contrib = new double[n];
+		double[] rank = new double[n];
+		double[] next = new double[n];
+		Arrays.fill(rank, 1.0 / n);
+
+		for(int iteration = 0; iteration != maxIterations; ++iteration){
+
+			// 各頂点が辺 1 本あたりに配る値と，出る辺の無い頂点の値の合計
+			final double[] current = rank;
+			final List<Callable<Double>> scatter = new ArrayList<Callable<Double>>();
+			for(int p = 0; p != outBounds.length - 1; ++p){
+
+				final int from = outBounds[p];
+				final int to = outBounds[p + 1];
+				scatter.add(new Callable<Double>(){
+
+					@Override
+					public Double call() {
+
+						double dangling = 0;
+						for(int u = from; u != to; ++u){
+
+							final int degree = UserGraph.this.getOutDegree(u);
+							if(degree == 0){
+
+								dangling += current[u];
+								contrib[u] = 0;
+
+							}else{
+
+								contrib[u] = current[u] / degree;
+
+							}
+
+						}
+						return dangling;
+
+					}
+
+				});
+
+			}
+			final double base = (1 - damping) / n + damping * sum(invokeAll(executor, scatter)) / n;
+
+			// 入る辺から値を集める
+			final double[] updated = next;
+			final List<Callable<Double>> gather = new ArrayList<Callable<Double>>();
+			for(int p = 0; p != inBounds.length - 1; ++p){
+
+				final int from = inBounds[p];
+				final int to = inBounds[p + 1];
+				gather.add(new Callable<Double>(){
+
+					@Override
+					public Double call() {
+
+						double diff = 0;
+						for(int v = from; v != to; ++v){
+
+							double s = 0;
+							for(int e = inOffsets[v], end = inOffsets[v + 1]; e != end; ++e){
+
+								s += contrib[sources[e]];
+
+							}
+							updated[v] = base + damping * s;
+							diff += Math.abs(updated[v] - current[v]);
+
+						}
+						return diff;
+
+					}
+
+				});
+
+			}
+			final double diff = sum(invokeAll(executor, gather));
+
+			next = rank;
+			rank = updated;
+			if(diff < tolerance){
+
+				break;
+
+			}
+
+		}
+		return rank;
+
+	}
+
+	/**
+	 * 辺の向きを無視した連結成分を計算する．
+	 * <p>
+	 * 各頂点に，同じ連結成分に含まれる頂点のうち最小の頂点番号を割り当てる．
+	 * 辺ごとに compare-and-set による union-find で頂点をまとめるため，辺の処理を並行して実行できる．
+	 * </p>
+	 *
+	 * @param executor 計算を実行するスレッドプール
+	 * @param parallelism 分割数
+	 * @return 頂点番号ごとの連結成分の代表の頂点番号
+	 * @throws InterruptedException 計算中に割り込まれた場合
+	 * @throws ExecutionException 計算に失敗した場合
+	 */
+	public int[] connectedComponents(final ExecutorService executor, final int parallelism) throws InterruptedException, ExecutionException{
+
+		final int n = this.getVertexCount();
+		final AtomicIntegerArray parent = new AtomicIntegerArray(n);
+		for(int v = 0; v != n; ++v){
+
+			parent.set(v, v);
+
+		}
+
+		final int[] bounds = partition(this.offsets, parallelism);
+		final List<Callable<Void>> union = new ArrayList<Callable<Void>>();
+		for(int p = 0; p != bounds.length - 1; ++p){
+
+			final int from = bounds[p];
+			final int to = bounds[p + 1];
+			union.add(new Callable<Void>(){
+
+				@Override
+				public Void call() {
+
+					for(int u = from; u != to; ++u){
+
+						for(int e = UserGraph.this.offsets.get(u), end = UserGraph.this.offsets.get(u + 1); e != end; ++e){
+
+							union(parent, u, UserGraph.this.targets.get(e));
+
+						}
+
+					}
+					return null;
+
+				}
+
+			});
+
+		}
+		invokeAll(executor, union);
+
+		final int[] ret = new int[n];
+		final List<Callable<Void>> label = new ArrayList<Callable<Void>>();
+		final int ranges = Math.min(parallelism, n);
+		for(int p = 0; p != ranges; ++p){
+
+			final int from = (int)((long)n * p / ranges);
+			final int to = (int)((long)n * (p + 1) / ranges);
+			label.add(new Callable<Void>(){
+
+				@Override
+				public Void call() {
+
+					for(int v = from; v != to; ++v){
+
+						ret[v] = find(parent, v);
+
+					}
+					return null;
+
+				}
+
+			});
+
+		}
+		invokeAll(executor, label);
+		return ret;
+
+	}
+
+	//----------------------------------------------------------------------------
+	//  Persistence
+	//----------------------------------------------------------------------------
+	/**
+	 * ファイルに書き出す．
+	 *
+	 * @param file 書き出すファイル
+	 * @throws IOException 書き出せなかった場合
+	 */
+	public void save(final File file) throws IOException{
+
+		final File tmp = new File(file.getPath() + ".tmp");
+		final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+		try{
+
+			out.writeInt(Magic);
+			out.writeInt(Version);
+			out.writeInt(this.getVertexCount());
+			out.writeInt(this.getEdgeCount());
+			for(final IntBuffer buf : new IntBuffer[]{ this.ids, this.offsets, this.targets }){
+
+				for(int i = 0, end = buf.limit(); i != end; ++i){
+
+					out.writeInt(buf.get(i));
+
+				}
+
+			}
+
+		}finally{
+
+			out.close();
+
+		}
+		DiskCache.replace(tmp, file);
+
+	}
+
+	//============================================================================
+	//  Public static methods
+	//============================================================================
+	/**
+	 * save で書き出したファイルをメモリマップして開く．
+	 *
+	 * @param file 読み込むファイル
+	 * @return グラフ
+	 * @throws IOException ファイルを読み込めなかった場合，または形式が正しくない場合
+	 */
+	public static UserGraph open(final File file) throws IOException{
+
+		final RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try{
+
+			final FileChannel channel = raf.getChannel();
+			final long size = channel.size();
+			if(size < HeaderSize || size > Integer.MAX_VALUE){
+
+				throw new IOException("Unsupported graph file size: " + file);
+
+			}
+
+			final ByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+			final int n = map.getInt(8);
+			final int m = map.getInt(12);
+			if(map.getInt(0) != Magic || map.getInt(4) != Version || n < 0 || m < 0 || HeaderSize + 4L * (2L * n + 1 + m) != size){
+
+				throw new IOException("Not a graph file: " + file);
+
+			}
+
+			final IntBuffer all = ((ByteBuffer)map.position(HeaderSize)).slice().asIntBuffer();
+			return new UserGraph(slice(all, 0, n), slice(all, n, n + 1), slice(all, 2 * n + 1, m));
+
+		}finally{
+
+			// マップした領域はチャネルを閉じた後も有効
+			raf.close();
+
+		}
+
+	}
+
+	//============================================================================
+	//  Private static methods
+	//============================================================================
+	private static IntBuffer slice(final IntBuffer buf, final int from, final int length){
+
+		final IntBuffer dup = buf.duplicate();
+		dup.position(from);
+		dup.limit(from + length);
+		return dup.slice();
+
+	}
+
+	/**
+	 * 各分割の辺の数が均等になるように頂点を分割する．
+	 *
+	 * @return 分割の境界の頂点番号，先頭は 0，末尾は頂点数
+	 */
+	private static int[] partition(final IntBuffer offsets, final int parallelism){
+
+		final int n = offsets.limit() - 1;
+		final int m = offsets.get(n);
+		final int parts = Math.max(1, Math.min(parallelism, n));
+		final int[] ret = new int[parts + 1];
+		int v = 0;
+		for(int p = 1; p < parts; ++p){
+
+			final long goal = (long)m * p / parts;
+			// 辺が無い場合も頂点数で均等に分ける
+			final int floor = (int)((long)n * p / parts);
+			while(v < n && offsets.get(v) < goal){
+
+				++v;
+
+			}
+			ret[p] = Math.max(ret[p - 1], m == 0 ? floor : v);
+
+		}
+		ret[parts] = n;
+		return ret;
+
+	}
+
+	/**
+	 * タスクを全て実行し，結果を返す．
+	 */
+	private static <T> List<T> invokeAll(final ExecutorService executor, final List<? extends Callable<T>> tasks) throws InterruptedException, ExecutionException{
+
+		final List<T> ret = new ArrayList<T>(tasks.size());
+		for(final Future<T> f : executor.invokeAll(tasks)){
+
+			ret.add(f.get());
+
+		}
+		return ret;
+
+	}
+
+	private static double sum(final List<Double> values){
+
+		double ret = 0;
+		for(final double v : values){
+
+			ret += v;
+
+		}
+		return ret;
+
+	}
+
+	/**
+	 * 根を探す．経路上の頂点を祖父母につなぎ直して経路を短くする．
+	 */
+	private static int find(final AtomicIntegerArray parent, int v){
+
+		while(true){
+
+			final int p = parent.get(v);
+			if(p == v){
+
+				return v;
+
+			}
+			final int g = parent.get(p);
+			if(g != p){
+
+				parent.compareAndSet(v, p, g);
+
+			}
+			v = g;
+
+		}
+
+	}
+
+	/**
+	 * 2 つの頂点を含む集合をまとめる．番号の大きい根を小さい根につなぐため，根は常に集合の最小の頂点になる．
+	 */
+	private static void union(final AtomicIntegerArray parent, final int a, final int b){
+
+		while(true){
+
+			int x = find(parent, a);
+			int y = find(parent, b);
+			if(x == y){
+
+				return;
+
+			}
+			if(x < y){
+
+				final int t = x;
+				x = y;
+				y = t;
+
+			}
+			if(parent.compareAndSet(x, x, y)){
+
+				return;
+
+			}
+
+		}
+
+	}
+
+	//============================================================================
+	//  Inner classes
+	//============================================================================
+	/**
+	 * 辺を集めて UserGraph を作成する．
+	 * <p>
+	 * GraphCrawler.EdgeSink を実装しているため，探索の結果を直接受け取ることができる．
+	 * 辺の種類は区別しない．このクラスはスレッドセーフではない．
+	 * </p>
+	 * <p>
+	 * 辺はメモリ上に溜めるだけで，flush では何もせず，ファイルにも書き出さない．
+	 * 同じ辺を重複して追加しても build で 1 本にまとめるため，再開した探索が再び出力した辺を受け取っても構わない．
+	 * ただし，プロセスが異常終了すると溜めた辺は失われ，チェックポイントから再開した探索はそれ以前に出力した辺を出力し直さない．
+	 * チェックポイントから再開できるようにする場合は，辺を永続化する EdgeSink で受け取り，そこから Builder に読み込むこと．
+	 * </p>
+	 */
+	public static class Builder implements GraphCrawler.EdgeSink{
+
+		/** 辺の始点の仮の頂点番号 */
+		private int[] from = new int[1024];
+		/** 辺の終点の仮の頂点番号 */
+		private int[] to = new int[1024];
+		/** 辺の数 */
+		private int size = 0;
+		/** 現れた順に付けた仮の頂点番号に対応するユーザ ID */
+		private int[] users = new int[1024];
+		/** 頂点数 */
+		private int vertices = 0;
+		/** ユーザ ID から仮の頂点番号を引く表 */
+		private final IntIntHashMap index = new IntIntHashMap();
+
+		/**
+		 * 辺を追加する．
+		 *
+		 * @param fromUserId 始点のユーザ ID
+		 * @param toUserId 終点のユーザ ID
+		 */
+		public void add(final int fromUserId, final int toUserId){
+
+			if(this.size == this.from.length){
+
+				this.from = Arrays.copyOf(this.from, this.size << 1);
+				this.to = Arrays.copyOf(this.to, this.size << 1);
+
+			}
+			this.from[this.size] = this.vertex(fromUserId);
+			this.to[this.size] = this.vertex(toUserId);
+			++this.size;
+
+		}
+
+		/**
+		 * 辺を持たない頂点を追加する．
+		 *
+		 * @param userId ユーザ ID
+		 */
+		public void addVertex(final int userId){
+			this.vertex(userId);
+		}
+
+		/* (非 Javadoc)
+		 * @see pxv.GraphCrawler.EdgeSink#accept(int, int, pxv.GraphCrawler.Relation)
+		 */
+		@Override
+		public void accept(final int from, final int to, final GraphCrawler.Relation relation) {
+			this.add(from, to);
+		}
+
+		/**
+		 * 何もしない．辺は build を呼び出すまでメモリ上に保持される．
+		 */
+		@Override
+		public void flush() {
+		}
+
+		/**
+		 * 追加した辺から UserGraph を作成する．
+		 *
+		 * @return グラフ
+		 */
+		public UserGraph build(){
+
+			// 仮の頂点番号をユーザ ID の昇順の番号に付け替える
+			final int n = this.vertices;
+			final long[] order = new long[n];
+			for(int v = 0; v != n; ++v){
+
+				order[v] = (long)this.users[v] << 32 | v;
+
+			}
+			Arrays.sort(order);
+			final int[] ids = new int[n];
+			final int[] rename = new int[n];
+			for(int v = 0; v != n; ++v){
+
+				ids[v] = (int)(order[v] >> 32);
+				rename[(int)order[v]] = v;
+
+			}
+
+			// 始点ごとに数えて並べる
+			final int[] offsets = new int[n + 1];
+			for(int e = 0; e != this.size; ++e){
+
+				++offsets[rename[this.from[e]] + 1];
+
+			}
+			for(int v = 0; v != n; ++v){
+
+				offsets[v + 1] += offsets[v];
+
+			}
+			final int[] targets = new int[this.size];
+			final int[] cursor = Arrays.copyOf(offsets, n);
+			for(int e = 0; e != this.size; ++e){
+
+				targets[cursor[rename[this.from[e]]]++] = rename[this.to[e]];
+
+			}
+
+			// 各頂点の辺を整列し，重複を取り除いて詰める
+			int m = 0;
+			int start = 0;
+			for(int v = 0; v != n; ++v){
+
+				final int end = offsets[v + 1];
+				Arrays.sort(targets, start, end);
+				offsets[v] = m;
+				for(int e = start; e != end; ++e){
+
+					if(e == start || targets[e] != targets[e - 1]){
+
+						targets[m++] = targets[e];
+
+					}
+
+				}
+				start = end;
+
+			}
+			offsets[n] = m;
+
+			return new UserGraph(IntBuffer.wrap(ids), IntBuffer.wrap(offsets), IntBuffer.wrap(Arrays.copyOf(targets, m)));
+
+		}
+
+		/**
+		 * ユーザ ID に仮の頂点番号を付ける．
+		 */
+		private int vertex(final int userId){
+
+			final int ret = this.index.putIfAbsent(userId, this.vertices);
+			if(ret == this.vertices){
+
+				if(this.vertices == this.users.length){
+
+					this.users = Arrays.copyOf(this.users, this.vertices << 1);
+
+				}
+				this.users[this.vertices++] = userId;
+
+			}
+			return ret;
+
+		}
+
+	}
+
+}
@@ -0,0 +1,132 @@
+/*
+ *  Copyright (C) 2010 Junpei Kawamoto
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package pxv;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 8 バイトずつ区切り文字を探す走査ルーチン．
+ * <p>
+ * ByteBuffer から long として読み込んだ 8 バイトに対し，目的のバイトと一致した位置を
+ * ビット演算でまとめて判定する (SWAR: SIMD within a register)．
+ * バッファは ByteOrder.LITTLE_ENDIAN で読み込むこと．最下位バイトが先頭のバイトに対応する．
+ * 8 バイトに満たない末尾はバイト単位で走査する．
+ * </p>
+ */
+final class WordScan {
+
+	private static final long Ones = 0x0101010101010101L;
+	private static final long Highs = 0x8080808080808080L;
+
+	private static final long Quote = Ones * '\"';
+	private static final long Comma = Ones * ',';
+	private static final long Escape = Ones * '\\';
+	private static final long CR = Ones * '\r';
+	private static final long LF = Ones * '\n';
+
+	private WordScan(){
+	}
+
+	/**
+	 * 引用符の外側で区切りとなるバイト (, &quot; CR LF) の位置を探す．
+	 *
+	 * @param buf 走査するバッファ
+	 * @param from 開始位置
+	 * @param to 終了位置
+	 * @return 見つかった位置，見つからなかった場合は to
+	 */
+	static int indexOfDelimiter(final ByteBuffer buf, final int from, final int to){
+
+		int p = from;
+		for(; p + 8 <= to; p += 8){
+
+			final long word = buf.getLong(p);
+			final long found = zeros(word ^ Comma) | zeros(word ^ Quote) | zeros(word ^ CR) | zeros(word ^ LF);
+			if(found != 0){
+
+				return p + (Long.numberOfTrailingZeros(found) >>> 3);
+
+			}
+
+		}
+
+		for(; p < to; ++p){
+
+			final byte c = buf.get(p);
+			if(c == ',' || c == '\"' || c == '\r' || c == '\n'){
+
+				return p;
+
+			}
+
+		}
+
+		return to;
+
+	}
+
+	/**
+	 * 引用符の内側で意味を持つバイト (&quot; \) の位置を探す．
+	 *
+	 * @param buf 走査するバッファ
+	 * @param from 開始位置
+	 * @param to 終了位置
+	 * @return 見つかった位置，見つからなかった場合は to
+	 */
+	static int indexOfQuoteOrEscape(final ByteBuffer buf, final int from, final int to){
+
+		int p = from;
+		for(; p + 8 <= to; p += 8){
+
+			final long word = buf.getLong(p);
+			final long found = zeros(word ^ Quote) | zeros(word ^ Escape);
+			if(found != 0){
+
+				return p + (Long.numberOfTrailingZeros(found) >>> 3);
+
+			}
+
+		}
+
+		for(; p < to; ++p){
+
+			final byte c = buf.get(p);
+			if(c == '\"' || c == '\\'){
+
+				return p;
+
+			}
+
+		}
+
+		return to;
+
+	}
+
+	/**
+	 * 値が 0 のバイトの最上位ビットを立てた値を返す．
+	 * 0 のバイトより上位のバイトに誤検出が出ることがあるが，最下位の検出位置は常に正しい．
+	 *
+	 * @param x 判定する 8 バイト
+	 * @return 0 のバイトに対応するビットが立った値，0 のバイトが無い場合は 0
+	 */
+	private static long zeros(final long x){
+		return (x - Ones) & ~x & Highs;
+	}
+
+}
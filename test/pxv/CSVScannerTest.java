@@ -0,0 +1,284 @@
+/*
+ *  Copyright (C) 2010 Junpei Kawamoto
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package pxv;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * CSVParser，CSVScanner，ByteCSVScanner が同じ入力に対して同じレコードを返すことを確かめる差分テスト．
+ */
+public class CSVScannerTest {
+
+	/** 生成する入力の数 */
+	private static final int Trials = 300;
+
+	/** 引用符の外側に現れる文字 */
+	private static final String Plain = "abcXYZ019 -_.:/\\あいう漢字é";
+	/** 引用符の内側に現れる文字 */
+	private static final String Quoted = Plain + ",\r\n";
+
+	@Test
+	public void fieldsMatchAcrossParsers() throws IOException{
+
+		final Random random = new Random(20101010L);
+		for(int t = 0; t != Trials; ++t){
+
+			final String input = records(random, 1 + random.nextInt(40), false);
+			final List<String[]> expected = parse(input);
+
+			assertRecords(input, expected, new CSVScanner(new StringReader(input)));
+			assertRecords(input, expected, new ByteCSVScanner(Channels.newChannel(new ByteArrayInputStream(input.getBytes("UTF-8")))));
+			assertRecords(input, expected, new ByteCSVScanner(Channels.newChannel(new ByteArrayInputStream(input.getBytes("UTF-8"))), true));
+
+		}
+
+	}
+
+	@Test
+	public void projectedColumnsMatchParser() throws IOException{
+
+		final Random random = new Random(19831111L);
+		for(int t = 0; t != Trials; ++t){
+
+			final String input = records(random, 1 + random.nextInt(40), true);
+			final List<String[]> expected = parse(input);
+
+			assertProjection(input, expected, new CSVScanner(new StringReader(input)));
+			assertProjection(input, expected, new ByteCSVScanner(Channels.newChannel(new ByteArrayInputStream(input.getBytes("UTF-8")))));
+			assertProjection(input, expected, new ByteCSVScanner(Channels.newChannel(new ByteArrayInputStream(input.getBytes("UTF-8"))), true));
+
+		}
+
+	}
+
+	@Test
+	public void fieldsDecoderAcceptsIntegers(){
+
+		final CSVScanner.Fields fields = new CSVScanner.Fields();
+		fields.begin();
+		fields.text(0, "a");
+		fields.integer(1, -42);
+		assertArrayEquals(new String[]{ "a", "-42" }, fields.build());
+
+	}
+
+	//============================================================================
+	//  Private methods
+	//============================================================================
+	private static void assertRecords(final String input, final List<String[]> expected, final RecordScanner scanner) throws IOException{
+
+		final CSVScanner.Fields fields = new CSVScanner.Fields();
+		int n = 0;
+		while(scanner.next(fields)){
+
+			assertTrue("extra record in " + scanner.getClass().getSimpleName(), n < expected.size());
+			assertArrayEquals(scanner.getClass().getSimpleName() + " record " + n + " of " + input, expected.get(n), fields.build());
+			++n;
+
+		}
+		assertEquals(scanner.getClass().getSimpleName(), expected.size(), n);
+		scanner.close();
+
+	}
+
+	private static void assertProjection(final String input, final List<String[]> expected, final RecordScanner scanner) throws IOException{
+
+		final Projected decoder = new Projected();
+		int n = 0;
+		while(scanner.next(decoder)){
+
+			final String[] record = expected.get(n);
+			assertEquals(Integer.parseInt(record[0]), decoder.id);
+			assertEquals(record.length > 2 ? record[2] : null, decoder.text);
+			++n;
+
+		}
+		assertEquals(expected.size(), n);
+		scanner.close();
+
+	}
+
+	/**
+	 * 基準となる CSVParser でレコードを読み込む．
+	 */
+	private static List<String[]> parse(final String input) throws IOException{
+
+		final List<String[]> ret = new ArrayList<String[]>();
+		CSVParser.parse(new StringReader(input), new CSVParser.Handler(){
+
+			@Override
+			public void update(final String[] data) {
+				ret.add(data);
+			}
+
+		});
+		return ret;
+
+	}
+
+	/**
+	 * pixiv の応答と同じく，各フィールドを , で終え，各レコードを LF で終える入力を作る．
+	 * 長いフィールドを混ぜ，ウィンドウの境界にまたがるようにする．
+	 *
+	 * @param numeric 先頭の列を整数にする場合 true
+	 */
+	private static String records(final Random random, final int count, final boolean numeric){
+
+		final StringBuilder ret = new StringBuilder();
+		for(int r = 0; r != count; ++r){
+
+			final int columns = 1 + random.nextInt(30);
+			for(int c = 0; c != columns; ++c){
+
+				if(c == 0 && numeric){
+
+					ret.append('"').append(random.nextInt() >> random.nextInt(32)).append('"');
+
+				}else{
+
+					field(random, ret);
+
+				}
+				ret.append(',');
+
+			}
+			ret.append('\n');
+
+		}
+		return ret.toString();
+
+	}
+
+	private static void field(final Random random, final StringBuilder out){
+
+		final int length = random.nextInt(50) == 0 ? 5000 + random.nextInt(20000) : random.nextInt(20);
+		switch(random.nextInt(3)){
+		case 0:
+
+			for(int i = 0; i != length; ++i){
+
+				out.append(Plain.charAt(random.nextInt(Plain.length())));
+
+			}
+			break;
+
+		case 1:
+
+			out.append('"');
+			for(int i = 0; i != length; ++i){
+
+				if(random.nextInt(10) == 0){
+
+					out.append('\\').append('"');
+
+				}else{
+
+					quoted(random, out);
+
+				}
+
+			}
+			out.append('"');
+			break;
+
+		default:
+
+			// 引用符の内外が混ざったフィールド
+			out.append(Plain.charAt(random.nextInt(Plain.length())));
+			out.append('"');
+			quoted(random, out);
+			out.append('"');
+			out.append(Plain.charAt(random.nextInt(Plain.length())));
+
+		}
+
+	}
+
+	/**
+	 * 引用符の内側に 1 文字を書き出す．
+	 * エスケープ文字は次の 1 文字を引用符も含めてそのまま取り込むため，必ず対にする．
+	 */
+	private static void quoted(final Random random, final StringBuilder out){
+
+		final char c = Quoted.charAt(random.nextInt(Quoted.length()));
+		if(c == '\\'){
+
+			out.append(c);
+
+		}
+		out.append(c);
+
+	}
+
+	//============================================================================
+	//  Inner classes
+	//============================================================================
+	/**
+	 * 先頭の列を整数，3 番目の列を文字列として取り出す Decoder．
+	 */
+	private static final class Projected implements CSVScanner.Decoder<Void>{
+
+		private static final CSVScanner.Projection Columns = new CSVScanner.Projection().integer(0).text(2);
+
+		int id;
+		String text;
+
+		@Override
+		public CSVScanner.Projection getProjection() {
+			return Columns;
+		}
+
+		@Override
+		public void begin() {
+
+			this.id = 0;
+			this.text = null;
+
+		}
+
+		@Override
+		public void text(final int column, final String value) {
+			this.text = value;
+		}
+
+		@Override
+		public void integer(final int column, final int value) {
+			this.id = value;
+		}
+
+		@Override
+		public Void build() {
+			return null;
+		}
+
+	}
+
+}
@@ -0,0 +1,175 @@
+/*
+ *  Copyright (C) 2010 Junpei Kawamoto
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package pxv;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * 応答をカーソルに渡せなかった場合や読み込みに失敗した場合に，PixivAPI が接続を解放することを確かめるテスト．
+ */
+public class PixivAPITest {
+
+	private HttpServer server;
+	private ExecutorService executor;
+
+	/** true の場合は gzip と宣言して圧縮していない本文を，false の場合は ID の列が数値でない本文を返す */
+	private volatile boolean mislabeled = true;
+
+	@Before
+	public void setUp() throws IOException{
+
+		this.executor = Executors.newCachedThreadPool();
+		this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		this.server.setExecutor(this.executor);
+		this.server.createContext("/iphone/", new HttpHandler(){
+
+			@Override
+			public void handle(final HttpExchange exchange) throws IOException {
+
+				final byte[] body;
+				if(PixivAPITest.this.mislabeled){
+
+					body = "\"1\",\"2\",\n".getBytes("UTF-8");
+					exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+
+				}else{
+
+					body = "\"x\",\"2\",\n".getBytes("UTF-8");
+
+				}
+				exchange.sendResponseHeaders(200, body.length);
+				final OutputStream out = exchange.getResponseBody();
+				out.write(body);
+				exchange.close();
+
+			}
+
+		});
+		this.server.start();
+
+	}
+
+	@After
+	public void tearDown(){
+
+		this.server.stop(0);
+		this.executor.shutdownNow();
+
+	}
+
+	/**
+	 * 本文を展開できない応答を受け取っても，同時接続数の枠を使い切らない．
+	 * 枠が解放されなければ，最大接続数 1 のトランスポートでは 2 回目の問合せが止まる．
+	 */
+	@Test(timeout = 10000)
+	public void brokenBodyReleasesConnection() throws IOException{
+
+		final PixivAPI api = this.api();
+		for(int i = 0; i != 3; ++i){
+
+			final Cursor<Image> cursor = api.openNewImages(i + 1);
+			assertNotNull(cursor);
+			assertFalse(cursor.hasNext());
+
+		}
+
+	}
+
+	/**
+	 * 数値の列が壊れた応答で実行時例外が起きても，同時接続数の枠を使い切らない．
+	 * カーソルを閉じずに捨てた場合と，リストを返すメソッドの場合を確かめる．
+	 */
+	@Test(timeout = 10000)
+	public void malformedIntegerReleasesConnection() throws IOException{
+
+		this.mislabeled = false;
+		final PixivAPI api = this.api();
+		for(int i = 0; i != 3; ++i){
+
+			final Cursor<Image> cursor = api.openNewImages(i + 1);
+			assertNotNull(cursor);
+			try{
+
+				cursor.hasNext();
+				fail("a malformed id must not be accepted");
+
+			}catch(final NumberFormatException e){
+
+				assertTrue(cursor.isFailed());
+
+			}
+
+		}
+		for(int i = 0; i != 3; ++i){
+
+			try{
+
+				api.getNewImages(i + 1);
+				fail("a malformed id must not be accepted");
+
+			}catch(final NumberFormatException e){
+
+				// 期待どおり
+
+			}
+
+		}
+
+	}
+
+	//============================================================================
+	//  Private methods
+	//============================================================================
+	/**
+	 * 最大接続数 1 のトランスポートでスタブサーバに問い合わせる PixivAPI を作成する．
+	 * 枠が解放されなければ 2 回目の問合せが止まる．
+	 */
+	private PixivAPI api() throws IOException{
+
+		final URLConnectionTransport transport = new URLConnectionTransport(1);
+		final int port = this.server.getAddress().getPort();
+		return new PixivAPI(new Transport(){
+
+			@Override
+			public Response get(final URL url) throws IOException {
+				return transport.get(new URL("http", "127.0.0.1", port, url.getFile()));
+			}
+
+		});
+
+	}
+
+}
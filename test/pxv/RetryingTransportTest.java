@@ -0,0 +1,260 @@
+/*
+ *  Copyright (C) 2010 Junpei Kawamoto
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package pxv;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * ローカルのスタブサーバに対して RetryingTransport の再試行と複製を確かめるテスト．
+ */
+public class RetryingTransportTest {
+
+	private HttpServer server;
+	private ExecutorService executor;
+	private URL url;
+
+	/** サーバが受け付けたリクエストの数 */
+	private final AtomicInteger requests = new AtomicInteger();
+	/** 次のリクエストに返すステータスを決める */
+	private volatile Responder responder;
+
+	@Before
+	public void setUp() throws IOException{
+
+		this.executor = Executors.newCachedThreadPool();
+		this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		this.server.setExecutor(this.executor);
+		this.server.createContext("/iphone/search.php", new HttpHandler(){
+
+			@Override
+			public void handle(final HttpExchange exchange) throws IOException {
+
+				try{
+
+					RetryingTransportTest.this.responder.respond(exchange, RetryingTransportTest.this.requests.incrementAndGet());
+
+				}finally{
+
+					exchange.close();
+
+				}
+
+			}
+
+		});
+		this.server.start();
+		this.url = new URL("http://127.0.0.1:" + this.server.getAddress().getPort() + "/iphone/search.php");
+
+	}
+
+	@After
+	public void tearDown(){
+
+		this.server.stop(0);
+		this.executor.shutdownNow();
+
+	}
+
+	@Test
+	public void retriesUntilSuccess() throws IOException{
+
+		this.responder = new Responder(){
+
+			@Override
+			public void respond(final HttpExchange exchange, final int n) throws IOException {
+				send(exchange, n <= 2 ? 503 : 200, n <= 2 ? "busy" : "ok");
+			}
+
+		};
+
+		final RetryingTransport transport = new RetryingTransport(new URLConnectionTransport(2));
+		transport.setPolicy(PixivAPI.Type.search, new RetryingTransport.Policy(5, 1, 10, TimeUnit.MILLISECONDS, 0));
+
+		final Transport.Response res = transport.get(this.url);
+		assertEquals(200, res.getStatus());
+		assertEquals("ok", body(res));
+		assertEquals(2, transport.getRetryCount());
+		assertEquals(3, this.requests.get());
+
+	}
+
+	@Test
+	public void backoffIsCappedByMaxDelay() throws IOException{
+
+		this.responder = new Responder(){
+
+			@Override
+			public void respond(final HttpExchange exchange, final int n) throws IOException {
+				send(exchange, 503, "busy");
+			}
+
+		};
+
+		// 上限が無ければ待ち時間は 10 秒単位になる
+		final RetryingTransport transport = new RetryingTransport(new URLConnectionTransport(2));
+		transport.setPolicy(PixivAPI.Type.search, new RetryingTransport.Policy(4, 10000, 100, TimeUnit.MILLISECONDS, 0));
+
+		final long start = System.nanoTime();
+		final Transport.Response res = transport.get(this.url);
+		final long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+		// 最後の試行の応答をそのまま返す
+		assertEquals(503, res.getStatus());
+		assertEquals("busy", body(res));
+		assertEquals(3, transport.getRetryCount());
+		assertEquals(4, this.requests.get());
+		assertTrue("elapsed " + elapsed + "ms", elapsed < 2000);
+
+	}
+
+	@Test
+	public void hedgeWinsAndLoserIsAborted() throws IOException, InterruptedException{
+
+		final AtomicBoolean slow = new AtomicBoolean(false);
+		final CountDownLatch aborted = new CountDownLatch(1);
+		this.responder = new Responder(){
+
+			@Override
+			public void respond(final HttpExchange exchange, final int n) throws IOException {
+
+				if(!"slow".equals(exchange.getRequestURI().getQuery())){
+
+					send(exchange, 200, "ok");
+					return;
+
+				}
+
+				// 本文を少しずつ送り続け，クライアントが接続を切ったことを書き込みの失敗で検出する
+				exchange.sendResponseHeaders(200, 0);
+				final OutputStream out = exchange.getResponseBody();
+				try{
+
+					for(int i = 0; i != 100; ++i){
+
+						out.write('x');
+						out.flush();
+						Thread.sleep(50);
+
+					}
+
+				}catch(final IOException e){
+
+					aborted.countDown();
+
+				}catch(final InterruptedException e){
+
+					Thread.currentThread().interrupt();
+
+				}
+
+			}
+
+		};
+
+		// 遅くするリクエストはクライアント側で決める．サーバへの到着順は複製と前後することがあり，
+		// 準備中に取り消された複製が遅れて届くこともあるため
+		final URLConnectionTransport inner = new URLConnectionTransport(4);
+		final RetryingTransport transport = new RetryingTransport(new Transport(){
+
+			@Override
+			public Response get(final URL url) throws IOException {
+				return inner.get(slow.compareAndSet(true, false) ? new URL(url + "?slow") : url);
+			}
+
+		}, this.executor);
+		transport.setPolicy(PixivAPI.Type.search, new RetryingTransport.Policy(1, 0, 0, TimeUnit.MILLISECONDS, 0.5));
+
+		// 複製を始めるのに必要なだけ待ち時間を観測させる
+		for(int i = 0; i != 30; ++i){
+
+			body(transport.get(this.url));
+
+		}
+		final long hedges = transport.getHedgeCount();
+		final long wins = transport.getHedgeWinCount();
+
+		slow.set(true);
+		final long start = System.nanoTime();
+		final Transport.Response res = transport.get(this.url);
+		final long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+		assertEquals("ok", body(res));
+		assertEquals(hedges + 1, transport.getHedgeCount());
+		assertEquals(wins + 1, transport.getHedgeWinCount());
+		assertTrue("elapsed " + elapsed + "ms", elapsed < 2000);
+		assertTrue("the losing request was not aborted", aborted.await(3, TimeUnit.SECONDS));
+
+	}
+
+	//============================================================================
+	//  Private static methods
+	//============================================================================
+	private static void send(final HttpExchange exchange, final int status, final String body) throws IOException{
+
+		final byte[] bytes = body.getBytes("UTF-8");
+		exchange.sendResponseHeaders(status, bytes.length);
+		final OutputStream out = exchange.getResponseBody();
+		out.write(bytes);
+		out.close();
+
+	}
+
+	private static String body(final Transport.Response res) throws IOException{
+
+		try{
+
+			return new String(ResponseCache.readFully(res.getBody()), "UTF-8");
+
+		}finally{
+
+			res.close();
+
+		}
+
+	}
+
+	//============================================================================
+	//  Inner classes
+	//============================================================================
+	private interface Responder{
+
+		public void respond(final HttpExchange exchange, final int n) throws IOException;
+
+	}
+
+}